@@ -0,0 +1,79 @@
+package app.benchmark;
+
+import app.domain.Customer;
+import app.service.CustomerService;
+import app.service.Page;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+Чтение активных покупателей, когда большая часть покупателей удалена.
+Параметры:
+customers - количество сохранённых покупателей;
+deletedPercent - доля удалённых покупателей в процентах (удаляются случайные покупатели).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class ActiveScanBenchmark {
+
+    @Param({"1000000"})
+    private int customers;
+
+    @Param({"0", "90", "99"})
+    private int deletedPercent;
+
+    private CustomerService customerService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        customerService = CustomerService.getInstance();
+        for (int i = 0; i < customers; i++) {
+            customerService.save(new Customer("Customer-" + i));
+        }
+        Random random = new Random(42);
+        for (long id = 1; id <= customers; id++) {
+            if (random.nextInt(100) < deletedPercent) {
+                customerService.deleteById(id);
+            }
+        }
+    }
+
+    @Benchmark
+    public int count() {
+        return customerService.getActiveCustomersNumber();
+    }
+
+    @Benchmark
+    public List<Customer> getAll() {
+        return customerService.getAllActiveCustomers();
+    }
+
+    @Benchmark
+    public long streamCount() {
+        return customerService.streamActiveCustomers().count();
+    }
+
+    // Первая страница из 100 активных покупателей
+    @Benchmark
+    public Page<Customer> firstPage() {
+        return customerService.getActiveCustomersPage(null, 100);
+    }
+}
@@ -0,0 +1,92 @@
+package app.benchmark;
+
+import app.domain.Customer;
+import app.domain.Product;
+import app.service.AnalyticsService;
+import app.service.CustomerService;
+import app.service.ProductService;
+import app.service.SalesReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/*
+Отчёт по корзинам всех покупателей (AnalyticsService) в зависимости от количества потоков обхода.
+Для сравнения - общая стоимость корзин, посчитанная запросом стоимости корзины каждого покупателя по отдельности.
+Параметры:
+customers - количество покупателей (в корзине каждого от 0 до 6 товаров);
+threads - параллелизм пула fork/join.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class AnalyticsBenchmark {
+
+    static final int PRODUCTS = 10_000;
+
+    @Param({"1000000"})
+    private int customers;
+
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    private CustomerService customerService;
+    private AnalyticsService analyticsService;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ProductService productService = ProductService.getInstance();
+        customerService = CustomerService.getInstance();
+        analyticsService = AnalyticsService.getInstance();
+        for (int i = 0; i < PRODUCTS; i++) {
+            productService.save(new Product(ProductServiceBenchmark.title(i), i % 100 + 0.5));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < customers; i++) {
+            long id = customerService.save(new Customer("Customer-" + i)).getId();
+            int items = random.nextInt(7);
+            for (int j = 0; j < items; j++) {
+                customerService.addProductCustomersCart(id, random.nextInt(PRODUCTS) + 1);
+            }
+        }
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public SalesReport salesReport() {
+        return analyticsService.getSalesReport(pool);
+    }
+
+    // Стоимость корзины каждого покупателя по отдельности (один поток, параметр threads не используется)
+    @Benchmark
+    public double totalCostPerCustomer() {
+        double total = 0.0;
+        for (long id = 1; id <= customers; id++) {
+            total += customerService.getCustomersCartTotalCost(id);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,98 @@
+package app.benchmark;
+
+import app.domain.Product;
+import app.service.ProductService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/*
+Массовое удаление и восстановление продуктов по условию (ProductService.deactivateAll / restoreAll)
+в зависимости от количества потоков. Одна операция удаляет все продукты дороже 90 (10% каталога)
+и восстанавливает их обратно, поэтому состояние каталога между операциями не меняется.
+Для сравнения - то же через поштучные deleteById / restoreById по скопированному списку продуктов.
+Параметры:
+products - количество продуктов (цены от 0.5 до 99.5);
+threads - параллелизм пула fork/join;
+priceIndex - вести ли индекс цен (shop.products.price.index): его обновление - основная часть работы
+над каждым изменённым продуктом.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx5g")
+@State(Scope.Benchmark)
+public class BulkMutationBenchmark {
+
+    private static final double PRICE_LIMIT = 90;
+    private static final Predicate<Product> EXPENSIVE = product -> product.getPrice() > PRICE_LIMIT;
+
+    @Param({"10000000"})
+    private int products;
+
+    @Param({"1", "2", "4"})
+    private int threads;
+
+    @Param({"true", "false"})
+    private String priceIndex;
+
+    private ProductService productService;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Свойство читается при создании сервиса, поэтому задаётся до первого обращения к нему
+        System.setProperty("shop.products.price.index", priceIndex);
+        productService = ProductService.getInstance();
+        List<Product> batch = new ArrayList<>(10_000);
+        for (int i = 0; i < products; i++) {
+            batch.add(new Product(ProductServiceBenchmark.title(i), i % 100 + 0.5));
+            if (batch.size() == 10_000) {
+                productService.saveAll(batch);
+                batch.clear();
+            }
+        }
+        productService.saveAll(batch);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int deactivateAndRestore() {
+        return productService.deactivateAll(EXPENSIVE, pool) + productService.restoreAll(EXPENSIVE, pool);
+    }
+
+    // Поштучные изменения в одном потоке (параметр threads не используется)
+    @Benchmark
+    public int deleteAndRestoreById() {
+        List<Product> expensive = productService.getAllActiveProducts().stream().filter(EXPENSIVE).toList();
+        for (Product product : expensive) {
+            productService.deleteById(product.getId());
+        }
+        for (Product product : expensive) {
+            productService.restoreById(product.getId());
+        }
+        return expensive.size() * 2;
+    }
+}
@@ -0,0 +1,167 @@
+package app.benchmark;
+
+import app.changes.ChangeLog;
+import app.changes.ChangeStream;
+import app.changes.ChangeSubscriber;
+import app.domain.Product;
+import app.service.ChangeService;
+import app.service.ProductService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Поток изменений (ChangeStream):
+updatePrice - изменение цены продукта через ProductService без потока изменений и с ним
+(стоимость публикации события при изменении; подписчиков нет, поэтому производитель не ждёт);
+publish - только публикация события в поток без подписчиков;
+fanOut - публикация пачки из 100 000 событий и их чтение каждым из consumers подписчиков в своих потоках
+(время на одно событие, доставленное всем подписчикам), с журналом изменений на диске и без него.
+Параметры:
+changes - off (поток выключен) или on;
+consumers - количество подписчиков;
+log - писать ли события в журнал изменений.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChangeStreamBenchmark {
+
+    static final int BATCH = 100_000;
+
+    @State(Scope.Benchmark)
+    public static class ServiceState {
+
+        @Param({"off", "on"})
+        private String changes;
+
+        private ProductService productService;
+        private int size;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            productService = ProductService.getInstance();
+            size = 100_000;
+            for (int i = 0; i < size; i++) {
+                productService.save(new Product(ProductServiceBenchmark.title(i), i % 100 + 0.5));
+            }
+            if (changes.equals("on")) {
+                ChangeService.start(1 << 16, Duration.ofSeconds(1), null, 0);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            ChangeService.stop();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class PublishState {
+
+        private final ChangeStream stream = new ChangeStream(1 << 16, Duration.ofSeconds(1), null);
+    }
+
+    @State(Scope.Benchmark)
+    public static class FanOutState {
+
+        @Param({"1", "8"})
+        private int consumers;
+
+        @Param({"false", "true"})
+        private boolean log;
+
+        private ChangeStream stream;
+        private final List<ChangeSubscriber> subscribers = new ArrayList<>();
+        private final List<Thread> threads = new ArrayList<>();
+        private volatile boolean running;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException {
+            ChangeLog changeLog = log ? ChangeLog.open(Files.createTempDirectory("changes"), 64L << 20) : null;
+            stream = new ChangeStream(1 << 16, Duration.ofSeconds(10), changeLog);
+            running = true;
+            for (int i = 0; i < consumers; i++) {
+                ChangeSubscriber subscriber = stream.subscribe();
+                subscribers.add(subscriber);
+                Thread thread = new Thread(() -> {
+                    long[] sum = new long[1];
+                    while (running) {
+                        if (subscriber.poll(256, event -> sum[0] += event.getId()) == 0) {
+                            Thread.yield();
+                        }
+                    }
+                });
+                thread.setDaemon(true);
+                thread.start();
+                threads.add(thread);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws InterruptedException {
+            running = false;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (ChangeSubscriber subscriber : subscribers) {
+                subscriber.close();
+            }
+            threads.clear();
+            subscribers.clear();
+            stream.close();
+        }
+
+        // Дождаться, пока все подписчики прочитают все опубликованные события
+        void awaitConsumers() {
+            long end = stream.getNextOffset();
+            for (ChangeSubscriber subscriber : subscribers) {
+                while (subscriber.getPosition() < end) {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void updatePrice(ServiceState state) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        state.productService.update(random.nextLong(state.size) + 1, random.nextInt(100) + 0.5);
+    }
+
+    @Benchmark
+    public void publish(PublishState state) {
+        state.stream.productPriceUpdated(42, 10.5, 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void fanOut(FanOutState state) {
+        ChangeStream stream = state.stream;
+        for (int i = 0; i < BATCH; i++) {
+            stream.productPriceUpdated(i, i, i);
+        }
+        state.awaitConsumers();
+    }
+}
@@ -0,0 +1,107 @@
+package app.benchmark;
+
+import app.domain.Customer;
+import app.domain.Order;
+import app.domain.Product;
+import app.persistence.WriteAheadLog;
+import app.service.CustomerService;
+import app.service.OrderService;
+import app.service.ProductService;
+import app.service.StorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Оформление заказов под нагрузкой: каждый поток кладёт в корзину своего покупателя
+несколько товаров и оформляет заказ, дожидаясь его сохранения.
+Throughput - устойчивое количество заказов в секунду (на все потоки),
+SampleTime - распределение времени оформления (p50, p99, p99.9), включая ожидание в очереди конвейера.
+Параметр storage:
+memory - без хранения на диске;
+group - журнал с общим сбросом на диск (конвейер сбрасывает его один раз на пакет заказов);
+per-operation - журнал со сбросом на диск после каждой записи.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class CheckoutBenchmark {
+
+    static final int PRODUCTS = 10_000;
+
+    // Количество товаров в корзине перед оформлением
+    static final int CART_SIZE = 3;
+
+    @Param({"memory", "group", "per-operation"})
+    private String storage;
+
+    private ProductService productService;
+    private CustomerService customerService;
+    private OrderService orderService;
+    private StorageService storageService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (!storage.equals("memory")) {
+            WriteAheadLog.SyncMode mode = storage.equals("group")
+                    ? WriteAheadLog.SyncMode.GROUP : WriteAheadLog.SyncMode.PER_OPERATION;
+            storageService = StorageService.open(Files.createTempDirectory("checkout"), mode, Duration.ofHours(1));
+        }
+        productService = ProductService.getInstance();
+        customerService = CustomerService.getInstance();
+        orderService = OrderService.getInstance();
+        for (int i = 0; i < PRODUCTS; i++) {
+            productService.save(new Product(ProductServiceBenchmark.title(i), i % 100 + 0.5));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println();
+        System.out.println("Заказов - " + orderService.getOrdersNumber());
+        if (storageService != null) {
+            storageService.close();
+        }
+    }
+
+    // Покупатель потока: у каждого потока своя корзина
+    @State(Scope.Thread)
+    public static class Buyer {
+        long customerId;
+
+        @Setup(Level.Trial)
+        public void setUp(CheckoutBenchmark benchmark) {
+            customerId = benchmark.customerService.save(new Customer("Buyer-" + Thread.currentThread().getId())).getId();
+        }
+    }
+
+    @Benchmark
+    public Order checkout(Buyer buyer) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < CART_SIZE; i++) {
+            customerService.addProductCustomersCart(buyer.customerId, random.nextLong(PRODUCTS) + 1);
+        }
+        return orderService.checkout(buyer.customerId);
+    }
+}
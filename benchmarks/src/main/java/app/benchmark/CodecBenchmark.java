@@ -0,0 +1,244 @@
+package app.benchmark;
+
+import app.domain.Customer;
+import app.domain.Product;
+import app.persistence.BinaryCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import server.JsonFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+Кодирование и декодирование пакета из 10 000 продуктов или покупателей (с корзинами из трёх продуктов)
+в трёх форматах:
+binary - BinaryCodec в ByteBuffer;
+serialization - стандартная сериализация Java (ObjectOutputStream) тех же полей;
+json - JSON в том виде, в каком его отдаёт HTTP-сервер (покупатель - вместе с продуктами корзины), в UTF-8.
+Время указано на один объект. Размер одного объекта в байтах выводится при подготовке каждого варианта.
+Параметры:
+entity - product или customer;
+format - binary, serialization или json.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    static final int COUNT = 10_000;
+
+    // Поля продукта и покупателя для стандартной сериализации (сами сущности не Serializable)
+    record ProductRow(long id, String title, double price, boolean active) implements Serializable {
+    }
+
+    record CustomerRow(long id, String name, boolean active, long[] productIds, int[] quantities)
+            implements Serializable {
+    }
+
+    @Param({"product", "customer"})
+    private String entity;
+
+    @Param({"binary", "serialization", "json"})
+    private String format;
+
+    private final Product[] products = new Product[COUNT];
+    private final Customer[] customers = new Customer[COUNT];
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(COUNT * 512);
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(COUNT * 512);
+    private final StringBuilder json = new StringBuilder(COUNT * 512);
+
+    // Закодированный пакет для декодирования
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        for (int i = 0; i < COUNT; i++) {
+            Product product = new Product(ProductServiceBenchmark.title(i), i % 100 + 0.5);
+            product.setId(i + 1);
+            product.setActive(true);
+            products[i] = product;
+        }
+        for (int i = 0; i < COUNT; i++) {
+            Customer customer = new Customer("Customer-" + i);
+            customer.setId(i + 1);
+            customer.setActive(true);
+            for (int j = 0; j < 3; j++) {
+                customer.getCart().setQuantity(products[(i * 7 + j * 1013) % COUNT], j + 1);
+            }
+            customers[i] = customer;
+        }
+        encoded = encode();
+        System.out.printf("%n%s, %s: %.1f bytes per entity%n", entity, format, (double) encoded.length / COUNT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public byte[] encodeAll() throws IOException {
+        return encode();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void decodeAll(Blackhole blackhole) throws IOException, ClassNotFoundException {
+        boolean product = entity.equals("product");
+        switch (format) {
+            case "binary" -> {
+                ByteBuffer in = ByteBuffer.wrap(encoded);
+                for (int i = 0; i < COUNT; i++) {
+                    blackhole.consume(product ? BinaryCodec.readProduct(in) : BinaryCodec.readCustomer(in, this::product));
+                }
+            }
+            case "serialization" -> {
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(encoded))) {
+                    for (int i = 0; i < COUNT; i++) {
+                        blackhole.consume(product ? product((ProductRow) in.readObject())
+                                : customer((CustomerRow) in.readObject()));
+                    }
+                }
+            }
+            default -> {
+                List<?> items = (List<?>) JsonFormat.parse(new String(encoded, StandardCharsets.UTF_8));
+                for (Object item : items) {
+                    Map<?, ?> fields = (Map<?, ?>) item;
+                    blackhole.consume(product ? product(fields) : customer(fields));
+                }
+            }
+        }
+    }
+
+    // Закодировать весь пакет и вернуть его байты
+    private byte[] encode() throws IOException {
+        boolean product = entity.equals("product");
+        switch (format) {
+            case "binary" -> {
+                buffer.clear();
+                for (int i = 0; i < COUNT; i++) {
+                    if (product) {
+                        BinaryCodec.writeProduct(buffer, products[i]);
+                    } else {
+                        BinaryCodec.writeCustomer(buffer, customers[i]);
+                    }
+                }
+                byte[] result = new byte[buffer.position()];
+                buffer.flip().get(result);
+                return result;
+            }
+            case "serialization" -> {
+                bytes.reset();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    for (int i = 0; i < COUNT; i++) {
+                        out.writeObject(product ? row(products[i]) : row(customers[i]));
+                    }
+                }
+                return bytes.toByteArray();
+            }
+            default -> {
+                json.setLength(0);
+                json.append('[');
+                for (int i = 0; i < COUNT; i++) {
+                    if (i > 0) {
+                        json.append(',');
+                    }
+                    if (product) {
+                        JsonFormat.product(json, products[i]);
+                    } else {
+                        JsonFormat.customer(json, customers[i]);
+                    }
+                }
+                return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private Product product(long id) {
+        return id >= 1 && id <= COUNT ? products[(int) id - 1] : null;
+    }
+
+    private static ProductRow row(Product product) {
+        return new ProductRow(product.getId(), product.getTitle(), product.getPrice(), product.isActive());
+    }
+
+    private static CustomerRow row(Customer customer) {
+        List<Product> cartProducts = new ArrayList<>();
+        List<Integer> cartQuantities = new ArrayList<>();
+        customer.getCart().forEach((product, quantity) -> {
+            cartProducts.add(product);
+            cartQuantities.add(quantity);
+        });
+        long[] productIds = new long[cartProducts.size()];
+        int[] quantities = new int[cartProducts.size()];
+        for (int i = 0; i < productIds.length; i++) {
+            productIds[i] = cartProducts.get(i).getId();
+            quantities[i] = cartQuantities.get(i);
+        }
+        return new CustomerRow(customer.getId(), customer.getName(), customer.isActive(), productIds, quantities);
+    }
+
+    private static Product product(ProductRow row) {
+        Product product = new Product(row.title(), row.price());
+        product.setId(row.id());
+        product.setActive(row.active());
+        return product;
+    }
+
+    private Customer customer(CustomerRow row) {
+        Customer customer = new Customer(row.name());
+        customer.setId(row.id());
+        customer.setActive(row.active());
+        for (int i = 0; i < row.productIds().length; i++) {
+            Product product = product(row.productIds()[i]);
+            if (product != null) {
+                customer.getCart().setQuantity(product, row.quantities()[i]);
+            }
+        }
+        return customer;
+    }
+
+    private static Product product(Map<?, ?> fields) {
+        Product product = new Product((String) fields.get("title"), ((Number) fields.get("price")).doubleValue());
+        product.setId(((Number) fields.get("id")).longValue());
+        product.setActive((Boolean) fields.get("active"));
+        return product;
+    }
+
+    private Customer customer(Map<?, ?> fields) {
+        Customer customer = new Customer((String) fields.get("name"));
+        customer.setId(((Number) fields.get("id")).longValue());
+        customer.setActive((Boolean) fields.get("active"));
+        for (Object item : (List<?>) fields.get("cart")) {
+            Map<?, ?> line = (Map<?, ?>) item;
+            Product product = product(((Number) ((Map<?, ?>) line.get("product")).get("id")).longValue());
+            if (product != null) {
+                customer.getCart().setQuantity(product, ((Number) line.get("quantity")).intValue());
+            }
+        }
+        return customer;
+    }
+}
@@ -0,0 +1,118 @@
+package app.benchmark;
+
+import app.domain.Customer;
+import app.domain.Product;
+import app.exceptions.ProductConflictException;
+import app.service.CustomerService;
+import app.service.ProductService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Изменение корзин и цен из многих потоков при высокой конкуренции.
+Сравниваются блокировки на отдельном покупателе или продукте (как в сервисах)
+с одной общей блокировкой на все изменения.
+hot - количество покупателей и продуктов, к которым обращаются потоки:
+чем меньше, тем чаще потоки изменяют одно и то же.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+
+    static final int PRODUCTS = 10_000;
+
+    // Общая блокировка, с которой сравниваются блокировки сервисов
+    private static final Object GLOBAL_LOCK = new Object();
+
+    @Param({"4", "1000"})
+    private int hot;
+
+    private ProductService productService;
+    private CustomerService customerService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        productService = ProductService.getInstance();
+        customerService = CustomerService.getInstance();
+        for (int i = 0; i < PRODUCTS; i++) {
+            productService.save(new Product(ProductServiceBenchmark.title(i), i % 100 + 0.5));
+        }
+        for (int i = 0; i < hot; i++) {
+            customerService.save(new Customer("Customer-" + i));
+        }
+    }
+
+    // Количество конфликтов условного изменения цены (на одну успешную операцию)
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Conflicts {
+        public long conflicts;
+    }
+
+    private long randomHotId() {
+        return ThreadLocalRandom.current().nextLong(hot) + 1;
+    }
+
+    private long randomProductId() {
+        return ThreadLocalRandom.current().nextLong(PRODUCTS) + 1;
+    }
+
+    @Benchmark
+    public void addToCart() {
+        customerService.addProductCustomersCart(randomHotId(), randomProductId());
+    }
+
+    @Benchmark
+    public void addToCartGlobalLock() {
+        synchronized (GLOBAL_LOCK) {
+            customerService.addProductCustomersCart(randomHotId(), randomProductId());
+        }
+    }
+
+    @Benchmark
+    public void updatePrice() {
+        productService.update(randomHotId(), ThreadLocalRandom.current().nextDouble(100));
+    }
+
+    @Benchmark
+    public void updatePriceGlobalLock() {
+        synchronized (GLOBAL_LOCK) {
+            productService.update(randomHotId(), ThreadLocalRandom.current().nextDouble(100));
+        }
+    }
+
+    // Чтение продукта и условное изменение его цены; при конфликте продукт перечитывается
+    @Benchmark
+    public void updatePriceOptimistic(Conflicts counters) {
+        long id = randomHotId();
+        while (true) {
+            long version = productService.getActiveProductById(id).getVersion();
+            try {
+                productService.update(id, ThreadLocalRandom.current().nextDouble(100), version);
+                return;
+            } catch (ProductConflictException e) {
+                counters.conflicts++;
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package app.benchmark;
+
+import app.domain.Customer;
+import app.domain.Product;
+import app.service.CustomerService;
+import app.service.ProductService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Бенчмарки корзины покупателя.
+Каталог содержит size продуктов, у каждого из CUSTOMERS покупателей
+в корзине изначально лежит CART_SIZE случайных продуктов.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerServiceBenchmark {
+
+    static final int CUSTOMERS = 1000;
+    static final int CART_SIZE = 100;
+
+    @Param({"10000", "1000000"})
+    private int size;
+
+    private ProductService productService;
+    private CustomerService customerService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        productService = ProductService.getInstance();
+        customerService = CustomerService.getInstance();
+        for (int i = 0; i < size; i++) {
+            productService.save(new Product(ProductServiceBenchmark.title(i), i % 100 + 0.5));
+        }
+        for (int i = 0; i < CUSTOMERS; i++) {
+            Customer customer = customerService.save(new Customer("Customer-" + i));
+            for (int j = 0; j < CART_SIZE; j++) {
+                customerService.addProductCustomersCart(customer.getId(), randomProductId());
+            }
+        }
+    }
+
+    private long randomProductId() {
+        return ThreadLocalRandom.current().nextLong(size) + 1;
+    }
+
+    private long randomCustomerId() {
+        return ThreadLocalRandom.current().nextLong(CUSTOMERS) + 1;
+    }
+
+    @Benchmark
+    public void addProductCustomersCart() {
+        customerService.addProductCustomersCart(randomCustomerId(), randomProductId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void addProductCustomersCartConcurrent() {
+        customerService.addProductCustomersCart(randomCustomerId(), randomProductId());
+    }
+
+    // Добавление единицы продукта в корзину и её удаление, чтобы корзины не росли от вызова к вызову
+    @Benchmark
+    public void addAndRemoveProductCustomersCart() {
+        long customerId = randomCustomerId();
+        long productId = randomProductId();
+        customerService.addProductCustomersCart(customerId, productId);
+        customerService.removeProductFromCustomersCart(customerId, productId);
+    }
+
+    // Хэш-код покупателя: нужен, например, чтобы положить покупателя в HashSet или HashMap
+    @Benchmark
+    public int customerHashCode() {
+        return customerService.getActiveCustomerById(randomCustomerId()).hashCode();
+    }
+
+    @Benchmark
+    public double getCustomersCartTotalCost() {
+        return customerService.getCustomersCartTotalCost(randomCustomerId());
+    }
+
+    // Изменение цены делает закэшированную стоимость корзин устаревшей,
+    // поэтому здесь измеряется стоимость корзины с пересчётом
+    @Benchmark
+    public double getCustomersCartTotalCostAfterPriceChange() {
+        productService.update(randomProductId(), ThreadLocalRandom.current().nextDouble(100));
+        return customerService.getCustomersCartTotalCost(randomCustomerId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public double getCustomersCartTotalCostConcurrent() {
+        return customerService.getCustomersCartTotalCost(randomCustomerId());
+    }
+}
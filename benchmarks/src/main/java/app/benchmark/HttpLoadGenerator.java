@@ -0,0 +1,293 @@
+package app.benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Генератор нагрузки для HTTP-сервера магазина (server.ShopServer).
+Сервер запускается отдельным процессом, чтобы соединения клиента и сервера
+не делили один лимит открытых файлов:
+  java -cp target/classes server.ShopServer 8080
+  java -cp benchmarks/target/benchmarks.jar app.benchmark.HttpLoadGenerator http://localhost:8080 1000,10000 20
+
+Каждое соединение - это замкнутый цикл: следующий запрос отправляется, как только пришёл ответ на предыдущий.
+Смесь запросов: 80% - продукт по идентификатору, 10% - добавление товара в корзину, 10% - стоимость корзины.
+Для каждого числа соединений печатаются запросы в секунду и задержки p50, p99, p999 и максимальная.
+
+Соединения обслуживает один поток на неблокирующих сокетах (HTTP/1.1 keep-alive):
+стандартный java.net.http.HttpClient сам тратит на запрос больше процессора, чем сервер,
+и на одной машине измерял бы в основном себя.
+ */
+public class HttpLoadGenerator {
+
+    private static final int PRODUCTS = 10_000;
+    private static final int CUSTOMERS = 1_000;
+    private static final int WARMUP_SECONDS = 5;
+
+    private final URI baseUri;
+    private final InetSocketAddress address;
+
+    private HttpLoadGenerator(URI baseUri) {
+        this.baseUri = baseUri;
+        this.address = new InetSocketAddress(baseUri.getHost(), baseUri.getPort());
+    }
+
+    public static void main(String[] args) throws Exception {
+        URI baseUri = URI.create(args.length > 0 ? args[0] : "http://localhost:8080");
+        String[] connections = (args.length > 1 ? args[1] : "1000,10000").split(",");
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        HttpLoadGenerator generator = new HttpLoadGenerator(baseUri);
+        generator.fill();
+        System.out.printf("%12s %10s %10s %12s %10s %10s %10s %10s%n",
+                "connections", "requests", "errors", "requests/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (String count : connections) {
+            int connectionCount = Integer.parseInt(count.trim());
+            generator.run(connectionCount, WARMUP_SECONDS, new Histogram());
+            Histogram histogram = new Histogram();
+            long errors = generator.run(connectionCount, seconds, histogram);
+            System.out.printf("%12d %10d %10d %12.0f %10.2f %10.2f %10.2f %10.2f%n",
+                    connectionCount, histogram.count(), errors, histogram.count() / (double) seconds,
+                    millis(histogram.percentile(0.50)), millis(histogram.percentile(0.99)),
+                    millis(histogram.percentile(0.999)), millis(histogram.max()));
+        }
+    }
+
+    // Заполнить магазин продуктами и покупателями
+    private void fill() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        for (int first = 0; first < PRODUCTS; first += 1_000) {
+            StringBuilder body = new StringBuilder("[");
+            for (int i = first; i < first + 1_000; i++) {
+                if (i > first) {
+                    body.append(',');
+                }
+                body.append("{\"title\":\"Product ").append(i).append("\",\"price\":").append(1 + i % 100).append('}');
+            }
+            post(client, "/products/batch", body.append(']').toString());
+        }
+        for (int i = 0; i < CUSTOMERS; i++) {
+            post(client, "/customers", "{\"name\":\"Customer " + i + "\"}");
+        }
+    }
+
+    private void post(HttpClient client, String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(response.statusCode() + " " + response.body());
+        }
+    }
+
+    // Нагружать сервер в течение seconds секунд через connections соединений.
+    // Задержки успешных запросов записываются в histogram, возвращается количество ошибок.
+    private long run(int connections, int seconds, Histogram histogram) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long errors = 0;
+        int open = 0;
+        try (Selector selector = Selector.open()) {
+            for (int i = 0; i < connections; i++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.connect(address);
+                channel.register(selector, SelectionKey.OP_CONNECT, new Connection());
+                open++;
+            }
+            while (open > 0) {
+                selector.select(100);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isConnectable()) {
+                            channel.finishConnect();
+                            connection.send(key, randomRequest());
+                        } else if (key.isWritable()) {
+                            connection.flush(key);
+                        } else if (key.isReadable()) {
+                            int status = connection.read(channel);
+                            if (status == 0) {
+                                continue;
+                            }
+                            long now = System.nanoTime();
+                            if (status >= 300) {
+                                errors++;
+                            } else {
+                                histogram.record(now - connection.sentAt);
+                            }
+                            if (now < deadline) {
+                                connection.send(key, randomRequest());
+                                continue;
+                            }
+                            channel.close();
+                            open--;
+                        }
+                    } catch (IOException e) {
+                        errors++;
+                        channel.close();
+                        open--;
+                    }
+                }
+            }
+        }
+        return errors;
+    }
+
+    private byte[] randomRequest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int kind = random.nextInt(10);
+        long productId = 1 + random.nextInt(PRODUCTS);
+        long customerId = 1 + random.nextInt(CUSTOMERS);
+        if (kind == 0) {
+            return request("POST", "/customers/" + customerId + "/cart", "{\"productId\":" + productId + "}");
+        }
+        if (kind == 1) {
+            return request("GET", "/customers/" + customerId + "/cart", "");
+        }
+        return request("GET", "/products/" + productId, "");
+    }
+
+    private byte[] request(String method, String path, String body) {
+        String request = method + " " + path + " HTTP/1.1\r\n"
+                + "Host: " + baseUri.getHost() + "\r\n"
+                + "Content-Length: " + body.length() + "\r\n"
+                + "\r\n" + body;
+        return request.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    // Состояние одного соединения: отправляемый запрос и принятая часть ответа
+    private static class Connection {
+
+        private final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        private ByteBuffer out;
+        private long sentAt;
+
+        void send(SelectionKey key, byte[] request) throws IOException {
+            out = ByteBuffer.wrap(request);
+            sentAt = System.nanoTime();
+            flush(key);
+        }
+
+        void flush(SelectionKey key) throws IOException {
+            ((SocketChannel) key.channel()).write(out);
+            key.interestOps(out.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        // Дочитать ответ. Возвращает код ответа или 0, если ответ ещё не получен полностью.
+        int read(SocketChannel channel) throws IOException {
+            if (channel.read(in) < 0) {
+                throw new IOException("Сервер закрыл соединение");
+            }
+            int headerEnd = headerEnd();
+            if (headerEnd < 0) {
+                return 0;
+            }
+            String header = new String(in.array(), 0, headerEnd + 2, StandardCharsets.US_ASCII);
+            int status = Integer.parseInt(header.substring(9, 12));
+            int contentLength = 0;
+            int lengthAt = header.toLowerCase().indexOf("content-length:");
+            if (lengthAt >= 0) {
+                int lineEnd = header.indexOf('\r', lengthAt);
+                contentLength = Integer.parseInt(header.substring(lengthAt + 15, lineEnd).trim());
+            }
+            int total = headerEnd + 4 + contentLength;
+            if (in.position() < total) {
+                return 0;
+            }
+            in.clear();
+            return status;
+        }
+
+        private int headerEnd() {
+            byte[] bytes = in.array();
+            for (int i = 0; i + 3 < in.position(); i++) {
+                if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /*
+    Гистограмма задержек с логарифмическими корзинами:
+    каждый диапазон [2^k, 2^(k+1)) делится на 32 корзины,
+    поэтому погрешность перцентиля не больше 1/32 (около 3%).
+     */
+    private static class Histogram {
+
+        private static final int SUB_BUCKETS = 32;
+
+        private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long value) {
+            counts.incrementAndGet(index(value));
+            total.increment();
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        long count() {
+            return total.sum();
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        // Значение, не больше которого доля p всех записанных значений
+        long percentile(double p) {
+            long rank = Math.max(1, (long) Math.ceil(p * total.sum()));
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        private static int index(long value) {
+            if (value < 2 * SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+            return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+        }
+
+        private static long upperBound(int index) {
+            if (index < 2 * SUB_BUCKETS) {
+                return index;
+            }
+            int shift = index / SUB_BUCKETS - 1;
+            long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+            return ((subBucket + 1) << shift) - 1;
+        }
+    }
+}
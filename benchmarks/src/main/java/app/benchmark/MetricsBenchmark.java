@@ -0,0 +1,89 @@
+package app.benchmark;
+
+import app.controller.ProductController;
+import app.domain.Product;
+import app.metrics.Metrics;
+import app.service.ProductService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Накладные расходы метрик: поиск продукта через контроллер (с метриками)
+сравнивается с тем же поиском напрямую через сервис (без метрик).
+Параметр metrics:
+off - метрики выключены (shop.metrics=false);
+sampled - время измеряется у 1 из 64 вызовов (по умолчанию);
+every - время измеряется у каждого вызова (shop.metrics.sampling=1).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    static final int PRODUCTS = 10_000;
+
+    @Param({"off", "sampled", "every"})
+    private String metrics;
+
+    private ProductService service;
+    private ProductController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Свойства читаются при загрузке класса Metrics, поэтому задаются до создания контроллера
+        if (metrics.equals("off")) {
+            System.setProperty("shop.metrics", "false");
+        } else if (metrics.equals("every")) {
+            System.setProperty("shop.metrics.sampling", "1");
+        }
+        service = ProductService.getInstance();
+        controller = new ProductController();
+        for (int i = 0; i < PRODUCTS; i++) {
+            service.save(new Product(ProductServiceBenchmark.title(i), i % 100 + 0.5));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void printMetrics() {
+        System.out.println();
+        System.out.println(Metrics.report());
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(PRODUCTS) + 1;
+    }
+
+    @Benchmark
+    public Product serviceGetById() {
+        return service.getActiveProductById(randomId());
+    }
+
+    @Benchmark
+    public Product controllerGetById() {
+        return controller.getById(randomId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Product controllerGetByIdConcurrent() {
+        return controller.getById(randomId());
+    }
+}
@@ -0,0 +1,90 @@
+package app.benchmark;
+
+import app.repository.PriceHistory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+История цен продуктов (PriceHistory): products продуктов, у каждого changes изменений цены за год
+(цены в копейках, изредка продукт удаляется и восстанавливается).
+priceAt - цена случайного продукта на случайный момент года;
+catalogAt - суммарная стоимость активных продуктов на случайный момент года (обход истории всех продуктов);
+record - запись следующего изменения цены случайного продукта.
+После заполнения печатается объём памяти истории.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx5g")
+@State(Scope.Benchmark)
+public class PriceHistoryBenchmark {
+
+    static final long START = 1_700_000_000_000L;
+    static final long YEAR = 365L * 24 * 60 * 60 * 1000;
+
+    @Param({"1000000"})
+    private int products;
+
+    @Param({"100"})
+    private int changes;
+
+    private PriceHistory history;
+    private long now;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        history = new PriceHistory(true, 1024);
+        Random random = new Random(42);
+        long step = YEAR / changes;
+        for (int id = 1; id <= products; id++) {
+            long time = START + random.nextInt((int) step);
+            long cents = 100 + random.nextInt(100_000);
+            for (int i = 0; i < changes; i++) {
+                cents = Math.max(1, cents + random.nextInt(2001) - 1000);
+                history.record(id, time, cents / 100.0, random.nextInt(20) != 0);
+                time += random.nextLong(2 * step);
+            }
+        }
+        now = START + 2 * YEAR;
+        long records = history.getRecordsNumber();
+        long bytes = history.getSizeInBytes();
+        System.out.printf("%nЗаписей: %d, память: %d МБ, %.1f байт на запись%n",
+                records, bytes >> 20, (double) bytes / records);
+    }
+
+    @Benchmark
+    public double priceAt() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return history.priceAt(random.nextInt(products) + 1, START + random.nextLong(YEAR));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double catalogAt() {
+        double[] total = new double[1];
+        history.forEachActiveAt(START + ThreadLocalRandom.current().nextLong(YEAR), 1, products + 1L,
+                (id, price) -> total[0] += price);
+        return total[0];
+    }
+
+    @Benchmark
+    public void record() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        history.record(random.nextInt(products) + 1, now++, random.nextInt(100_000) / 100.0, true);
+    }
+}
@@ -0,0 +1,112 @@
+package app.benchmark;
+
+import app.domain.Product;
+import app.service.ProductService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Бенчмарк кэша продуктов при обращениях с распределением Ципфа
+(небольшое количество популярных продуктов запрашивается гораздо чаще остальных).
+Параметры:
+cacheSize - размер кэша (0 - кэш выключен);
+mapped - хранить продукты в колонках файлов, отображённых в память.
+Доля попаданий в кэш печатается после каждого запуска.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductCacheBenchmark {
+
+    // Показатель распределения Ципфа
+    private static final double EXPONENT = 0.99;
+
+    @Param({"1000000"})
+    private int size;
+
+    @Param({"0", "10000"})
+    private int cacheSize;
+
+    @Param({"false", "true"})
+    private boolean mapped;
+
+    private ProductService service;
+
+    // Количество заранее выбранных идентификаторов (степень двойки)
+    private static final int SAMPLES = 1 << 20;
+
+    // Заранее выбранные по распределению Ципфа идентификаторы,
+    // чтобы время выбора не входило в измерение
+    private long[] samples;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Свойства читаются при создании сервиса, поэтому задаются до первого обращения к нему
+        System.setProperty("shop.products.cache.size", String.valueOf(cacheSize));
+        if (mapped) {
+            System.setProperty("shop.products.mapped", Files.createTempDirectory("products").toString());
+        }
+        service = ProductService.getInstance();
+        for (int i = 0; i < size; i++) {
+            service.save(new Product(ProductServiceBenchmark.title(i), i % 100 + 0.5));
+        }
+
+        // Функция распределения: cumulative[i] - вероятность выбрать один из продуктов 1..i+1
+        double[] cumulative = new double[size];
+        double sum = 0.0;
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / Math.pow(i + 1, EXPONENT);
+            cumulative[i] = sum;
+        }
+        samples = new long[SAMPLES];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < SAMPLES; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            int rank = index >= 0 ? index : Math.min(-index - 1, size - 1);
+            // Ранг перемешивается, чтобы популярные продукты не шли подряд по идентификаторам
+            samples[i] = (rank * 0x9E3779B1L) % size + 1;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void printStatistics() {
+        System.out.println();
+        System.out.println(service.getCacheStatistics());
+    }
+
+    private long zipfId() {
+        return samples[ThreadLocalRandom.current().nextInt() & (SAMPLES - 1)];
+    }
+
+    @Benchmark
+    public Product getActiveProductById() {
+        return service.getActiveProductById(zipfId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Product getActiveProductByIdConcurrent() {
+        return service.getActiveProductById(zipfId());
+    }
+}
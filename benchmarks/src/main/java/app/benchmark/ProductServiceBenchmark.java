@@ -0,0 +1,157 @@
+package app.benchmark;
+
+import app.domain.Product;
+import app.service.ProductService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Бенчмарки сервиса продуктов.
+Каталог из size продуктов заполняется один раз на каждый запуск (fork),
+так как ProductService - синглтон и не может быть пересоздан внутри одной JVM.
+Продукты имеют TITLES различных наименований.
+Каталог в 10 000 000 продуктов занимает несколько гигабайт кучи, поэтому размер кучи задан явно.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx5g")
+@State(Scope.Benchmark)
+public class ProductServiceBenchmark {
+
+    static final int TITLES = 1000;
+
+    @Param({"10000", "1000000", "10000000"})
+    private int size;
+
+    private ProductService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = ProductService.getInstance();
+        for (int i = 0; i < size; i++) {
+            service.save(new Product(title(i), i % 100 + 0.5));
+        }
+    }
+
+    static String title(int i) {
+        return "Product-" + i % TITLES;
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(size) + 1;
+    }
+
+    // Сохранение растит каталог, поэтому измеряется время сохранения пачки из 10 000 продуктов
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, batchSize = 10_000)
+    @Measurement(iterations = 5, batchSize = 10_000)
+    public Product save() {
+        return service.save(new Product("New product", 9.99));
+    }
+
+    @Benchmark
+    public Product getActiveProductById() {
+        return service.getActiveProductById(randomId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Product getActiveProductByIdConcurrent() {
+        return service.getActiveProductById(randomId());
+    }
+
+    @Benchmark
+    public void update() {
+        service.update(randomId(), ThreadLocalRandom.current().nextDouble(100));
+    }
+
+    @Benchmark
+    public String productToString() {
+        return service.getActiveProductById(randomId()).toString();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Product> getAllActiveProducts() {
+        return service.getAllActiveProducts();
+    }
+
+    // Удаление по наименованию с последующим восстановлением тех же продуктов,
+    // чтобы каждый вызов работал с одинаковым состоянием каталога
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int deleteByTitle() {
+        String title = title(ThreadLocalRandom.current().nextInt(TITLES));
+        List<Product> products = service.getActiveProductsByTitle(title);
+        service.deleteByTitle(title);
+        for (Product product : products) {
+            service.restoreById(product.getId());
+        }
+        return products.size();
+    }
+
+    // 10 самых дешёвых продуктов по индексу цен
+    @Benchmark
+    public List<Product> getCheapestProducts() {
+        return service.getCheapestProducts(10);
+    }
+
+    // То же без индекса: сортировка всех активных продуктов, как это делал бы клиент
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Product> getCheapestProductsBySorting() {
+        return service.getAllActiveProducts()
+                .stream()
+                .sorted(Comparator.comparingDouble(Product::getPrice).thenComparingLong(Product::getId))
+                .limit(10)
+                .toList();
+    }
+
+    // До 100 продуктов из случайного диапазона цен шириной 1
+    @Benchmark
+    public List<Product> getActiveProductsByPriceRange() {
+        double minPrice = ThreadLocalRandom.current().nextInt(100);
+        return service.getActiveProductsByPriceRange(minPrice, minPrice + 1, 100);
+    }
+
+    @Benchmark
+    public int getActiveProductsNumber() {
+        return service.getActiveProductsNumber();
+    }
+
+    @Benchmark
+    public double getActiveProductsTotalCost() {
+        return service.getActiveProductsTotalCost();
+    }
+
+    @Benchmark
+    public double getActiveProductsAveragePrice() {
+        return service.getActiveProductsAveragePrice();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public double getActiveProductsTotalCostConcurrent() {
+        return service.getActiveProductsTotalCost();
+    }
+}
@@ -0,0 +1,130 @@
+package app.benchmark;
+
+import app.domain.Customer;
+import app.domain.Product;
+import app.repository.CustomerRepository;
+import app.repository.ProductRepository;
+import app.repository.StorageEngines;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Один и тот же набор операций для каждого хранилища (storage engine), чтобы выбирать хранилище
+под нагрузку по измерениям. Хранилища создаются напрямую, без сервисов,
+поэтому в измерение не входят блокировки, показатели и журнал.
+Параметры:
+engine - хранилище продуктов (heap, concurrent-map, mapped);
+покупатели хранятся в хранилище с тем же названием, а для mapped - в heap (хранилища вне кучи для них нет).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageEngineBenchmark {
+
+    static final int CUSTOMERS = 100_000;
+
+    @Param({StorageEngines.HEAP, StorageEngines.CONCURRENT_MAP, StorageEngines.MAPPED})
+    private String engine;
+
+    @Param({"1000000"})
+    private int size;
+
+    private ProductRepository products;
+    private CustomerRepository customers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        boolean mapped = engine.equals(StorageEngines.MAPPED);
+        products = StorageEngines.createProductRepository(engine, mapped ? Files.createTempDirectory("products") : null);
+        customers = StorageEngines.createCustomerRepository(mapped ? StorageEngines.HEAP : engine, products::findById);
+        for (int i = 0; i < size; i++) {
+            Product product = new Product(ProductServiceBenchmark.title(i), i % 100 + 0.5);
+            product.setActive(true);
+            products.save(product);
+        }
+        for (int i = 0; i < CUSTOMERS; i++) {
+            Customer customer = new Customer("Customer-" + i % 1000);
+            customer.setActive(true);
+            customers.save(customer);
+        }
+    }
+
+    private long randomProductId() {
+        return ThreadLocalRandom.current().nextLong(size) + 1;
+    }
+
+    private long randomCustomerId() {
+        return ThreadLocalRandom.current().nextLong(CUSTOMERS) + 1;
+    }
+
+    // Сохранение растит хранилище, поэтому измеряется время сохранения пачки из 10 000 продуктов
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, batchSize = 10_000)
+    @Measurement(iterations = 5, batchSize = 10_000)
+    public Product saveProduct() {
+        return products.save(new Product("New product", 9.99));
+    }
+
+    @Benchmark
+    public Product findProductById() {
+        return products.findById(randomProductId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Product findProductByIdConcurrent() {
+        return products.findById(randomProductId());
+    }
+
+    @Benchmark
+    public void updateProduct() {
+        products.update(randomProductId(), ThreadLocalRandom.current().nextDouble(100));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Product> findProductsByTitle() {
+        return products.findByTitle(ProductServiceBenchmark.title(ThreadLocalRandom.current().nextInt(ProductServiceBenchmark.TITLES)));
+    }
+
+    // Полный проход по активным продуктам (так пересчитываются показатели и индекс цен)
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double scanActiveProducts() {
+        double[] total = new double[1];
+        products.forEachActive((id, price) -> total[0] += price);
+        return total[0];
+    }
+
+    @Benchmark
+    public Customer findCustomerById() {
+        return customers.findById(randomCustomerId());
+    }
+
+    @Benchmark
+    public void updateCustomer() {
+        customers.update(randomCustomerId(), "Customer-" + ThreadLocalRandom.current().nextInt(1000));
+    }
+}
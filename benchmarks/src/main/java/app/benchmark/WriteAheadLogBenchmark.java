@@ -0,0 +1,140 @@
+package app.benchmark;
+
+import app.domain.Product;
+import app.persistence.Journal;
+import app.persistence.WriteAheadLog;
+import app.repository.ProductRepository;
+import app.repository.StorageEngines;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+Журнал упреждающей записи (WriteAheadLog):
+append - запись изменения цены в журнал (операций в миллисекунду) в режимах
+PER_OPERATION (fsync после каждой записи) и GROUP (fsync на группу из 512 записей, как в StorageService);
+recover - восстановление products продуктов из снимка и сегмента журнала с изменениями цен
+десятой части продуктов в новое хранилище в куче (одно восстановление за итерацию).
+Записи применяются к хранилищу так же, как при открытии StorageService (restore и update).
+ */
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WriteAheadLogBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class AppendState {
+
+        @Param({"PER_OPERATION", "GROUP"})
+        private WriteAheadLog.SyncMode mode;
+
+        private Path directory;
+        private WriteAheadLog log;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("wal");
+            log = new WriteAheadLog(directory, mode, 512);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            log.close();
+            delete(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RecoveryState {
+
+        @Param({"5000000"})
+        private int products;
+
+        private Path directory;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("wal");
+            WriteAheadLog.writeSnapshot(directory, snapshot -> {
+                for (int id = 1; id <= products; id++) {
+                    snapshot.productSaved(id, ProductServiceBenchmark.title(id), id % 100 + 0.5, id % 10 != 0, 1);
+                }
+            });
+            try (WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.SyncMode.GROUP, 512)) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < products / 10; i++) {
+                    log.productPriceUpdated(random.nextInt(products) + 1, random.nextInt(100) + 0.5, i + 2);
+                }
+            }
+            long bytes;
+            try (Stream<Path> files = Files.list(directory)) {
+                bytes = files.mapToLong(file -> file.toFile().length()).sum();
+            }
+            System.out.printf("%nСнимок и журнал: %d МБ%n", bytes >> 20);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            delete(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public void append(AppendState state) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        state.log.productPriceUpdated(random.nextInt(1_000_000) + 1, random.nextInt(100) + 0.5, 1);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public ProductRepository recover(RecoveryState state) {
+        ProductRepository repository = StorageEngines.createProductRepository(StorageEngines.HEAP, null);
+        WriteAheadLog.recover(state.directory, new Journal() {
+            @Override
+            public void productSaved(long id, String title, double price, boolean active, long version) {
+                Product product = new Product(title, price);
+                product.setId(id);
+                product.setActive(active);
+                product.setVersion(version);
+                repository.restore(product);
+            }
+
+            @Override
+            public void productPriceUpdated(long id, double price, long version) {
+                repository.update(id, price);
+            }
+        });
+        return repository;
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
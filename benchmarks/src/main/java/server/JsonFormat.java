@@ -0,0 +1,26 @@
+package server;
+
+import app.domain.Customer;
+import app.domain.Product;
+
+/*
+Доступ бенчмарков к JSON-формату HTTP-сервера: запись и разбор JSON доступны только внутри пакета server.
+Продукты и покупатели записываются точно так же, как в ответах сервера.
+ */
+public final class JsonFormat {
+
+    private JsonFormat() {
+    }
+
+    public static StringBuilder product(StringBuilder builder, Product product) {
+        return ProductHandler.product(builder, product);
+    }
+
+    public static StringBuilder customer(StringBuilder builder, Customer customer) {
+        return CustomerHandler.customer(builder, customer);
+    }
+
+    public static Object parse(String text) {
+        return Json.parse(text);
+    }
+}
@@ -0,0 +1,103 @@
+package app.changes;
+
+/*
+Событие потока изменений: одно изменение продукта, покупателя или корзины.
+Как и записи журнала, событие описывает итоговое состояние (новую цену, новое количество товара в корзине),
+поэтому подписчик может применять события повторно.
+Какие поля заполнены, зависит от типа события:
+PRODUCT_SAVED - id, title, price, active;
+PRODUCT_PRICE_UPDATED - id, price;
+PRODUCT_ACTIVE_CHANGED и CUSTOMER_ACTIVE_CHANGED - id, active;
+CUSTOMER_SAVED - id, name, active;
+CUSTOMER_NAME_UPDATED - id, name;
+CART_QUANTITY_CHANGED - id (покупатель), productId, quantity (0 - продукт убран из корзины);
+CART_CLEARED - id (покупатель).
+Событие неизменяемо, поэтому подписчик может хранить его сколько угодно.
+ */
+public final class ChangeEvent {
+
+    // Номер события в потоке: события нумеруются подряд, начиная с 0
+    private final long offset;
+    private final ChangeType type;
+    private final long id;
+    private final long productId;
+    // Наименование продукта или имя покупателя
+    private final String text;
+    private final double price;
+    private final int quantity;
+    private final boolean active;
+
+    ChangeEvent(long offset, ChangeType type, long id, long productId, String text, double price, int quantity,
+                boolean active) {
+        this.offset = offset;
+        this.type = type;
+        this.id = id;
+        this.productId = productId;
+        this.text = text;
+        this.price = price;
+        this.quantity = quantity;
+        this.active = active;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public ChangeType getType() {
+        return type;
+    }
+
+    // Идентификатор продукта (события продуктов) или покупателя (события покупателей и корзин)
+    public long getId() {
+        return id;
+    }
+
+    public long getProductId() {
+        return productId;
+    }
+
+    public String getTitle() {
+        return text;
+    }
+
+    public String getName() {
+        return text;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(64)
+                .append("ChangeEvent: offset - ").append(offset)
+                .append(", ").append(type)
+                .append(", id - ").append(id);
+        switch (type) {
+            case PRODUCT_SAVED -> builder.append(", title - ").append(text).append(", price - ").append(price)
+                    .append(", active - ").append(active ? "yes" : "no");
+            case PRODUCT_PRICE_UPDATED -> builder.append(", price - ").append(price);
+            case PRODUCT_ACTIVE_CHANGED, CUSTOMER_ACTIVE_CHANGED -> builder.append(", active - ").append(active ? "yes" : "no");
+            case CUSTOMER_SAVED -> builder.append(", name - ").append(text).append(", active - ").append(active ? "yes" : "no");
+            case CUSTOMER_NAME_UPDATED -> builder.append(", name - ").append(text);
+            case CART_QUANTITY_CHANGED -> builder.append(", product - ").append(productId)
+                    .append(", quantity - ").append(quantity);
+            case CART_CLEARED -> {
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,377 @@
+package app.changes;
+
+import app.exceptions.ChangesLostException;
+import app.exceptions.StorageException;
+import app.persistence.BinaryCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/*
+Журнал событий потока изменений на диске, разбитый на сегменты.
+Имя сегмента - номер его первого события (changes-00000000000000000000.log), поэтому сегмент
+с нужным событием находится без чтения файлов. Сегмент заканчивается, когда его размер
+превышает заданный, и следующие события пишутся в новый сегмент.
+Запись события: [длина][контрольная сумма CRC32][тип и поля в формате BinaryCodec].
+Номер события в файле не хранится: события в сегменте идут подряд от номера сегмента.
+События дописывает один поток (см. ChangeStream), а читать журнал (через Reader) могут
+одновременно несколько подписчиков. Журнал сбрасывается на диск (fsync) при смене сегмента
+и при закрытии: источником истины остаётся журнал базы данных (WriteAheadLog),
+а журнал изменений нужен подписчикам, чтобы перечитать события.
+ */
+public class ChangeLog implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "changes-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int HEADER_SIZE = 8;
+    // Запись длиннее считается повреждённой
+    private static final int MAX_RECORD_SIZE = 1 << 24;
+    private static final ChangeType[] TYPES = ChangeType.values();
+
+    private final Path directory;
+    private final long segmentSize;
+    // Номер первого события сегмента -> файл сегмента
+    private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private volatile long nextOffset;
+
+    private ChangeLog(Path directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    // Открыть журнал в папке directory и продолжить его с места, где он закончился.
+    // Недописанный хвост последнего сегмента (запись, не попавшая на диск целиком) отрезается.
+    // segmentSize - размер сегмента в байтах, после которого начинается новый сегмент.
+    public static ChangeLog open(Path directory, long segmentSize) {
+        ChangeLog log = new ChangeLog(directory, segmentSize);
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> {
+                    String name = file.getFileName().toString();
+                    if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                        log.segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                                name.length() - SEGMENT_SUFFIX.length())), file);
+                    }
+                });
+            }
+            if (log.segments.isEmpty()) {
+                log.startSegment(0);
+            } else {
+                Map.Entry<Long, Path> last = log.segments.lastEntry();
+                log.channel = FileChannel.open(last.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                RecordReader records = new RecordReader(log.channel, 0);
+                long offset = last.getKey();
+                while (records.next(offset) != null) {
+                    offset++;
+                }
+                log.channel.truncate(records.position());
+                log.channel.position(records.position());
+                log.nextOffset = offset;
+            }
+        } catch (IOException e) {
+            throw new StorageException("Не удалось открыть журнал изменений в папке " + directory, e);
+        }
+        return log;
+    }
+
+    // Номер события, которое будет записано следующим
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    // Номер самого старого события в журнале
+    public long getFirstOffset() {
+        return segments.firstKey();
+    }
+
+    // Дописать событие в буфер. Номер события должен быть следующим номером журнала.
+    // В файл события попадают при вызове flush.
+    public synchronized void append(ChangeEvent event) {
+        if (event.getOffset() != nextOffset) {
+            throw new StorageException("Пропуск в журнале изменений: ожидалось событие " + nextOffset
+                    + ", получено " + event.getOffset());
+        }
+        while (true) {
+            int start = buffer.position();
+            try {
+                if (buffer.remaining() < HEADER_SIZE) {
+                    throw new BufferOverflowException();
+                }
+                buffer.position(start + HEADER_SIZE);
+                encode(buffer, event);
+                int length = buffer.position() - start - HEADER_SIZE;
+                crc.reset();
+                crc.update(buffer.slice(start + HEADER_SIZE, length));
+                buffer.putInt(start, length).putInt(start + 4, (int) crc.getValue());
+                nextOffset++;
+                return;
+            } catch (BufferOverflowException e) {
+                buffer.position(start);
+                if (start == 0) {
+                    // Запись не помещается даже в пустой буфер
+                    buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                } else {
+                    writeBuffer();
+                }
+            }
+        }
+    }
+
+    // Записать накопленные события в файл (после этого их видят читатели журнала).
+    // Если сегмент превысил заданный размер, следующие события пойдут в новый сегмент.
+    public synchronized void flush() {
+        writeBuffer();
+        try {
+            if (channel.position() >= segmentSize) {
+                channel.force(false);
+                channel.close();
+                startSegment(nextOffset);
+            }
+        } catch (IOException e) {
+            throw new StorageException("Не удалось начать новый сегмент журнала изменений", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        writeBuffer();
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            throw new StorageException("Не удалось закрыть журнал изменений", e);
+        }
+    }
+
+    // Читатель журнала для одного подписчика
+    public Reader reader() {
+        return new Reader();
+    }
+
+    private void writeBuffer() {
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        } catch (IOException e) {
+            throw new StorageException("Не удалось записать события в журнал изменений", e);
+        }
+    }
+
+    private void startSegment(long firstOffset) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstOffset, SEGMENT_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        segments.put(firstOffset, file);
+        nextOffset = firstOffset;
+    }
+
+    private static void encode(ByteBuffer buffer, ChangeEvent event) {
+        buffer.put((byte) event.getType().ordinal());
+        BinaryCodec.writeVarLong(buffer, event.getId());
+        switch (event.getType()) {
+            case PRODUCT_SAVED -> {
+                BinaryCodec.writeString(buffer, event.getText());
+                buffer.putDouble(event.getPrice());
+                buffer.put(event.isActive() ? (byte) 1 : 0);
+            }
+            case PRODUCT_PRICE_UPDATED -> buffer.putDouble(event.getPrice());
+            case PRODUCT_ACTIVE_CHANGED, CUSTOMER_ACTIVE_CHANGED -> buffer.put(event.isActive() ? (byte) 1 : 0);
+            case CUSTOMER_SAVED -> {
+                BinaryCodec.writeString(buffer, event.getText());
+                buffer.put(event.isActive() ? (byte) 1 : 0);
+            }
+            case CUSTOMER_NAME_UPDATED -> BinaryCodec.writeString(buffer, event.getText());
+            case CART_QUANTITY_CHANGED -> {
+                BinaryCodec.writeVarLong(buffer, event.getProductId());
+                BinaryCodec.writeVarLong(buffer, event.getQuantity());
+            }
+            case CART_CLEARED -> {
+            }
+        }
+    }
+
+    private static ChangeEvent decode(ByteBuffer buffer, long offset) {
+        ChangeType type = TYPES[buffer.get()];
+        long id = BinaryCodec.readVarLong(buffer);
+        return switch (type) {
+            case PRODUCT_SAVED -> {
+                String title = BinaryCodec.readString(buffer);
+                double price = buffer.getDouble();
+                yield new ChangeEvent(offset, type, id, 0, title, price, 0, buffer.get() != 0);
+            }
+            case PRODUCT_PRICE_UPDATED -> new ChangeEvent(offset, type, id, 0, null, buffer.getDouble(), 0, false);
+            case PRODUCT_ACTIVE_CHANGED, CUSTOMER_ACTIVE_CHANGED ->
+                    new ChangeEvent(offset, type, id, 0, null, 0, 0, buffer.get() != 0);
+            case CUSTOMER_SAVED -> {
+                String name = BinaryCodec.readString(buffer);
+                yield new ChangeEvent(offset, type, id, 0, name, 0, 0, buffer.get() != 0);
+            }
+            case CUSTOMER_NAME_UPDATED -> new ChangeEvent(offset, type, id, 0, BinaryCodec.readString(buffer), 0, 0, false);
+            case CART_QUANTITY_CHANGED -> {
+                long productId = BinaryCodec.readVarLong(buffer);
+                yield new ChangeEvent(offset, type, id, productId, null, 0, (int) BinaryCodec.readVarLong(buffer), false);
+            }
+            case CART_CLEARED -> new ChangeEvent(offset, type, id, 0, null, 0, 0, false);
+        };
+    }
+
+    // Последовательное чтение записей одного сегмента через буфер в куче
+    private static class RecordReader {
+
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+        private final CRC32 crc = new CRC32();
+        // Позиция в файле, с которой будет прочитан следующий блок
+        private long filePosition;
+
+        RecordReader(FileChannel channel, long filePosition) {
+            this.channel = channel;
+            this.filePosition = filePosition;
+        }
+
+        // Позиция в файле следующей непрочитанной записи
+        long position() {
+            return filePosition - buffer.remaining();
+        }
+
+        // Следующее событие сегмента (offset - его номер) или null, если записей больше нет.
+        // Неполная или повреждённая запись не читается: неполная может быть дописана позже.
+        ChangeEvent next(long offset) throws IOException {
+            if (!fill(HEADER_SIZE)) {
+                return null;
+            }
+            int length = buffer.getInt(buffer.position());
+            if (length <= 0 || length > MAX_RECORD_SIZE || !fill(HEADER_SIZE + length)) {
+                return null;
+            }
+            int start = buffer.position();
+            crc.reset();
+            crc.update(buffer.slice(start + HEADER_SIZE, length));
+            if ((int) crc.getValue() != buffer.getInt(start + 4)) {
+                return null;
+            }
+            buffer.position(start + HEADER_SIZE);
+            ChangeEvent event = decode(buffer, offset);
+            buffer.position(start + HEADER_SIZE + length);
+            return event;
+        }
+
+        // Дочитать файл, чтобы в буфере было не меньше needed байт. Возвращает false, если файл короче.
+        private boolean fill(int needed) throws IOException {
+            if (buffer.remaining() >= needed) {
+                return true;
+            }
+            if (buffer.capacity() < needed) {
+                buffer = ByteBuffer.allocate(Math.max(needed, buffer.capacity() * 2)).put(buffer);
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < needed) {
+                int read = channel.read(buffer, filePosition);
+                if (read <= 0) {
+                    break;
+                }
+                filePosition += read;
+            }
+            buffer.flip();
+            return buffer.remaining() >= needed;
+        }
+    }
+
+    // Читатель журнала: запоминает место последнего чтения, поэтому последовательное
+    // чтение событий пачками не перечитывает сегмент с начала.
+    public class Reader implements Closeable {
+
+        private long segment = -1;
+        private FileChannel segmentChannel;
+        private RecordReader records;
+        // Номер события, которое будет прочитано следующим
+        private long offset;
+
+        private Reader() {
+        }
+
+        // Передать в handler до maxEvents событий начиная с события from.
+        // Возвращает количество переданных событий (0, если события from ещё нет в файле).
+        public int read(long from, int maxEvents, Consumer<ChangeEvent> handler) {
+            try {
+                if (records == null || from != offset) {
+                    seek(from);
+                    if (offset != from) {
+                        // События from ещё нет в файле
+                        return 0;
+                    }
+                }
+                int delivered = 0;
+                while (delivered < maxEvents) {
+                    ChangeEvent event = records.next(offset);
+                    if (event == null) {
+                        // Сегмент прочитан до конца: переходим к следующему, если он уже начат
+                        Long next = segments.higherKey(segment);
+                        if (next == null || next != offset) {
+                            break;
+                        }
+                        openSegment(next);
+                        continue;
+                    }
+                    offset++;
+                    handler.accept(event);
+                    delivered++;
+                }
+                return delivered;
+            } catch (IOException e) {
+                throw new StorageException("Не удалось прочитать журнал изменений", e);
+            }
+        }
+
+        private void seek(long from) throws IOException {
+            Long first = segments.floorKey(from);
+            if (first == null) {
+                throw new ChangesLostException(from, getFirstOffset());
+            }
+            openSegment(first);
+            while (offset < from && records.next(offset) != null) {
+                offset++;
+            }
+        }
+
+        private void openSegment(long firstOffset) throws IOException {
+            close();
+            segmentChannel = FileChannel.open(segments.get(firstOffset), StandardOpenOption.READ);
+            records = new RecordReader(segmentChannel, 0);
+            segment = firstOffset;
+            offset = firstOffset;
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (segmentChannel != null) {
+                    segmentChannel.close();
+                }
+            } catch (IOException e) {
+                throw new StorageException("Не удалось закрыть журнал изменений", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package app.changes;
+
+import app.exceptions.ChangeLogFailedException;
+import app.exceptions.ChangesLostException;
+import app.persistence.Journal;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+Поток изменений (change data capture) для внешних систем: поиска, цен, отчётов.
+Сервисы продуктов и покупателей сообщают о каждом изменении потоку как журналу (Journal),
+а поток превращает запись в событие ChangeEvent со следующим номером и кладёт его в кольцевой буфер.
+Буфер работает без блокировок: производитель занимает номер атомарным счётчиком и публикует
+событие в ячейку (номер % размер буфера), а подписчик узнаёт опубликованное событие по номеру в нём.
+Подписчики (ChangeSubscriber) читают события пачками каждый в своём темпе и помнят номер следующего события.
+
+Обратное давление: производитель не перезаписывает ячейку, пока её не прочитали все подписчики,
+и ждёт (сначала в цикле, затем засыпая). Изменения выполняются под блокировкой продукта или покупателя,
+поэтому подписчик, который долго не читает, задерживает изменения в магазине. Подписчик, из-за которого
+производитель ждёт дольше maxWait, отключается от обратного давления: его непрочитанные события
+вытесняются, и он дочитывает их из журнала изменений (если журнал ведётся) или получает ChangesLostException.
+
+Если задан журнал изменений (ChangeLog), отдельный поток дописывает в него все события,
+и подписчик может начать с любого события, сохранённого в журнале, в том числе с прошлых запусков.
+Если запись журнала не удалась, поток записи останавливается и больше не задерживает производителей,
+а в журнале остаётся пропуск: подписка (subscribe) и чтение из журнала событий после пропуска
+бросают ChangeLogFailedException, причина доступна через getLogFailure.
+ */
+public class ChangeStream implements Journal, Closeable {
+
+    // Сколько событий поток записи журнала берёт за один раз
+    private static final int LOG_BATCH_SIZE = 1024;
+    // Сколько раз производитель проверяет буфер в цикле, прежде чем начать засыпать
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 10_000;
+    private static final long LOG_IDLE_NANOS = 100_000;
+
+    private final AtomicReferenceArray<ChangeEvent> ring;
+    private final int mask;
+    // Номер первого события этого потока: более ранние события есть только в журнале изменений
+    private final long firstOffset;
+    // Номер следующего события
+    private final AtomicLong cursor;
+    private final long maxWaitNanos;
+    private final ChangeLog log;
+    private final CopyOnWriteArrayList<ChangeSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    // Наименьший номер события, которое ещё не прочитали подключённые подписчики.
+    // Производитель сверяется с ним без обхода подписчиков; значение может отставать (быть меньше настоящего),
+    // тогда производитель пересчитывает его под блокировкой потока.
+    private volatile long gate = Long.MAX_VALUE;
+    private final Thread logWriter;
+    private volatile boolean closed;
+    // Ошибка записи журнала изменений (null, пока журнал пишется) и номер первого незаписанного события
+    private volatile RuntimeException logFailure;
+    private volatile long logFailedOffset;
+
+    // capacity - размер буфера (округляется вверх до степени двойки);
+    // maxWait - сколько производитель ждёт отстающего подписчика, прежде чем отключить его от обратного давления;
+    // log - журнал изменений или null, если события на диск не пишутся.
+    public ChangeStream(int capacity, Duration maxWait, ChangeLog log) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Размер буфера потока изменений должен быть положительным");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.log = log;
+        this.firstOffset = log == null ? 0 : log.getNextOffset();
+        this.cursor = new AtomicLong(firstOffset);
+        if (log == null) {
+            logWriter = null;
+            return;
+        }
+        // Поток записи журнала - подписчик, которого нельзя отключить: иначе в журнале появились бы пропуски
+        ChangeSubscriber writer = new ChangeSubscriber(this, firstOffset, false);
+        subscribers.add(writer);
+        attach(writer);
+        logWriter = new Thread(() -> writeLog(writer), "change-log");
+        logWriter.setDaemon(true);
+        logWriter.start();
+    }
+
+    // Подписаться на события, начиная со следующего
+    public ChangeSubscriber subscribe() {
+        return subscribe(cursor.get());
+    }
+
+    // Подписаться на события, начиная с события fromOffset.
+    // Событие должно быть ещё в буфере или в журнале изменений (см. getOldestOffset).
+    // После ошибки записи журнала подписаться можно только на события до пропуска в нём.
+    public ChangeSubscriber subscribe(long fromOffset) {
+        if (fromOffset > cursor.get()) {
+            throw new IllegalArgumentException("Событие " + fromOffset + " ещё не опубликовано");
+        }
+        checkLog(fromOffset);
+        if (log != null && fromOffset < log.getFirstOffset()) {
+            throw new ChangesLostException(fromOffset, getOldestOffset());
+        }
+        ChangeSubscriber subscriber = new ChangeSubscriber(this, fromOffset, true);
+        subscribers.add(subscriber);
+        if (!attach(subscriber) && log == null) {
+            subscribers.remove(subscriber);
+            throw new ChangesLostException(fromOffset, getOldestOffset());
+        }
+        return subscriber;
+    }
+
+    // Номер следующего события (количество событий, опубликованных за всё время)
+    public long getNextOffset() {
+        return cursor.get();
+    }
+
+    // Номер самого старого события, с которого ещё можно подписаться
+    public long getOldestOffset() {
+        return log != null ? log.getFirstOffset() : Math.max(firstOffset, cursor.get() - ring.length());
+    }
+
+    public int getCapacity() {
+        return ring.length();
+    }
+
+    // Ошибка, из-за которой остановилась запись журнала изменений, или null
+    public RuntimeException getLogFailure() {
+        return logFailure;
+    }
+
+    public int getSubscribersNumber() {
+        return subscribers.size() - (logWriter == null ? 0 : 1);
+    }
+
+    // Записи журнала - события потока:
+
+    @Override
+    public void productSaved(long id, String title, double price, boolean active, long version) {
+        publish(ChangeType.PRODUCT_SAVED, id, 0, title, price, 0, active);
+    }
+
+    @Override
+    public void productPriceUpdated(long id, double price, long version) {
+        publish(ChangeType.PRODUCT_PRICE_UPDATED, id, 0, null, price, 0, false);
+    }
+
+    @Override
+    public void productActiveChanged(long id, boolean active, long version) {
+        publish(ChangeType.PRODUCT_ACTIVE_CHANGED, id, 0, null, 0, 0, active);
+    }
+
+    @Override
+    public void customerSaved(long id, String name, boolean active) {
+        publish(ChangeType.CUSTOMER_SAVED, id, 0, name, 0, 0, active);
+    }
+
+    @Override
+    public void customerNameUpdated(long id, String name) {
+        publish(ChangeType.CUSTOMER_NAME_UPDATED, id, 0, name, 0, 0, false);
+    }
+
+    @Override
+    public void customerActiveChanged(long id, boolean active) {
+        publish(ChangeType.CUSTOMER_ACTIVE_CHANGED, id, 0, null, 0, 0, active);
+    }
+
+    @Override
+    public void cartQuantityChanged(long customerId, long productId, int quantity) {
+        publish(ChangeType.CART_QUANTITY_CHANGED, customerId, productId, null, 0, quantity, false);
+    }
+
+    @Override
+    public void cartCleared(long customerId) {
+        publish(ChangeType.CART_CLEARED, customerId, 0, null, 0, 0, false);
+    }
+
+    // Остановить поток: дописать в журнал изменений все опубликованные события и закрыть его
+    @Override
+    public void close() {
+        closed = true;
+        if (logWriter != null) {
+            try {
+                logWriter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void publish(ChangeType type, long id, long productId, String text, double price, int quantity,
+                         boolean active) {
+        long offset = cursor.getAndIncrement();
+        if (offset - ring.length() >= gate) {
+            awaitSpace(offset);
+        }
+        ring.setRelease((int) offset & mask, new ChangeEvent(offset, type, id, productId, text, price, quantity, active));
+    }
+
+    // Дождаться, пока все подключённые подписчики прочитают событие, которое лежит в ячейке события offset
+    private void awaitSpace(long offset) {
+        long wrap = offset - ring.length();
+        long deadline = 0;
+        for (int spins = 0; wrap >= updateGate(); spins++) {
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long now = System.nanoTime();
+            if (deadline == 0) {
+                deadline = now + maxWaitNanos;
+            } else if (now - deadline > 0) {
+                detachLagging(wrap);
+                continue;
+            }
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    // Событие с номером offset, если оно ещё в буфере. В ячейке может оказаться событие
+    // с другим номером: более ранним (offset ещё не опубликовано) или более поздним (offset вытеснено).
+    ChangeEvent event(long offset) {
+        return offset < firstOffset ? null : ring.getAcquire((int) offset & mask);
+    }
+
+    long getFirstOffset() {
+        return firstOffset;
+    }
+
+    ChangeLog getLog() {
+        return log;
+    }
+
+    // Бросить ChangeLogFailedException, если событие offset не попало в журнал из-за ошибки записи
+    void checkLog(long offset) {
+        RuntimeException failure = logFailure;
+        if (failure != null && offset >= logFailedOffset) {
+            throw new ChangeLogFailedException(logFailedOffset, failure);
+        }
+    }
+
+    // Подключить подписчика к обратному давлению с его текущей позиции.
+    // Возвращает false, если нужное подписчику событие уже могло быть вытеснено из буфера.
+    synchronized boolean attach(ChangeSubscriber subscriber) {
+        long position = subscriber.getPosition();
+        subscriber.attached = true;
+        gate = Math.min(gate, position);
+        // Производитель мог занять ячейку раньше, чем увидел нового подписчика
+        if (position < firstOffset || position < cursor.get() - ring.length()) {
+            subscriber.attached = false;
+            return false;
+        }
+        return true;
+    }
+
+    synchronized void remove(ChangeSubscriber subscriber) {
+        subscriber.attached = false;
+        subscribers.remove(subscriber);
+    }
+
+    private synchronized long updateGate() {
+        long min = Long.MAX_VALUE;
+        for (ChangeSubscriber subscriber : subscribers) {
+            if (subscriber.attached) {
+                min = Math.min(min, subscriber.getPosition());
+            }
+        }
+        gate = min;
+        return min;
+    }
+
+    // Отключить от обратного давления подписчиков, которые не прочитали событие wrap
+    private synchronized void detachLagging(long wrap) {
+        for (ChangeSubscriber subscriber : subscribers) {
+            if (subscriber.attached && subscriber.detachable && subscriber.getPosition() <= wrap) {
+                subscriber.attached = false;
+            }
+        }
+    }
+
+    private void writeLog(ChangeSubscriber writer) {
+        // Номер первого события, которое ещё не записано в файл журнала
+        long written = firstOffset;
+        try {
+            while (!closed) {
+                if (writer.poll(LOG_BATCH_SIZE, log::append) > 0) {
+                    log.flush();
+                    written = writer.getPosition();
+                } else {
+                    LockSupport.parkNanos(LOG_IDLE_NANOS);
+                }
+            }
+            while (writer.poll(LOG_BATCH_SIZE, log::append) > 0) {
+                log.flush();
+                written = writer.getPosition();
+            }
+            log.close();
+        } catch (RuntimeException e) {
+            // Без записи журнала магазин продолжает работать, но производители не должны ждать этого подписчика.
+            // Ошибку получат подписчики, которым понадобятся незаписанные события.
+            logFailedOffset = written;
+            logFailure = e;
+            remove(writer);
+            try {
+                log.close();
+            } catch (RuntimeException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package app.changes;
+
+import app.exceptions.ChangesLostException;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/*
+Подписчик потока изменений (см. ChangeStream). Читает события по порядку номеров пачками
+методом poll и сам решает, когда читать: поток событий не вызывает подписчика.
+Позиция подписчика - номер следующего события; она сдвигается один раз на пачку.
+Если обработчик бросает исключение, позиция останавливается на событии, на котором оно возникло,
+и следующий poll передаст это событие ещё раз.
+Подписчиком пользуется один поток; закрытый подписчик больше не задерживает производителей.
+ */
+public class ChangeSubscriber implements Closeable {
+
+    private final ChangeStream stream;
+    // Можно ли отключить подписчика от обратного давления, если он отстаёт (см. ChangeStream)
+    final boolean detachable;
+    // Подключён ли подписчик к обратному давлению: производители не перезаписывают его непрочитанные события
+    volatile boolean attached;
+    private volatile long position;
+    private ChangeLog.Reader reader;
+    private boolean closed;
+
+    ChangeSubscriber(ChangeStream stream, long position, boolean detachable) {
+        this.stream = stream;
+        this.position = position;
+        this.detachable = detachable;
+    }
+
+    // Передать в handler до maxEvents следующих событий. Не ждёт новых событий:
+    // возвращает количество переданных событий (0, если новых событий нет).
+    // События, уже вытесненные из буфера, читаются из журнала изменений; если журнал не ведётся,
+    // бросается ChangesLostException (продолжить можно после seek), а если событие не попало в журнал
+    // из-за ошибки его записи - ChangeLogFailedException.
+    public int poll(int maxEvents, Consumer<ChangeEvent> handler) {
+        if (closed) {
+            throw new IllegalStateException("Подписчик закрыт");
+        }
+        long next = position;
+        int delivered = 0;
+        try {
+            while (delivered < maxEvents) {
+                ChangeEvent event = stream.event(next);
+                if (event != null && event.getOffset() == next) {
+                    handler.accept(event);
+                    next++;
+                    delivered++;
+                    continue;
+                }
+                boolean evicted = next < stream.getFirstOffset() || event != null && event.getOffset() > next;
+                if (!evicted) {
+                    // Событие ещё не опубликовано
+                    break;
+                }
+                position = next;
+                int read = readLog(next, maxEvents - delivered, handler);
+                next = position;
+                if (read == 0) {
+                    // Поток записи журнала ещё не дописал это событие
+                    break;
+                }
+                delivered += read;
+            }
+        } finally {
+            position = next;
+        }
+        if (!attached) {
+            stream.attach(this);
+        }
+        return delivered;
+    }
+
+    // Номер следующего события, которое получит подписчик
+    public long getPosition() {
+        return position;
+    }
+
+    // Сколько опубликованных событий подписчик ещё не прочитал
+    public long getLag() {
+        return stream.getNextOffset() - position;
+    }
+
+    // Продолжить чтение с события offset (например, после ChangesLostException - с stream.getOldestOffset())
+    public void seek(long offset) {
+        if (offset > stream.getNextOffset()) {
+            throw new IllegalArgumentException("Событие " + offset + " ещё не опубликовано");
+        }
+        attached = false;
+        position = offset;
+        if (!stream.attach(this) && stream.getLog() == null) {
+            throw new ChangesLostException(offset, stream.getOldestOffset());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        stream.remove(this);
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    // Прочитать вытесненные события из журнала изменений, сдвигая позицию после каждого события
+    private int readLog(long from, int maxEvents, Consumer<ChangeEvent> handler) {
+        ChangeLog log = stream.getLog();
+        if (log == null) {
+            throw new ChangesLostException(from, stream.getOldestOffset());
+        }
+        stream.checkLog(from);
+        if (reader == null) {
+            reader = log.reader();
+        }
+        return reader.read(from, maxEvents, event -> {
+            handler.accept(event);
+            position = event.getOffset() + 1;
+        });
+    }
+}
@@ -0,0 +1,14 @@
+package app.changes;
+
+// Тип события потока изменений (см. ChangeEvent): по одному на каждое изменение,
+// о котором сервисы продуктов и покупателей сообщают журналу
+public enum ChangeType {
+    PRODUCT_SAVED,
+    PRODUCT_PRICE_UPDATED,
+    PRODUCT_ACTIVE_CHANGED,
+    CUSTOMER_SAVED,
+    CUSTOMER_NAME_UPDATED,
+    CUSTOMER_ACTIVE_CHANGED,
+    CART_QUANTITY_CHANGED,
+    CART_CLEARED
+}
@@ -1,77 +1,151 @@
 package app.controller;
 
 import app.domain.Customer;
+import app.metrics.Metrics;
+import app.metrics.Operation;
+import app.service.AnalyticsService;
+import app.service.BatchResult;
 import app.service.CustomerService;
+import app.service.Page;
+import app.service.SalesReport;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public class CustomerController {
 
-    private final CustomerService service = new CustomerService();
+    // Метрики операций контроллера: количество вызовов, ошибки и задержки (см. Metrics).
+    // Поток stream() ленивый, время его потребления здесь не измерить, поэтому он не отмечается.
+    private static final Operation SAFE = Metrics.operation("customers.safe");
+    private static final Operation GET_ALL = Metrics.operation("customers.getAll");
+    private static final Operation GET_PAGE = Metrics.operation("customers.getPage");
+    private static final Operation GET_BY_ID = Metrics.operation("customers.getById");
+    private static final Operation FIND_BY_NAME = Metrics.operation("customers.findByName");
+    private static final Operation UPDATE = Metrics.operation("customers.update");
+    private static final Operation UPDATE_IF_VERSION = Metrics.operation("customers.updateIfVersion");
+    private static final Operation DELETE_BY_ID = Metrics.operation("customers.deleteById");
+    private static final Operation DELETE_BY_NAME = Metrics.operation("customers.deleteByName");
+    private static final Operation RESTORE_BY_ID = Metrics.operation("customers.restoreById");
+    private static final Operation DELETE_BY_ID_RANGE = Metrics.operation("customers.deleteByIdRange");
+    private static final Operation RESTORE_BY_ID_RANGE = Metrics.operation("customers.restoreByIdRange");
+    private static final Operation GET_CUSTOMERS_NUMBER = Metrics.operation("customers.getCustomersNumber");
+    private static final Operation GET_CUSTOMERS_CART_TOTAL_COST = Metrics.operation("customers.getCustomersCartTotalCost");
+    private static final Operation GET_CUSTOMERS_CART_AVERAGE_PRICE = Metrics.operation("customers.getCustomersCartAveragePrice");
+    private static final Operation ADD_PRODUCT_TO_CUSTOMERS_CART = Metrics.operation("customers.addProductToCustomersCart");
+    private static final Operation ADD_PRODUCTS_TO_CART = Metrics.operation("customers.addProductsToCart");
+    private static final Operation REMOVE_PRODUCT_FROM_CUSTOMERS_CART = Metrics.operation("customers.removeProductFromCustomersCart");
+    private static final Operation CLEAR_CUSTOMERS_CART = Metrics.operation("customers.clearCustomersCart");
+    private static final Operation GET_SALES_REPORT = Metrics.operation("customers.getSalesReport");
+
+    private final CustomerService service = CustomerService.getInstance();
+    private final AnalyticsService analyticsService = AnalyticsService.getInstance();
 
     // Сохранить покупателя в базе данных (при сохранении покупатель автоматически считается активным).
     public Customer safe(String name) {
-        Customer customer = new Customer(name);
-        return service.save(customer);
+        return SAFE.record(() -> service.save(new Customer(name)));
     }
 
     // Вернуть всех покупателей из базы данных (активных).
     public List<Customer> getAll() {
-        return service.getAllActiveCustomers();
+        return GET_ALL.record(() -> service.getAllActiveCustomers());
+    }
+
+    // Вернуть страницу покупателей (активных) по возрастанию идентификатора.
+    // Для первой страницы afterId = null, для следующих - значение getNextAfterId() предыдущей страницы.
+    public Page<Customer> getPage(Long afterId, int pageSize) {
+        return GET_PAGE.record(() -> service.getActiveCustomersPage(afterId, pageSize));
+    }
+
+    // Лениво перебрать всех покупателей (активных), не собирая их в список.
+    public Stream<Customer> stream() {
+        return service.streamActiveCustomers();
     }
 
     // Вернуть одного покупателя из базы данных по его идентификатору (если он активен).
-    public Customer getById(Long id) {
-        return service.getActiveCustomerById(id);
+    public Customer getById(long id) {
+        return GET_BY_ID.record(() -> service.getActiveCustomerById(id));
+    }
+
+    // Вернуть всех покупателей из базы данных с указанным именем (активных).
+    public List<Customer> findByName(String name) {
+        return FIND_BY_NAME.record(() -> service.getActiveCustomersByName(name));
     }
 
     // Изменить одного покупателя в базе данных по его идентификатору.
-    public void update(Long id, String newName) {
-        service.update(id, newName);
+    public void update(long id, String newName) {
+        UPDATE.record(() -> service.update(id, newName));
+    }
+
+    // Изменить имя покупателя, только если его версия не изменилась с момента чтения.
+    public void update(long id, String newName, long expectedVersion) {
+        UPDATE_IF_VERSION.record(() -> service.update(id, newName, expectedVersion));
     }
 
     // Удалить покупателя из базы данных по его идентификатору.
-    public void deleteById(Long id) {
-        service.deleteById(id);
+    public void deleteById(long id) {
+        DELETE_BY_ID.record(() -> service.deleteById(id));
     }
 
     // Удалить покупателя из базы данных по его имени.
     public void deleteByName(String name) {
-        service.deleteByName(name);
+        DELETE_BY_NAME.record(() -> service.deleteByName(name));
     }
 
     // Восстановить удалённого покупателя в базе данных по его идентификатору.
-    public void restoreById(Long id) {
-        service.restoreById(id);
+    public void restoreById(long id) {
+        RESTORE_BY_ID.record(() -> service.restoreById(id));
+    }
+
+    // Удалить всех покупателей с идентификаторами от fromId до toId включительно.
+    // Возвращает количество удалённых покупателей.
+    public int deleteByIdRange(long fromId, long toId) {
+        return DELETE_BY_ID_RANGE.record(() -> service.deactivateAll(x -> x.getId() >= fromId && x.getId() <= toId));
+    }
+
+    // Восстановить всех удалённых покупателей с идентификаторами от fromId до toId включительно.
+    // Возвращает количество восстановленных покупателей.
+    public int restoreByIdRange(long fromId, long toId) {
+        return RESTORE_BY_ID_RANGE.record(() -> service.restoreAll(x -> x.getId() >= fromId && x.getId() <= toId));
     }
 
     // Вернуть общее количество покупателей в базе данных (активных).
     public int getCustomersNumber() {
-        return service.getActiveCustomersNumber();
+        return GET_CUSTOMERS_NUMBER.record(() -> service.getActiveCustomersNumber());
+    }
+
+    // Вернуть отчёт по корзинам всех покупателей (активных): общая и средняя стоимость,
+    // распределение стоимости корзин и самые популярные продукты.
+    public SalesReport getSalesReport() {
+        return GET_SALES_REPORT.record(() -> analyticsService.getSalesReport());
     }
 
     // Вернуть стоимость корзины покупателя по его идентификатору (если он активен).
-    public double getCustomersCartTotalCost(Long id) {
-        return service.getCustomersCartTotalCost(id);
+    public double getCustomersCartTotalCost(long id) {
+        return GET_CUSTOMERS_CART_TOTAL_COST.record(() -> service.getCustomersCartTotalCost(id));
     }
 
     // Вернуть среднюю стоимость продукта в корзине покупателя по его идентификатору (если он активен)
-    public double getCustomersCartAveragePrice(Long id) {
-        return service.getCustomersCartAveragePrice(id);
+    public double getCustomersCartAveragePrice(long id) {
+        return GET_CUSTOMERS_CART_AVERAGE_PRICE.record(() -> service.getCustomersCartAveragePrice(id));
     }
 
     // Добавить товар в корзину покупателя по их идентификаторам (если оба активны)
-    public void addProductToCustomersCart(Long customerId, Long productId) {
-        service.addProductCustomersCart(customerId, productId);
+    public void addProductToCustomersCart(long customerId, long productId) {
+        ADD_PRODUCT_TO_CUSTOMERS_CART.record(() -> service.addProductCustomersCart(customerId, productId));
+    }
+
+    // Добавить пакет товаров в корзину покупателя (результат сообщает об успехе или ошибке по каждому товару)
+    public BatchResult<Long> addProductsToCart(long customerId, List<Long> productIds) {
+        return ADD_PRODUCTS_TO_CART.record(() -> service.addProductsToCart(customerId, productIds));
     }
 
     // Удалить товар из корзины покупателя по их идентификаторам
-    public void removeProductFromCustomersCart(Long customerId, Long productId) {
-        service.removeProductFromCustomersCart(customerId, productId);
+    public void removeProductFromCustomersCart(long customerId, long productId) {
+        REMOVE_PRODUCT_FROM_CUSTOMERS_CART.record(() -> service.removeProductFromCustomersCart(customerId, productId));
     }
 
     // Полностью очистить корзину покупателя по его идентификатору (если он активен)
-    public void clearCustomersCart(Long customerId) {
-        service.clearCustomersCart(customerId);
+    public void clearCustomersCart(long customerId) {
+        CLEAR_CUSTOMERS_CART.record(() -> service.clearCustomersCart(customerId));
     }
 }
@@ -0,0 +1,41 @@
+package app.controller;
+
+import app.domain.Order;
+import app.metrics.Metrics;
+import app.metrics.Operation;
+import app.service.OrderService;
+
+import java.util.List;
+
+public class OrderController {
+
+    // Метрики операций контроллера (см. Metrics).
+    // Время оформления заказа включает ожидание в очереди конвейера.
+    private static final Operation CHECKOUT = Metrics.operation("orders.checkout");
+    private static final Operation GET_BY_ID = Metrics.operation("orders.getById");
+    private static final Operation GET_BY_CUSTOMER = Metrics.operation("orders.getByCustomer");
+    private static final Operation GET_ORDERS_NUMBER = Metrics.operation("orders.getOrdersNumber");
+
+    private final OrderService service = OrderService.getInstance();
+
+    // Оформить заказ из корзины покупателя: активные товары корзины по текущим ценам.
+    // Возвращает заказ после того, как он сохранён (и записан на диск, если хранение включено).
+    public Order checkout(long customerId) {
+        return CHECKOUT.record(() -> service.checkout(customerId));
+    }
+
+    // Вернуть заказ по идентификатору.
+    public Order getById(long id) {
+        return GET_BY_ID.record(() -> service.getOrderById(id));
+    }
+
+    // Вернуть все заказы покупателя в порядке оформления.
+    public List<Order> getByCustomer(long customerId) {
+        return GET_BY_CUSTOMER.record(() -> service.getCustomerOrders(customerId));
+    }
+
+    // Вернуть общее количество заказов.
+    public int getOrdersNumber() {
+        return GET_ORDERS_NUMBER.record(() -> service.getOrdersNumber());
+    }
+}
@@ -1,9 +1,21 @@
 package app.controller;
 
 import app.domain.Product;
+import app.metrics.Metrics;
+import app.metrics.Operation;
+import app.service.BatchResult;
+import app.service.CacheStatistics;
+import app.service.CatalogSnapshot;
+import app.service.CatalogImportService;
+import app.service.ImportReport;
+import app.service.Page;
 import app.service.ProductService;
 
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 /*
 Этот класс находится на четвёртом слое нашего приложения - контроллер.
 Задача контроллера - принять запрос от внешней программы (клиента),
@@ -11,56 +23,168 @@ import java.util.List;
  */
 public class ProductController {
 
+    // Метрики операций контроллера: количество вызовов, ошибки и задержки (см. Metrics).
+    // Поток stream() ленивый, время его потребления здесь не измерить, поэтому он не отмечается.
+    private static final Operation SAFE = Metrics.operation("products.safe");
+    private static final Operation SAVE_ALL = Metrics.operation("products.saveAll");
+    private static final Operation IMPORT_FROM_FILE = Metrics.operation("products.importFromFile");
+    private static final Operation GET_ALL = Metrics.operation("products.getAll");
+    private static final Operation GET_PAGE = Metrics.operation("products.getPage");
+    private static final Operation GET_BY_ID = Metrics.operation("products.getById");
+    private static final Operation FIND_BY_TITLE = Metrics.operation("products.findByTitle");
+    private static final Operation FIND_BY_PRICE_RANGE = Metrics.operation("products.findByPriceRange");
+    private static final Operation GET_CHEAPEST = Metrics.operation("products.getCheapest");
+    private static final Operation GET_MOST_EXPENSIVE = Metrics.operation("products.getMostExpensive");
+    private static final Operation GET_SORTED_BY_PRICE = Metrics.operation("products.getSortedByPrice");
+    private static final Operation UPDATE = Metrics.operation("products.update");
+    private static final Operation UPDATE_IF_VERSION = Metrics.operation("products.updateIfVersion");
+    private static final Operation UPDATE_PRICES = Metrics.operation("products.updatePrices");
+    private static final Operation DELETE_BY_ID = Metrics.operation("products.deleteById");
+    private static final Operation DELETE_BY_TITLE = Metrics.operation("products.deleteByTitle");
+    private static final Operation RESTORE_BY_ID = Metrics.operation("products.restoreById");
+    private static final Operation DELETE_BY_PRICE_RANGE = Metrics.operation("products.deleteByPriceRange");
+    private static final Operation RESTORE_BY_PRICE_RANGE = Metrics.operation("products.restoreByPriceRange");
+    private static final Operation GET_PRODUCTS_NUMBER = Metrics.operation("products.getProductsNumber");
+    private static final Operation GET_PRODUCTS_TOTAL_COST = Metrics.operation("products.getProductsTotalCost");
+    private static final Operation GET_PRODUCTS_AVERAGE_PRICE = Metrics.operation("products.getProductsAveragePrice");
+    private static final Operation GET_PRICE_AT = Metrics.operation("products.getPriceAt");
+    private static final Operation GET_CATALOG_AT = Metrics.operation("products.getCatalogAt");
+    private static final Operation GET_CACHE_STATISTICS = Metrics.operation("products.getCacheStatistics");
+
     private final ProductService service = ProductService.getInstance();
+    private final CatalogImportService importService = new CatalogImportService();
 
     // Сохранить продукт в базе данных (при сохранении продукт автоматически считается активным).
     public Product safe(String title, double price) {
-        Product product = new Product(title, price);
-        return service.save(product);
+        return SAFE.record(() -> service.save(new Product(title, price)));
+    }
+
+    // Сохранить пакет продуктов в базе данных (результат сообщает об успехе или ошибке по каждому продукту).
+    public BatchResult<Product> saveAll(List<Product> products) {
+        return SAVE_ALL.record(() -> service.saveAll(products));
+    }
+
+    // Загрузить продукты из файла каталога (CSV или JSON lines).
+    public ImportReport importFromFile(String path) {
+        return IMPORT_FROM_FILE.record(() -> importService.importFile(Path.of(path)));
     }
 
     // Вернуть все продукты из базы данных (активные).
     public List<Product> getAll() {
-        return service.getAllActiveProducts();
+        return GET_ALL.record(() -> service.getAllActiveProducts());
+    }
+
+    // Вернуть страницу продуктов (активных) по возрастанию идентификатора.
+    // Для первой страницы afterId = null, для следующих - значение getNextAfterId() предыдущей страницы.
+    public Page<Product> getPage(Long afterId, int pageSize) {
+        return GET_PAGE.record(() -> service.getActiveProductsPage(afterId, pageSize));
+    }
+
+    // Лениво перебрать все продукты (активные), не собирая их в список.
+    public Stream<Product> stream() {
+        return service.streamActiveProducts();
     }
 
     // Вернуть один продукт из базы данных по его идентификатору (если он активен).
-    public Product getById(Long id) {
-        return service.getActiveProductById(id);
+    public Product getById(long id) {
+        return GET_BY_ID.record(() -> service.getActiveProductById(id));
+    }
+
+    // Вернуть все продукты из базы данных с указанным наименованием (активные).
+    public List<Product> findByTitle(String title) {
+        return FIND_BY_TITLE.record(() -> service.getActiveProductsByTitle(title));
+    }
+
+    // Вернуть продукты с ценой от minPrice до maxPrice включительно (активные, по возрастанию цены, не больше limit).
+    public List<Product> findByPriceRange(double minPrice, double maxPrice, int limit) {
+        return FIND_BY_PRICE_RANGE.record(() -> service.getActiveProductsByPriceRange(minPrice, maxPrice, limit));
+    }
+
+    // Вернуть count самых дешёвых продуктов (активных).
+    public List<Product> getCheapest(int count) {
+        return GET_CHEAPEST.record(() -> service.getCheapestProducts(count));
+    }
+
+    // Вернуть count самых дорогих продуктов (активных).
+    public List<Product> getMostExpensive(int count) {
+        return GET_MOST_EXPENSIVE.record(() -> service.getMostExpensiveProducts(count));
+    }
+
+    // Вернуть страницу продуктов, упорядоченных по цене (активных).
+    // Для первой страницы afterId = null, для следующих - цена и идентификатор последнего продукта предыдущей страницы.
+    public List<Product> getSortedByPrice(double afterPrice, Long afterId, int pageSize) {
+        return GET_SORTED_BY_PRICE.record(() -> service.getActiveProductsSortedByPrice(afterPrice, afterId, pageSize));
     }
 
     // Изменить один продукт в базе данных по его идентификатору.
-    public void update(Long id, double newPrice) {
-        service.update(id, newPrice);
+    public void update(long id, double newPrice) {
+        UPDATE.record(() -> service.update(id, newPrice));
+    }
+
+    // Изменить цену продукта, только если его версия не изменилась с момента чтения.
+    public void update(long id, double newPrice, long expectedVersion) {
+        UPDATE_IF_VERSION.record(() -> service.update(id, newPrice, expectedVersion));
+    }
+
+    // Изменить цены пакета продуктов: идентификатор продукта -> новая цена.
+    public BatchResult<Long> updatePrices(Map<Long, Double> newPrices) {
+        return UPDATE_PRICES.record(() -> service.updatePrices(newPrices));
     }
 
     // Удалить продукт из базы данных по его идентификатору.
-    public void deleteById(Long id) {
-        service.deleteById(id);
+    public void deleteById(long id) {
+        DELETE_BY_ID.record(() -> service.deleteById(id));
     }
 
     // Удалить продукт из базы данных по его наименованию.
     public void deleteByTitle(String title) {
-        service.deleteByTitle(title);
+        DELETE_BY_TITLE.record(() -> service.deleteByTitle(title));
     }
 
     // Восстановить удалённый продукт в базе данных по его идентификатору.
-    public void restoreById(Long id) {
-        service.restoreById(id);
+    public void restoreById(long id) {
+        RESTORE_BY_ID.record(() -> service.restoreById(id));
+    }
+
+    // Удалить все продукты с ценой от minPrice до maxPrice включительно.
+    // Возвращает количество удалённых продуктов.
+    public int deleteByPriceRange(double minPrice, double maxPrice) {
+        return DELETE_BY_PRICE_RANGE.record(() -> service.deactivateAll(x -> x.getPrice() >= minPrice && x.getPrice() <= maxPrice));
+    }
+
+    // Восстановить все удалённые продукты с ценой от minPrice до maxPrice включительно.
+    // Возвращает количество восстановленных продуктов.
+    public int restoreByPriceRange(double minPrice, double maxPrice) {
+        return RESTORE_BY_PRICE_RANGE.record(() -> service.restoreAll(x -> x.getPrice() >= minPrice && x.getPrice() <= maxPrice));
     }
 
     // Вернуть общее количество продуктов в базе данных (активных).
     public int getProductsNumber() {
-        return service.getActiveProductsNumber();
+        return GET_PRODUCTS_NUMBER.record(() -> service.getActiveProductsNumber());
     }
 
     // Вернуть суммарную стоимость всех продуктов в базе данных (активных).
     public double getProductsTotalCost() {
-        return service.getActiveProductsTotalCost();
+        return GET_PRODUCTS_TOTAL_COST.record(() -> service.getActiveProductsTotalCost());
     }
 
     // Вернуть среднюю стоимость продукта в базе данных (из активных).
     public double getProductsAveragePrice() {
-        return service.getActiveProductsAveragePrice();
+        return GET_PRODUCTS_AVERAGE_PRICE.record(() -> service.getActiveProductsAveragePrice());
+    }
+
+    // Вернуть цену продукта на момент at.
+    public double getPriceAt(long id, Instant at) {
+        return GET_PRICE_AT.record(() -> service.getPriceAt(id, at));
+    }
+
+    // Вернуть количество, суммарную стоимость и среднюю цену продуктов, активных на момент at.
+    public CatalogSnapshot getCatalogAt(Instant at) {
+        return GET_CATALOG_AT.record(() -> service.getCatalogAt(at));
+    }
+
+    // Вернуть счётчики кэша продуктов (попадания, промахи, вытеснения).
+    public CacheStatistics getCacheStatistics() {
+        return GET_CACHE_STATISTICS.record(() -> service.getCacheStatistics());
     }
 }
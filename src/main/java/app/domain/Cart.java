@@ -0,0 +1,217 @@
+package app.domain;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/*
+Корзина покупателя.
+Каждый продукт хранится в корзине один раз вместе с его количеством,
+поэтому добавление и удаление одной единицы продукта выполняется за O(1).
+Корзина также помнит свою стоимость и количество активных товаров,
+чтобы не пересчитывать их при каждом запросе.
+ */
+public class Cart {
+
+    // Строка корзины: продукт и его количество.
+    // Строки связаны в список в том порядке, в котором продукты попали в корзину.
+    private static class Line {
+        private final Product product;
+        private int quantity;
+        private Line previous;
+        private Line next;
+
+        Line(Product product) {
+            this.product = product;
+        }
+    }
+
+    // Ключ - идентификатор продукта, значение - строка корзины.
+    // Ключи хранятся как long, поэтому поиск строки не упаковывает идентификатор в Long.
+    private final LongHashMap<Line> lines = new LongHashMap<>();
+    private Line first;
+    private Line last;
+
+    // Общее количество единиц товара в корзине
+    private int size;
+
+    // Закэшированные стоимость и количество активных товаров.
+    // Кэш действителен, пока не изменилась версия каталога продуктов
+    // (она меняется при изменении цены, удалении или восстановлении любого продукта).
+    private long cachedVersion = -1;
+    private double cachedTotalCost;
+    private int cachedActiveNumber;
+
+    // Добавить в корзину одну единицу продукта
+    public synchronized void add(Product product) {
+        Line line = lines.get(product.getId());
+        if (line == null) {
+            line = link(product);
+        }
+        line.quantity++;
+        size++;
+        if (product.isActive()) {
+            cachedTotalCost += product.getPrice();
+            cachedActiveNumber++;
+        }
+    }
+
+    // Удалить из корзины одну единицу продукта.
+    // Возвращает false, если такого продукта в корзине нет.
+    public synchronized boolean removeOne(long productId) {
+        Line line = lines.get(productId);
+        if (line == null) {
+            return false;
+        }
+        if (--line.quantity == 0) {
+            unlink(line);
+        }
+        size--;
+        if (line.product.isActive()) {
+            cachedTotalCost -= line.product.getPrice();
+            cachedActiveNumber--;
+        }
+        return true;
+    }
+
+    // Установить количество единиц продукта в корзине (0 - убрать продукт из корзины)
+    public synchronized void setQuantity(Product product, int quantity) {
+        Line line = lines.get(product.getId());
+        int oldQuantity = line == null ? 0 : line.quantity;
+        if (quantity <= 0) {
+            if (line != null) {
+                unlink(line);
+            }
+            quantity = 0;
+        } else {
+            if (line == null) {
+                line = link(product);
+            }
+            line.quantity = quantity;
+        }
+        size += quantity - oldQuantity;
+        // Показатели будут пересчитаны при следующем запросе
+        cachedVersion = -1;
+    }
+
+    // Полностью очистить корзину
+    public synchronized void clear() {
+        lines.clear();
+        first = null;
+        last = null;
+        size = 0;
+        cachedTotalCost = 0.0;
+        cachedActiveNumber = 0;
+    }
+
+    // Количество единиц указанного продукта в корзине
+    public synchronized int getQuantity(long productId) {
+        Line line = lines.get(productId);
+        return line == null ? 0 : line.quantity;
+    }
+
+    // Общее количество единиц товара в корзине (включая неактивные продукты)
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Стоимость активных товаров в корзине.
+    // catalogVersion - текущая версия каталога продуктов.
+    public synchronized double getTotalCost(long catalogVersion) {
+        refresh(catalogVersion);
+        return cachedTotalCost;
+    }
+
+    // Количество единиц активных товаров в корзине
+    public synchronized int getActiveProductsNumber(long catalogVersion) {
+        refresh(catalogVersion);
+        return cachedActiveNumber;
+    }
+
+    // Средняя цена активного товара в корзине
+    public synchronized double getAveragePrice(long catalogVersion) {
+        refresh(catalogVersion);
+        return cachedActiveNumber == 0 ? 0.0 : cachedTotalCost / cachedActiveNumber;
+    }
+
+    // Перебрать строки корзины: продукт и его количество
+    public synchronized void forEach(ObjIntConsumer<Product> action) {
+        for (Line line = first; line != null; line = line.next) {
+            action.accept(line.product, line.quantity);
+        }
+    }
+
+    // Добавить строку для продукта в конец списка
+    private Line link(Product product) {
+        Line line = new Line(product);
+        lines.put(product.getId(), line);
+        line.previous = last;
+        if (last == null) {
+            first = line;
+        } else {
+            last.next = line;
+        }
+        last = line;
+        return line;
+    }
+
+    private void unlink(Line line) {
+        lines.remove(line.product.getId());
+        if (line.previous == null) {
+            first = line.next;
+        } else {
+            line.previous.next = line.next;
+        }
+        if (line.next == null) {
+            last = line.previous;
+        } else {
+            line.next.previous = line.previous;
+        }
+    }
+
+    // Если каталог изменился с момента последнего подсчёта,
+    // пересчитываем показатели по строкам корзины (а не по каждой единице товара).
+    private void refresh(long catalogVersion) {
+        if (cachedVersion == catalogVersion) {
+            return;
+        }
+        double totalCost = 0.0;
+        int activeNumber = 0;
+        for (Line line = first; line != null; line = line.next) {
+            if (line.product.isActive()) {
+                totalCost += line.product.getPrice() * line.quantity;
+                activeNumber += line.quantity;
+            }
+        }
+        cachedTotalCost = totalCost;
+        cachedActiveNumber = activeNumber;
+        cachedVersion = catalogVersion;
+    }
+
+    // Снимок содержимого корзины: идентификатор продукта -> количество
+    private synchronized Map<Long, Integer> quantities() {
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (Line line = first; line != null; line = line.next) {
+            quantities.put(line.product.getId(), line.quantity);
+        }
+        return quantities;
+    }
+
+    // Equals и Hashcode: корзины равны, если в них одни и те же продукты в одинаковом количестве
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Cart cart = (Cart) o;
+        return quantities().equals(cart.quantities());
+    }
+
+    @Override
+    public int hashCode() {
+        return quantities().hashCode();
+    }
+}
@@ -1,16 +1,15 @@
 package app.domain;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-
 public class Customer {
 
     // Поля
-    private Long id;
-    private String name;
-    private boolean active;
-    private List<Product> cart = new ArrayList<>();
+    // Идентификатор хранится как long: 0 - покупатель ещё не сохранён в базе данных.
+    private long id;
+    private volatile String name;
+    private volatile boolean active;
+    // Версия покупателя: меняется при каждом изменении имени, состояния или корзины
+    private volatile long version;
+    private final Cart cart = new Cart();
 
     // Конструктор
     public Customer(String name) {
@@ -18,6 +17,10 @@ public class Customer {
     }
 
     // Геттеры и Сеттеры:
+    public long getId() {
+        return id;
+    }
+
     public void setId(long id) {
         this.id = id;
     }
@@ -38,32 +41,45 @@ public class Customer {
         this.active = active;
     }
 
-    public List<Product> getCart() {
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Cart getCart() {
         return cart;
     }
 
-    // Equals:
+    // Equals и Hashcode:
+    // Покупатели равны, если это один и тот же сохранённый покупатель (по идентификатору).
+    // Имя и корзина в сравнении не участвуют: они меняются, а хэш-код не должен зависеть
+    // от размера корзины и меняться вместе с ней.
     @Override
     public boolean equals(Object o) {
+        if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Customer customer = (Customer) o;
-        return id == customer.id && active == customer.active && Objects.equals(name, customer.name) && Objects.equals(cart, customer.cart);
+        return id != 0 && id == customer.id;
     }
 
-    // Hashcode:
     @Override
     public int hashCode() {
-        return Objects.hash(id, name, active, cart);
+        return Long.hashCode(id);
     }
 
     // toString:
     @Override
     public String toString() {
-        String info = String.format("Customer: id - %d, name - %s, active - %s%n", id, name, active ? "yes" : "no");
-        StringBuilder builder = new StringBuilder(info);
-        builder.append("Cart:");
-        cart.forEach(x -> builder.append(" ").append(x.getTitle()));
+        StringBuilder builder = new StringBuilder(64)
+                .append("Customer: id - ").append(id)
+                .append(", name - ").append(name)
+                .append(", active - ").append(active ? "yes" : "no")
+                .append(System.lineSeparator())
+                .append("Cart:");
+        cart.forEach((product, quantity) -> builder.append(' ').append(product.getTitle()).append(" x").append(quantity));
         return builder.toString();
-
     }
 }
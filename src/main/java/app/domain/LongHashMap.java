@@ -0,0 +1,115 @@
+package app.domain;
+
+import java.util.Arrays;
+
+/*
+Хэш-таблица с ключами типа long (без упаковки ключей в Long) и открытой адресацией:
+ключи и значения лежат в двух массивах, а коллизии разрешаются переходом к следующей ячейке.
+Ключ 0 означает пустую ячейку, поэтому сам он ключом быть не может
+(идентификаторы сохранённых продуктов начинаются с 1).
+Таблица не потокобезопасна: ей пользуется корзина под своей блокировкой.
+ */
+class LongHashMap<V> {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        int mask = keys.length - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+            if (keys[i] == 0) {
+                return null;
+            }
+        }
+    }
+
+    void put(long key, V value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Ключ 0 не поддерживается");
+        }
+        if ((size + 1) * 4 > keys.length * 3) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = index(key, mask);
+        while (keys[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == 0) {
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    // Удалить ключ. Следующие за ним ключи той же цепочки сдвигаются назад,
+    // поэтому таблице не нужны отметки об удалённых ячейках.
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        if (key == 0) {
+            return null;
+        }
+        int mask = keys.length - 1;
+        int gap = index(key, mask);
+        while (keys[gap] != key) {
+            if (keys[gap] == 0) {
+                return null;
+            }
+            gap = (gap + 1) & mask;
+        }
+        V removed = (V) values[gap];
+        for (int i = (gap + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            // Ключ можно перенести в пустую ячейку, если она лежит между его "родной" ячейкой и текущей
+            int home = index(keys[i], mask);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = 0;
+        values[gap] = null;
+        size--;
+        return removed;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = index(oldKeys[j], mask);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    // Перемешивание битов: идентификаторы идут подряд и без него занимали бы соседние ячейки
+    private static int index(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
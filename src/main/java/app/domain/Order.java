@@ -0,0 +1,133 @@
+package app.domain;
+
+import java.util.List;
+
+/*
+Заказ покупателя: снимок корзины на момент оформления.
+Наименования и цены продуктов копируются в строки заказа,
+поэтому последующие изменения каталога (новая цена, удаление продукта) заказ не меняют.
+Заказ не изменяется после оформления, кроме идентификатора, который выдаёт хранилище.
+ */
+public class Order {
+
+    // Строка заказа: продукт, его цена на момент оформления и количество
+    public static class Line {
+        private final long productId;
+        private final String title;
+        private final double price;
+        private final int quantity;
+
+        public Line(long productId, String title, double price, int quantity) {
+            this.productId = productId;
+            this.title = title;
+            this.price = price;
+            this.quantity = quantity;
+        }
+
+        public long getProductId() {
+            return productId;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public double getCost() {
+            return price * quantity;
+        }
+    }
+
+    // Поля
+    // Идентификатор хранится как long: 0 - заказ ещё не сохранён в базе данных.
+    private long id;
+    private final long customerId;
+    // Время оформления (миллисекунды от начала эпохи)
+    private final long createdAt;
+    private final List<Line> lines;
+    private final double totalCost;
+
+    // Конструктор
+    public Order(long customerId, long createdAt, List<Line> lines) {
+        this.customerId = customerId;
+        this.createdAt = createdAt;
+        this.lines = List.copyOf(lines);
+        double totalCost = 0.0;
+        for (Line line : lines) {
+            totalCost += line.getCost();
+        }
+        this.totalCost = totalCost;
+    }
+
+    // Геттеры и Сеттеры:
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getCustomerId() {
+        return customerId;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public List<Line> getLines() {
+        return lines;
+    }
+
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    // Общее количество единиц товара в заказе
+    public int getQuantity() {
+        int quantity = 0;
+        for (Line line : lines) {
+            quantity += line.getQuantity();
+        }
+        return quantity;
+    }
+
+    // Equals и Hashcode: заказы равны, если это один и тот же сохранённый заказ (по идентификатору).
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Order order = (Order) o;
+        return id != 0 && id == order.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
+
+    // toString:
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(64 + lines.size() * 32)
+                .append("Order: id - ").append(id)
+                .append(", customer - ").append(customerId)
+                .append(", total - ").append(Math.round(totalCost * 100) / 100.0)
+                .append(System.lineSeparator())
+                .append("Lines:");
+        for (Line line : lines) {
+            builder.append(' ').append(line.getTitle())
+                    .append(" x").append(line.getQuantity())
+                    .append(" (").append(line.getPrice()).append(')');
+        }
+        return builder.toString();
+    }
+}
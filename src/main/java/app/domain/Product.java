@@ -1,6 +1,7 @@
 package app.domain;
 
-import java.util.Objects;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 /*
 Этот класс находится на первом слое нашего приложения - домен.
@@ -9,10 +10,14 @@ import java.util.Objects;
 public class Product {
 
     // Поля:
-    private Long id;
+    // Идентификатор хранится как long: 0 - продукт ещё не сохранён в базе данных.
+    private long id;
     private String title;
-    private double price;
-    private boolean active;
+    private volatile double price;
+    private volatile boolean active;
+    // Версия продукта: меняется при каждом изменении цены или состояния.
+    // Клиент может передать прочитанную версию при изменении, чтобы не затереть чужое изменение.
+    private volatile long version;
 
     // Конструктор:
     public Product(String title, double price) {
@@ -29,11 +34,11 @@ public class Product {
         this.title = title;
     }
 
-    public Long getId() {
+    public long getId() {
         return id;
     }
 
-    public void setId(Long id) {
+    public void setId(long id) {
         this.id = id;
     }
 
@@ -54,22 +59,54 @@ public class Product {
         this.active = active;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     // Equals и Hashcode:
+    // Продукт - сущность, поэтому два объекта равны, если это один и тот же сохранённый продукт,
+    // даже если его цена или состояние изменились. Несохранённый продукт равен только самому себе.
+    // Хэш-код не зависит от изменяемых полей, поэтому продукт не теряется в HashSet после изменения цены.
     @Override
     public boolean equals(Object o) {
-        if (o == null || getClass() != o.getClass()) return false;
+        if (this == o) return true;
+        if (!(o instanceof Product)) return false;
         Product product = (Product) o;
-        return Double.compare(price, product.price) == 0 && active == product.active && Objects.equals(id, product.id) && Objects.equals(title, product.title);
+        return id != 0 && id == product.getId();
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, title, price, active);
+        return Long.hashCode(id);
     }
 
     // toString:
     @Override
     public String toString() {
-        return String.format("Product: id - %d, title - %s, price - %.2f, active - %s", id, title, price, active ? "yes" : "no");
+        StringBuilder builder = new StringBuilder(64)
+                .append("Product: id - ").append(id)
+                .append(", title - ").append(getTitle())
+                .append(", price - ");
+        return appendPrice(builder, getPrice())
+                .append(", active - ").append(isActive() ? "yes" : "no")
+                .toString();
+    }
+
+    // Цена с двумя знаками после точки, как "%.2f": десятичная запись цены округляется HALF_UP,
+    // поэтому 1.005 печатается как 1.01, а большие цены - всеми цифрами
+    private static StringBuilder appendPrice(StringBuilder builder, double price) {
+        if (!Double.isFinite(price)) {
+            return builder.append(price);
+        }
+        BigDecimal rounded = BigDecimal.valueOf(price).setScale(2, RoundingMode.HALF_UP);
+        // "%.2f" сохраняет знак у отрицательных цен, округлённых до нуля (-0.001 -> -0.00)
+        if (rounded.signum() == 0 && Math.copySign(1.0, price) < 0) {
+            builder.append('-');
+        }
+        return builder.append(rounded.toPlainString());
     }
 }
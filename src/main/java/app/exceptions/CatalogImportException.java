@@ -0,0 +1,11 @@
+package app.exceptions;
+
+public class CatalogImportException extends RuntimeException {
+    public CatalogImportException(String message) {
+        super(message);
+    }
+
+    public CatalogImportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
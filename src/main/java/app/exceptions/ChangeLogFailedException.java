@@ -0,0 +1,8 @@
+package app.exceptions;
+
+public class ChangeLogFailedException extends RuntimeException {
+    public ChangeLogFailedException(long offset, Throwable cause) {
+        super(String.format("Журнал изменений не записан начиная с события %d: %s", offset, cause.getMessage()),
+                cause);
+    }
+}
@@ -0,0 +1,8 @@
+package app.exceptions;
+
+public class ChangesLostException extends RuntimeException {
+    public ChangesLostException(long offset, long oldestOffset) {
+        super(String.format("События начиная с %d уже вытеснены из потока изменений (самое старое доступное - %d)",
+                offset, oldestOffset));
+    }
+}
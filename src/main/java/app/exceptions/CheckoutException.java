@@ -0,0 +1,7 @@
+package app.exceptions;
+
+public class CheckoutException extends RuntimeException {
+    public CheckoutException(String message) {
+        super(message);
+    }
+}
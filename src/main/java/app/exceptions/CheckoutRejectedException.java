@@ -0,0 +1,7 @@
+package app.exceptions;
+
+public class CheckoutRejectedException extends RuntimeException {
+    public CheckoutRejectedException(int capacity) {
+        super(String.format("Очередь оформления заказов переполнена (%d запросов), повторите позже", capacity));
+    }
+}
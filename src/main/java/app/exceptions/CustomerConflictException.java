@@ -0,0 +1,8 @@
+package app.exceptions;
+
+public class CustomerConflictException extends RuntimeException {
+    public CustomerConflictException(long id, long expectedVersion, long actualVersion) {
+        super(String.format("Покупатель с идентификатором %d уже изменён: ожидалась версия %d, текущая версия %d",
+                id, expectedVersion, actualVersion));
+    }
+}
@@ -1,7 +1,7 @@
 package app.exceptions;
 
 public class CustomerNotFoundException extends RuntimeException {
-    public CustomerNotFoundException(Long id) {
+    public CustomerNotFoundException(long id) {
         super(String.format("Покупатель с идентификатором %d не найден", id));
     }
 }
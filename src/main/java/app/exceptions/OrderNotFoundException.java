@@ -0,0 +1,7 @@
+package app.exceptions;
+
+public class OrderNotFoundException extends RuntimeException {
+    public OrderNotFoundException(long id) {
+        super(String.format("Заказ с идентификатором %d не найден", id));
+    }
+}
@@ -0,0 +1,7 @@
+package app.exceptions;
+
+public class PageSizeException extends RuntimeException {
+    public PageSizeException(int pageSize) {
+        super(String.format("Размер страницы должен быть больше нуля, получено: %d", pageSize));
+    }
+}
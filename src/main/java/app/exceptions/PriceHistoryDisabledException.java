@@ -0,0 +1,7 @@
+package app.exceptions;
+
+public class PriceHistoryDisabledException extends RuntimeException {
+    public PriceHistoryDisabledException() {
+        super("История цен продуктов выключена (shop.products.price.history=false)");
+    }
+}
@@ -0,0 +1,8 @@
+package app.exceptions;
+
+public class ProductConflictException extends RuntimeException {
+    public ProductConflictException(long id, long expectedVersion, long actualVersion) {
+        super(String.format("Продукт с идентификатором %d уже изменён: ожидалась версия %d, текущая версия %d",
+                id, expectedVersion, actualVersion));
+    }
+}
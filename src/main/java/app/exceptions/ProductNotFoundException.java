@@ -1,7 +1,7 @@
 package app.exceptions;
 
 public class ProductNotFoundException extends RuntimeException {
-    public ProductNotFoundException(Long id) {
+    public ProductNotFoundException(long id) {
         super(String.format("Продукт с идентификтором %d не найден", id));
     }
 }
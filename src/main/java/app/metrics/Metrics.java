@@ -0,0 +1,107 @@
+package app.metrics;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+Реестр метрик операций приложения.
+Контроллеры получают свои операции один раз (в статических полях) методом operation
+и отмечают в них каждый вызов (см. Operation).
+
+Системные свойства:
+- shop.metrics=false - выключить метрики (тогда вызовы не считаются и время не измеряется);
+- shop.metrics.sampling - у какой доли вызовов измерять время: 1 из N, N - степень двойки (по умолчанию 64);
+- shop.metrics.report - интервал периодической печати метрик в секундах (по умолчанию 0 - не печатать).
+ */
+public final class Metrics {
+
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("shop.metrics", "true"));
+
+    // Вызов измеряется, если младшие биты случайного числа равны нулю
+    static final int SAMPLING_MASK = Integer.highestOneBit(Math.max(1, Integer.getInteger("shop.metrics.sampling", 64))) - 1;
+
+    // Операции в порядке регистрации
+    private static final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private static final List<Operation> ordered = new ArrayList<>();
+
+    private Metrics() {
+    }
+
+    // Операция с указанным именем (создаётся при первом обращении)
+    public static Operation operation(String name) {
+        return operations.computeIfAbsent(name, key -> {
+            Operation operation = new Operation(key);
+            synchronized (ordered) {
+                ordered.add(operation);
+            }
+            return operation;
+        });
+    }
+
+    // Снимок метрик всех операций, у которых были вызовы
+    public static List<OperationSnapshot> snapshot() {
+        List<OperationSnapshot> snapshots = new ArrayList<>();
+        for (Operation operation : operations()) {
+            OperationSnapshot snapshot = operation.snapshot();
+            if (snapshot.getCalls() > 0) {
+                snapshots.add(snapshot);
+            }
+        }
+        return snapshots;
+    }
+
+    // Текстовый отчёт: одна строка на операцию
+    public static String report() {
+        List<OperationSnapshot> snapshots = snapshot();
+        if (snapshots.isEmpty()) {
+            return "Метрики: вызовов не было";
+        }
+        StringBuilder builder = new StringBuilder("Метрики (время измеряется у 1 из ")
+                .append(SAMPLING_MASK + 1).append(" вызовов):");
+        for (OperationSnapshot snapshot : snapshots) {
+            builder.append(System.lineSeparator()).append(snapshot);
+        }
+        return builder.toString();
+    }
+
+    // Обнулить метрики всех операций
+    public static void reset() {
+        for (Operation operation : operations()) {
+            operation.reset();
+        }
+    }
+
+    // Печатать отчёт в out каждые interval в фоновом потоке.
+    // Возвращает планировщик: его остановка прекращает печать.
+    public static ScheduledExecutorService startReporting(Duration interval, PrintStream out) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        scheduler.scheduleAtFixedRate(() -> out.println(report()), millis, millis, TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
+
+    // Включить периодическую печать в System.out, если задано свойство shop.metrics.report
+    public static void startReportingIfConfigured() {
+        int seconds = Integer.getInteger("shop.metrics.report", 0);
+        if (ENABLED && seconds > 0) {
+            startReporting(Duration.ofSeconds(seconds), System.out);
+        }
+    }
+
+    private static List<Operation> operations() {
+        synchronized (ordered) {
+            return new ArrayList<>(ordered);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package app.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+Метрики одной операции: количество вызовов, ошибки по типам исключений и гистограмма задержек.
+Использование в методе контроллера:
+
+    return GET_BY_ID.record(() -> service.getActiveProductById(id));
+
+record отмечает вызов, ошибку (исключение пробрасывается дальше) и время вызова.
+Метод маленький и встраивается JIT-компилятором в метод контроллера вместе с лямбдой,
+поэтому лямбда не создаётся в куче при каждом вызове.
+
+Вызовы и ошибки считаются всегда (LongAdder - счётчик, разбитый на ячейки по потокам,
+поэтому потоки не мешают друг другу). Время измеряется только у каждого sampling-го вызова:
+System.nanoTime() стоит около 30 нс (на каждый измеренный вызов их два), а случайная выборка
+вызовов даёт те же процентили при гораздо меньших накладных расходах.
+С выборкой по умолчанию (1 из 64) метрики добавляют к вызову около 6 нс (см. MetricsBenchmark),
+и основная их часть - атомарное увеличение точного счётчика вызовов: меньше можно получить,
+только если считать вызовы приблизительно.
+ */
+public class Operation {
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final Map<Class<?>, LongAdder> errorsByType = new ConcurrentHashMap<>();
+
+    Operation(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Выполнить call и отметить вызов: количество, ошибку и (у выборки вызовов) время
+    public <T> T record(Supplier<T> call) {
+        long start = start();
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            fail(e);
+            throw e;
+        } finally {
+            stop(start);
+        }
+    }
+
+    // То же для вызова без результата
+    public void record(Runnable call) {
+        long start = start();
+        try {
+            call.run();
+        } catch (RuntimeException e) {
+            fail(e);
+            throw e;
+        } finally {
+            stop(start);
+        }
+    }
+
+    // Начало вызова. Возвращает время начала или 0, если время этого вызова не измеряется.
+    public long start() {
+        if (!Metrics.ENABLED) {
+            return 0;
+        }
+        calls.increment();
+        if ((ThreadLocalRandom.current().nextInt() & Metrics.SAMPLING_MASK) != 0) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    // Конец вызова (вызывается в finally)
+    public void stop(long start) {
+        if (start != 0) {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    // Вызов завершился исключением
+    public void fail(Throwable error) {
+        if (!Metrics.ENABLED) {
+            return;
+        }
+        errors.increment();
+        errorsByType.computeIfAbsent(error.getClass(), key -> new LongAdder()).increment();
+    }
+
+    // Снимок метрик операции: счётчики и гистограмма читаются без остановки вызовов
+    public OperationSnapshot snapshot() {
+        Map<String, Long> byType = new TreeMap<>();
+        errorsByType.forEach((type, count) -> byType.put(type.getSimpleName(), count.sum()));
+        return new OperationSnapshot(name, calls.sum(), errors.sum(), byType, latency.count(),
+                latency.percentile(0.5), latency.percentile(0.99), latency.max());
+    }
+
+    void reset() {
+        calls.reset();
+        errors.reset();
+        errorsByType.clear();
+        latency.reset();
+    }
+}
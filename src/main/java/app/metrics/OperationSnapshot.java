@@ -0,0 +1,91 @@
+package app.metrics;
+
+import java.util.Map;
+
+/*
+Снимок метрик одной операции.
+Задержки (в наносекундах) посчитаны по вызовам, время которых измерялось (sampled),
+а количество вызовов и ошибок - по всем вызовам.
+ */
+public class OperationSnapshot {
+
+    private final String name;
+    private final long calls;
+    private final long errors;
+    private final Map<String, Long> errorsByType;
+    private final long sampled;
+    private final long p50;
+    private final long p99;
+    private final long max;
+
+    OperationSnapshot(String name, long calls, long errors, Map<String, Long> errorsByType,
+                      long sampled, long p50, long p99, long max) {
+        this.name = name;
+        this.calls = calls;
+        this.errors = errors;
+        this.errorsByType = errorsByType;
+        this.sampled = sampled;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    // Доля вызовов, завершившихся исключением
+    public double getErrorRate() {
+        return calls == 0 ? 0.0 : (double) errors / calls;
+    }
+
+    // Количество ошибок по простому имени класса исключения
+    public Map<String, Long> getErrorsByType() {
+        return errorsByType;
+    }
+
+    // Количество вызовов, время которых измерялось
+    public long getSampled() {
+        return sampled;
+    }
+
+    public long getP50Nanos() {
+        return p50;
+    }
+
+    public long getP99Nanos() {
+        return p99;
+    }
+
+    public long getMaxNanos() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(128)
+                .append(name)
+                .append(": вызовов - ").append(calls)
+                .append(", ошибок - ").append(errors);
+        if (errors > 0) {
+            builder.append(" (").append(Math.round(getErrorRate() * 10_000) / 100.0).append("%) ").append(errorsByType);
+        }
+        return builder
+                .append(", p50 - ").append(micros(p50))
+                .append(" мкс, p99 - ").append(micros(p99))
+                .append(" мкс, max - ").append(micros(max))
+                .append(" мкс").toString();
+    }
+
+    private static double micros(long nanos) {
+        return Math.round(nanos / 10.0) / 100.0;
+    }
+}
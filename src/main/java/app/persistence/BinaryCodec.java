@@ -0,0 +1,321 @@
+package app.persistence;
+
+import app.domain.Cart;
+import app.domain.Customer;
+import app.domain.Product;
+import app.exceptions.StorageException;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/*
+Компактный двоичный формат продуктов, покупателей и корзин для выгрузки и загрузки данных.
+Идентификаторы, длины и количества записываются числами переменной длины (varint: по 7 бит в байте,
+старший бит - признак продолжения), поэтому идентификатор до 16383 занимает 2 байта вместо 8.
+Цена занимает ровно 8 байт (double), строки - длину в байтах (varint) и сами байты в UTF-8.
+Записи:
+продукт:    [id][длина наименования][наименование][цена][активен: 0/1]
+покупатель: [id][длина имени][имя][активен: 0/1][корзина]
+корзина:    [id продукта][количество] ... [0] (идентификаторы начинаются с 1, поэтому 0 - конец корзины)
+Записи кодируются прямо в ByteBuffer и читаются из него без промежуточных массивов байт.
+Если записи не хватает места (или данных при чтении), бросается BufferOverflowException
+(BufferUnderflowException), а позиция буфера остаётся внутри записи - вызывающий восстанавливает её сам.
+ */
+public final class BinaryCodec {
+
+    // Размер буфера при выгрузке и загрузке через канал
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Самое длинное число переменной длины (long): 10 байт по 7 бит
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private BinaryCodec() {
+    }
+
+    // Продукты:
+
+    public static void writeProduct(ByteBuffer buffer, Product product) {
+        writeVarLong(buffer, product.getId());
+        writeString(buffer, product.getTitle());
+        buffer.putDouble(product.getPrice());
+        buffer.put(product.isActive() ? (byte) 1 : 0);
+    }
+
+    public static Product readProduct(ByteBuffer buffer) {
+        long id = readVarLong(buffer);
+        String title = readString(buffer);
+        Product product = new Product(title, buffer.getDouble());
+        product.setId(id);
+        product.setActive(buffer.get() != 0);
+        return product;
+    }
+
+    // Покупатели:
+
+    public static void writeCustomer(ByteBuffer buffer, Customer customer) {
+        writeVarLong(buffer, customer.getId());
+        writeString(buffer, customer.getName());
+        buffer.put(customer.isActive() ? (byte) 1 : 0);
+        writeCart(buffer, customer.getCart());
+    }
+
+    // products - продукт по идентификатору для строк корзины (например, ProductRepository::findById)
+    public static Customer readCustomer(ByteBuffer buffer, LongFunction<Product> products) {
+        long id = readVarLong(buffer);
+        Customer customer = new Customer(readString(buffer));
+        customer.setId(id);
+        customer.setActive(buffer.get() != 0);
+        readCart(buffer, customer.getCart(), products);
+        return customer;
+    }
+
+    // Корзины:
+
+    public static void writeCart(ByteBuffer buffer, Cart cart) {
+        cart.forEach((product, quantity) -> {
+            writeVarLong(buffer, product.getId());
+            writeVarLong(buffer, quantity);
+        });
+        buffer.put((byte) 0);
+    }
+
+    // Прочитать строки корзины в cart. Строки с продуктами, которых нет в products, пропускаются
+    // (как при восстановлении корзины из журнала).
+    public static void readCart(ByteBuffer buffer, Cart cart, LongFunction<Product> products) {
+        for (long productId = readVarLong(buffer); productId != 0; productId = readVarLong(buffer)) {
+            int quantity = readLength(buffer);
+            Product product = products.apply(productId);
+            if (product != null) {
+                cart.setQuantity(product, quantity);
+            }
+        }
+    }
+
+    // Выгрузка и загрузка через канал:
+
+    // Кодирование одного объекта (например, BinaryCodec::writeProduct)
+    public interface Encoder<T> {
+        void write(ByteBuffer buffer, T value);
+    }
+
+    // Декодирование одного объекта (например, BinaryCodec::readProduct)
+    public interface Decoder<T> {
+        T read(ByteBuffer buffer);
+    }
+
+    // Источник объектов для выгрузки (например, forEach хранилища)
+    public interface Source<T> {
+        void forEach(Consumer<T> action);
+    }
+
+    // Записать в channel все объекты source подряд, без заголовка.
+    // Объекты кодируются в буфер вне кучи, который сбрасывается в канал по заполнении.
+    // Возвращает количество записанных объектов.
+    public static <T> long write(WritableByteChannel channel, Source<T> source, Encoder<T> encoder) {
+        ChannelWriter<T> writer = new ChannelWriter<>(channel, encoder);
+        source.forEach(writer);
+        writer.drain();
+        return writer.count;
+    }
+
+    // Прочитать из channel все объекты до конца канала и передать каждый в action.
+    // Буфер в куче: строки создаются прямо из его массива.
+    // Возвращает количество прочитанных объектов.
+    public static <T> long read(ReadableByteChannel channel, Decoder<T> decoder, Consumer<T> action) {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+        long count = 0;
+        try {
+            while (true) {
+                // Декодируем все целые записи буфера; недочитанная запись остаётся до следующего чтения
+                while (buffer.hasRemaining()) {
+                    int start = buffer.position();
+                    T value;
+                    try {
+                        value = decoder.read(buffer);
+                    } catch (BufferUnderflowException e) {
+                        buffer.position(start);
+                        break;
+                    }
+                    action.accept(value);
+                    count++;
+                }
+                if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+                    // Запись не помещается в буфер целиком
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer);
+                } else {
+                    buffer.compact();
+                }
+                if (channel.read(buffer) < 0) {
+                    if (buffer.position() > 0) {
+                        throw new StorageException("Данные обрываются на середине записи (прочитано записей: "
+                                + count + ")");
+                    }
+                    return count;
+                }
+                buffer.flip();
+            }
+        } catch (IOException e) {
+            throw new StorageException("Не удалось прочитать данные", e);
+        }
+    }
+
+    // Запись объектов в канал через буфер
+    private static class ChannelWriter<T> implements Consumer<T> {
+
+        private final WritableByteChannel channel;
+        private final Encoder<T> encoder;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private long count;
+
+        ChannelWriter(WritableByteChannel channel, Encoder<T> encoder) {
+            this.channel = channel;
+            this.encoder = encoder;
+        }
+
+        @Override
+        public void accept(T value) {
+            while (true) {
+                int start = buffer.position();
+                try {
+                    encoder.write(buffer, value);
+                    count++;
+                    return;
+                } catch (BufferOverflowException e) {
+                    buffer.position(start);
+                    if (start == 0) {
+                        // Объект не помещается даже в пустой буфер
+                        buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                    } else {
+                        drain();
+                    }
+                }
+            }
+        }
+
+        // Сбросить содержимое буфера в канал
+        void drain() {
+            try {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            } catch (IOException e) {
+                throw new StorageException("Не удалось записать данные", e);
+            }
+        }
+    }
+
+    // Числа переменной длины:
+
+    // Записать неотрицательное число: по 7 младших бит в байте, начиная с младших
+    public static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < MAX_VARINT_BYTES * 7; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new StorageException("Повреждённые данные: слишком длинное число");
+    }
+
+    // Длина или количество: число переменной длины в пределах int
+    private static int readLength(ByteBuffer buffer) {
+        long value = readVarLong(buffer);
+        if (value > Integer.MAX_VALUE) {
+            throw new StorageException("Повреждённые данные: некорректная длина " + value);
+        }
+        return (int) value;
+    }
+
+    // Строки:
+
+    // Записать строку в UTF-8 сразу в буфер, символ за символом.
+    // Одиночная половинка суррогатной пары записывается как '?' (как в String.getBytes).
+    public static void writeString(ByteBuffer buffer, String value) {
+        int length = value.length();
+        int bytes = utf8Length(value);
+        writeVarLong(buffer, bytes);
+        if (buffer.remaining() < bytes) {
+            throw new BufferOverflowException();
+        }
+        int position = buffer.position();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put(position++, (byte) c);
+            } else if (c < 0x800) {
+                buffer.put(position++, (byte) (0xC0 | c >> 6));
+                buffer.put(position++, (byte) (0x80 | c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer.put(position++, (byte) (0xF0 | codePoint >> 18));
+                    buffer.put(position++, (byte) (0x80 | codePoint >> 12 & 0x3F));
+                    buffer.put(position++, (byte) (0x80 | codePoint >> 6 & 0x3F));
+                    buffer.put(position++, (byte) (0x80 | codePoint & 0x3F));
+                } else {
+                    buffer.put(position++, (byte) '?');
+                }
+            } else {
+                buffer.put(position++, (byte) (0xE0 | c >> 12));
+                buffer.put(position++, (byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put(position++, (byte) (0x80 | c & 0x3F));
+            }
+        }
+        buffer.position(position);
+    }
+
+    // Прочитать строку. Из буфера в куче строка создаётся прямо по его массиву,
+    // из буфера вне кучи - декодируется через срез буфера.
+    public static String readString(ByteBuffer buffer) {
+        int bytes = readLength(buffer);
+        if (buffer.remaining() < bytes) {
+            throw new BufferUnderflowException();
+        }
+        int position = buffer.position();
+        String value = buffer.hasArray()
+                ? new String(buffer.array(), buffer.arrayOffset() + position, bytes, StandardCharsets.UTF_8)
+                : StandardCharsets.UTF_8.decode(buffer.slice(position, bytes)).toString();
+        buffer.position(position + bytes);
+        return value;
+    }
+
+    // Длина строки в UTF-8 в байтах
+    private static int utf8Length(String value) {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes++;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    // Пара из двух символов - 4 байта
+                    bytes += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+}
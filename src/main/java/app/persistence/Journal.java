@@ -0,0 +1,131 @@
+package app.persistence;
+
+/*
+Журнал изменений базы данных.
+Сервисы сообщают журналу о каждом изменении продуктов, покупателей, корзин и о новых заказах.
+Каждая запись описывает итоговое состояние (например, новое количество товара в корзине),
+а не разницу, поэтому повторное применение записи ничего не портит.
+ */
+public interface Journal {
+
+    // Журнал, который ничего не делает (используется, пока хранение на диске не включено)
+    Journal NONE = new Journal() {
+    };
+
+    // version - версия продукта после изменения (0 - неизвестна: запись сделана до того,
+    // как версии продуктов стали сохраняться на диске)
+    default void productSaved(long id, String title, double price, boolean active, long version) {
+    }
+
+    default void productPriceUpdated(long id, double price, long version) {
+    }
+
+    default void productActiveChanged(long id, boolean active, long version) {
+    }
+
+    default void customerSaved(long id, String name, boolean active) {
+    }
+
+    default void customerNameUpdated(long id, String name) {
+    }
+
+    default void customerActiveChanged(long id, boolean active) {
+    }
+
+    default void cartQuantityChanged(long customerId, long productId, int quantity) {
+    }
+
+    default void cartCleared(long customerId) {
+    }
+
+    // Заказ записывается строками, за которыми следует запись orderPlaced.
+    // Она завершает заказ: строки без неё (недописанный хвост журнала) при восстановлении отбрасываются.
+    default void orderLineAdded(long orderId, long productId, String title, double price, int quantity) {
+    }
+
+    default void orderPlaced(long id, long customerId, long createdAt) {
+    }
+
+    // Сбросить на диск все записи, сделанные до этого вызова (для журналов, которые пишут на диск)
+    default void flush() {
+    }
+
+    // Журнал, который передаёт каждую запись сначала этому журналу, затем журналу next
+    // (например, журналу на диске и потоку изменений для подписчиков)
+    default Journal andThen(Journal next) {
+        if (next == NONE) {
+            return this;
+        }
+        if (this == NONE) {
+            return next;
+        }
+        Journal first = this;
+        return new Journal() {
+            @Override
+            public void productSaved(long id, String title, double price, boolean active, long version) {
+                first.productSaved(id, title, price, active, version);
+                next.productSaved(id, title, price, active, version);
+            }
+
+            @Override
+            public void productPriceUpdated(long id, double price, long version) {
+                first.productPriceUpdated(id, price, version);
+                next.productPriceUpdated(id, price, version);
+            }
+
+            @Override
+            public void productActiveChanged(long id, boolean active, long version) {
+                first.productActiveChanged(id, active, version);
+                next.productActiveChanged(id, active, version);
+            }
+
+            @Override
+            public void customerSaved(long id, String name, boolean active) {
+                first.customerSaved(id, name, active);
+                next.customerSaved(id, name, active);
+            }
+
+            @Override
+            public void customerNameUpdated(long id, String name) {
+                first.customerNameUpdated(id, name);
+                next.customerNameUpdated(id, name);
+            }
+
+            @Override
+            public void customerActiveChanged(long id, boolean active) {
+                first.customerActiveChanged(id, active);
+                next.customerActiveChanged(id, active);
+            }
+
+            @Override
+            public void cartQuantityChanged(long customerId, long productId, int quantity) {
+                first.cartQuantityChanged(customerId, productId, quantity);
+                next.cartQuantityChanged(customerId, productId, quantity);
+            }
+
+            @Override
+            public void cartCleared(long customerId) {
+                first.cartCleared(customerId);
+                next.cartCleared(customerId);
+            }
+
+            @Override
+            public void orderLineAdded(long orderId, long productId, String title, double price, int quantity) {
+                first.orderLineAdded(orderId, productId, title, price, quantity);
+                next.orderLineAdded(orderId, productId, title, price, quantity);
+            }
+
+            @Override
+            public void orderPlaced(long id, long customerId, long createdAt) {
+                first.orderPlaced(id, customerId, createdAt);
+                next.orderPlaced(id, customerId, createdAt);
+            }
+
+            @Override
+            public void flush() {
+                first.flush();
+                next.flush();
+            }
+        };
+    }
+}
@@ -0,0 +1,544 @@
+package app.persistence;
+
+import app.exceptions.StorageException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/*
+Журнал упреждающей записи (write-ahead log).
+Каждое изменение дописывается в конец файла-сегмента в двоичном виде:
+[длина записи][контрольная сумма CRC32][тип записи и её поля].
+При старте приложения база данных восстанавливается из последнего снимка (snapshot)
+и записей журнала, сделанных после него.
+
+Строки пишутся как в writeUTF: [длина: 2 байта][модифицированная UTF-8]. Строка, которая в этот формат
+не помещается (больше 65534 байт), пишется как [0xFFFF][длина: 4 байта][UTF-8],
+поэтому записать в журнал можно строку любой длины, а старые журналы читаются как прежде.
+
+Записи о продуктах заканчиваются версией продукта, чтобы условные изменения (по версии)
+работали и после перезапуска. В старых журналах и снимках версии нет - она читается как 0.
+
+Режимы сброса на диск:
+PER_OPERATION - fsync после каждой записи (надёжно, но медленно);
+GROUP - fsync один раз на группу записей (или по таймеру через метод sync()).
+ */
+public class WriteAheadLog implements Journal, Closeable {
+
+    public enum SyncMode {
+        PER_OPERATION,
+        GROUP
+    }
+
+    // Типы записей
+    private static final byte PRODUCT_SAVED = 1;
+    private static final byte PRODUCT_PRICE_UPDATED = 2;
+    private static final byte PRODUCT_ACTIVE_CHANGED = 3;
+    private static final byte CUSTOMER_SAVED = 4;
+    private static final byte CUSTOMER_NAME_UPDATED = 5;
+    private static final byte CUSTOMER_ACTIVE_CHANGED = 6;
+    private static final byte CART_QUANTITY_CHANGED = 7;
+    private static final byte CART_CLEARED = 8;
+    private static final byte ORDER_LINE_ADDED = 9;
+    private static final byte ORDER_PLACED = 10;
+
+    // Признак строки в длинном формате вместо длины строки в формате writeUTF
+    private static final int LONG_STRING = 0xFFFF;
+
+    // Заголовок записи: длина и контрольная сумма
+    private static final int HEADER_SIZE = 8;
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String SNAPSHOT_TEMP_FILE = "snapshot.tmp";
+
+    private final Path directory;
+    private final SyncMode mode;
+    private final int groupSize;
+
+    private RecordWriter writer;
+    private long segmentNumber;
+    private int pending;
+
+    // Открыть журнал в папке directory. Запись всегда начинается в новом сегменте,
+    // чтобы не дописывать данные после возможно повреждённого хвоста старого сегмента.
+    public WriteAheadLog(Path directory, SyncMode mode, int groupSize) {
+        this.directory = directory;
+        this.mode = mode;
+        this.groupSize = groupSize;
+        try {
+            Files.createDirectories(directory);
+            List<Path> segments = segments(directory);
+            segmentNumber = segments.isEmpty() ? 0 : segmentNumber(segments.get(segments.size() - 1));
+            writer = new RecordWriter(segmentPath(++segmentNumber));
+        } catch (IOException e) {
+            throw new StorageException("Не удалось открыть журнал в папке " + directory, e);
+        }
+    }
+
+    // Запись изменений:
+
+    @Override
+    public void productSaved(long id, String title, double price, boolean active, long version) {
+        append(w -> w.productSaved(id, title, price, active, version));
+    }
+
+    @Override
+    public void productPriceUpdated(long id, double price, long version) {
+        append(w -> w.productPriceUpdated(id, price, version));
+    }
+
+    @Override
+    public void productActiveChanged(long id, boolean active, long version) {
+        append(w -> w.productActiveChanged(id, active, version));
+    }
+
+    @Override
+    public void customerSaved(long id, String name, boolean active) {
+        append(w -> w.customerSaved(id, name, active));
+    }
+
+    @Override
+    public void customerNameUpdated(long id, String name) {
+        append(w -> w.customerNameUpdated(id, name));
+    }
+
+    @Override
+    public void customerActiveChanged(long id, boolean active) {
+        append(w -> w.customerActiveChanged(id, active));
+    }
+
+    @Override
+    public void cartQuantityChanged(long customerId, long productId, int quantity) {
+        append(w -> w.cartQuantityChanged(customerId, productId, quantity));
+    }
+
+    @Override
+    public void cartCleared(long customerId) {
+        append(w -> w.cartCleared(customerId));
+    }
+
+    @Override
+    public void orderLineAdded(long orderId, long productId, String title, double price, int quantity) {
+        append(w -> w.orderLineAdded(orderId, productId, title, price, quantity));
+    }
+
+    @Override
+    public void orderPlaced(long id, long customerId, long createdAt) {
+        append(w -> w.orderPlaced(id, customerId, createdAt));
+    }
+
+    @Override
+    public void flush() {
+        sync();
+    }
+
+    private synchronized void append(Consumer<RecordWriter> record) {
+        record.accept(writer);
+        pending++;
+        if (mode == SyncMode.PER_OPERATION || pending >= groupSize) {
+            syncWriter();
+        }
+    }
+
+    // Сбросить на диск все накопленные записи
+    public synchronized void sync() {
+        if (pending > 0) {
+            syncWriter();
+        }
+    }
+
+    private void syncWriter() {
+        try {
+            writer.sync();
+            pending = 0;
+        } catch (IOException e) {
+            throw new StorageException("Не удалось сбросить журнал на диск", e);
+        }
+    }
+
+    // Закрыть текущий сегмент и начать новый.
+    // Возвращает все старые сегменты: после записи снимка их можно удалить.
+    public synchronized List<Path> rotate() {
+        try {
+            writer.sync();
+            writer.close();
+            pending = 0;
+            writer = new RecordWriter(segmentPath(++segmentNumber));
+            List<Path> old = new ArrayList<>();
+            for (Path segment : segments(directory)) {
+                if (segmentNumber(segment) < segmentNumber) {
+                    old.add(segment);
+                }
+            }
+            return old;
+        } catch (IOException e) {
+            throw new StorageException("Не удалось начать новый сегмент журнала", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.sync();
+            writer.close();
+        } catch (IOException e) {
+            throw new StorageException("Не удалось закрыть журнал", e);
+        }
+    }
+
+    // Снимки и восстановление:
+
+    // Записать снимок базы данных. Снимок пишется во временный файл,
+    // который затем атомарно заменяет предыдущий снимок.
+    public static void writeSnapshot(Path directory, Consumer<Journal> content) {
+        Path temp = directory.resolve(SNAPSHOT_TEMP_FILE);
+        try {
+            try (RecordWriter snapshot = new RecordWriter(temp)) {
+                content.accept(snapshot);
+                snapshot.sync();
+            }
+            Files.move(temp, directory.resolve(SNAPSHOT_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new StorageException("Не удалось записать снимок в папку " + directory, e);
+        }
+    }
+
+    // Восстановить базу данных: передать в target все записи снимка,
+    // а затем все записи сегментов журнала по порядку.
+    // Неполная или повреждённая запись допустима только в конце последнего сегмента с данными:
+    // это хвост, который не успел попасть на диск. Он отбрасывается, а сегмент обрезается по последней
+    // целой записи, чтобы после перезапуска этот сегмент не оказался посередине журнала.
+    // Повреждение снимка или записи в середине журнала - ошибка восстановления (StorageException):
+    // иначе записи после пропуска применились бы поверх потерянных изменений.
+    public static void recover(Path directory, Journal target) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try {
+            Path snapshot = directory.resolve(SNAPSHOT_FILE);
+            if (Files.exists(snapshot)) {
+                long end = replay(snapshot, target);
+                if (end < Files.size(snapshot)) {
+                    throw new StorageException("Снимок " + snapshot + " повреждён на позиции " + end);
+                }
+            }
+            List<Path> segments = segments(directory);
+            // Последний сегмент с данными: за ним могут быть только пустые сегменты,
+            // созданные при открытии журнала
+            int last = segments.size() - 1;
+            while (last > 0 && Files.size(segments.get(last)) == 0) {
+                last--;
+            }
+            for (int i = 0; i < segments.size(); i++) {
+                Path segment = segments.get(i);
+                long end = replay(segment, target);
+                if (end == Files.size(segment)) {
+                    continue;
+                }
+                if (i != last) {
+                    throw new StorageException("Сегмент журнала " + segment + " повреждён на позиции " + end
+                            + ", а за ним есть ещё записи");
+                }
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    channel.truncate(end);
+                    channel.force(true);
+                }
+            }
+        } catch (IOException e) {
+            throw new StorageException("Не удалось восстановить данные из папки " + directory, e);
+        }
+    }
+
+    // Прочитать все записи файла до первой неполной или повреждённой записи
+    // (неверная длина или контрольная сумма). Возвращает позицию конца последней целой записи.
+    private static long replay(Path file, Journal target) throws IOException {
+        long size = Files.size(file);
+        long position = 0;
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16))) {
+            CRC32 crc = new CRC32();
+            byte[] payload = new byte[256];
+            while (size - position >= HEADER_SIZE) {
+                int length = in.readInt();
+                long checksum = in.readInt() & 0xFFFFFFFFL;
+                // Длина проверяется по остатку файла до выделения памяти под запись
+                if (length <= 0 || length > size - position - HEADER_SIZE) {
+                    return position;
+                }
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                in.readFully(payload, 0, length);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if (crc.getValue() != checksum) {
+                    return position;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(payload, 0, length)), target);
+                position += HEADER_SIZE + length;
+            }
+            return position;
+        }
+    }
+
+    private static void apply(DataInputStream in, Journal target) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case PRODUCT_SAVED -> target.productSaved(in.readLong(), readString(in), in.readDouble(), in.readBoolean(),
+                    readVersion(in));
+            case PRODUCT_PRICE_UPDATED -> target.productPriceUpdated(in.readLong(), in.readDouble(), readVersion(in));
+            case PRODUCT_ACTIVE_CHANGED -> target.productActiveChanged(in.readLong(), in.readBoolean(), readVersion(in));
+            case CUSTOMER_SAVED -> target.customerSaved(in.readLong(), readString(in), in.readBoolean());
+            case CUSTOMER_NAME_UPDATED -> target.customerNameUpdated(in.readLong(), readString(in));
+            case CUSTOMER_ACTIVE_CHANGED -> target.customerActiveChanged(in.readLong(), in.readBoolean());
+            case CART_QUANTITY_CHANGED -> target.cartQuantityChanged(in.readLong(), in.readLong(), in.readInt());
+            case CART_CLEARED -> target.cartCleared(in.readLong());
+            case ORDER_LINE_ADDED -> target.orderLineAdded(in.readLong(), in.readLong(), readString(in), in.readDouble(), in.readInt());
+            case ORDER_PLACED -> target.orderPlaced(in.readLong(), in.readLong(), in.readLong());
+            default -> throw new IOException("Неизвестный тип записи журнала: " + type);
+        }
+    }
+
+    // Версия продукта - последнее поле записи. В записях, сделанных до того, как версии стали
+    // сохраняться, этого поля нет: такая версия считается неизвестной (0).
+    private static long readVersion(DataInputStream in) throws IOException {
+        return in.available() >= Long.BYTES ? in.readLong() : 0;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (fitsUtf(value)) {
+            out.writeUTF(value);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(LONG_STRING);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        in.mark(2);
+        if (in.readUnsignedShort() != LONG_STRING) {
+            in.reset();
+            return in.readUTF();
+        }
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Неверная длина строки в записи журнала: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Помещается ли строка в формат writeUTF (длина в модифицированной UTF-8 меньше LONG_STRING)
+    private static boolean fitsUtf(String value) {
+        int length = value.length();
+        if (length * 3L < LONG_STRING) {
+            return true;
+        }
+        long bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            bytes += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return bytes < LONG_STRING;
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(x -> {
+                        String name = x.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted((x, y) -> Long.compare(segmentNumber(x), segmentNumber(y)))
+                    .toList();
+        }
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    // Запись в один файл: кодирует изменения в двоичные записи.
+    private static class RecordWriter implements Journal, Closeable {
+
+        private final FileChannel channel;
+        private final DataOutputStream out;
+        private final Buffer buffer = new Buffer();
+        private final DataOutputStream payload = new DataOutputStream(buffer);
+        private final CRC32 crc = new CRC32();
+
+        RecordWriter(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        }
+
+        @Override
+        public void productSaved(long id, String title, double price, boolean active, long version) {
+            write(() -> {
+                payload.writeByte(PRODUCT_SAVED);
+                payload.writeLong(id);
+                writeString(payload, title);
+                payload.writeDouble(price);
+                payload.writeBoolean(active);
+                payload.writeLong(version);
+            });
+        }
+
+        @Override
+        public void productPriceUpdated(long id, double price, long version) {
+            write(() -> {
+                payload.writeByte(PRODUCT_PRICE_UPDATED);
+                payload.writeLong(id);
+                payload.writeDouble(price);
+                payload.writeLong(version);
+            });
+        }
+
+        @Override
+        public void productActiveChanged(long id, boolean active, long version) {
+            write(() -> {
+                payload.writeByte(PRODUCT_ACTIVE_CHANGED);
+                payload.writeLong(id);
+                payload.writeBoolean(active);
+                payload.writeLong(version);
+            });
+        }
+
+        @Override
+        public void customerSaved(long id, String name, boolean active) {
+            write(() -> {
+                payload.writeByte(CUSTOMER_SAVED);
+                payload.writeLong(id);
+                writeString(payload, name);
+                payload.writeBoolean(active);
+            });
+        }
+
+        @Override
+        public void customerNameUpdated(long id, String name) {
+            write(() -> {
+                payload.writeByte(CUSTOMER_NAME_UPDATED);
+                payload.writeLong(id);
+                writeString(payload, name);
+            });
+        }
+
+        @Override
+        public void customerActiveChanged(long id, boolean active) {
+            write(() -> {
+                payload.writeByte(CUSTOMER_ACTIVE_CHANGED);
+                payload.writeLong(id);
+                payload.writeBoolean(active);
+            });
+        }
+
+        @Override
+        public void cartQuantityChanged(long customerId, long productId, int quantity) {
+            write(() -> {
+                payload.writeByte(CART_QUANTITY_CHANGED);
+                payload.writeLong(customerId);
+                payload.writeLong(productId);
+                payload.writeInt(quantity);
+            });
+        }
+
+        @Override
+        public void cartCleared(long customerId) {
+            write(() -> {
+                payload.writeByte(CART_CLEARED);
+                payload.writeLong(customerId);
+            });
+        }
+
+        @Override
+        public void orderLineAdded(long orderId, long productId, String title, double price, int quantity) {
+            write(() -> {
+                payload.writeByte(ORDER_LINE_ADDED);
+                payload.writeLong(orderId);
+                payload.writeLong(productId);
+                writeString(payload, title);
+                payload.writeDouble(price);
+                payload.writeInt(quantity);
+            });
+        }
+
+        @Override
+        public void orderPlaced(long id, long customerId, long createdAt) {
+            write(() -> {
+                payload.writeByte(ORDER_PLACED);
+                payload.writeLong(id);
+                payload.writeLong(customerId);
+                payload.writeLong(createdAt);
+            });
+        }
+
+        // Буфер, который умеет посчитать контрольную сумму без копирования своего содержимого
+        private static class Buffer extends ByteArrayOutputStream {
+            Buffer() {
+                super(256);
+            }
+
+            void updateChecksum(CRC32 crc) {
+                crc.update(buf, 0, count);
+            }
+        }
+
+        private interface Fields {
+            void write() throws IOException;
+        }
+
+        private void write(Fields fields) {
+            try {
+                buffer.reset();
+                fields.write();
+                crc.reset();
+                buffer.updateChecksum(crc);
+                out.writeInt(buffer.size());
+                out.writeInt((int) crc.getValue());
+                buffer.writeTo(out);
+            } catch (IOException e) {
+                throw new StorageException("Не удалось записать изменение в журнал", e);
+            }
+        }
+
+        void sync() throws IOException {
+            out.flush();
+            channel.force(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package app.repository;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+
+/*
+Идентификаторы активных строк хранилища по возрастанию, не больше maxId
+(см. ProductRepository.activeIds и CustomerRepository.activeIds).
+Идентификаторы берутся у хранилища пакетами (nextActiveIds) по мере потребления потока.
+ */
+class ActiveIdSpliterator extends Spliterators.AbstractLongSpliterator {
+
+    // Источник идентификаторов: nextActiveIds хранилища
+    interface Source {
+        int next(long fromId, long[] ids);
+    }
+
+    private static final int BATCH_SIZE = 256;
+
+    private final Source source;
+    private final long maxId;
+    private final long[] batch = new long[BATCH_SIZE];
+    private int position;
+    private int count;
+    private boolean exhausted;
+
+    ActiveIdSpliterator(Source source, long maxId) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED
+                | Spliterator.NONNULL);
+        this.source = source;
+        this.maxId = maxId;
+    }
+
+    @Override
+    public boolean tryAdvance(LongConsumer action) {
+        if (position == count && !fill()) {
+            return false;
+        }
+        action.accept(batch[position++]);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(LongConsumer action) {
+        do {
+            int end = count;
+            for (int i = position; i < end; i++) {
+                action.accept(batch[i]);
+            }
+            position = end;
+        } while (fill());
+    }
+
+    // Идентификаторы упорядочены естественным образом
+    @Override
+    public Comparator<? super Long> getComparator() {
+        return null;
+    }
+
+    // Загрузить следующий пакет. Возвращает false, если идентификаторов больше нет.
+    private boolean fill() {
+        if (exhausted) {
+            return false;
+        }
+        long fromId = count == 0 ? 1 : batch[count - 1] + 1;
+        count = source.next(fromId, batch);
+        position = 0;
+        // Идентификаторы, выданные после создания потока, в него не попадают
+        while (count > 0 && batch[count - 1] > maxId) {
+            count--;
+            exhausted = true;
+        }
+        if (count < BATCH_SIZE) {
+            exhausted = true;
+        }
+        return count > 0;
+    }
+}
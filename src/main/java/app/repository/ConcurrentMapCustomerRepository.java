@@ -0,0 +1,199 @@
+package app.repository;
+
+import app.domain.Customer;
+import app.domain.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+// Хранилище покупателей в куче на ConcurrentHashMap: ключ - идентификатор покупателя, значение - сам покупатель.
+public class ConcurrentMapCustomerRepository implements CustomerRepository {
+
+    private final Map<Long, Customer> database = new ConcurrentHashMap<>();
+    private final AtomicLong maxId = new AtomicLong();
+    private final NameIndex nameIndex = new NameIndex();
+    private final Partitions<Customer> partitions;
+
+    // products - продукт по идентификатору для корзин покупателей, читаемых из архива
+    public ConcurrentMapCustomerRepository(LongFunction<Product> products) {
+        partitions = Partitions.withCustomerArchive(products);
+    }
+
+    @Override
+    public Customer save(Customer customer) {
+        long id = maxId.incrementAndGet();
+        customer.setId(id);
+        database.put(id, customer);
+        nameIndex.add(customer.getName(), id);
+        partitions.place(id, customer.isActive());
+        return customer;
+    }
+
+    @Override
+    public Customer restore(Customer customer) {
+        long id = customer.getId();
+        Customer existing = unarchive(id);
+        if (existing == null) {
+            existing = database.putIfAbsent(id, customer);
+        }
+        if (existing != null) {
+            update(id, customer.getName());
+            setActive(id, customer.isActive());
+            return existing;
+        }
+        nameIndex.add(customer.getName(), id);
+        maxId.accumulateAndGet(id, Math::max);
+        partitions.place(id, customer.isActive());
+        return customer;
+    }
+
+    @Override
+    public long getMaxId() {
+        return maxId.get();
+    }
+
+    @Override
+    public Customer findById(long id) {
+        Customer customer = database.get(id);
+        return customer != null ? customer : partitions.archived(id);
+    }
+
+    @Override
+    public List<Customer> findByName(String name) {
+        List<Customer> customers = new ArrayList<>();
+        for (Long id : nameIndex.get(name)) {
+            Customer customer = database.get(id);
+            if (customer != null) {
+                customers.add(customer);
+            }
+        }
+        return customers;
+    }
+
+    // computeIfPresent выполняет изменение имени и индекса атомарно для этого ключа.
+    // Архивный покупатель сначала возвращается в основную таблицу.
+    @Override
+    public void update(long id, String newName) {
+        if (!database.containsKey(id)) {
+            unarchive(id);
+        }
+        database.computeIfPresent(id, (key, customer) -> {
+            nameIndex.remove(customer.getName(), id);
+            customer.setName(newName);
+            nameIndex.add(newName, id);
+            return customer;
+        });
+    }
+
+    @Override
+    public void deleteById(long id) {
+        Customer customer = database.remove(id);
+        if (customer != null) {
+            nameIndex.remove(customer.getName(), id);
+        }
+        partitions.unarchive(id);
+        partitions.removed(id);
+    }
+
+    @Override
+    public void setActive(long id, boolean active) {
+        Customer customer = findForUpdate(id);
+        if (customer == null) {
+            return;
+        }
+        synchronized (customer) {
+            customer.setActive(active);
+            if (database.get(id) == customer) {
+                partitions.place(id, active);
+            }
+        }
+    }
+
+    @Override
+    public int countActive() {
+        return partitions.countActive();
+    }
+
+    @Override
+    public long nextActiveId(long fromId) {
+        return partitions.nextActive(fromId);
+    }
+
+    @Override
+    public int nextActiveIds(long fromId, long[] ids) {
+        return partitions.nextActive(fromId, ids);
+    }
+
+    @Override
+    public int nextInactiveIds(long fromId, long[] ids) {
+        return partitions.nextInactive(fromId, ids);
+    }
+
+    @Override
+    public int archiveInactive() {
+        return partitions.archiveStale(this::archive);
+    }
+
+    // Покупатель для изменения: из основной таблицы или возвращённый в неё из архива
+    private Customer findForUpdate(long id) {
+        Customer customer = database.get(id);
+        return customer != null ? customer : unarchive(id);
+    }
+
+    // Вернуть покупателя из архива в основную таблицу и индекс имён (покупатель остаётся неактивным).
+    // Запись архива не меняется, поэтому покупатель изменяется только в основной таблице,
+    // а в архив вернётся через два прохода уплотнения. Возвращает покупателя или null, если его нет в архиве.
+    private Customer unarchive(long id) {
+        Customer customer = partitions.archived(id);
+        if (customer == null) {
+            return null;
+        }
+        synchronized (customer) {
+            if (partitions.archived(id) == customer) {
+                database.putIfAbsent(id, customer);
+                nameIndex.add(customer.getName(), id);
+                partitions.unarchive(id);
+                partitions.place(id, customer.isActive());
+            }
+        }
+        return customer;
+    }
+
+    private boolean archive(long id) {
+        Customer customer = database.get(id);
+        if (customer == null) {
+            return false;
+        }
+        synchronized (customer) {
+            if (customer.isActive() || !partitions.isInactive(id)) {
+                return false;
+            }
+            partitions.archive(id, customer);
+            if (!database.remove(id, customer)) {
+                partitions.unarchive(id);
+                return false;
+            }
+            nameIndex.remove(customer.getName(), id);
+            return true;
+        }
+    }
+
+    // Мап не хранит порядок, поэтому покупатели перебираются по идентификаторам от 1 до максимального
+    // (удалённые из основной таблицы - архивные - перебираются следом)
+    @Override
+    public void forEach(Consumer<Customer> action) {
+        long max = maxId.get();
+        for (long id = 1; id <= max; id++) {
+            Customer customer = database.get(id);
+            if (customer != null) {
+                action.accept(customer);
+            }
+        }
+        partitions.forEachArchived(action);
+    }
+}
@@ -0,0 +1,196 @@
+package app.repository;
+
+import app.domain.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Хранилище продуктов в куче на ConcurrentHashMap: ключ - идентификатор продукта, значение - сам продукт.
+// В отличие от HeapProductRepository не резервирует место под удалённые и ещё не сохранённые
+// идентификаторы, но тратит на каждый продукт отдельный узел мапа и упакованный ключ Long.
+public class ConcurrentMapProductRepository implements ProductRepository {
+
+    private final Map<Long, Product> database = new ConcurrentHashMap<>();
+    private final AtomicLong maxId = new AtomicLong();
+    private final NameIndex titleIndex = new NameIndex();
+    private final Partitions<Product> partitions = Partitions.withProductArchive();
+
+    @Override
+    public Product save(Product product) {
+        long id = maxId.incrementAndGet();
+        product.setId(id);
+        database.put(id, product);
+        titleIndex.add(product.getTitle(), id);
+        partitions.place(id, product.isActive());
+        return product;
+    }
+
+    @Override
+    public long reserveIds(int count) {
+        return maxId.getAndAdd(count) + 1;
+    }
+
+    @Override
+    public Product restore(Product product) {
+        long id = product.getId();
+        Product existing = unarchive(id);
+        if (existing == null) {
+            existing = database.putIfAbsent(id, product);
+        }
+        if (existing != null) {
+            existing.setPrice(product.getPrice());
+            setActive(id, product.isActive());
+            return existing;
+        }
+        titleIndex.add(product.getTitle(), id);
+        maxId.accumulateAndGet(id, Math::max);
+        partitions.place(id, product.isActive());
+        return product;
+    }
+
+    @Override
+    public Product findById(long id) {
+        Product product = database.get(id);
+        return product != null ? product : partitions.archived(id);
+    }
+
+    @Override
+    public List<Product> findByTitle(String title) {
+        List<Product> products = new ArrayList<>();
+        for (Long id : titleIndex.get(title)) {
+            Product product = database.get(id);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    // computeIfPresent выполняет изменение атомарно для этого ключа.
+    // Архивный продукт сначала возвращается в основную таблицу.
+    @Override
+    public void update(long id, double newPrice) {
+        if (!database.containsKey(id)) {
+            unarchive(id);
+        }
+        database.computeIfPresent(id, (key, product) -> {
+            product.setPrice(newPrice);
+            return product;
+        });
+    }
+
+    @Override
+    public void deleteById(long id) {
+        Product product = database.remove(id);
+        if (product != null) {
+            titleIndex.remove(product.getTitle(), id);
+        }
+        partitions.unarchive(id);
+        partitions.removed(id);
+    }
+
+    @Override
+    public void setActive(long id, boolean active) {
+        Product product = findForUpdate(id);
+        if (product == null) {
+            return;
+        }
+        synchronized (product) {
+            product.setActive(active);
+            if (database.get(id) == product) {
+                partitions.place(id, active);
+            }
+        }
+    }
+
+    @Override
+    public int countActive() {
+        return partitions.countActive();
+    }
+
+    @Override
+    public long nextActiveId(long fromId) {
+        return partitions.nextActive(fromId);
+    }
+
+    @Override
+    public int nextActiveIds(long fromId, long[] ids) {
+        return partitions.nextActive(fromId, ids);
+    }
+
+    @Override
+    public int nextInactiveIds(long fromId, long[] ids) {
+        return partitions.nextInactive(fromId, ids);
+    }
+
+    @Override
+    public int archiveInactive() {
+        return partitions.archiveStale(this::archive);
+    }
+
+    // Продукт для изменения: из основной таблицы или возвращённый в неё из архива
+    private Product findForUpdate(long id) {
+        Product product = database.get(id);
+        return product != null ? product : unarchive(id);
+    }
+
+    // Вернуть продукт из архива в основную таблицу и индекс наименований (продукт остаётся неактивным).
+    // Запись архива не меняется, поэтому продукт изменяется только в основной таблице,
+    // а в архив вернётся через два прохода уплотнения. Возвращает продукт или null, если его нет в архиве.
+    private Product unarchive(long id) {
+        Product product = partitions.archived(id);
+        if (product == null) {
+            return null;
+        }
+        synchronized (product) {
+            if (partitions.archived(id) == product) {
+                database.putIfAbsent(id, product);
+                titleIndex.add(product.getTitle(), id);
+                partitions.unarchive(id);
+                partitions.place(id, product.isActive());
+            }
+        }
+        return product;
+    }
+
+    private boolean archive(long id) {
+        Product product = database.get(id);
+        if (product == null) {
+            return false;
+        }
+        synchronized (product) {
+            if (product.isActive() || !partitions.isInactive(id)) {
+                return false;
+            }
+            partitions.archive(id, product);
+            if (!database.remove(id, product)) {
+                partitions.unarchive(id);
+                return false;
+            }
+            titleIndex.remove(product.getTitle(), id);
+            return true;
+        }
+    }
+
+    @Override
+    public long getMaxId() {
+        return maxId.get();
+    }
+
+    // Мап не хранит порядок, поэтому продукты перебираются по идентификаторам от 1 до максимального
+    @Override
+    public void forEach(Consumer<Product> action) {
+        long max = maxId.get();
+        for (long id = 1; id <= max; id++) {
+            Product product = database.get(id);
+            if (product != null) {
+                action.accept(product);
+            }
+        }
+        partitions.forEachArchived(action);
+    }
+}
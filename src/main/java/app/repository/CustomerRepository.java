@@ -1,46 +1,120 @@
 package app.repository;
 
 import app.domain.Customer;
+import app.domain.Product;
+import app.persistence.BinaryCodec;
 
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
-public class CustomerRepository {
+// Хранилище покупателей (storage engine). Реализации:
+// - HeapCustomerRepository - объекты в куче в массиве по идентификатору (по умолчанию);
+// - ConcurrentMapCustomerRepository - объекты в куче в ConcurrentHashMap.
+// Хранилище выбирается при запуске (см. StorageEngines).
+// Все реализации выдают идентификаторы подряд начиная с 1 и безопасны для работы из нескольких потоков.
+// Как и в хранилище продуктов, активные и неактивные покупатели учитываются отдельно (см. Partitions),
+// а состояние покупателя меняется через setActive.
+public interface CustomerRepository {
 
-    private final Map<Long, Customer> database = new HashMap<>();
-    private long maxId;
+    // Сохранить нового покупателя: выдать ему следующий идентификатор
+    Customer save(Customer customer);
 
-    public Customer save(Customer customer) {
-        customer.setId(++maxId);
-        database.put(maxId, customer);
-        return customer;
+    // Поместить в базу покупателя с уже известным идентификатором
+    // (используется при восстановлении базы данных с диска).
+    // Если покупатель с таким идентификатором уже есть, его имя и состояние обновляются.
+    Customer restore(Customer customer);
+
+    // Покупатель по идентификатору или null, если его нет.
+    // Архивный покупатель читается из архива и остаётся в нём (см. ProductRepository.findById).
+    Customer findById(long id);
+
+    // Все покупатели с указанным именем
+    List<Customer> findByName(String name);
+
+    // Изменить имя покупателя
+    void update(long id, String newName);
+
+    void deleteById(long id);
+
+    // Сделать покупателя активным или неактивным и перенести его в соответствующий раздел хранилища
+    void setActive(long id, boolean active);
+
+    // Наименьший идентификатор активного покупателя, не меньший fromId, или 0, если такого нет
+    long nextActiveId(long fromId);
+
+    // Заполнить ids идентификаторами активных покупателей, не меньшими fromId, по возрастанию.
+    // Возвращает количество записанных идентификаторов (0, если таких больше нет).
+    // Для перебора большого количества активных покупателей быстрее, чем nextActiveId для каждого.
+    int nextActiveIds(long fromId, long[] ids);
+
+    // Заполнить ids идентификаторами неактивных покупателей, в том числе архивных, не меньшими fromId,
+    // по возрастанию. Возвращает количество записанных идентификаторов (0, если таких больше нет).
+    int nextInactiveIds(long fromId, long[] ids);
+
+    // Ленивый поток идентификаторов активных покупателей по возрастанию.
+    // В поток попадают только покупатели, существовавшие при его создании.
+    default LongStream activeIds() {
+        return StreamSupport.longStream(new ActiveIdSpliterator(this::nextActiveIds, getMaxId()), false);
     }
 
-    public List<Customer> findAll() {
-        // Как это работает:
-        // 1. Метод values() возвращает нам коллекцию значений мапа (коллекцию покупателей)
-        // 2. Эту коллекцию покупателей мы передаём в конструктор ArrayList.
-        // 3. Создаётся ArrayList из тех же покупателей, которых вернул нам метод values().
-        return new ArrayList<>(database.values());
+    // Перенести в архив покупателей, которые остаются неактивными со времени предыдущего вызова.
+    // Возвращает количество перенесённых покупателей.
+    int archiveInactive();
+
+    // Максимальный выданный идентификатор: все покупатели имеют идентификаторы от 1 до него
+    long getMaxId();
+
+    // Перебрать всех покупателей (и активных, и неактивных), не копируя базу данных:
+    // сначала основную таблицу, затем архив, каждый по возрастанию идентификатора
+    void forEach(Consumer<Customer> action);
+
+    // Все покупатели (в порядке forEach)
+    default List<Customer> findAll() {
+        List<Customer> customers = new ArrayList<>();
+        forEach(customers::add);
+        return customers;
     }
 
-    // Задача этого метода найти покупателя по его ID.
-    public Customer findById(Long id) {
-        return database.get(id);
+    // Количество активных покупателей
+    int countActive();
+
+    // Все активные покупатели по возрастанию идентификатора
+    default List<Customer> findAllActive() {
+        List<Customer> customers = new ArrayList<>(countActive());
+        activeIds().forEach(id -> {
+            Customer customer = findById(id);
+            if (customer != null && customer.isActive()) {
+                customers.add(customer);
+            }
+        });
+        return customers;
     }
 
-    // Задача этого метода изменить у покупателя его имя
-    public void update(Long id, String newName) {
-        Customer customer = findById(id);
-        if (customer != null) {
-            customer.setName(newName);
-        }
+    // Выгрузить всех покупателей (в порядке forEach) вместе с корзинами в channel в двоичном формате BinaryCodec.
+    // Корзины хранят только идентификаторы продуктов, поэтому сами продукты выгружаются отдельно
+    // (ProductRepository.exportTo). Возвращает количество выгруженных покупателей.
+    default long exportTo(WritableByteChannel channel) {
+        return BinaryCodec.write(channel, this::forEach, BinaryCodec::writeCustomer);
     }
 
-    // Удаление по идентификатору
-    public void deleteById(Long id) {
-        database.remove(id);
+    // Загрузить покупателей, выгруженных exportTo, с их идентификаторами, состоянием и корзинами (через restore).
+    // products - продукт по идентификатору для строк корзин; строки с неизвестными продуктами пропускаются.
+    // Как и восстановление с диска, загрузка идёт мимо сервиса покупателей и журнала.
+    // Возвращает количество загруженных покупателей.
+    default long importFrom(ReadableByteChannel channel, LongFunction<Product> products) {
+        return BinaryCodec.read(channel, buffer -> BinaryCodec.readCustomer(buffer, products), customer -> {
+            Customer restored = restore(customer);
+            if (restored != customer) {
+                // Покупатель уже был в хранилище: restore обновил имя и состояние, а корзину заменяем здесь
+                restored.getCart().clear();
+                customer.getCart().forEach(restored.getCart()::setQuantity);
+            }
+        });
     }
 }
@@ -0,0 +1,211 @@
+package app.repository;
+
+import app.domain.Customer;
+import app.domain.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+// Хранилище покупателей в куче (используется по умолчанию).
+public class HeapCustomerRepository implements CustomerRepository {
+
+    // IdTable (покупатель в ячейке с номером, равным идентификатору) и AtomicLong
+    // позволяют работать с базой из нескольких потоков одновременно.
+    private final IdTable<Customer> database = new IdTable<>();
+    private final AtomicLong maxId = new AtomicLong();
+
+    // Вторичный индекс: имя покупателя -> идентификаторы покупателей с этим именем.
+    // Архивные покупатели в индекс не входят.
+    private final NameIndex nameIndex = new NameIndex();
+
+    // Множества активных и неактивных покупателей и архив давно удалённых
+    private final Partitions<Customer> partitions;
+
+    // products - продукт по идентификатору для корзин покупателей, читаемых из архива
+    public HeapCustomerRepository(LongFunction<Product> products) {
+        partitions = Partitions.withCustomerArchive(products);
+    }
+
+    @Override
+    public Customer save(Customer customer) {
+        long id = maxId.incrementAndGet();
+        customer.setId(id);
+        database.put(id, customer);
+        nameIndex.add(customer.getName(), id);
+        partitions.place(id, customer.isActive());
+        return customer;
+    }
+
+    @Override
+    public Customer restore(Customer customer) {
+        long id = customer.getId();
+        Customer existing = unarchive(id);
+        if (existing == null) {
+            existing = database.putIfAbsent(id, customer);
+        }
+        if (existing != null) {
+            update(id, customer.getName());
+            setActive(id, customer.isActive());
+            return existing;
+        }
+        nameIndex.add(customer.getName(), id);
+        maxId.accumulateAndGet(id, Math::max);
+        partitions.place(id, customer.isActive());
+        return customer;
+    }
+
+    @Override
+    public long getMaxId() {
+        return maxId.get();
+    }
+
+    // Задача этого метода найти покупателя по его ID
+    // (в основной таблице или в архиве; чтение не возвращает покупателя из архива в основную таблицу).
+    @Override
+    public Customer findById(long id) {
+        Customer customer = database.get(id);
+        return customer != null ? customer : partitions.archived(id);
+    }
+
+    // Задача этого метода найти всех покупателей с указанным именем.
+    @Override
+    public List<Customer> findByName(String name) {
+        List<Customer> customers = new ArrayList<>();
+        for (long id : nameIndex.get(name)) {
+            Customer customer = database.get(id);
+            if (customer != null) {
+                customers.add(customer);
+            }
+        }
+        return customers;
+    }
+
+    // Задача этого метода изменить у покупателя его имя
+    // Блокировка на покупателе делает изменение имени и индекса атомарным для этого покупателя.
+    // Архивный покупатель сначала возвращается в основную таблицу (findForUpdate).
+    @Override
+    public void update(long id, String newName) {
+        Customer customer = findForUpdate(id);
+        if (customer == null) {
+            return;
+        }
+        synchronized (customer) {
+            boolean indexed = database.get(id) == customer;
+            if (indexed) {
+                nameIndex.remove(customer.getName(), id);
+            }
+            customer.setName(newName);
+            if (indexed) {
+                nameIndex.add(newName, id);
+            }
+        }
+    }
+
+    // Удаление по идентификатору
+    @Override
+    public void deleteById(long id) {
+        Customer customer = database.remove(id);
+        if (customer != null) {
+            nameIndex.remove(customer.getName(), id);
+        }
+        partitions.unarchive(id);
+        partitions.removed(id);
+    }
+
+    // Архивный покупатель при восстановлении возвращается в основную таблицу и индекс имён
+    @Override
+    public void setActive(long id, boolean active) {
+        Customer customer = findForUpdate(id);
+        if (customer == null) {
+            return;
+        }
+        synchronized (customer) {
+            customer.setActive(active);
+            if (database.get(id) == customer) {
+                partitions.place(id, active);
+            }
+        }
+    }
+
+    @Override
+    public int countActive() {
+        return partitions.countActive();
+    }
+
+    @Override
+    public long nextActiveId(long fromId) {
+        return partitions.nextActive(fromId);
+    }
+
+    @Override
+    public int nextActiveIds(long fromId, long[] ids) {
+        return partitions.nextActive(fromId, ids);
+    }
+
+    @Override
+    public int nextInactiveIds(long fromId, long[] ids) {
+        return partitions.nextInactive(fromId, ids);
+    }
+
+    @Override
+    public int archiveInactive() {
+        return partitions.archiveStale(this::archive);
+    }
+
+    // Покупатель для изменения: из основной таблицы или возвращённый в неё из архива
+    private Customer findForUpdate(long id) {
+        Customer customer = database.get(id);
+        return customer != null ? customer : unarchive(id);
+    }
+
+    // Вернуть покупателя из архива в основную таблицу и индекс имён (покупатель остаётся неактивным).
+    // Запись архива не меняется, поэтому покупатель изменяется только в основной таблице,
+    // а в архив вернётся через два прохода уплотнения. Возвращает покупателя или null, если его нет в архиве.
+    private Customer unarchive(long id) {
+        Customer customer = partitions.archived(id);
+        if (customer == null) {
+            return null;
+        }
+        synchronized (customer) {
+            if (partitions.archived(id) == customer) {
+                database.putIfAbsent(id, customer);
+                nameIndex.add(customer.getName(), id);
+                partitions.unarchive(id);
+                partitions.place(id, customer.isActive());
+            }
+        }
+        return customer;
+    }
+
+    // Перенести неактивного покупателя в архив. Блокировка на покупателе не даёт
+    // одновременно восстановить его или изменить имя.
+    private boolean archive(long id) {
+        Customer customer = database.get(id);
+        if (customer == null) {
+            return false;
+        }
+        synchronized (customer) {
+            if (customer.isActive() || !partitions.isInactive(id)) {
+                return false;
+            }
+            partitions.archive(id, customer);
+            if (!database.remove(id, customer)) {
+                // Покупателя успели удалить из хранилища
+                partitions.unarchive(id);
+                return false;
+            }
+            nameIndex.remove(customer.getName(), id);
+            return true;
+        }
+    }
+
+    // Покупатели основной таблицы перебираются по возрастанию идентификатора (в порядке добавления), затем архивные
+    @Override
+    public void forEach(Consumer<Customer> action) {
+        database.forEach(action);
+        partitions.forEachArchived(action);
+    }
+}
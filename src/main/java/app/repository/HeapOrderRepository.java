@@ -0,0 +1,79 @@
+package app.repository;
+
+import app.domain.Order;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Хранилище заказов в куче: заказ лежит в ячейке IdTable с номером, равным его идентификатору.
+public class HeapOrderRepository implements OrderRepository {
+
+    private final IdTable<Order> database = new IdTable<>();
+
+    private final AtomicLong maxId = new AtomicLong();
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    // Вторичный индекс: идентификатор покупателя -> его заказы в порядке оформления.
+    // Заказы только добавляются, поэтому очередь без блокировок подходит лучше списка.
+    private final Map<Long, Queue<Order>> byCustomer = new ConcurrentHashMap<>();
+
+    @Override
+    public Order save(Order order) {
+        long id = maxId.incrementAndGet();
+        order.setId(id);
+        database.put(id, order);
+        index(order);
+        return order;
+    }
+
+    @Override
+    public Order restore(Order order) {
+        long id = order.getId();
+        Order existing = database.putIfAbsent(id, order);
+        if (existing != null) {
+            return existing;
+        }
+        index(order);
+        maxId.accumulateAndGet(id, Math::max);
+        return order;
+    }
+
+    private void index(Order order) {
+        byCustomer.computeIfAbsent(order.getCustomerId(), key -> new ConcurrentLinkedQueue<>()).add(order);
+        count.incrementAndGet();
+    }
+
+    @Override
+    public Order findById(long id) {
+        return database.get(id);
+    }
+
+    @Override
+    public List<Order> findByCustomer(long customerId) {
+        Queue<Order> orders = byCustomer.get(customerId);
+        return orders == null ? List.of() : new ArrayList<>(orders);
+    }
+
+    @Override
+    public int count() {
+        return count.get();
+    }
+
+    @Override
+    public long getMaxId() {
+        return maxId.get();
+    }
+
+    @Override
+    public void forEach(Consumer<Order> action) {
+        database.forEach(action);
+    }
+}
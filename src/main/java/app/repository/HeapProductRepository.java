@@ -0,0 +1,203 @@
+package app.repository;
+
+import app.domain.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Хранилище продуктов в куче (используется по умолчанию).
+// В качестве имитации базы данных здесь выступает массив, разбитый на куски (IdTable).
+public class HeapProductRepository implements ProductRepository {
+
+    // Имитация базы данных: продукт лежит в ячейке с номером, равным его идентификатору.
+    // IdTable находит продукт по идентификатору за O(1) без упаковки идентификатора в Long
+    // и позволяет безопасно работать с базой из нескольких потоков одновременно.
+    private final IdTable<Product> database = new IdTable<>();
+
+    // Поле, которое учитывает, какой сейчас максимальный ID продукта в базе данных.
+    // AtomicLong выдаёт каждому потоку свой уникальный идентификатор без блокировок.
+    private final AtomicLong maxId = new AtomicLong();
+
+    // Вторичный индекс: наименование продукта -> идентификаторы продуктов с этим наименованием.
+    // Архивные продукты в индекс не входят.
+    private final NameIndex titleIndex = new NameIndex();
+
+    // Множества активных и неактивных продуктов и архив давно удалённых (см. Partitions)
+    private final Partitions<Product> partitions = Partitions.withProductArchive();
+
+    // Метод, который сохраняет новый продукт в базе данных (Create)
+    @Override
+    public Product save(Product product){
+        long id = maxId.incrementAndGet();
+        product.setId(id);
+        database.put(id, product);
+        titleIndex.add(product.getTitle(), id);
+        partitions.place(id, product.isActive());
+        return product;
+    }
+
+    // Метод, который резервирует блок из count идентификаторов для пакетного сохранения.
+    @Override
+    public long reserveIds(int count){
+        return maxId.getAndAdd(count) + 1;
+    }
+
+    // Метод, который помещает в базу данных продукт с уже известным идентификатором.
+    // Если продукт с таким идентификатором уже есть, его поля обновляются.
+    @Override
+    public Product restore(Product product){
+        long id = product.getId();
+        Product existing = unarchive(id);
+        if (existing == null) {
+            existing = database.putIfAbsent(id, product);
+        }
+        if (existing != null) {
+            existing.setPrice(product.getPrice());
+            setActive(id, product.isActive());
+            return existing;
+        }
+        titleIndex.add(product.getTitle(), id);
+        maxId.accumulateAndGet(id, Math::max);
+        partitions.place(id, product.isActive());
+        return product;
+    }
+
+    // Метод, который возвращает один конкретный продукт по идентификатору
+    // (из основной таблицы или из архива; чтение не возвращает продукт из архива в основную таблицу)
+    @Override
+    public Product findById(long id){
+        Product product = database.get(id);
+        return product != null ? product : partitions.archived(id);
+    }
+
+    // Метод, который возвращает все продукты с указанным наименованием
+    @Override
+    public List<Product> findByTitle(String title){
+        List<Product> products = new ArrayList<>();
+        for (long id : titleIndex.get(title)) {
+            Product product = database.get(id);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    // Метод, который изменяет цену продукта в базе данных (Update)
+    @Override
+    public void update(long id, double newPrice){
+        Product product = findForUpdate(id);
+        if (product != null) {
+            product.setPrice(newPrice);
+        }
+    }
+
+    // Метод, который удаляет продукт из базы данных (Delete)
+    @Override
+    public void deleteById(long id){
+        Product product = database.remove(id);
+        if (product != null) {
+            titleIndex.remove(product.getTitle(), id);
+        }
+        partitions.unarchive(id);
+        partitions.removed(id);
+    }
+
+    @Override
+    public void setActive(long id, boolean active) {
+        Product product = findForUpdate(id);
+        if (product == null) {
+            return;
+        }
+        synchronized (product) {
+            product.setActive(active);
+            if (database.get(id) == product) {
+                partitions.place(id, active);
+            }
+        }
+    }
+
+    @Override
+    public int countActive() {
+        return partitions.countActive();
+    }
+
+    @Override
+    public long nextActiveId(long fromId) {
+        return partitions.nextActive(fromId);
+    }
+
+    @Override
+    public int nextActiveIds(long fromId, long[] ids) {
+        return partitions.nextActive(fromId, ids);
+    }
+
+    @Override
+    public int nextInactiveIds(long fromId, long[] ids) {
+        return partitions.nextInactive(fromId, ids);
+    }
+
+    @Override
+    public int archiveInactive() {
+        return partitions.archiveStale(this::archive);
+    }
+
+    // Продукт для изменения: из основной таблицы или возвращённый в неё из архива
+    private Product findForUpdate(long id) {
+        Product product = database.get(id);
+        return product != null ? product : unarchive(id);
+    }
+
+    // Вернуть продукт из архива в основную таблицу и индекс наименований (продукт остаётся неактивным).
+    // Запись архива не меняется, поэтому продукт изменяется только в основной таблице,
+    // а в архив вернётся через два прохода уплотнения. Возвращает продукт или null, если его нет в архиве.
+    private Product unarchive(long id) {
+        Product product = partitions.archived(id);
+        if (product == null) {
+            return null;
+        }
+        synchronized (product) {
+            if (partitions.archived(id) == product) {
+                database.putIfAbsent(id, product);
+                titleIndex.add(product.getTitle(), id);
+                partitions.unarchive(id);
+                partitions.place(id, product.isActive());
+            }
+        }
+        return product;
+    }
+
+    // Перенести неактивный продукт в архив. Блокировка на продукте не даёт одновременно восстановить его.
+    private boolean archive(long id) {
+        Product product = database.get(id);
+        if (product == null) {
+            return false;
+        }
+        synchronized (product) {
+            if (product.isActive() || !partitions.isInactive(id)) {
+                return false;
+            }
+            partitions.archive(id, product);
+            if (!database.remove(id, product)) {
+                partitions.unarchive(id);
+                return false;
+            }
+            titleIndex.remove(product.getTitle(), id);
+            return true;
+        }
+    }
+
+    @Override
+    public long getMaxId() {
+        return maxId.get();
+    }
+
+    // Таблица перебирается по возрастанию идентификаторов, затем архив
+    @Override
+    public void forEach(Consumer<Product> action) {
+        database.forEach(action);
+        partitions.forEachArchived(action);
+    }
+}
@@ -0,0 +1,198 @@
+package app.repository;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+/*
+Множество идентификаторов в виде двухуровневой битовой карты.
+Нижний уровень - бит на идентификатор (слово long на 64 идентификатора),
+верхний (summary) - бит на каждое непустое слово нижнего уровня.
+Поиск следующего идентификатора пропускает пустое слово за одно сравнение, а 64 пустых слова
+(4096 идентификаторов) - за одно чтение верхнего уровня, поэтому перебор множества занимает время,
+пропорциональное количеству элементов, а не максимальному идентификатору.
+
+Карта разбита на куски (как IdTable), которые создаются по мере роста идентификаторов и не копируются.
+Изменения идут без блокировок (CAS по словам). Бит верхнего уровня может ненадолго остаться
+установленным для пустого слова - это лишь лишняя проверка при переборе, а снятый бит
+при одновременной записи в слово ставится обратно.
+ */
+class IdBitmap {
+
+    // Идентификаторов в одном куске: 2^18 (4096 слов нижнего уровня и 64 слова верхнего)
+    private static final int CHUNK_BITS = 18;
+    private static final int WORDS_PER_CHUNK = 1 << (CHUNK_BITS - 6);
+
+    private static class Chunk {
+        final AtomicLongArray words = new AtomicLongArray(WORDS_PER_CHUNK);
+        final AtomicLongArray summary = new AtomicLongArray(WORDS_PER_CHUNK / 64);
+    }
+
+    private volatile Chunk[] chunks = new Chunk[16];
+    private final AtomicLong size = new AtomicLong();
+
+    // Добавить идентификатор. Возвращает false, если он уже был в множестве.
+    boolean add(long id) {
+        Chunk chunk = chunk(id);
+        int word = word(id);
+        long bit = 1L << id;
+        long previous = chunk.words.getAndUpdate(word, x -> x | bit);
+        if ((previous & bit) != 0) {
+            return false;
+        }
+        if (previous == 0) {
+            setSummary(chunk, word);
+        }
+        size.incrementAndGet();
+        return true;
+    }
+
+    // Убрать идентификатор. Возвращает false, если его не было в множестве.
+    boolean remove(long id) {
+        Chunk chunk = existingChunk(id);
+        if (chunk == null) {
+            return false;
+        }
+        int word = word(id);
+        long bit = 1L << id;
+        long previous = chunk.words.getAndUpdate(word, x -> x & ~bit);
+        if ((previous & bit) == 0) {
+            return false;
+        }
+        if (previous == bit) {
+            // Слово опустело: снимаем бит верхнего уровня и возвращаем его,
+            // если другой поток успел записать в слово
+            chunk.summary.getAndUpdate(word >>> 6, x -> x & ~(1L << word));
+            if (chunk.words.get(word) != 0) {
+                setSummary(chunk, word);
+            }
+        }
+        size.decrementAndGet();
+        return true;
+    }
+
+    boolean contains(long id) {
+        Chunk chunk = existingChunk(id);
+        return chunk != null && (chunk.words.get(word(id)) & (1L << id)) != 0;
+    }
+
+    long size() {
+        return size.get();
+    }
+
+    // Наименьший идентификатор множества, не меньший fromId, или 0, если такого нет
+    long next(long fromId) {
+        long id = Math.max(fromId, 1);
+        Chunk[] current = chunks;
+        for (long index = id >>> CHUNK_BITS; index < current.length; index++) {
+            Chunk chunk = current[(int) index];
+            if (chunk != null) {
+                long base = index << CHUNK_BITS;
+                int from = index == id >>> CHUNK_BITS ? (int) (id - base) : 0;
+                int found = next(chunk, from);
+                if (found >= 0) {
+                    return base + found;
+                }
+            }
+        }
+        return 0;
+    }
+
+    // Заполнить ids идентификаторами множества, не меньшими fromId, по возрастанию.
+    // Возвращает количество записанных идентификаторов (0, если таких больше нет).
+    // Все идентификаторы одного слова берутся за одно его чтение, поэтому перебор пакетами
+    // быстрее, чем вызов next для каждого идентификатора: там каждый поиск ждёт результата предыдущего.
+    int next(long fromId, long[] ids) {
+        int count = 0;
+        long id = next(fromId);
+        while (id != 0) {
+            long base = id & ~63L;
+            long bits = existingChunk(id).words.get(word(id)) & (-1L << id);
+            while (bits != 0) {
+                ids[count++] = base + Long.numberOfTrailingZeros(bits);
+                if (count == ids.length) {
+                    return count;
+                }
+                bits &= bits - 1;
+            }
+            id = next(base + 64);
+        }
+        return count;
+    }
+
+    // Перебрать идентификаторы по возрастанию
+    void forEach(LongConsumer action) {
+        long[] ids = new long[256];
+        for (int count = next(1, ids); count > 0; count = next(ids[count - 1] + 1, ids)) {
+            for (int i = 0; i < count; i++) {
+                action.accept(ids[i]);
+            }
+        }
+    }
+
+    // Наименьший номер бита внутри куска, не меньший from, или -1
+    private static int next(Chunk chunk, int from) {
+        int word = from >>> 6;
+        long bits = chunk.words.get(word) & (-1L << from);
+        if (bits != 0) {
+            return (word << 6) + Long.numberOfTrailingZeros(bits);
+        }
+        // Следующие непустые слова ищем по верхнему уровню
+        int summaryWord = word >>> 6;
+        long candidates = (word & 63) == 63 ? 0 : chunk.summary.get(summaryWord) & (-1L << (word + 1));
+        while (true) {
+            while (candidates != 0) {
+                int candidate = (summaryWord << 6) + Long.numberOfTrailingZeros(candidates);
+                bits = chunk.words.get(candidate);
+                if (bits != 0) {
+                    return (candidate << 6) + Long.numberOfTrailingZeros(bits);
+                }
+                candidates &= candidates - 1;
+            }
+            if (++summaryWord == WORDS_PER_CHUNK / 64) {
+                return -1;
+            }
+            candidates = chunk.summary.get(summaryWord);
+        }
+    }
+
+    private static void setSummary(Chunk chunk, int word) {
+        chunk.summary.getAndUpdate(word >>> 6, x -> x | (1L << word));
+    }
+
+    // Номер слова нижнего уровня внутри куска
+    private static int word(long id) {
+        return (int) (id >>> 6) & (WORDS_PER_CHUNK - 1);
+    }
+
+    private Chunk existingChunk(long id) {
+        if (id <= 0) {
+            return null;
+        }
+        Chunk[] current = chunks;
+        long index = id >>> CHUNK_BITS;
+        return index < current.length ? current[(int) index] : null;
+    }
+
+    private Chunk chunk(long id) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("Идентификатор должен быть положительным: " + id);
+        }
+        Chunk chunk = existingChunk(id);
+        return chunk != null ? chunk : createChunk((int) (id >>> CHUNK_BITS));
+    }
+
+    // Новый кусок публикуется записью в volatile-поле chunks
+    private synchronized Chunk createChunk(int index) {
+        Chunk[] current = chunks;
+        if (index >= current.length) {
+            current = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+        }
+        if (current[index] == null) {
+            current[index] = new Chunk();
+        }
+        chunks = current;
+        return current[index];
+    }
+}
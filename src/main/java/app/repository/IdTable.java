@@ -0,0 +1,105 @@
+package app.repository;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/*
+Таблица объектов по идентификатору.
+Идентификаторы выдаются подряд начиная с 1, поэтому вместо хэш-таблицы объект лежит
+в ячейке массива с номером, равным идентификатору. Поиск - это чтение одной ячейки:
+идентификатор не упаковывается в Long, а на каждую запись не создаётся отдельный узел, как в ConcurrentHashMap.
+
+Массив разбит на куски (chunk) по CHUNK_SIZE ячеек. Куски создаются по мере роста идентификаторов
+и никогда не копируются, поэтому чтение и запись ячеек идут без блокировок,
+а блокировка берётся только при создании нового куска.
+ */
+class IdTable<T> {
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private volatile AtomicReferenceArray<T>[] chunks = new AtomicReferenceArray[16];
+
+    // Объект с идентификатором id или null, если его нет
+    T get(long id) {
+        AtomicReferenceArray<T> chunk = existingChunk(id);
+        return chunk == null ? null : chunk.get(slot(id));
+    }
+
+    // Положить объект, если ячейка пуста. Возвращает объект, который уже лежал в ячейке, или null.
+    T putIfAbsent(long id, T value) {
+        return chunk(id).compareAndExchange(slot(id), null, value);
+    }
+
+    void put(long id, T value) {
+        chunk(id).set(slot(id), value);
+    }
+
+    // Заменить объект, только если в ячейке лежит именно expected
+    boolean replace(long id, T expected, T value) {
+        return chunk(id).compareAndSet(slot(id), expected, value);
+    }
+
+    // Убрать объект, только если в ячейке лежит именно expected
+    boolean remove(long id, T expected) {
+        AtomicReferenceArray<T> chunk = existingChunk(id);
+        return chunk != null && chunk.compareAndSet(slot(id), expected, null);
+    }
+
+    // Убрать объект и вернуть его (null, если ячейка была пуста)
+    T remove(long id) {
+        AtomicReferenceArray<T> chunk = existingChunk(id);
+        return chunk == null ? null : chunk.getAndSet(slot(id), null);
+    }
+
+    // Перебрать объекты по возрастанию идентификатора
+    void forEach(Consumer<? super T> action) {
+        for (AtomicReferenceArray<T> chunk : chunks) {
+            if (chunk == null) {
+                continue;
+            }
+            for (int i = 0; i < CHUNK_SIZE; i++) {
+                T value = chunk.get(i);
+                if (value != null) {
+                    action.accept(value);
+                }
+            }
+        }
+    }
+
+    private AtomicReferenceArray<T> existingChunk(long id) {
+        if (id <= 0) {
+            return null;
+        }
+        AtomicReferenceArray<T>[] current = chunks;
+        long index = id >>> CHUNK_BITS;
+        return index < current.length ? current[(int) index] : null;
+    }
+
+    private AtomicReferenceArray<T> chunk(long id) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("Идентификатор должен быть положительным: " + id);
+        }
+        AtomicReferenceArray<T> chunk = existingChunk(id);
+        return chunk != null ? chunk : createChunk((int) (id >>> CHUNK_BITS));
+    }
+
+    // Новый кусок публикуется записью в volatile-поле chunks
+    private synchronized AtomicReferenceArray<T> createChunk(int index) {
+        AtomicReferenceArray<T>[] current = chunks;
+        if (index >= current.length) {
+            current = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+        }
+        if (current[index] == null) {
+            current[index] = new AtomicReferenceArray<>(CHUNK_SIZE);
+        }
+        chunks = current;
+        return current[index];
+    }
+
+    private static int slot(long id) {
+        return (int) id & (CHUNK_SIZE - 1);
+    }
+}
@@ -0,0 +1,65 @@
+package app.repository;
+
+import app.domain.Product;
+
+/*
+Продукт-представление (view) над колонками MappedProductColumns.
+Объект не хранит данные сам: геттеры читают их из колонок, а сеттеры записывают в колонки.
+ */
+class MappedProduct extends Product {
+
+    private final MappedProductColumns columns;
+    private final long id;
+
+    MappedProduct(MappedProductColumns columns, long id) {
+        super(null, 0.0);
+        this.columns = columns;
+        this.id = id;
+        super.setId(id);
+    }
+
+    @Override
+    public String getTitle() {
+        return columns.title(id);
+    }
+
+    @Override
+    public void setTitle(String title) {
+        throw new UnsupportedOperationException("Наименование сохранённого продукта изменить нельзя");
+    }
+
+    @Override
+    public void setId(long id) {
+        throw new UnsupportedOperationException("Идентификатор сохранённого продукта изменить нельзя");
+    }
+
+    @Override
+    public double getPrice() {
+        return columns.price(id);
+    }
+
+    @Override
+    public void setPrice(double price) {
+        columns.setPrice(id, price);
+    }
+
+    @Override
+    public boolean isActive() {
+        return columns.isActive(id);
+    }
+
+    @Override
+    public void setActive(boolean active) {
+        columns.setActive(id, active);
+    }
+
+    @Override
+    public long getVersion() {
+        return columns.version(id);
+    }
+
+    @Override
+    public void setVersion(long version) {
+        columns.setVersion(id, version);
+    }
+}
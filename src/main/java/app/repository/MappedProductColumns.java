@@ -0,0 +1,247 @@
+package app.repository;
+
+import app.exceptions.ProductSaveException;
+import app.exceptions.StorageException;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+Колоночное хранилище продуктов в файлах, отображённых в память (memory-mapped files).
+Данные продукта с идентификатором id лежат в строке id - 1 каждой колонки:
+- prices - цена (8 байт);
+- flags - состояние: продукта нет / неактивен / активен (1 байт);
+- titleOffsets - смещение наименования в области наименований (8 байт);
+- titles - наименования подряд в виде [длина (2 байта)][байты UTF-8];
+- versions - версия продукта (8 байт).
+Сами данные лежат вне кучи (heap), поэтому каталог может быть больше доступной памяти JVM,
+а операционная система сама подгружает нужные страницы файлов.
+
+Строку публикует её флаг: он записывается после остальных колонок через барьер release,
+а читается с барьером acquire, поэтому читатель без блокировки, увидевший флаг строки,
+видит и её наименование, цену и версию. Флаг изменяют только под монитором колонок.
+ */
+class MappedProductColumns {
+
+    // Колонки отображаются в память кусками (chunk) по RECORDS_PER_CHUNK строк
+    private static final int RECORDS_PER_CHUNK = 1 << 20;
+    private static final int TITLE_CHUNK_BYTES = 1 << 26;
+    private static final int MAX_TITLE_BYTES = 0xFFFF;
+
+    private static final byte ABSENT = 0;
+    private static final byte INACTIVE = 1;
+    private static final byte ACTIVE = 2;
+
+    private final Column prices;
+    private final Column flags;
+    private final Column titleOffsets;
+    private final Column titles;
+    private final Column versions;
+
+    // Служебный файл: количество строк и конец области наименований
+    private final MappedByteBuffer meta;
+
+    private volatile long size;
+    private long titleEnd;
+
+    MappedProductColumns(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        prices = new Column(directory.resolve("prices.col"), (long) RECORDS_PER_CHUNK * Double.BYTES);
+        flags = new Column(directory.resolve("flags.col"), RECORDS_PER_CHUNK);
+        titleOffsets = new Column(directory.resolve("title-offsets.col"), (long) RECORDS_PER_CHUNK * Long.BYTES);
+        titles = new Column(directory.resolve("titles.col"), TITLE_CHUNK_BYTES);
+        versions = new Column(directory.resolve("versions.col"), (long) RECORDS_PER_CHUNK * Long.BYTES);
+        try (FileChannel channel = FileChannel.open(directory.resolve("meta.col"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            meta = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2 * Long.BYTES);
+        }
+        size = meta.getLong(0);
+        titleEnd = meta.getLong(Long.BYTES);
+    }
+
+    // Количество строк (равно максимальному идентификатору)
+    long size() {
+        return size;
+    }
+
+    // Зарезервировать count строк и вернуть идентификатор первой из них.
+    // Пока строки не заполнены методом put, продуктов в них нет.
+    synchronized long reserve(int count) {
+        long first = size + 1;
+        size += count;
+        meta.putLong(0, size);
+        return first;
+    }
+
+    // Записать продукт в строку с указанным идентификатором
+    synchronized void put(long id, String title, double price, boolean active, long version) {
+        long row = id - 1;
+        titleOffsets.chunk(row, Long.BYTES).putLong(offset(row, Long.BYTES), writeTitle(title));
+        prices.chunk(row, Double.BYTES).putDouble(offset(row, Double.BYTES), price);
+        versions.chunk(row, Long.BYTES).putLong(offset(row, Long.BYTES), version);
+        VarHandle.releaseFence();
+        flags.chunk(row, 1).put(offset(row, 1), active ? ACTIVE : INACTIVE);
+        if (id > size) {
+            size = id;
+            meta.putLong(0, id);
+        }
+    }
+
+    boolean exists(long id) {
+        return flag(id) != ABSENT;
+    }
+
+    boolean isActive(long id) {
+        return flag(id) == ACTIVE;
+    }
+
+    synchronized void setActive(long id, boolean active) {
+        if (exists(id)) {
+            long row = id - 1;
+            flags.chunk(row, 1).put(offset(row, 1), active ? ACTIVE : INACTIVE);
+        }
+    }
+
+    synchronized void remove(long id) {
+        if (exists(id)) {
+            long row = id - 1;
+            flags.chunk(row, 1).put(offset(row, 1), ABSENT);
+        }
+    }
+
+    double price(long id) {
+        long row = id - 1;
+        return prices.chunk(row, Double.BYTES).getDouble(offset(row, Double.BYTES));
+    }
+
+    void setPrice(long id, double price) {
+        long row = id - 1;
+        prices.chunk(row, Double.BYTES).putDouble(offset(row, Double.BYTES), price);
+    }
+
+    long version(long id) {
+        long row = id - 1;
+        return versions.chunk(row, Long.BYTES).getLong(offset(row, Long.BYTES));
+    }
+
+    void setVersion(long id, long version) {
+        long row = id - 1;
+        versions.chunk(row, Long.BYTES).putLong(offset(row, Long.BYTES), version);
+    }
+
+    String title(long id) {
+        long row = id - 1;
+        long position = titleOffsets.chunk(row, Long.BYTES).getLong(offset(row, Long.BYTES));
+        ByteBuffer chunk = titles.chunkAt(position);
+        int start = (int) (position % TITLE_CHUNK_BYTES);
+        int length = Short.toUnsignedInt(chunk.getShort(start));
+        byte[] bytes = new byte[length];
+        chunk.get(start + Short.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Сравнить наименование продукта с заданным, не создавая строку
+    boolean titleEquals(long id, byte[] title) {
+        long row = id - 1;
+        long position = titleOffsets.chunk(row, Long.BYTES).getLong(offset(row, Long.BYTES));
+        ByteBuffer chunk = titles.chunkAt(position);
+        int start = (int) (position % TITLE_CHUNK_BYTES);
+        if (Short.toUnsignedInt(chunk.getShort(start)) != title.length) {
+            return false;
+        }
+        for (int i = 0; i < title.length; i++) {
+            if (chunk.get(start + Short.BYTES + i) != title[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Наименование не пересекает границу куска: если не помещается, начинаем со следующего
+    private long writeTitle(String title) {
+        byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_TITLE_BYTES) {
+            throw new ProductSaveException("Наименование продукта слишком длинное!");
+        }
+        int recordBytes = Short.BYTES + bytes.length;
+        if (titleEnd % TITLE_CHUNK_BYTES + recordBytes > TITLE_CHUNK_BYTES) {
+            titleEnd = (titleEnd / TITLE_CHUNK_BYTES + 1) * TITLE_CHUNK_BYTES;
+        }
+        long position = titleEnd;
+        ByteBuffer chunk = titles.chunkAt(position);
+        int start = (int) (position % TITLE_CHUNK_BYTES);
+        chunk.putShort(start, (short) bytes.length);
+        chunk.put(start + Short.BYTES, bytes);
+        titleEnd += recordBytes;
+        meta.putLong(Long.BYTES, titleEnd);
+        return position;
+    }
+
+    private byte flag(long id) {
+        if (id < 1 || id > size) {
+            return ABSENT;
+        }
+        long row = id - 1;
+        byte flag = flags.chunk(row, 1).get(offset(row, 1));
+        VarHandle.acquireFence();
+        return flag;
+    }
+
+    private static int offset(long row, int recordBytes) {
+        return (int) (row % RECORDS_PER_CHUNK) * recordBytes;
+    }
+
+    // Файл колонки, отображённый в память кусками одинакового размера
+    private static class Column {
+
+        private final FileChannel channel;
+        private final long chunkBytes;
+        private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+        Column(Path file, long chunkBytes) throws IOException {
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.chunkBytes = chunkBytes;
+        }
+
+        // Кусок, в котором лежит строка row
+        MappedByteBuffer chunk(long row, int recordBytes) {
+            return chunkAt(row * recordBytes);
+        }
+
+        // Кусок, в котором лежит байт с позицией position
+        MappedByteBuffer chunkAt(long position) {
+            int index = (int) (position / chunkBytes);
+            MappedByteBuffer[] current = chunks;
+            if (index < current.length) {
+                return current[index];
+            }
+            return map(index);
+        }
+
+        private synchronized MappedByteBuffer map(int index) {
+            MappedByteBuffer[] current = chunks;
+            if (index < current.length) {
+                return current[index];
+            }
+            MappedByteBuffer[] grown = Arrays.copyOf(current, index + 1);
+            try {
+                for (int i = current.length; i <= index; i++) {
+                    grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * chunkBytes, chunkBytes);
+                }
+            } catch (IOException e) {
+                throw new StorageException("Не удалось отобразить файл колонки в память", e);
+            }
+            chunks = grown;
+            return grown[index];
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package app.repository;
+
+import app.domain.Product;
+import app.exceptions.StorageException;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+Репозиторий продуктов, который хранит данные не в объектах, а в колонках
+файлов, отображённых в память (см. MappedProductColumns).
+Объекты Product создаются только тогда, когда их запрашивают, и являются
+представлениями над колонками: изменения через сеттеры сразу попадают в файлы.
+
+Пока на представление продукта кто-то ссылается (например, корзина покупателя),
+репозиторий возвращает именно его, поэтому блокировки сервисов на объекте продукта
+продолжают работать. Представления, на которые никто не ссылается, собирает GC.
+Новая строка публикуется под блокировкой на своём представлении (см. save и restore с onSaved),
+поэтому изменения продукта не опережают запись о его сохранении.
+
+Множества активных и неактивных продуктов (см. Partitions) хранятся в куче и заново
+собираются по колонке состояний при открытии. Архив давно удалённых продуктов здесь не ведётся:
+строки в колонках не занимают память кучи.
+ */
+public class MappedProductRepository implements ProductRepository {
+
+    private final MappedProductColumns columns;
+
+    // Уже созданные представления продуктов (слабые ссылки, которые не мешают GC)
+    private final IdTable<ViewReference> views = new IdTable<>();
+    private final ReferenceQueue<MappedProduct> collected = new ReferenceQueue<>();
+
+    private final Partitions<Product> partitions = new Partitions<>();
+
+    public MappedProductRepository(Path directory) {
+        try {
+            columns = new MappedProductColumns(directory);
+        } catch (IOException e) {
+            throw new StorageException("Не удалось открыть колонки продуктов в папке " + directory, e);
+        }
+        long size = columns.size();
+        for (long id = 1; id <= size; id++) {
+            if (columns.exists(id)) {
+                partitions.place(id, columns.isActive(id));
+            }
+        }
+    }
+
+    @Override
+    public Product save(Product product) {
+        return save(product, saved -> { });
+    }
+
+    @Override
+    public Product save(Product product, Consumer<Product> onSaved) {
+        long id = columns.reserve(1);
+        Product saved = publish(id, product, onSaved);
+        product.setId(id);
+        return saved;
+    }
+
+    @Override
+    public long reserveIds(int count) {
+        return columns.reserve(count);
+    }
+
+    @Override
+    public Product restore(Product product) {
+        return restore(product, saved -> { });
+    }
+
+    @Override
+    public Product restore(Product product, Consumer<Product> onSaved) {
+        long id = product.getId();
+        if (!columns.exists(id)) {
+            return publish(id, product, onSaved);
+        }
+        Product existing = view(id);
+        synchronized (existing) {
+            columns.setPrice(id, product.getPrice());
+            columns.setActive(id, product.isActive());
+            partitions.place(id, product.isActive());
+            onSaved.accept(existing);
+        }
+        return existing;
+    }
+
+    // Заполнить пустую строку и опубликовать её под блокировкой на её представлении.
+    // Поток, который увидит опубликованную строку, получит это же представление
+    // (на него ссылается этот метод) и будет ждать блокировки, пока не выполнится onSaved.
+    private Product publish(long id, Product product, Consumer<Product> onSaved) {
+        Product view = view(id);
+        synchronized (view) {
+            columns.put(id, product.getTitle(), product.getPrice(), product.isActive(), product.getVersion());
+            partitions.place(id, product.isActive());
+            onSaved.accept(view);
+        }
+        return view;
+    }
+
+    @Override
+    public void forEach(Consumer<Product> action) {
+        long size = columns.size();
+        for (long id = 1; id <= size; id++) {
+            if (columns.exists(id)) {
+                action.accept(view(id));
+            }
+        }
+    }
+
+    @Override
+    public Product findById(long id) {
+        if (!columns.exists(id)) {
+            return null;
+        }
+        return view(id);
+    }
+
+    // Поиск по наименованию сравнивает байты в колонке наименований и не создаёт строк.
+    // Отдельный индекс наименований здесь не ведётся, чтобы не занимать память кучи.
+    @Override
+    public List<Product> findByTitle(String title) {
+        List<Product> products = new ArrayList<>();
+        byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+        long size = columns.size();
+        for (long id = 1; id <= size; id++) {
+            if (columns.exists(id) && columns.titleEquals(id, bytes)) {
+                products.add(view(id));
+            }
+        }
+        return products;
+    }
+
+    @Override
+    public void update(long id, double newPrice) {
+        if (columns.exists(id)) {
+            columns.setPrice(id, newPrice);
+        }
+    }
+
+    @Override
+    public void deleteById(long id) {
+        columns.remove(id);
+        views.remove(id);
+        partitions.removed(id);
+    }
+
+    @Override
+    public void setActive(long id, boolean active) {
+        if (columns.exists(id)) {
+            columns.setActive(id, active);
+            partitions.place(id, active);
+        }
+    }
+
+    @Override
+    public int countActive() {
+        return partitions.countActive();
+    }
+
+    @Override
+    public long nextActiveId(long fromId) {
+        return partitions.nextActive(fromId);
+    }
+
+    @Override
+    public int nextActiveIds(long fromId, long[] ids) {
+        return partitions.nextActive(fromId, ids);
+    }
+
+    @Override
+    public int nextInactiveIds(long fromId, long[] ids) {
+        return partitions.nextInactive(fromId, ids);
+    }
+
+    @Override
+    public long getMaxId() {
+        return columns.size();
+    }
+
+    // Цены читаются прямо из колонки, объекты продуктов не создаются
+    @Override
+    public void forEachActive(ActiveProductConsumer consumer) {
+        activeIds().forEach(id -> {
+            if (columns.isActive(id)) {
+                consumer.accept(id, columns.price(id));
+            }
+        });
+    }
+
+    // Вернуть представление продукта: уже существующее или новое
+    private Product view(long id) {
+        removeCollectedViews();
+        while (true) {
+            ViewReference reference = views.get(id);
+            MappedProduct product = reference == null ? null : reference.get();
+            if (product != null) {
+                return product;
+            }
+            MappedProduct created = new MappedProduct(columns, id);
+            ViewReference createdReference = new ViewReference(id, created, collected);
+            boolean stored = reference == null
+                    ? views.putIfAbsent(id, createdReference) == null
+                    : views.replace(id, reference, createdReference);
+            if (stored) {
+                return created;
+            }
+        }
+    }
+
+    // Убрать из мапа ссылки на представления, которые уже собрал GC
+    private void removeCollectedViews() {
+        Reference<? extends MappedProduct> reference;
+        while ((reference = collected.poll()) != null) {
+            ViewReference view = (ViewReference) reference;
+            views.remove(view.id, view);
+        }
+    }
+
+    private static class ViewReference extends WeakReference<MappedProduct> {
+        private final long id;
+
+        ViewReference(long id, MappedProduct product, ReferenceQueue<MappedProduct> queue) {
+            super(product, queue);
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package app.repository;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Вторичный индекс: наименование продукта (или имя покупателя) -> идентификаторы с этим наименованием.
+Позволяет найти сущности по наименованию, не перебирая всю базу данных.
+Используется хранилищами, которые держат данные в куче.
+ */
+class NameIndex {
+
+    private final Map<String, Set<Long>> ids = new ConcurrentHashMap<>();
+
+    void add(String name, long id) {
+        ids.computeIfAbsent(name, key -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    void remove(String name, long id) {
+        ids.computeIfPresent(name, (key, set) -> {
+            set.remove(id);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    // Идентификаторы с указанным наименованием (пустое множество, если их нет)
+    Set<Long> get(String name) {
+        Set<Long> set = ids.get(name);
+        return set == null ? Set.of() : set;
+    }
+}
@@ -0,0 +1,35 @@
+package app.repository;
+
+import app.domain.Order;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+// Хранилище заказов. Реализация одна - HeapOrderRepository (см. StorageEngines).
+// Заказ не изменяется после сохранения, поэтому методов изменения и удаления нет.
+// Реализации выдают идентификаторы подряд начиная с 1 и безопасны для работы из нескольких потоков.
+public interface OrderRepository {
+
+    // Сохранить новый заказ: выдать ему следующий идентификатор
+    Order save(Order order);
+
+    // Поместить в базу заказ с уже известным идентификатором
+    // (используется при восстановлении базы данных с диска).
+    // Если заказ с таким идентификатором уже есть, возвращается существующий заказ.
+    Order restore(Order order);
+
+    // Заказ по идентификатору или null, если его нет
+    Order findById(long id);
+
+    // Все заказы покупателя в порядке оформления
+    List<Order> findByCustomer(long customerId);
+
+    // Количество заказов
+    int count();
+
+    // Максимальный выданный идентификатор
+    long getMaxId();
+
+    // Перебрать все заказы по возрастанию идентификатора, не копируя базу данных
+    void forEach(Consumer<Order> action);
+}
@@ -0,0 +1,181 @@
+package app.repository;
+
+import app.domain.Customer;
+import app.domain.Product;
+import app.persistence.BinaryCodec;
+
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+
+/*
+Разделы хранилища по состоянию строк.
+Удаление в сервисах только снимает признак активности, поэтому на долго работающем узле
+большая часть строк - удалённые. Хранилище отмечает каждую строку в одном из двух множеств
+(активные и неактивные, см. IdBitmap) и переносит её между ними при удалении и восстановлении,
+поэтому перебор, подсчёт и постраничное чтение активных строк занимают время,
+пропорциональное количеству активных строк, а не всех когда-либо созданных.
+
+Строки, которые остаются неактивными в течение двух проходов уплотнения подряд (archiveStale),
+переносятся в архив: они убираются из основной таблицы и индекса наименований хранилища,
+но по-прежнему находятся по идентификатору (чтение не возвращает строку в основную таблицу)
+и восстанавливаются (unarchive).
+Архив хранит строки в двоичном виде (см. RowArchive): запись продукта занимает несколько десятков байт
+вместо объекта продукта с наименованием и узла мапа.
+ */
+class Partitions<T> {
+
+    private final IdBitmap active = new IdBitmap();
+    private final IdBitmap inactive = new IdBitmap();
+
+    // Неактивные строки, которые уже застал предыдущий проход уплотнения
+    private final IdBitmap stale = new IdBitmap();
+
+    // Архив давно удалённых строк (null, если хранилище архив не ведёт) и идентификаторы архивных строк
+    private final RowArchive<T> archive;
+    private final IdBitmap archivedIds = new IdBitmap();
+
+    // Разделы без архива
+    Partitions() {
+        archive = null;
+    }
+
+    // Разделы с архивом: строки кодируются encoder и читаются из архива decoder
+    Partitions(BinaryCodec.Encoder<T> encoder, BinaryCodec.Decoder<T> decoder) {
+        archive = new RowArchive<>(encoder, decoder);
+    }
+
+    // Разделы продуктов с архивом. Запись архива - запись BinaryCodec и версия продукта.
+    static Partitions<Product> withProductArchive() {
+        return new Partitions<>((buffer, product) -> {
+            BinaryCodec.writeProduct(buffer, product);
+            BinaryCodec.writeVarLong(buffer, product.getVersion());
+        }, buffer -> {
+            Product product = BinaryCodec.readProduct(buffer);
+            product.setVersion(BinaryCodec.readVarLong(buffer));
+            return product;
+        });
+    }
+
+    // Разделы покупателей с архивом. Корзина хранится идентификаторами продуктов,
+    // products находит продукт по идентификатору при чтении покупателя из архива.
+    static Partitions<Customer> withCustomerArchive(LongFunction<Product> products) {
+        return new Partitions<>((buffer, customer) -> {
+            BinaryCodec.writeCustomer(buffer, customer);
+            BinaryCodec.writeVarLong(buffer, customer.getVersion());
+        }, buffer -> {
+            Customer customer = BinaryCodec.readCustomer(buffer, products);
+            customer.setVersion(BinaryCodec.readVarLong(buffer));
+            return customer;
+        });
+    }
+
+    // Отметить строку основной таблицы как активную или неактивную
+    void place(long id, boolean isActive) {
+        if (isActive) {
+            active.add(id);
+            inactive.remove(id);
+        } else {
+            inactive.add(id);
+            active.remove(id);
+        }
+        // Строка, которую только что удалили, попадёт в архив не раньше чем через два прохода уплотнения
+        stale.remove(id);
+    }
+
+    // Строка удалена из хранилища совсем
+    void removed(long id) {
+        active.remove(id);
+        inactive.remove(id);
+        stale.remove(id);
+    }
+
+    int countActive() {
+        return (int) active.size();
+    }
+
+    // Наименьший идентификатор активной строки, не меньший fromId, или 0, если такой нет
+    long nextActive(long fromId) {
+        return active.next(fromId);
+    }
+
+    // Заполнить ids идентификаторами активных строк, не меньшими fromId (см. IdBitmap.next)
+    int nextActive(long fromId, long[] ids) {
+        return active.next(fromId, ids);
+    }
+
+    // Заполнить ids идентификаторами неактивных строк, в том числе архивных, не меньшими fromId,
+    // по возрастанию (см. IdBitmap.next). Используется массовым восстановлением.
+    int nextInactive(long fromId, long[] ids) {
+        if (archivedIds.size() == 0) {
+            return inactive.next(fromId, ids);
+        }
+        int count = 0;
+        long table = inactive.next(fromId);
+        long archived = archivedIds.next(fromId);
+        while (count < ids.length && (table != 0 || archived != 0)) {
+            long id = table == 0 ? archived : archived == 0 ? table : Math.min(table, archived);
+            ids[count++] = id;
+            // Пока строку переносят в архив, она может оказаться в обоих множествах
+            if (table == id) {
+                table = inactive.next(id + 1);
+            }
+            if (archived == id) {
+                archived = archivedIds.next(id + 1);
+            }
+        }
+        return count;
+    }
+
+    // Архивная строка или null, если строка с этим идентификатором не в архиве.
+    // Строка декодируется из архива и остаётся в нём.
+    T archived(long id) {
+        return archive == null || archive.isEmpty() ? null : archive.get(id);
+    }
+
+    // Перенести неактивную строку в архив. Вызывается хранилищем под блокировкой на строке
+    // до того, как строка убрана из основной таблицы, поэтому она всё время находится по идентификатору.
+    void archive(long id, T row) {
+        archive.put(id, row);
+        archivedIds.add(id);
+        inactive.remove(id);
+        stale.remove(id);
+    }
+
+    // Убрать строку из архива (после того, как хранилище вернуло её в основную таблицу или удалило)
+    T unarchive(long id) {
+        if (archive == null || archive.isEmpty()) {
+            return null;
+        }
+        T row = archive.remove(id);
+        archivedIds.remove(id);
+        return row;
+    }
+
+    // Перебрать архивные строки по возрастанию идентификатора
+    void forEachArchived(Consumer<? super T> action) {
+        if (archive != null) {
+            archive.forEach(action);
+        }
+    }
+
+    // Проход уплотнения: неактивные строки, которые застал ещё предыдущий проход, передаются в archiver
+    // (он возвращает true, если перенёс строку в архив), а остальные отмечаются для следующего прохода.
+    // Возвращает количество перенесённых в архив строк.
+    int archiveStale(LongPredicate archiver) {
+        int[] archived = new int[1];
+        inactive.forEach(id -> {
+            if (!stale.contains(id)) {
+                stale.add(id);
+            } else if (archiver.test(id)) {
+                archived[0]++;
+            }
+        });
+        return archived[0];
+    }
+
+    // Строка всё ещё неактивна и находится в основной таблице
+    boolean isInactive(long id) {
+        return inactive.contains(id);
+    }
+}
@@ -0,0 +1,395 @@
+package app.repository;
+
+import java.util.Arrays;
+
+/*
+История цен продуктов. Хранилище (ProductRepository) держит только текущую цену, а история помнит
+для каждого продукта, какими были цена и активность начиная с каждого момента изменения, чтобы отвечать
+на вопросы "сколько стоил продукт в момент t" и "сколько стоил каталог в момент t".
+
+Записи продукта хранятся сжато в одном массиве байтов. Запись - разность времени с предыдущей записью
+(в миллисекундах) и разность цены с предыдущей записью в сотых долях (копейках) вместе с признаком активности,
+обе в формате переменной длины (varint), поэтому обычное изменение цены занимает 4-7 байт.
+Цена, которая не выражается точно в сотых долях, записывается целиком (ещё 8 байт).
+Первая запись продукта - разности с нулевым временем и нулевой ценой.
+Состояние после каждой CHECKPOINT-й записи дублируется в массиве контрольных точек (время, цена,
+смещение следующей записи), поэтому поиск состояния на момент t - двоичный поиск по контрольным точкам
+и декодирование не больше CHECKPOINT записей, а не всей истории продукта.
+
+Память ограничена: когда у продукта набирается больше limit записей, старшая половина его истории
+отбрасывается, и о ценах раньше первой оставшейся записи история уже не знает.
+Время записей продукта не убывает: запись с более ранним временем (например, если часы перевели назад)
+получает время предыдущей записи.
+Продукты лежат в таблице по идентификатору (как в HeapProductRepository), история каждого продукта
+читается и пишется под её собственной блокировкой.
+ */
+public class PriceHistory {
+
+    // Через сколько записей сохраняется контрольная точка
+    private static final int CHECKPOINT = 8;
+    // Наибольший размер одной записи: время (10 байт), цена с признаками (10 байт), цена целиком (8 байт)
+    private static final int MAX_RECORD_SIZE = 28;
+    // Признаки в младших битах заголовка записи
+    private static final int ACTIVE = 1;
+    private static final int RAW = 2;
+    // Цены по модулю до 2^52 сотых долей записываются разностью (и заголовок помещается в long)
+    private static final long MAX_CENTS = 1L << 52;
+
+    // Получатель записей истории продукта
+    public interface RecordConsumer {
+        void accept(long time, double price, boolean active);
+    }
+
+    private final boolean enabled;
+    private final int limit;
+    private final IdTable<Series> series = new IdTable<>();
+
+    // enabled - вести ли историю (выключенная история ничего не записывает);
+    // limit - сколько записей хранится для одного продукта (не меньше 2 * CHECKPOINT).
+    public PriceHistory(boolean enabled, int limit) {
+        if (limit < 2 * CHECKPOINT) {
+            throw new IllegalArgumentException("В истории продукта должно помещаться не меньше "
+                    + 2 * CHECKPOINT + " записей: " + limit);
+        }
+        this.enabled = enabled;
+        this.limit = limit;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Записать, что с момента time (миллисекунды от начала эпохи) продукт id стоит price и активен (active).
+    // Если цена и активность не изменились, запись не добавляется.
+    public void record(long id, long time, double price, boolean active) {
+        if (!enabled) {
+            return;
+        }
+        Series history = series.get(id);
+        if (history == null) {
+            Series created = new Series();
+            history = series.putIfAbsent(id, created);
+            if (history == null) {
+                history = created;
+            }
+        }
+        history.append(time, price, active, limit);
+    }
+
+    // Цена продукта id на момент time (независимо от того, был ли он активен)
+    // или NaN, если история продукта начинается позже.
+    public double priceAt(long id, long time) {
+        Series history = series.get(id);
+        return history == null ? Double.NaN : history.stateAt(time, false);
+    }
+
+    // Передать в consumer идентификатор и цену каждого продукта с идентификатором от fromId (включительно)
+    // до toId (не включительно), который был активен на момент time, по возрастанию идентификатора.
+    public void forEachActiveAt(long time, long fromId, long toId, ProductRepository.ActiveProductConsumer consumer) {
+        for (long id = Math.max(fromId, 1); id < toId; id++) {
+            Series history = series.get(id);
+            if (history == null) {
+                continue;
+            }
+            double price = history.stateAt(time, true);
+            if (!Double.isNaN(price)) {
+                consumer.accept(id, price);
+            }
+        }
+    }
+
+    // Передать в consumer все хранящиеся записи истории продукта id по порядку времени
+    public void forEachRecord(long id, RecordConsumer consumer) {
+        Series history = series.get(id);
+        if (history != null) {
+            history.forEach(consumer);
+        }
+    }
+
+    // Количество хранящихся записей всех продуктов
+    public long getRecordsNumber() {
+        long[] count = new long[1];
+        series.forEach(history -> count[0] += history.count());
+        return count[0];
+    }
+
+    // Приблизительный объём памяти, занятой историей (заголовки объектов и массивов и сами массивы)
+    public long getSizeInBytes() {
+        long[] size = new long[1];
+        series.forEach(history -> size[0] += history.sizeInBytes());
+        return size[0];
+    }
+
+    // Забыть историю всех продуктов
+    public void clear() {
+        series.forEach(Series::clear);
+    }
+
+    // История одного продукта
+    private static final class Series {
+
+        private static final byte[] EMPTY = new byte[0];
+
+        private byte[] data = EMPTY;
+        private int length;
+        private int count;
+        // По три числа на контрольную точку: время, цена (биты double) и (смещение следующей записи << 1) | активность.
+        // Контрольная точка k описывает состояние после записи с номером (k + 1) * CHECKPOINT - 1.
+        private long[] checkpoints;
+        // Состояние после последней записи
+        private long lastTime;
+        private double lastPrice;
+        private boolean lastActive;
+
+        synchronized int count() {
+            return count;
+        }
+
+        synchronized long sizeInBytes() {
+            // Объект (48 байт), массив записей и массив контрольных точек (по 16 байт заголовка)
+            return 48 + 16 + data.length + (checkpoints == null ? 0 : 16 + 8L * checkpoints.length);
+        }
+
+        synchronized void clear() {
+            data = EMPTY;
+            length = 0;
+            count = 0;
+            checkpoints = null;
+            lastTime = 0;
+            lastPrice = 0;
+            lastActive = false;
+        }
+
+        synchronized void append(long time, double price, boolean active, int limit) {
+            if (count > 0 && price == lastPrice && active == lastActive) {
+                return;
+            }
+            if (count == limit) {
+                trim(limit / 2);
+            }
+            write(Math.max(time, lastTime), price, active);
+        }
+
+        // Цена на момент time или NaN, если история начинается позже (или продукт неактивен, когда activeOnly)
+        synchronized double stateAt(long time, boolean activeOnly) {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            if (time >= lastTime) {
+                return activeOnly && !lastActive ? Double.NaN : lastPrice;
+            }
+            // Последняя контрольная точка не позже time (-1 - декодировать с первой записи)
+            int low = 0;
+            int high = count / CHECKPOINT - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (checkpoints[middle * 3] <= time) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            // Цена декодируется в сотых долях и переводится в double один раз в конце;
+            // raw - цена, записанная целиком (NaN, если последняя цена записана разностью)
+            long current = 0;
+            long cents = 0;
+            double raw = Double.NaN;
+            boolean active = false;
+            int position = 0;
+            int index = 0;
+            if (found < 0 && time < firstTime()) {
+                return Double.NaN;
+            }
+            if (found >= 0) {
+                current = checkpoints[found * 3];
+                double price = Double.longBitsToDouble(checkpoints[found * 3 + 1]);
+                cents = cents(price);
+                if (cents == 0) {
+                    raw = price;
+                }
+                long packed = checkpoints[found * 3 + 2];
+                active = (packed & 1) != 0;
+                position = (int) (packed >>> 1);
+                index = (found + 1) * CHECKPOINT;
+            }
+            // Записи раньше time декодируются, пока следующая запись не окажется позже time
+            byte[] bytes = data;
+            while (index < count) {
+                long value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    value |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                long next = current + value;
+                if (next > time) {
+                    break;
+                }
+                current = next;
+                value = 0;
+                shift = 0;
+                do {
+                    b = bytes[position++];
+                    value |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                active = (value & ACTIVE) != 0;
+                if ((value & RAW) != 0) {
+                    raw = Double.longBitsToDouble(readLong(bytes, position));
+                    cents = 0;
+                    position += 8;
+                } else {
+                    long delta = value >>> 2;
+                    cents += (delta >>> 1) ^ -(delta & 1);
+                    raw = Double.NaN;
+                }
+                index++;
+            }
+            if (activeOnly && !active) {
+                return Double.NaN;
+            }
+            return Double.isNaN(raw) ? cents / 100.0 : raw;
+        }
+
+        synchronized void forEach(RecordConsumer consumer) {
+            long time = 0;
+            double price = 0;
+            int position = 0;
+            long[] result = new long[1];
+            for (int i = 0; i < count; i++) {
+                position = readVarLong(data, position, result);
+                time += result[0];
+                position = readVarLong(data, position, result);
+                long header = result[0];
+                if ((header & RAW) != 0) {
+                    price = Double.longBitsToDouble(readLong(data, position));
+                    position += 8;
+                } else {
+                    long delta = header >>> 2;
+                    price = (cents(price) + ((delta >>> 1) ^ -(delta & 1))) / 100.0;
+                }
+                consumer.accept(time, price, (header & ACTIVE) != 0);
+            }
+        }
+
+        // Время первой записи (записано разностью с нулём)
+        private long firstTime() {
+            long value = 0;
+            int shift = 0;
+            int position = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        private void write(long time, double price, boolean active) {
+            if (length + MAX_RECORD_SIZE > data.length) {
+                data = Arrays.copyOf(data, Math.max(length + MAX_RECORD_SIZE, data.length + (data.length >> 1)));
+            }
+            int position = writeVarLong(data, length, time - lastTime);
+            long header = active ? ACTIVE : 0;
+            long cents = cents(price);
+            if (cents == 0 && price != 0) {
+                position = writeVarLong(data, position, header | RAW);
+                writeLong(data, position, Double.doubleToRawLongBits(price));
+                position += 8;
+            } else {
+                long delta = cents - cents(lastPrice);
+                position = writeVarLong(data, position, header | ((delta << 1) ^ (delta >> 63)) << 2);
+            }
+            length = position;
+            count++;
+            lastTime = time;
+            lastPrice = price;
+            lastActive = active;
+            if (count % CHECKPOINT == 0) {
+                int slot = (count / CHECKPOINT - 1) * 3;
+                if (checkpoints == null || slot == checkpoints.length) {
+                    checkpoints = checkpoints == null ? new long[3]
+                            : Arrays.copyOf(checkpoints, checkpoints.length + Math.max(3, checkpoints.length / 6 * 3));
+                }
+                checkpoints[slot] = time;
+                checkpoints[slot + 1] = Double.doubleToRawLongBits(price);
+                checkpoints[slot + 2] = (long) length << 1 | (active ? 1 : 0);
+            }
+        }
+
+        // Оставить только последние keep записей: первая из них записывается заново относительно нулей
+        private void trim(int keep) {
+            long[] times = new long[count];
+            double[] prices = new double[count];
+            boolean[] actives = new boolean[count];
+            int[] index = new int[1];
+            forEach((time, price, active) -> {
+                times[index[0]] = time;
+                prices[index[0]] = price;
+                actives[index[0]] = active;
+                index[0]++;
+            });
+            int from = count - keep;
+            data = new byte[Math.max(MAX_RECORD_SIZE, length - length / count * from)];
+            length = 0;
+            count = 0;
+            checkpoints = null;
+            lastTime = 0;
+            lastPrice = 0;
+            for (int i = from; i < times.length; i++) {
+                write(times[i], prices[i], actives[i]);
+            }
+        }
+
+        // Цена в сотых долях, если цена выражается в них точно, иначе 0
+        private static long cents(double price) {
+            double scaled = price * 100;
+            if (!(Math.abs(scaled) < MAX_CENTS)) {
+                return 0;
+            }
+            long cents = Math.round(scaled);
+            return cents / 100.0 == price ? cents : 0;
+        }
+
+        private static int writeVarLong(byte[] bytes, int position, long value) {
+            while ((value & ~0x7FL) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+            return position;
+        }
+
+        private static int readVarLong(byte[] bytes, int position, long[] result) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            result[0] = value;
+            return position;
+        }
+
+        private static void writeLong(byte[] bytes, int position, long value) {
+            for (int i = 0; i < 8; i++) {
+                bytes[position + i] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        private static long readLong(byte[] bytes, int position) {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value |= (bytes[position + i] & 0xFFL) << (i * 8);
+            }
+            return value;
+        }
+    }
+}
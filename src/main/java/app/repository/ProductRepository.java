@@ -1,64 +1,171 @@
 package app.repository;
 
 import app.domain.Product;
+import app.persistence.BinaryCodec;
 
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
-// Этот класс находится на 2 слое нашего приложения - репозитории.
+// Этот интерфейс находится на 2 слое нашего приложения - репозитории.
 // Задача репозитория - осуществлять доступ к данным, которые хранятся в базе данных.
-// В качестве имитации базы данных у нас здесь будет выступать Лист.
 
 // Репозиторий, как правило, реализует CRUD - функционал.
 // CRUD - Create, Read, Update, Delete.
-public class ProductRepository {
 
-    // Имитация базы данных
-    private final List<Product> database = new ArrayList<>();
+// Интерфейс описывает хранилище продуктов (storage engine), а реализации хранят данные по-разному:
+// - HeapProductRepository - объекты в куче в массиве по идентификатору (по умолчанию);
+// - ConcurrentMapProductRepository - объекты в куче в ConcurrentHashMap;
+// - MappedProductRepository - колонки в файлах, отображённых в память (вне кучи).
+// Хранилище выбирается при запуске (см. StorageEngines).
+// Все реализации выдают идентификаторы подряд начиная с 1 и безопасны для работы из нескольких потоков.
+// Активные и неактивные (удалённые) продукты хранилище учитывает отдельно (см. Partitions),
+// поэтому состояние продукта меняется только через setActive, а не сеттером продукта.
+public interface ProductRepository {
 
-    // Поле, которое учитывает, какой сейчас максимальный ID продукта в базе данных.
-    private long maxId;
+    // Сохранить новый продукт: выдать ему следующий идентификатор (Create)
+    Product save(Product product);
 
-    // Метод, который сохраняет новый продукт в базе данных (Create)
-    public Product save(Product product){
-        product.setId(++maxId);
-        database.add(product);
-        return product;
+    // Зарезервировать блок из count идентификаторов для пакетного сохранения.
+    // Возвращает первый идентификатор блока. Продукты с этими идентификаторами
+    // помещаются в базу данных методом restore.
+    long reserveIds(int count);
+
+    // Поместить в базу данных продукт с уже известным идентификатором
+    // (используется при пакетном сохранении и при восстановлении базы данных с диска).
+    // Если продукт с таким идентификатором уже есть, его цена и состояние обновляются.
+    Product restore(Product product);
+
+    // save и restore, которые выполняют onSaved под блокировкой на объекте, возвращённом хранилищем,
+    // прежде чем его сможет изменить другой поток. Сервисы меняют продукт под блокировкой на объекте,
+    // который вернуло хранилище, поэтому всё, что сделано в onSaved (запись о сохранении в журнал),
+    // происходит раньше любых последующих изменений продукта.
+    // По умолчанию хранилище возвращает сам переданный объект и блокировка берётся на нём;
+    // хранилище, которое возвращает другой объект (mapped), должно взять блокировку на нём до публикации.
+    default Product save(Product product, Consumer<Product> onSaved) {
+        synchronized (product) {
+            return locked(save(product), onSaved);
+        }
     }
 
-    // Метод, который возвращает все продукты из базы данных (Read)
-    public List<Product> findAll(){
-        return database;
+    default Product restore(Product product, Consumer<Product> onSaved) {
+        synchronized (product) {
+            return locked(restore(product), onSaved);
+        }
     }
 
-    // Метод, который возвращает один конкретный продукт по идентификатору
-    public Product findById(Long id){
-        for (Product product : database) {
-            if(product.getId().equals(id)){
-                return product;
-            }
-        } return null;
+    private static Product locked(Product saved, Consumer<Product> onSaved) {
+        synchronized (saved) {
+            onSaved.accept(saved);
+            return saved;
+        }
     }
 
-    // Метод, который изменяет цену продукта в базе данных (Update)
-    public void update(Long id, double newPrice){
-        for (Product product : database) {
-            if(product.getId().equals(id)){
-                product.setPrice(newPrice);
-                break;
+    // Продукт по идентификатору или null, если его нет (Read).
+    // Архивный продукт читается из архива и остаётся в нём: в основную таблицу его возвращают
+    // только изменения (update, setActive, restore).
+    Product findById(long id);
+
+    // Все продукты с указанным наименованием
+    List<Product> findByTitle(String title);
+
+    // Изменить цену продукта (Update)
+    void update(long id, double newPrice);
+
+    // Удалить продукт из базы данных (Delete)
+    void deleteById(long id);
+
+    // Сделать продукт активным или неактивным и перенести его в соответствующий раздел хранилища
+    void setActive(long id, boolean active);
+
+    // Количество активных продуктов
+    int countActive();
+
+    // Наименьший идентификатор активного продукта, не меньший fromId, или 0, если такого нет.
+    // Пропускает неактивные продукты, не читая их, поэтому перебор активных продуктов
+    // занимает время, пропорциональное их количеству.
+    long nextActiveId(long fromId);
+
+    // Заполнить ids идентификаторами активных продуктов, не меньшими fromId, по возрастанию.
+    // Возвращает количество записанных идентификаторов (0, если таких больше нет).
+    // Для перебора большого количества активных продуктов быстрее, чем nextActiveId для каждого.
+    int nextActiveIds(long fromId, long[] ids);
+
+    // Заполнить ids идентификаторами неактивных продуктов, в том числе архивных, не меньшими fromId,
+    // по возрастанию. Возвращает количество записанных идентификаторов (0, если таких больше нет).
+    int nextInactiveIds(long fromId, long[] ids);
+
+    // Ленивый поток идентификаторов активных продуктов по возрастанию.
+    // В поток попадают только продукты, существовавшие при его создании.
+    default LongStream activeIds() {
+        return StreamSupport.longStream(new ActiveIdSpliterator(this::nextActiveIds, getMaxId()), false);
+    }
+
+    // Перенести в архив продукты, которые остаются неактивными со времени предыдущего вызова.
+    // Возвращает количество перенесённых продуктов (хранилище может архив не вести).
+    default int archiveInactive() {
+        return 0;
+    }
+
+    // Максимальный выданный идентификатор: все продукты имеют идентификаторы от 1 до него
+    long getMaxId();
+
+    // Перебрать все продукты (и активные, и неактивные), не копируя базу данных:
+    // сначала основную таблицу, затем архив, каждый по возрастанию идентификатора
+    void forEach(Consumer<Product> action);
+
+    // Все продукты (в порядке forEach)
+    default List<Product> findAll() {
+        List<Product> products = new ArrayList<>();
+        forEach(products::add);
+        return products;
+    }
+
+    // Все активные продукты по возрастанию идентификатора
+    default List<Product> findAllActive() {
+        List<Product> products = new ArrayList<>(countActive());
+        activeIds().forEach(id -> {
+            Product product = findById(id);
+            if (product != null && product.isActive()) {
+                products.add(product);
             }
-        }
+        });
+        return products;
     }
 
-    // Метод, который удаляет продукт из базы данных (Delete)
-    public void deleteById(Long id){
-        Iterator<Product> iterator = database.iterator();
-        while (iterator.hasNext()){
-            if (iterator.next().getId().equals(id)){
-                iterator.remove();
-                break;
+    // Выгрузить все продукты (в порядке forEach) в channel в двоичном формате BinaryCodec.
+    // Продукты читаются во время работы хранилища, поэтому выгрузка не является снимком на один момент времени.
+    // Возвращает количество выгруженных продуктов.
+    default long exportTo(WritableByteChannel channel) {
+        return BinaryCodec.write(channel, this::forEach, BinaryCodec::writeProduct);
+    }
+
+    // Загрузить продукты, выгруженные exportTo, с их идентификаторами и состоянием (через restore).
+    // Как и восстановление с диска, загрузка идёт мимо сервиса продуктов: его показатели и журнал
+    // не обновляются, поэтому загружать продукты нужно до начала работы с сервисом.
+    // Возвращает количество загруженных продуктов.
+    default long importFrom(ReadableByteChannel channel) {
+        return BinaryCodec.read(channel, BinaryCodec::readProduct, this::restore);
+    }
+
+    // Получатель идентификатора и цены активного продукта
+    interface ActiveProductConsumer {
+        void accept(long id, double price);
+    }
+
+    // Передать в consumer идентификаторы и цены всех активных продуктов
+    // (используется для пересчёта показателей и индекса цен по активным продуктам).
+    // Хранилище может переопределить метод, чтобы не создавать объекты продуктов.
+    default void forEachActive(ActiveProductConsumer consumer) {
+        activeIds().forEach(id -> {
+            Product product = findById(id);
+            if (product != null && product.isActive()) {
+                consumer.accept(id, product.getPrice());
             }
-        }
+        });
     }
 }
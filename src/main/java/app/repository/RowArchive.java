@@ -0,0 +1,307 @@
+package app.repository;
+
+import app.persistence.BinaryCodec;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/*
+Архив строк хранилища в компактном двоичном виде.
+Строка кодируется (BinaryCodec.Encoder) и дописывается в конец сегментов - массивов байт по SEGMENT_SIZE,
+а индекс хранит для идентификатора только положение записи (хэш-таблица из двух массивов long).
+Объект строки после этого не нужен архиву: его собирает GC, как только на него перестают ссылаться.
+Запись: [длина][строка], длина - число переменной длины (см. BinaryCodec).
+
+Пока на объект архивной строки кто-то ссылается (например, корзина покупателя на продукт),
+архив возвращает именно его (слабые ссылки, как представления в MappedProductRepository),
+поэтому блокировки на объекте и ссылки на него продолжают работать.
+Остальные строки декодируются заново при каждом чтении.
+
+Записи не меняются: хранилище возвращает строку из архива в основную таблицу, прежде чем её изменить.
+Удалённые из архива записи остаются в сегментах, пока их не станет больше живых: тогда живые записи
+переписываются в новые сегменты.
+Все методы, кроме isEmpty, синхронизированы: архивные строки читаются редко (их удалили давно).
+ */
+class RowArchive<T> {
+
+    private static final int SEGMENT_SIZE = 1 << 20;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final BinaryCodec.Encoder<T> encoder;
+    private final BinaryCodec.Decoder<T> decoder;
+
+    private final List<byte[]> segments = new ArrayList<>();
+    // Конец записей в последнем сегменте
+    private int end = SEGMENT_SIZE;
+    // Байты всех записей и байты записей, удалённых из архива
+    private long bytes;
+    private long garbage;
+
+    // Индекс: идентификатор -> положение записи (номер сегмента в старших 32 битах, смещение в младших).
+    // Открытая адресация с линейным пробированием; 0 - пустая ячейка (идентификаторы начинаются с 1).
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private long[] positions = new long[INITIAL_CAPACITY];
+    private volatile int size;
+
+    // Объекты архивных строк, на которые ещё кто-то ссылается
+    private final ConcurrentHashMap<Long, RowReference<T>> rows = new ConcurrentHashMap<>();
+    private final ReferenceQueue<T> collected = new ReferenceQueue<>();
+
+    // Буфер для кодирования одной строки
+    private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+    RowArchive(BinaryCodec.Encoder<T> encoder, BinaryCodec.Decoder<T> decoder) {
+        this.encoder = encoder;
+        this.decoder = decoder;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    // Положить строку в архив (или заменить уже лежащую в нём)
+    synchronized void put(long id, T row) {
+        removeCollectedRows();
+        drop(id);
+        int length = encode(row);
+        byte[] segment = segmentFor(length + 5);
+        ByteBuffer target = ByteBuffer.wrap(segment, end, segment.length - end);
+        BinaryCodec.writeVarLong(target, length);
+        target.put(buffer.array(), 0, length);
+        put(id, (long) (segments.size() - 1) << 32 | end);
+        bytes += target.position() - end;
+        end = target.position();
+        rows.put(id, new RowReference<>(id, row, collected));
+    }
+
+    // Архивная строка или null, если строки с этим идентификатором в архиве нет
+    synchronized T get(long id) {
+        removeCollectedRows();
+        long position = position(id);
+        if (position < 0) {
+            return null;
+        }
+        RowReference<T> reference = rows.get(id);
+        T row = reference == null ? null : reference.get();
+        if (row == null) {
+            row = decoder.read(record(position));
+            rows.put(id, new RowReference<>(id, row, collected));
+        }
+        return row;
+    }
+
+    // Убрать строку из архива. Возвращает строку или null, если её в архиве не было.
+    synchronized T remove(long id) {
+        T row = get(id);
+        if (row != null) {
+            drop(id);
+            rows.remove(id);
+        }
+        return row;
+    }
+
+    // Перебрать архивные строки по возрастанию идентификатора
+    void forEach(Consumer<? super T> action) {
+        long[] ids;
+        synchronized (this) {
+            ids = new long[size];
+            int count = 0;
+            for (long key : keys) {
+                if (key != 0) {
+                    ids[count++] = key;
+                }
+            }
+        }
+        Arrays.sort(ids);
+        for (long id : ids) {
+            T row = get(id);
+            if (row != null) {
+                action.accept(row);
+            }
+        }
+    }
+
+    // Память архива в байтах: сегменты и индекс (без объектов строк, на которые ссылаются снаружи)
+    synchronized long getSizeInBytes() {
+        long total = 16L * keys.length;
+        for (byte[] segment : segments) {
+            total += segment.length;
+        }
+        return total;
+    }
+
+    // Убрать запись из индекса; её байты становятся мусором до следующей перезаписи сегментов
+    private void drop(long id) {
+        if (position(id) < 0) {
+            return;
+        }
+        garbage += recordLength(record(removePosition(id)));
+        if (garbage > bytes / 2 && bytes > SEGMENT_SIZE) {
+            rewrite();
+        }
+    }
+
+    // Закодировать строку в buffer и вернуть длину записи
+    private int encode(T row) {
+        while (true) {
+            buffer.clear();
+            try {
+                encoder.write(buffer, row);
+                return buffer.position();
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    // Сегмент, в конце которого помещается length байт
+    private byte[] segmentFor(int length) {
+        if (end + length > SEGMENT_SIZE || segments.isEmpty()) {
+            segments.add(new byte[Math.max(SEGMENT_SIZE, length)]);
+            end = 0;
+        }
+        return segments.get(segments.size() - 1);
+    }
+
+    // Запись строки: буфер над сегментом от начала строки до её конца
+    private ByteBuffer record(long position) {
+        byte[] segment = segments.get((int) (position >>> 32));
+        ByteBuffer record = ByteBuffer.wrap(segment, (int) position, segment.length - (int) position);
+        int length = (int) BinaryCodec.readVarLong(record);
+        return record.slice(record.position(), length);
+    }
+
+    // Байты записи вместе с её длиной
+    private static int recordLength(ByteBuffer record) {
+        int length = record.limit();
+        int header = 1;
+        for (long rest = length >>> 7; rest != 0; rest >>>= 7) {
+            header++;
+        }
+        return length + header;
+    }
+
+    // Переписать живые записи в новые сегменты, выбросив удалённые
+    private void rewrite() {
+        List<byte[]> old = new ArrayList<>(segments);
+        long[] oldPositions = positions.clone();
+        segments.clear();
+        end = SEGMENT_SIZE;
+        bytes = 0;
+        garbage = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == 0) {
+                continue;
+            }
+            long position = oldPositions[i];
+            byte[] from = old.get((int) (position >>> 32));
+            ByteBuffer source = ByteBuffer.wrap(from, (int) position, from.length - (int) position);
+            int length = (int) BinaryCodec.readVarLong(source);
+            int total = source.position() - (int) position + length;
+            byte[] segment = segmentFor(total);
+            System.arraycopy(from, (int) position, segment, end, total);
+            positions[i] = (long) (segments.size() - 1) << 32 | end;
+            end += total;
+            bytes += total;
+        }
+    }
+
+    // Убрать из rows ссылки на объекты, которые уже собрал GC
+    private void removeCollectedRows() {
+        Reference<? extends T> reference;
+        while ((reference = collected.poll()) != null) {
+            RowReference<?> row = (RowReference<?>) reference;
+            rows.remove(row.id, row);
+        }
+    }
+
+    // Индекс:
+
+    private long position(long id) {
+        int mask = keys.length - 1;
+        for (int i = index(id, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == id) {
+                return positions[i];
+            }
+            if (keys[i] == 0) {
+                return -1;
+            }
+        }
+    }
+
+    private void put(long id, long position) {
+        if ((size + 1) * 4 > keys.length * 3) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = index(id, mask);
+        while (keys[i] != 0 && keys[i] != id) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == 0) {
+            keys[i] = id;
+            size++;
+        }
+        positions[i] = position;
+    }
+
+    // Удалить идентификатор из индекса (со сдвигом следующих ячеек цепочки) и вернуть положение записи
+    private long removePosition(long id) {
+        int mask = keys.length - 1;
+        int gap = index(id, mask);
+        while (keys[gap] != id) {
+            gap = (gap + 1) & mask;
+        }
+        long position = positions[gap];
+        for (int i = (gap + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            int home = index(keys[i], mask);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                positions[gap] = positions[i];
+                gap = i;
+            }
+        }
+        keys[gap] = 0;
+        size--;
+        return position;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldPositions = positions;
+        keys = new long[capacity];
+        positions = new long[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                put(oldKeys[i], oldPositions[i]);
+            }
+        }
+    }
+
+    private static int index(long id, int mask) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static class RowReference<T> extends WeakReference<T> {
+        private final long id;
+
+        RowReference(long id, T row, ReferenceQueue<T> queue) {
+            super(row, queue);
+            this.id = id;
+        }
+    }
+}
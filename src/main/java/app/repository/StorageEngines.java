@@ -0,0 +1,74 @@
+package app.repository;
+
+import app.domain.Product;
+import app.exceptions.StorageException;
+
+import java.nio.file.Path;
+import java.util.function.LongFunction;
+
+/*
+Выбор хранилищ (storage engine) продуктов и покупателей при запуске.
+Хранилище продуктов задаётся системным свойством shop.products.storage:
+- heap (по умолчанию) - HeapProductRepository;
+- concurrent-map - ConcurrentMapProductRepository;
+- mapped - MappedProductRepository, папка с колонками задаётся свойством shop.products.mapped.
+Если задано только свойство shop.products.mapped, используется mapped (как и раньше).
+Хранилище покупателей задаётся свойством shop.customers.storage: heap (по умолчанию) или concurrent-map.
+Хранилища вне кучи для покупателей нет: корзины ссылаются на объекты продуктов.
+Заказы всегда хранятся в куче (HeapOrderRepository).
+ */
+public final class StorageEngines {
+
+    public static final String HEAP = "heap";
+    public static final String CONCURRENT_MAP = "concurrent-map";
+    public static final String MAPPED = "mapped";
+
+    private StorageEngines() {
+    }
+
+    // Хранилище продуктов по системным свойствам
+    public static ProductRepository createProductRepository() {
+        String mappedDirectory = System.getProperty("shop.products.mapped");
+        String engine = System.getProperty("shop.products.storage", mappedDirectory == null ? HEAP : MAPPED);
+        return createProductRepository(engine, mappedDirectory == null ? null : Path.of(mappedDirectory));
+    }
+
+    // Хранилище продуктов по названию; mappedDirectory нужна только хранилищу mapped
+    public static ProductRepository createProductRepository(String engine, Path mappedDirectory) {
+        switch (engine) {
+            case HEAP:
+                return new HeapProductRepository();
+            case CONCURRENT_MAP:
+                return new ConcurrentMapProductRepository();
+            case MAPPED:
+                if (mappedDirectory == null) {
+                    throw new StorageException("Для хранилища mapped не задана папка (shop.products.mapped)");
+                }
+                return new MappedProductRepository(mappedDirectory);
+            default:
+                throw new StorageException("Неизвестное хранилище продуктов: " + engine);
+        }
+    }
+
+    // Хранилище покупателей по системному свойству.
+    // products - продукт по идентификатору для корзин покупателей, которые читаются из архива хранилища.
+    public static CustomerRepository createCustomerRepository(LongFunction<Product> products) {
+        return createCustomerRepository(System.getProperty("shop.customers.storage", HEAP), products);
+    }
+
+    public static CustomerRepository createCustomerRepository(String engine, LongFunction<Product> products) {
+        switch (engine) {
+            case HEAP:
+                return new HeapCustomerRepository(products);
+            case CONCURRENT_MAP:
+                return new ConcurrentMapCustomerRepository(products);
+            default:
+                throw new StorageException("Неизвестное хранилище покупателей: " + engine);
+        }
+    }
+
+    // Хранилище заказов
+    public static OrderRepository createOrderRepository() {
+        return new HeapOrderRepository();
+    }
+}
@@ -0,0 +1,111 @@
+package app.service;
+
+import app.domain.Customer;
+import app.domain.Product;
+import app.repository.CustomerRepository;
+import app.repository.ProductRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+Сервис аналитики: отчёт по корзинам всех активных покупателей за один проход.
+Вместо того чтобы запрашивать стоимость корзины у каждого покупателя по отдельности,
+сервис один раз обходит базу покупателей и строки их корзин и считает сразу все показатели
+(см. SalesReport).
+
+Обход распараллелен через fork/join: диапазон идентификаторов покупателей 1..maxId
+делится пополам, пока части не станут меньше порога, каждая часть считается в своём
+SalesAccumulator, а итоги складываются при объединении подзадач.
+Корзины читаются под их собственными блокировками (Cart.forEach), поэтому отчёт -
+не моментальный снимок: корзины, изменённые во время обхода, попадут в него в том или ином состоянии.
+ */
+public class AnalyticsService {
+
+    private static final AnalyticsService instance = new AnalyticsService();
+
+    // Количество продуктов в списке самых популярных
+    static final int TOP_PRODUCTS = 10;
+
+    // Минимальный размер части, которая считается одной подзадачей
+    private static final int MIN_CHUNK = 1024;
+
+    // Сколько идентификаторов активных покупателей подзадача получает от хранилища за раз
+    private static final int ID_BATCH = 256;
+
+    private final CustomerRepository customerRepository = CustomerService.getInstance().getRepository();
+    private final ProductRepository productRepository = ProductService.getInstance().getRepository();
+
+    private AnalyticsService() {
+    }
+
+    public static AnalyticsService getInstance() {
+        return instance;
+    }
+
+    // Отчёт по корзинам, посчитанный в общем пуле fork/join
+    public SalesReport getSalesReport() {
+        return getSalesReport(ForkJoinPool.commonPool());
+    }
+
+    // Отчёт по корзинам, посчитанный в указанном пуле (его параллелизм - количество потоков обхода)
+    public SalesReport getSalesReport(ForkJoinPool pool) {
+        long maxCustomerId = customerRepository.getMaxId();
+        long maxProductId = productRepository.getMaxId();
+        // Около восьми частей на поток: потоки, закончившие раньше, забирают части у остальных
+        long chunk = Math.max(MIN_CHUNK, maxCustomerId / (pool.getParallelism() * 8L));
+        SalesAccumulator total = pool.invoke(new SalesTask(1, maxCustomerId + 1, chunk, maxProductId));
+
+        List<SalesReport.ProductQuantity> topProducts = new ArrayList<>(TOP_PRODUCTS);
+        for (long productId : total.topProductIds(TOP_PRODUCTS)) {
+            Product product = productRepository.findById(productId);
+            topProducts.add(new SalesReport.ProductQuantity(productId,
+                    product == null ? null : product.getTitle(), total.getQuantity(productId)));
+        }
+        return total.toReport(topProducts);
+    }
+
+    // Подзадача: покупатели с идентификаторами от from (включительно) до to (не включительно)
+    private class SalesTask extends RecursiveTask<SalesAccumulator> {
+
+        private final long from;
+        private final long to;
+        private final long chunk;
+        private final long maxProductId;
+
+        SalesTask(long from, long to, long chunk, long maxProductId) {
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+            this.maxProductId = maxProductId;
+        }
+
+        @Override
+        protected SalesAccumulator compute() {
+            if (to - from <= chunk) {
+                SalesAccumulator accumulator = new SalesAccumulator(maxProductId);
+                // Неактивные покупатели пропускаются, не читаясь (см. CustomerRepository.nextActiveIds)
+                long[] ids = new long[ID_BATCH];
+                long next = from;
+                while (next < to) {
+                    int count = customerRepository.nextActiveIds(next, ids);
+                    for (int i = 0; i < count && ids[i] < to; i++) {
+                        Customer customer = customerRepository.findById(ids[i]);
+                        if (customer != null) {
+                            accumulator.addCustomer(customer);
+                        }
+                    }
+                    next = count < ids.length ? to : ids[count - 1] + 1;
+                }
+                return accumulator;
+            }
+            long middle = (from + to) >>> 1;
+            SalesTask left = new SalesTask(from, middle, chunk, maxProductId);
+            left.fork();
+            SalesAccumulator right = new SalesTask(middle, to, chunk, maxProductId).compute();
+            return left.join().merge(right);
+        }
+    }
+}
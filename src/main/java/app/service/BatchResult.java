@@ -0,0 +1,98 @@
+package app.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Результат пакетной операции.
+Для каждого элемента пакета (в том же порядке, в каком они были переданы)
+хранится значение и сообщение об ошибке (null, если элемент обработан успешно).
+Ошибка в одном элементе не прерывает обработку остальных.
+ */
+public class BatchResult<T> {
+
+    public static class Item<T> {
+        private final T value;
+        private final String error;
+
+        private Item(T value, String error) {
+            this.value = value;
+            this.error = error;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    private final List<Item<T>> items;
+    private int failureCount;
+
+    BatchResult(int size) {
+        items = new ArrayList<>(size);
+    }
+
+    void success(T value) {
+        items.add(new Item<>(value, null));
+    }
+
+    void failure(T value, String error) {
+        items.add(new Item<>(value, error));
+        failureCount++;
+    }
+
+    // Заменить значение успешного элемента (например, сохранённым продуктом)
+    void replace(int index, T value) {
+        items.set(index, new Item<>(value, null));
+    }
+
+    // Отметить успешный элемент как ошибочный (например, если его отклонило хранилище)
+    void fail(int index, String error) {
+        items.set(index, new Item<>(items.get(index).value, error));
+        failureCount++;
+    }
+
+    public List<Item<T>> getItems() {
+        return items;
+    }
+
+    public int getSuccessCount() {
+        return items.size() - failureCount;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    // Значения всех успешно обработанных элементов
+    public List<T> getSucceeded() {
+        List<T> succeeded = new ArrayList<>(getSuccessCount());
+        for (Item<T> item : items) {
+            if (item.isSuccess()) {
+                succeeded.add(item.value);
+            }
+        }
+        return succeeded;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Успешно: ").append(getSuccessCount())
+                .append(", с ошибками: ").append(failureCount);
+        for (Item<T> item : items) {
+            if (!item.isSuccess()) {
+                builder.append(System.lineSeparator()).append(item.error);
+            }
+        }
+        return builder.toString();
+    }
+}
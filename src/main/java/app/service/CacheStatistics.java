@@ -0,0 +1,53 @@
+package app.service;
+
+/*
+Снимок счётчиков кэша продуктов.
+ */
+public class CacheStatistics {
+
+    private final int maximumSize;
+    private final int size;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    CacheStatistics(int maximumSize, int size, long hits, long misses, long evictions) {
+        this.maximumSize = maximumSize;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    // Доля обращений, обслуженных из кэша
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Кэш продуктов: размер - %d из %d, попаданий - %d, промахов - %d, вытеснений - %d, доля попаданий - %.2f%%",
+                size, maximumSize, hits, misses, evictions, getHitRatio() * 100);
+    }
+}
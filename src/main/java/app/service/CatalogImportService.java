@@ -0,0 +1,488 @@
+package app.service;
+
+import app.domain.Product;
+import app.exceptions.CatalogImportException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Потоковая загрузка каталога продуктов из файла.
+Файл читается через FileChannel в буфер фиксированного размера и разбирается прямо по байтам:
+цена разбирается из байтов без создания строки, для наименования создаётся ровно одна строка.
+Продукты передаются в сервис продуктов пакетами по BATCH_SIZE штук,
+поэтому расход памяти загрузчика не зависит от размера файла.
+
+Поддерживаемые форматы:
+CSV - строки вида: наименование,цена (наименование можно взять в кавычки; строка заголовка пропускается);
+JSON_LINES - по одному объекту в строке: {"title": "...", "price": 1.5}
+ */
+public class CatalogImportService {
+
+    public enum Format {
+        CSV,
+        JSON_LINES;
+
+        // Определить формат по расширению файла
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            return name.endsWith(".jsonl") || name.endsWith(".json") ? JSON_LINES : CSV;
+        }
+    }
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_LINE_SIZE = 1 << 20;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final byte[] TITLE_KEY = "title".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PRICE_KEY = "price".getBytes(StandardCharsets.US_ASCII);
+
+    private final ProductService productService;
+
+    public CatalogImportService() {
+        this(ProductService.getInstance());
+    }
+
+    // Загрузчик в отдельный сервис продуктов (для тестов с собственным хранилищем)
+    CatalogImportService(ProductService productService) {
+        this.productService = productService;
+    }
+
+    public ImportReport importFile(Path file) {
+        return importFile(file, Format.of(file));
+    }
+
+    public ImportReport importFile(Path file, Format format) {
+        long start = System.nanoTime();
+        ImportReport report = new ImportReport();
+        Batch batch = new Batch(report);
+        LineParser parser = new LineParser();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.flip();
+            long lineNumber = 0;
+            int scanFrom = 0;
+            boolean endOfFile = false;
+
+            while (true) {
+                byte[] bytes = buffer.array();
+                int newline = indexOf(bytes, '\n', buffer.position() + scanFrom, buffer.limit());
+                if (newline < 0) {
+                    if (endOfFile) {
+                        if (buffer.hasRemaining()) {
+                            processLine(parser, format, bytes, buffer.position(), buffer.limit(), ++lineNumber, batch, report);
+                        }
+                        break;
+                    }
+                    // Строка не закончилась в буфере: сдвигаем её в начало и дочитываем файл
+                    scanFrom = buffer.remaining();
+                    buffer.compact();
+                    if (!buffer.hasRemaining()) {
+                        buffer = grow(buffer);
+                    }
+                    endOfFile = channel.read(buffer) < 0;
+                    buffer.flip();
+                    continue;
+                }
+                processLine(parser, format, bytes, buffer.position(), newline, ++lineNumber, batch, report);
+                buffer.position(newline + 1);
+                scanFrom = 0;
+            }
+            batch.flush();
+        } catch (IOException e) {
+            throw new CatalogImportException("Не удалось прочитать файл " + file, e);
+        }
+        report.finish(System.nanoTime() - start);
+        return report;
+    }
+
+    private void processLine(LineParser parser, Format format, byte[] bytes, int from, int to,
+                             long lineNumber, Batch batch, ImportReport report) {
+        if (to > from && bytes[to - 1] == '\r') {
+            to--;
+        }
+        if (isBlank(bytes, from, to)) {
+            return;
+        }
+        Product product;
+        try {
+            product = format == Format.CSV
+                    ? parser.parseCsv(bytes, from, to)
+                    : parser.parseJson(bytes, from, to);
+        } catch (CatalogImportException e) {
+            // Первая строка CSV без числа в поле цены - это заголовок (title,price)
+            if (format == Format.CSV && lineNumber == 1 && startsWithIgnoreCase(bytes, from, to, TITLE_KEY)) {
+                return;
+            }
+            report.rowRead();
+            report.failed(lineNumber, e.getMessage());
+            return;
+        }
+        report.rowRead();
+        batch.add(product, lineNumber);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        if (buffer.capacity() >= MAX_LINE_SIZE) {
+            throw new CatalogImportException("Строка файла длиннее " + MAX_LINE_SIZE + " байт");
+        }
+        ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    private static int indexOf(byte[] bytes, char value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] != ' ' && bytes[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWithIgnoreCase(byte[] bytes, int from, int to, byte[] prefix) {
+        int start = from;
+        if (start < to && bytes[start] == '"') {
+            start++;
+        }
+        if (to - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (Character.toLowerCase(bytes[start + i]) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Разобрать цену прямо из байтов.
+    // Обычные десятичные записи (до 18 значащих цифр) считаются без создания строки;
+    // остальные (экспонента, очень длинные числа) передаются в Double.parseDouble.
+    static double parsePrice(byte[] bytes, int from, int to) {
+        while (from < to && bytes[from] == ' ') from++;
+        while (to > from && bytes[to - 1] == ' ') to--;
+        if (from == to) {
+            throw new CatalogImportException("Не указана цена продукта");
+        }
+        int i = from;
+        boolean negative = false;
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (point) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (i < to || digits > 18 || (1L << 53) < mantissa) {
+            try {
+                double value = Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.US_ASCII));
+                if (Double.isFinite(value)) {
+                    return value;
+                }
+            } catch (NumberFormatException e) {
+                // Ниже будет выброшено исключение с понятным сообщением
+            }
+            throw invalidPrice(bytes, from, to);
+        }
+        if (digits == 0) {
+            throw invalidPrice(bytes, from, to);
+        }
+        // И мантисса, и степень десяти представимы в double точно,
+        // поэтому деление даёт тот же корректно округлённый результат, что и Double.parseDouble.
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private static CatalogImportException invalidPrice(byte[] bytes, int from, int to) {
+        return new CatalogImportException("Некорректная цена продукта: "
+                + new String(bytes, from, to - from, StandardCharsets.UTF_8));
+    }
+
+    // Разбор одной строки файла. Буфер scratch используется повторно для раскодирования
+    // наименований с экранированными символами.
+    private static class LineParser {
+
+        private byte[] scratch = new byte[256];
+        private int position;
+
+        Product parseCsv(byte[] bytes, int from, int to) {
+            String title;
+            int separator;
+            if (bytes[from] == '"') {
+                // Наименование в кавычках: "" внутри означает одну кавычку
+                int length = 0;
+                int i = from + 1;
+                while (true) {
+                    if (i >= to) {
+                        throw new CatalogImportException("Не закрыта кавычка в наименовании продукта");
+                    }
+                    if (bytes[i] == '"') {
+                        if (i + 1 < to && bytes[i + 1] == '"') {
+                            put(length++, (byte) '"');
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    put(length++, bytes[i++]);
+                }
+                separator = indexOf(bytes, ',', i + 1, to);
+                title = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            } else {
+                // Цена не содержит запятых, поэтому разделителем считается последняя запятая
+                separator = -1;
+                for (int i = to - 1; i >= from; i--) {
+                    if (bytes[i] == ',') {
+                        separator = i;
+                        break;
+                    }
+                }
+                title = separator < 0 ? null : new String(bytes, from, separator - from, StandardCharsets.UTF_8);
+            }
+            if (separator < 0) {
+                throw new CatalogImportException("Ожидалась строка вида: наименование,цена");
+            }
+            return new Product(title, parsePrice(bytes, separator + 1, to));
+        }
+
+        Product parseJson(byte[] bytes, int from, int to) {
+            position = from;
+            String title = null;
+            double price = Double.NaN;
+            skipSpaces(bytes, to);
+            expect(bytes, to, '{');
+            skipSpaces(bytes, to);
+            if (position < to && bytes[position] == '}') {
+                position++;
+            } else {
+                while (true) {
+                    skipSpaces(bytes, to);
+                    expect(bytes, to, '"');
+                    int keyStart = position;
+                    int keyEnd = indexOf(bytes, '"', position, to);
+                    if (keyEnd < 0) {
+                        throw new CatalogImportException("Не закрыта кавычка в имени поля");
+                    }
+                    position = keyEnd + 1;
+                    skipSpaces(bytes, to);
+                    expect(bytes, to, ':');
+                    skipSpaces(bytes, to);
+                    if (equals(bytes, keyStart, keyEnd, TITLE_KEY)) {
+                        title = parseJsonString(bytes, to);
+                    } else if (equals(bytes, keyStart, keyEnd, PRICE_KEY)) {
+                        int valueStart = position;
+                        skipValue(bytes, to);
+                        price = parsePrice(bytes, valueStart, position);
+                    } else if (position < to && bytes[position] == '"') {
+                        parseJsonString(bytes, to);
+                    } else {
+                        skipValue(bytes, to);
+                    }
+                    skipSpaces(bytes, to);
+                    if (position < to && bytes[position] == ',') {
+                        position++;
+                        continue;
+                    }
+                    expect(bytes, to, '}');
+                    break;
+                }
+            }
+            if (Double.isNaN(price)) {
+                throw new CatalogImportException("Не указана цена продукта");
+            }
+            return new Product(title, price);
+        }
+
+        // Разобрать строку JSON (открывающая кавычка - в текущей позиции)
+        private String parseJsonString(byte[] bytes, int to) {
+            expect(bytes, to, '"');
+            int start = position;
+            // Быстрый путь: строка без экранирования превращается в String сразу из буфера
+            while (position < to && bytes[position] != '"' && bytes[position] != '\\') {
+                position++;
+            }
+            if (position < to && bytes[position] == '"') {
+                return new String(bytes, start, position++ - start, StandardCharsets.UTF_8);
+            }
+            int length = 0;
+            for (int i = start; i < position; i++) {
+                put(length++, bytes[i]);
+            }
+            while (true) {
+                if (position >= to) {
+                    throw new CatalogImportException("Не закрыта кавычка в строке");
+                }
+                byte b = bytes[position++];
+                if (b == '"') {
+                    return new String(scratch, 0, length, StandardCharsets.UTF_8);
+                }
+                if (b != '\\') {
+                    put(length++, b);
+                    continue;
+                }
+                if (position >= to) {
+                    throw new CatalogImportException("Некорректное экранирование в строке");
+                }
+                byte escaped = bytes[position++];
+                switch (escaped) {
+                    case 'n' -> put(length++, (byte) '\n');
+                    case 't' -> put(length++, (byte) '\t');
+                    case 'r' -> put(length++, (byte) '\r');
+                    case 'b' -> put(length++, (byte) '\b');
+                    case 'f' -> put(length++, (byte) '\f');
+                    case 'u' -> length = putCodePoint(length, parseHex(bytes, to));
+                    default -> put(length++, escaped);
+                }
+            }
+        }
+
+        private int parseHex(byte[] bytes, int to) {
+            if (position + 4 > to) {
+                throw new CatalogImportException("Некорректное экранирование \\u в строке");
+            }
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(bytes[position++], 16);
+                if (digit < 0) {
+                    throw new CatalogImportException("Некорректное экранирование \\u в строке");
+                }
+                value = value * 16 + digit;
+            }
+            return value;
+        }
+
+        // Записать символ в scratch в кодировке UTF-8 (суррогатные пары не объединяются)
+        private int putCodePoint(int length, int c) {
+            if (c < 0x80) {
+                put(length++, (byte) c);
+            } else if (c < 0x800) {
+                put(length++, (byte) (0xC0 | c >> 6));
+                put(length++, (byte) (0x80 | c & 0x3F));
+            } else {
+                put(length++, (byte) (0xE0 | c >> 12));
+                put(length++, (byte) (0x80 | c >> 6 & 0x3F));
+                put(length++, (byte) (0x80 | c & 0x3F));
+            }
+            return length;
+        }
+
+        // Пропустить число, true, false или null
+        private void skipValue(byte[] bytes, int to) {
+            int start = position;
+            while (position < to && bytes[position] != ',' && bytes[position] != '}'
+                    && bytes[position] != ' ' && bytes[position] != '\t') {
+                position++;
+            }
+            if (position == start) {
+                throw new CatalogImportException("Не указано значение поля");
+            }
+        }
+
+        private void skipSpaces(byte[] bytes, int to) {
+            while (position < to && (bytes[position] == ' ' || bytes[position] == '\t')) {
+                position++;
+            }
+        }
+
+        private void expect(byte[] bytes, int to, char c) {
+            if (position >= to || bytes[position] != c) {
+                throw new CatalogImportException("Ожидался символ '" + c + "'");
+            }
+            position++;
+        }
+
+        private static boolean equals(byte[] bytes, int from, int to, byte[] expected) {
+            if (to - from != expected.length) {
+                return false;
+            }
+            for (int i = 0; i < expected.length; i++) {
+                if (bytes[from + i] != expected[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void put(int index, byte b) {
+            if (index == scratch.length) {
+                byte[] grown = new byte[scratch.length * 2];
+                System.arraycopy(scratch, 0, grown, 0, scratch.length);
+                scratch = grown;
+            }
+            scratch[index] = b;
+        }
+    }
+
+    // Пакет продуктов, который передаётся в сервис продуктов одним вызовом saveAll
+    private class Batch {
+
+        private final ImportReport report;
+        private final List<Product> products = new ArrayList<>(BATCH_SIZE);
+        private final long[] lineNumbers = new long[BATCH_SIZE];
+
+        Batch(ImportReport report) {
+            this.report = report;
+        }
+
+        void add(Product product, long lineNumber) {
+            lineNumbers[products.size()] = lineNumber;
+            products.add(product);
+            if (products.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (products.isEmpty()) {
+                return;
+            }
+            BatchResult<Product> result = productService.saveAll(products);
+            report.saved(result.getSuccessCount());
+            List<BatchResult.Item<Product>> items = result.getItems();
+            for (int i = 0; i < items.size(); i++) {
+                if (!items.get(i).isSuccess()) {
+                    report.failed(lineNumbers[i], items.get(i).getError());
+                }
+            }
+            products.clear();
+        }
+    }
+}
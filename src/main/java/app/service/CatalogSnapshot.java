@@ -0,0 +1,38 @@
+package app.service;
+
+import java.time.Instant;
+
+/*
+Показатели каталога на прошедший момент времени (см. ProductService.getCatalogAt):
+количество активных продуктов, их суммарная стоимость и средняя цена.
+ */
+public class CatalogSnapshot {
+
+    private final Instant time;
+    private final int activeProductsNumber;
+    private final double totalCost;
+    private final double averagePrice;
+
+    CatalogSnapshot(Instant time, int activeProductsNumber, double totalCost, double averagePrice) {
+        this.time = time;
+        this.activeProductsNumber = activeProductsNumber;
+        this.totalCost = totalCost;
+        this.averagePrice = averagePrice;
+    }
+
+    public Instant getTime() {
+        return time;
+    }
+
+    public int getActiveProductsNumber() {
+        return activeProductsNumber;
+    }
+
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    public double getAveragePrice() {
+        return averagePrice;
+    }
+}
@@ -0,0 +1,69 @@
+package app.service;
+
+import app.changes.ChangeLog;
+import app.changes.ChangeStream;
+import app.persistence.Journal;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/*
+Поток изменений продуктов, покупателей и корзин для внешних систем (см. ChangeStream).
+Пока поток не включён, сервисы не тратят на него времени.
+Включается свойствами:
+shop.changes.capacity - размер буфера событий (0 - поток выключен, по умолчанию);
+shop.changes.log - папка журнала изменений, из которого подписчики могут перечитать события
+(по умолчанию журнал не ведётся);
+shop.changes.log.segment - размер сегмента журнала в мегабайтах;
+shop.changes.wait - сколько миллисекунд изменение ждёт отстающего подписчика.
+ */
+public final class ChangeService {
+
+    private static final int DEFAULT_SEGMENT_MEGABYTES = 64;
+    private static final int DEFAULT_WAIT_MILLIS = 1000;
+
+    private static ChangeStream stream;
+
+    private ChangeService() {
+    }
+
+    // Включить поток изменений. logDirectory - папка журнала изменений или null.
+    public static synchronized ChangeStream start(int capacity, Duration maxWait, Path logDirectory,
+                                                  long segmentSize) {
+        if (stream != null) {
+            throw new IllegalStateException("Поток изменений уже включён");
+        }
+        ChangeLog log = logDirectory == null ? null : ChangeLog.open(logDirectory, segmentSize);
+        stream = new ChangeStream(capacity, maxWait, log);
+        ProductService.getInstance().setChangeJournal(stream);
+        CustomerService.getInstance().setChangeJournal(stream);
+        return stream;
+    }
+
+    // Включить поток изменений, если он задан свойством shop.changes.capacity
+    public static void startIfConfigured() {
+        int capacity = Integer.getInteger("shop.changes.capacity", 0);
+        if (capacity > 0) {
+            String directory = System.getProperty("shop.changes.log");
+            start(capacity, Duration.ofMillis(Integer.getInteger("shop.changes.wait", DEFAULT_WAIT_MILLIS)),
+                    directory == null ? null : Path.of(directory),
+                    Integer.getInteger("shop.changes.log.segment", DEFAULT_SEGMENT_MEGABYTES) * (1L << 20));
+        }
+    }
+
+    // Включённый поток изменений или null
+    public static synchronized ChangeStream getStream() {
+        return stream;
+    }
+
+    // Выключить поток изменений: сервисы перестают публиковать события, журнал изменений дописывается и закрывается
+    public static synchronized void stop() {
+        if (stream == null) {
+            return;
+        }
+        ProductService.getInstance().setChangeJournal(Journal.NONE);
+        CustomerService.getInstance().setChangeJournal(Journal.NONE);
+        stream.close();
+        stream = null;
+    }
+}
@@ -0,0 +1,144 @@
+package app.service;
+
+import app.domain.Order;
+import app.exceptions.CheckoutRejectedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+Асинхронный конвейер оформления заказов.
+Запросы попадают в ограниченную очередь и обрабатываются одним потоком пакетами до batchSize запросов.
+Каждый пакет проходит три этапа:
+1. проверка: покупатель активен и корзина не пуста. Проверяется весь пакет, и неудачные запросы дальше не идут;
+2. фиксация цен и сохранение: под блокировкой покупателя корзина копируется в заказ по текущим ценам,
+   заказ сохраняется и записывается в журнал, а корзина очищается (см. CustomerService.checkoutCart).
+   Цены и сохранение выполняются вместе, чтобы корзину нельзя было изменить между ними;
+3. сброс журнала на диск один раз на весь пакет, после чего вызывающие получают свои заказы.
+Единственный поток-обработчик - единственный писатель заказов: чем выше нагрузка, тем больше пакеты
+и тем меньше сбросов журнала на диск приходится на один заказ.
+
+Обратное давление: если очередь заполнена, вызывающий поток ждёт место не дольше offerTimeoutMillis,
+после чего запрос отклоняется (CheckoutRejectedException). Так ограничены и очередь, и время ожидания,
+а перегрузку клиент видит сразу, а не по растущему времени ответа.
+ */
+class CheckoutPipeline {
+
+    // Запрос на оформление заказа. Поля order и error меняет только поток-обработчик.
+    private static class Request {
+        private final long customerId;
+        private final CompletableFuture<Order> result = new CompletableFuture<>();
+        private Order order;
+        private RuntimeException error;
+
+        Request(long customerId) {
+            this.customerId = customerId;
+        }
+    }
+
+    private final OrderService service;
+    private final BlockingQueue<Request> queue;
+    private final int capacity;
+    private final int batchSize;
+    private final long offerTimeoutMillis;
+
+    CheckoutPipeline(OrderService service, int capacity, int batchSize, long offerTimeoutMillis) {
+        this.service = service;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+
+        Thread worker = new Thread(this::run, "checkout");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Поставить запрос в очередь. Результат завершается заказом или исключением этапа, на котором запрос не прошёл.
+    CompletableFuture<Order> submit(long customerId) {
+        Request request = new Request(customerId);
+        try {
+            if (!queue.offer(request, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new CheckoutRejectedException(capacity);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CheckoutRejectedException(capacity);
+        }
+        return request.result;
+    }
+
+    // Количество запросов, ожидающих обработки
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            try {
+                process(batch);
+            } catch (Throwable e) {
+                // Ошибка вне этапов не должна оставить вызывающих ждать вечно
+                for (Request request : batch) {
+                    request.result.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void process(List<Request> batch) {
+        // 1. Проверка
+        for (Request request : batch) {
+            try {
+                service.validate(request.customerId);
+            } catch (RuntimeException e) {
+                request.error = e;
+            }
+        }
+
+        // 2. Фиксация цен и сохранение
+        int placed = 0;
+        for (Request request : batch) {
+            if (request.error != null) {
+                continue;
+            }
+            try {
+                request.order = service.place(request.customerId);
+                placed++;
+            } catch (RuntimeException e) {
+                request.error = e;
+            }
+        }
+
+        // 3. Сброс журнала на диск и ответы
+        RuntimeException flushError = null;
+        if (placed > 0) {
+            try {
+                service.flush();
+            } catch (RuntimeException e) {
+                flushError = e;
+            }
+        }
+        for (Request request : batch) {
+            if (request.error != null) {
+                request.result.completeExceptionally(request.error);
+            } else if (flushError != null) {
+                request.result.completeExceptionally(flushError);
+            } else {
+                request.result.complete(request.order);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package app.service;
+
+import app.metrics.Metrics;
+import app.metrics.Operation;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+Фоновое уплотнение хранилищ продуктов и покупателей.
+Каждый проход переносит в архив хранилища строки, которые были удалены (неактивны)
+ещё на предыдущем проходе и с тех пор не восстанавливались, то есть удалены
+не меньше одного интервала уплотнения назад. Архивные строки убираются из основной таблицы
+и индексов наименований, но по-прежнему находятся по идентификатору и восстанавливаются.
+
+Проходы отмечаются в метриках операцией storage.compact (вызовы, ошибки по типам, время; см. GET /metrics).
+Ошибка фонового прохода не останавливает следующие проходы; последняя ошибка доступна через getLastFailure.
+ */
+public final class CompactionService {
+
+    // Интервал уплотнения по умолчанию, в секундах
+    private static final int DEFAULT_INTERVAL_SECONDS = 600;
+
+    private static final Operation COMPACT = Metrics.operation("storage.compact");
+
+    // Последняя ошибка фонового прохода (null, если ошибок не было)
+    private static volatile RuntimeException lastFailure;
+
+    private CompactionService() {
+    }
+
+    // Выполнить один проход уплотнения. Возвращает количество перенесённых в архив строк.
+    public static int compact() {
+        return COMPACT.record(() ->
+                ProductService.getInstance().archiveInactive() + CustomerService.getInstance().archiveInactive());
+    }
+
+    // Последняя ошибка фонового прохода уплотнения или null, если проходы не завершались ошибкой
+    public static RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    // Выполнять уплотнение каждые interval в фоновом потоке.
+    // Возвращает планировщик: его остановка прекращает уплотнение.
+    public static ScheduledExecutorService start(Duration interval) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (RuntimeException e) {
+                // Ошибка уже отмечена в метриках (COMPACT); она не должна останавливать следующие проходы
+                lastFailure = e;
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
+
+    // Включить уплотнение с интервалом из свойства shop.compaction.interval (в секундах, 0 - выключено)
+    public static void startIfConfigured() {
+        int seconds = Integer.getInteger("shop.compaction.interval", DEFAULT_INTERVAL_SECONDS);
+        if (seconds > 0) {
+            start(Duration.ofSeconds(seconds));
+        }
+    }
+}
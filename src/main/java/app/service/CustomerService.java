@@ -1,20 +1,67 @@
 package app.service;
 
+import app.domain.Cart;
 import app.domain.Customer;
+import app.domain.Order;
 import app.domain.Product;
+import app.exceptions.CheckoutException;
+import app.exceptions.CustomerConflictException;
 import app.exceptions.CustomerNotFoundException;
 import app.exceptions.CustomerSafeException;
 import app.exceptions.CustomerUpdateException;
+import app.exceptions.ProductNotFoundException;
+import app.persistence.Journal;
 import app.repository.CustomerRepository;
+import app.repository.StorageEngines;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
+/*
+Все изменения одного покупателя (имя, состояние, корзина) выполняются под блокировкой
+на объекте покупателя: запросы к разным покупателям не мешают друг другу,
+а запросы к одному и тому же покупателю выполняются по очереди.
+Каждое изменение выдаёт покупателю новую версию, по которой клиент может
+сделать условное изменение (см. update с expectedVersion).
+ */
 public class CustomerService {
 
-    private final CustomerRepository repository = new CustomerRepository();
+    // Сервис покупателей, как и сервис продуктов, существует в единственном экземпляре,
+    // чтобы все контроллеры работали с одной и той же базой данных.
+    private static final CustomerService instance = new CustomerService();
+
     private final ProductService productService = ProductService.getInstance();
 
+    // Хранилище покупателей выбирается системным свойством shop.customers.storage (см. StorageEngines).
+    // Корзины покупателей из архива хранилища находят свои продукты в хранилище продуктов.
+    private final CustomerRepository repository =
+            StorageEngines.createCustomerRepository(productService.getRepository()::findById);
+
+    // Журнал, в который записывается каждое изменение: журнал на диске (если включено хранение на диске),
+    // а за ним поток изменений для подписчиков (если включён, см. ChangeService)
+    private volatile Journal journal = Journal.NONE;
+    private Journal storageJournal = Journal.NONE;
+    private Journal changeJournal = Journal.NONE;
+
+    // Источник версий покупателей. Как и версия каталога продуктов, отсчитывается от текущего времени
+    // (в микросекундах), чтобы версии после перезапуска не совпали с версиями до него.
+    private final AtomicLong versionSequence = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private CustomerService() {
+    }
+
+    public static CustomerService getInstance() {
+        return instance;
+    }
+
     // Функционал сервиса покупателей:
 
     // Сохранить покупателя в базе данных (при сохранении покупатель автоматически считается активным).
@@ -26,20 +73,41 @@ public class CustomerService {
         if (name == null || name.trim().isEmpty()) {
             throw new CustomerSafeException("Имя покупателя не может быть пустым!");
         }
-        customer.setActive(true);
-        return repository.save(customer);
+        synchronized (customer) {
+            customer.setActive(true);
+            customer.setVersion(versionSequence.get());
+            repository.save(customer);
+            journal.customerSaved(customer.getId(), name, true);
+        }
+        return customer;
     }
 
     // Вернуть всех покупателей из базы данных (активных).
     public List<Customer> getAllActiveCustomers() {
-        return repository.findAll()
-                .stream()
-                .filter(Customer::isActive)
-                .toList();
+        return repository.findAllActive();
+    }
+
+    // Вернуть страницу активных покупателей по возрастанию идентификатора.
+    // afterId - идентификатор, после которого начинается страница (null - первая страница).
+    public Page<Customer> getActiveCustomersPage(Long afterId, int pageSize) {
+        return Page.collect(afterId == null ? 0 : afterId, pageSize, repository::nextActiveId, this::findActive);
+    }
+
+    // Лениво перебрать активных покупателей по возрастанию идентификатора, не копируя базу данных.
+    // В поток попадают только покупатели, существовавшие при его создании.
+    public Stream<Customer> streamActiveCustomers() {
+        return repository.activeIds()
+                .mapToObj(this::findActive)
+                .filter(Objects::nonNull);
+    }
+
+    private Customer findActive(long id) {
+        Customer customer = repository.findById(id);
+        return customer == null || !customer.isActive() ? null : customer;
     }
 
     // Вернуть одного покупателя из базы данных по его идентификатору (если он активен).
-    public Customer getActiveCustomerById(Long id) {
+    public Customer getActiveCustomerById(long id) {
         Customer customer = repository.findById(id);
 
         if (customer == null || !customer.isActive()) {
@@ -48,91 +116,291 @@ public class CustomerService {
         return customer;
     }
 
+    // Вернуть всех покупателей из базы данных с указанным именем (активных).
+    public List<Customer> getActiveCustomersByName(String name) {
+        return repository.findByName(name)
+                .stream()
+                .filter(Customer::isActive)
+                .toList();
+    }
+
     // Изменить одного покупателя в базе данных по его идентификатору.
-    public void update(Long id, String newName) {
+    public void update(long id, String newName) {
+        if (newName == null || newName.trim().isEmpty()) {
+            throw new CustomerUpdateException("Имя покупателя не может быть пустым");
+        }
+        Customer customer = repository.findById(id);
+        if (customer == null) {
+            return;
+        }
+        synchronized (customer) {
+            changeName(customer, newName);
+        }
+    }
+
+    // Изменить имя покупателя, только если его версия всё ещё равна expectedVersion.
+    // Если покупателя успели изменить (в том числе его корзину), выбрасывается CustomerConflictException.
+    public void update(long id, String newName, long expectedVersion) {
         if (newName == null || newName.trim().isEmpty()) {
             throw new CustomerUpdateException("Имя покупателя не может быть пустым");
         }
-        repository.update(id, newName);
+        Customer customer = repository.findById(id);
+        if (customer == null) {
+            throw new CustomerNotFoundException(id);
+        }
+        synchronized (customer) {
+            long version = customer.getVersion();
+            if (version != expectedVersion) {
+                throw new CustomerConflictException(id, expectedVersion, version);
+            }
+            changeName(customer, newName);
+        }
+    }
+
+    private void changeName(Customer customer, String newName) {
+        repository.update(customer.getId(), newName);
+        customer.setVersion(versionSequence.incrementAndGet());
+        journal.customerNameUpdated(customer.getId(), newName);
     }
 
     // Удалить покупателя из базы данных по его идентификатору.
-    public void deleteById(Long id) {
+    public void deleteById(long id) {
         Customer customer = getActiveCustomerById(id);
-        customer.setActive(false);
+        setActive(customer, false);
     }
 
     // Удалить покупателя из базы данных по его имени.
     public void deleteByName(String name) {
-        getAllActiveCustomers()
-                .stream()
-                .filter(x -> x.getName().equals(name))
-                .forEach(x -> x.setActive(false));
+        repository.findByName(name)
+                .forEach(x -> setActive(x, false));
+    }
+
+    // Удалить всех активных покупателей, для которых filter возвращает true.
+    // Возвращает количество удалённых покупателей. Считается в общем пуле fork/join.
+    public int deactivateAll(Predicate<Customer> filter) {
+        return deactivateAll(filter, ForkJoinPool.commonPool());
+    }
+
+    // Массовое удаление в указанном пуле (см. ProductService.deactivateAll): сегменты хранилища
+    // обрабатываются параллельно, каждый покупатель удаляется под своей блокировкой
+    // после повторной проверки filter, журнал сбрасывается на диск один раз в конце.
+    public int deactivateAll(Predicate<Customer> filter, ForkJoinPool pool) {
+        int count = SegmentTask.invoke(pool, repository.getMaxId(), (from, to) ->
+                SegmentTask.forEachId(from, to, repository::nextActiveIds, id -> {
+                    Customer customer = repository.findById(id);
+                    return customer != null && filter.test(customer) && setActive(customer, false, filter);
+                }));
+        journal.flush();
+        return count;
+    }
+
+    // Восстановить всех удалённых покупателей, для которых filter возвращает true
+    // (например, удалённых покупателей из диапазона идентификаторов).
+    // Возвращает количество восстановленных покупателей. Считается в общем пуле fork/join.
+    public int restoreAll(Predicate<Customer> filter) {
+        return restoreAll(filter, ForkJoinPool.commonPool());
+    }
+
+    // Массовое восстановление в указанном пуле: перебираются неактивные покупатели, включая архивных
+    // (архивный покупатель возвращается в основную таблицу, только если его восстановили)
+    public int restoreAll(Predicate<Customer> filter, ForkJoinPool pool) {
+        int count = SegmentTask.invoke(pool, repository.getMaxId(), (from, to) ->
+                SegmentTask.forEachId(from, to, repository::nextInactiveIds, id -> {
+                    Customer customer = repository.findById(id);
+                    return customer != null && !customer.isActive() && filter.test(customer)
+                            && setActive(customer, true, filter);
+                }));
+        journal.flush();
+        return count;
     }
 
     // Восстановить удалённого покупателя в базе данных по его идентификатору.
-    public void restoreById(Long id) {
+    public void restoreById(long id) {
         Customer customer = repository.findById(id);
         if (customer == null) {
             throw new CustomerNotFoundException(id);
         }
-        customer.setActive(true);
+        setActive(customer, true);
     }
 
     // Вернуть общее количество покупателей в базе данных (активных).
     public int getActiveCustomersNumber() {
-        return getAllActiveCustomers().size();
+        return repository.countActive();
     }
 
     // Вернуть стоимость корзины покупателя по его идентификатору (если он активен).
-    public double getCustomersCartTotalCost(Long id) {
+    public double getCustomersCartTotalCost(long id) {
         return getActiveCustomerById(id)
                 .getCart()
-                .stream()
-                .filter(x -> x.isActive())
-                .mapToDouble(x -> x.getPrice())
-                .sum();
+                .getTotalCost(productService.getCatalogVersion());
     }
 
     // Вернуть среднюю стоимость продукта в корзине покупателя по его идентификатору (если он активен)
-    public double getCustomersCartAveragePrice(Long id) {
-        return getActiveCustomerById(id).getCart()
-                .stream()
-                .filter(x -> x.isActive())
-                .mapToDouble(x -> x.getPrice())
-                .average()
-                .orElse(0.0);
+    public double getCustomersCartAveragePrice(long id) {
+        return getActiveCustomerById(id)
+                .getCart()
+                .getAveragePrice(productService.getCatalogVersion());
     }
 
     // Добавить товар в корзину покупателя по их идентификаторам (если оба активны)
-    public void addProductCustomersCart(Long customerId, Long productId) {
+    public void addProductCustomersCart(long customerId, long productId) {
         Customer customer = getActiveCustomerById(customerId);
         Product product = productService.getActiveProductById(productId);
-        customer.getCart().add(product);
+        Cart cart = customer.getCart();
+        // Блокировка на покупателе сохраняет порядок записей журнала таким же, как порядок изменений
+        synchronized (customer) {
+            checkStillActive(customer);
+            cart.add(product);
+            customer.setVersion(versionSequence.incrementAndGet());
+            journal.cartQuantityChanged(customerId, productId, cart.getQuantity(productId));
+        }
     }
 
-    // Удалить товар из корзины покупателя по их идентификаторам
-    public void removeProductFromCustomersCart(Long customerId, Long productId) {
-        // Подход 1. Удаление всех продуктов одного наименования из корзины.
-//        Customer customer = getActiveCustomerById(customerId);
-//        customer.getCart().removeIf(x -> x.getId().equals(productId));
-
-        // Подход 2. Удаление только одного продукта нужного наименования
+    // Добавить в корзину покупателя пакет товаров по их идентификаторам.
+    // Сначала за один проход находятся все товары, затем они добавляются в корзину вместе.
+    // Неактивные и несуществующие товары попадают в результат с ошибкой.
+    public BatchResult<Long> addProductsToCart(long customerId, List<Long> productIds) {
         Customer customer = getActiveCustomerById(customerId);
-        List<Product> cart = customer.getCart();
-        Iterator<Product> iterator = cart.iterator();
+        BatchResult<Long> result = new BatchResult<>(productIds.size());
+        List<Product> products = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            try {
+                products.add(productService.getActiveProductById(productId));
+                result.success(productId);
+            } catch (ProductNotFoundException e) {
+                result.failure(productId, e.getMessage());
+            }
+        }
 
-        while (iterator.hasNext()) {
-            if (iterator.next().getId().equals(productId)) {
-                iterator.remove();
-                break;
+        Cart cart = customer.getCart();
+        synchronized (customer) {
+            checkStillActive(customer);
+            Set<Long> changed = new LinkedHashSet<>();
+            for (Product product : products) {
+                cart.add(product);
+                changed.add(product.getId());
+            }
+            if (!changed.isEmpty()) {
+                customer.setVersion(versionSequence.incrementAndGet());
+            }
+            // В журнал попадает только итоговое количество каждого изменённого товара
+            for (Long productId : changed) {
+                journal.cartQuantityChanged(customerId, productId, cart.getQuantity(productId));
+            }
+        }
+        return result;
+    }
+
+    // Удалить товар из корзины покупателя по их идентификаторам
+    public void removeProductFromCustomersCart(long customerId, long productId) {
+        // Удаляется только одна единица продукта нужного наименования
+        Customer customer = getActiveCustomerById(customerId);
+        Cart cart = customer.getCart();
+        synchronized (customer) {
+            checkStillActive(customer);
+            if (cart.removeOne(productId)) {
+                customer.setVersion(versionSequence.incrementAndGet());
+                journal.cartQuantityChanged(customerId, productId, cart.getQuantity(productId));
             }
         }
     }
 
     // Полностью очистить корзину покупателя по его идентификатору (если он активен)
-    public void clearCustomersCart(Long id) {
+    public void clearCustomersCart(long id) {
         Customer customer = getActiveCustomerById(id);
-        customer.getCart().clear();
+        Cart cart = customer.getCart();
+        synchronized (customer) {
+            checkStillActive(customer);
+            cart.clear();
+            customer.setVersion(versionSequence.incrementAndGet());
+            journal.cartCleared(id);
+        }
+    }
+
+    // Оформить заказ из корзины покупателя (используется конвейером заказов, см. OrderService).
+    // Под блокировкой покупателя строки корзины с активными продуктами копируются по текущим ценам,
+    // placeOrder сохраняет заказ, после чего эти строки убираются из корзины.
+    // Это одно изменение покупателя: товар, добавленный параллельно, не потеряется между снимком
+    // корзины и её очисткой, а записи журнала идут в том же порядке, что и изменения.
+    // Неактивные продукты не попадают в заказ и остаются в корзине.
+    Order checkoutCart(long customerId, Function<List<Order.Line>, Order> placeOrder) {
+        Customer customer = getActiveCustomerById(customerId);
+        Cart cart = customer.getCart();
+        synchronized (customer) {
+            checkStillActive(customer);
+            List<Order.Line> lines = new ArrayList<>();
+            List<Product> ordered = new ArrayList<>();
+            cart.forEach((product, quantity) -> {
+                if (product.isActive()) {
+                    lines.add(new Order.Line(product.getId(), product.getTitle(), product.getPrice(), quantity));
+                    ordered.add(product);
+                }
+            });
+            if (lines.isEmpty()) {
+                throw new CheckoutException(String.format("Корзина покупателя %d пуста", customerId));
+            }
+
+            Order order = placeOrder.apply(lines);
+            for (Product product : ordered) {
+                cart.setQuantity(product, 0);
+            }
+            customer.setVersion(versionSequence.incrementAndGet());
+            if (cart.isEmpty()) {
+                journal.cartCleared(customerId);
+            } else {
+                for (Product product : ordered) {
+                    journal.cartQuantityChanged(customerId, product.getId(), 0);
+                }
+            }
+            return order;
+        }
+    }
+
+    // Проверить под блокировкой покупателя, что он всё ещё активен:
+    // между поиском покупателя и блокировкой его могли удалить
+    private static void checkStillActive(Customer customer) {
+        if (!customer.isActive()) {
+            throw new CustomerNotFoundException(customer.getId());
+        }
+    }
+
+    private void setActive(Customer customer, boolean active) {
+        setActive(customer, active, x -> true);
+    }
+
+    // Изменить состояние покупателя, если оно другое и покупатель удовлетворяет condition
+    // (проверяется под блокировкой). Возвращает true, если состояние изменилось.
+    private boolean setActive(Customer customer, boolean active, Predicate<Customer> condition) {
+        synchronized (customer) {
+            if (customer.isActive() == active || !condition.test(customer)) {
+                return false;
+            }
+            repository.setActive(customer.getId(), active);
+            customer.setVersion(versionSequence.incrementAndGet());
+            journal.customerActiveChanged(customer.getId(), active);
+            return true;
+        }
+    }
+
+    // Перенести в архив хранилища покупателей, которые остаются удалёнными со времени предыдущего вызова
+    // (см. CompactionService). Возвращает количество перенесённых покупателей.
+    public int archiveInactive() {
+        return repository.archiveInactive();
+    }
+
+    // Методы для хранения базы данных на диске (используются StorageService):
+
+    CustomerRepository getRepository() {
+        return repository;
+    }
+
+    synchronized void setJournal(Journal journal) {
+        storageJournal = journal;
+        this.journal = storageJournal.andThen(changeJournal);
+    }
+
+    synchronized void setChangeJournal(Journal changes) {
+        changeJournal = changes;
+        journal = storageJournal.andThen(changeJournal);
     }
 }
@@ -0,0 +1,74 @@
+package app.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Отчёт о загрузке каталога из файла.
+Хранит не более MAX_ERRORS сообщений об ошибках, чтобы отчёт
+не рос вместе с размером файла.
+ */
+public class ImportReport {
+
+    private static final int MAX_ERRORS = 100;
+
+    private long rows;
+    private long saved;
+    private long failed;
+    private long elapsedNanos;
+    private final List<String> errors = new ArrayList<>();
+
+    void rowRead() {
+        rows++;
+    }
+
+    void saved(long count) {
+        saved += count;
+    }
+
+    void failed(long lineNumber, String error) {
+        failed++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("Строка " + lineNumber + ": " + error);
+        }
+    }
+
+    void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getSaved() {
+        return saved;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    // Первые ошибки загрузки (не более MAX_ERRORS)
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    // Скорость загрузки: строк в секунду
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : rows * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format(
+                "Прочитано строк - %d, сохранено - %d, с ошибками - %d, время - %.2f с, строк в секунду - %.0f",
+                rows, saved, failed, elapsedNanos / 1e9, getRowsPerSecond()));
+        errors.forEach(x -> builder.append(System.lineSeparator()).append(x));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package app.service;
+
+import app.domain.Customer;
+import app.domain.Order;
+import app.domain.Product;
+import app.persistence.Journal;
+import app.repository.CustomerRepository;
+import app.repository.OrderRepository;
+import app.repository.ProductRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Применяет записи журнала к репозиториям при восстановлении базы данных с диска.
+Записи применяются напрямую, без проверок сервисов: они уже были проверены,
+когда изменение произошло впервые.
+ */
+class JournalReplayer implements Journal {
+
+    private final ProductRepository productRepository;
+    private final CustomerRepository customerRepository;
+    private final OrderRepository orderRepository;
+
+    // Строки заказов, для которых ещё не встретилась завершающая запись orderPlaced
+    private final Map<Long, List<Order.Line>> pendingOrderLines = new HashMap<>();
+
+    JournalReplayer(ProductRepository productRepository, CustomerRepository customerRepository,
+                    OrderRepository orderRepository) {
+        this.productRepository = productRepository;
+        this.customerRepository = customerRepository;
+        this.orderRepository = orderRepository;
+    }
+
+    @Override
+    public void productSaved(long id, String title, double price, boolean active, long version) {
+        Product product = new Product(title, price);
+        product.setId(id);
+        product.setActive(active);
+        product.setVersion(version);
+        restoreVersion(productRepository.restore(product), version);
+    }
+
+    @Override
+    public void productPriceUpdated(long id, double price, long version) {
+        productRepository.update(id, price);
+        restoreVersion(productRepository.findById(id), version);
+    }
+
+    @Override
+    public void productActiveChanged(long id, boolean active, long version) {
+        productRepository.setActive(id, active);
+        restoreVersion(productRepository.findById(id), version);
+    }
+
+    // Вернуть продукту версию из записи. Записи без версии (0) оставляют версию как есть.
+    private static void restoreVersion(Product product, long version) {
+        if (product != null && version != 0) {
+            product.setVersion(version);
+        }
+    }
+
+    @Override
+    public void customerSaved(long id, String name, boolean active) {
+        Customer customer = new Customer(name);
+        customer.setId(id);
+        customer.setActive(active);
+        customerRepository.restore(customer);
+    }
+
+    @Override
+    public void customerNameUpdated(long id, String name) {
+        customerRepository.update(id, name);
+    }
+
+    @Override
+    public void customerActiveChanged(long id, boolean active) {
+        customerRepository.setActive(id, active);
+    }
+
+    @Override
+    public void cartQuantityChanged(long customerId, long productId, int quantity) {
+        Customer customer = customerRepository.findById(customerId);
+        Product product = productRepository.findById(productId);
+        if (customer != null && product != null) {
+            customer.getCart().setQuantity(product, quantity);
+        }
+    }
+
+    @Override
+    public void cartCleared(long customerId) {
+        Customer customer = customerRepository.findById(customerId);
+        if (customer != null) {
+            customer.getCart().clear();
+        }
+    }
+
+    @Override
+    public void orderLineAdded(long orderId, long productId, String title, double price, int quantity) {
+        pendingOrderLines.computeIfAbsent(orderId, key -> new ArrayList<>())
+                .add(new Order.Line(productId, title, price, quantity));
+    }
+
+    @Override
+    public void orderPlaced(long id, long customerId, long createdAt) {
+        List<Order.Line> lines = pendingOrderLines.remove(id);
+        Order order = new Order(customerId, createdAt, lines == null ? List.of() : lines);
+        order.setId(id);
+        orderRepository.restore(order);
+    }
+}
@@ -0,0 +1,131 @@
+package app.service;
+
+import app.domain.Order;
+import app.exceptions.CheckoutException;
+import app.exceptions.OrderNotFoundException;
+import app.persistence.Journal;
+import app.repository.OrderRepository;
+import app.repository.StorageEngines;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/*
+Сервис заказов: оформление заказа из корзины покупателя и поиск оформленных заказов.
+Заказ фиксирует наименования и цены продуктов на момент оформления (см. Order).
+Заказы оформляются асинхронным конвейером пакетами (см. CheckoutPipeline).
+
+Системные свойства:
+- shop.checkout.queue - размер очереди запросов на оформление (по умолчанию 1024);
+- shop.checkout.batch - максимальный размер пакета (по умолчанию 64);
+- shop.checkout.timeout - сколько миллисекунд ждать места в заполненной очереди,
+  прежде чем отклонить запрос (по умолчанию 100).
+ */
+public class OrderService {
+
+    // Сервис заказов, как и остальные сервисы, существует в единственном экземпляре
+    private static final OrderService instance = new OrderService();
+
+    private final OrderRepository repository = StorageEngines.createOrderRepository();
+    private final CustomerService customerService = CustomerService.getInstance();
+
+    // Журнал, в который записывается каждый заказ (если включено хранение на диске)
+    private volatile Journal journal = Journal.NONE;
+
+    private final CheckoutPipeline pipeline;
+
+    private OrderService() {
+        pipeline = new CheckoutPipeline(this,
+                Integer.getInteger("shop.checkout.queue", 1024),
+                Integer.getInteger("shop.checkout.batch", 64),
+                Long.getLong("shop.checkout.timeout", 100));
+    }
+
+    public static OrderService getInstance() {
+        return instance;
+    }
+
+    // Функционал сервиса заказов:
+
+    // Оформить заказ из корзины покупателя, не дожидаясь результата.
+    // Если очередь оформления переполнена, выбрасывается CheckoutRejectedException.
+    public CompletableFuture<Order> checkoutAsync(long customerId) {
+        return pipeline.submit(customerId);
+    }
+
+    // Оформить заказ из корзины покупателя и дождаться его сохранения
+    public Order checkout(long customerId) {
+        try {
+            return checkoutAsync(customerId).join();
+        } catch (CompletionException e) {
+            // Исключение этапа конвейера выбрасывается как есть, чтобы вызывающий видел его тип
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Вернуть заказ по идентификатору
+    public Order getOrderById(long id) {
+        Order order = repository.findById(id);
+        if (order == null) {
+            throw new OrderNotFoundException(id);
+        }
+        return order;
+    }
+
+    // Вернуть все заказы покупателя в порядке оформления
+    public List<Order> getCustomerOrders(long customerId) {
+        return repository.findByCustomer(customerId);
+    }
+
+    // Вернуть общее количество заказов
+    public int getOrdersNumber() {
+        return repository.count();
+    }
+
+    // Количество запросов на оформление, ожидающих в очереди
+    public int getCheckoutQueueSize() {
+        return pipeline.getQueueSize();
+    }
+
+    // Этапы конвейера (вызываются потоком конвейера):
+
+    // Проверка: покупатель активен и его корзина не пуста
+    void validate(long customerId) {
+        if (customerService.getActiveCustomerById(customerId).getCart().isEmpty()) {
+            throw new CheckoutException(String.format("Корзина покупателя %d пуста", customerId));
+        }
+    }
+
+    // Фиксация цен и сохранение заказа (под блокировкой покупателя).
+    // Строки заказа пишутся в журнал раньше записи orderPlaced, которая завершает заказ.
+    Order place(long customerId) {
+        return customerService.checkoutCart(customerId, lines -> {
+            Order order = repository.save(new Order(customerId, System.currentTimeMillis(), lines));
+            for (Order.Line line : order.getLines()) {
+                journal.orderLineAdded(order.getId(), line.getProductId(), line.getTitle(), line.getPrice(),
+                        line.getQuantity());
+            }
+            journal.orderPlaced(order.getId(), customerId, order.getCreatedAt());
+            return order;
+        });
+    }
+
+    // Сброс журнала на диск (один раз на пакет заказов)
+    void flush() {
+        journal.flush();
+    }
+
+    // Методы для хранения базы данных на диске (используются StorageService):
+
+    OrderRepository getRepository() {
+        return repository;
+    }
+
+    void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+}
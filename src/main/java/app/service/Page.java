@@ -0,0 +1,68 @@
+package app.service;
+
+import app.exceptions.PageSizeException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+import java.util.function.LongUnaryOperator;
+
+/*
+Страница результатов при постраничном чтении по возрастанию идентификатора (keyset pagination).
+Следующая страница запрашивается по идентификатору последнего элемента текущей (getNextAfterId),
+поэтому элементы, добавленные или удалённые между запросами страниц, не приводят
+к повторам и пропускам остальных элементов.
+ */
+public class Page<T> {
+
+    private final List<T> items;
+    private final Long nextAfterId;
+
+    private Page(List<T> items, Long nextAfterId) {
+        this.items = items;
+        this.nextAfterId = nextAfterId;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    // Идентификатор, после которого начинается следующая страница (null, если страница последняя)
+    public Long getNextAfterId() {
+        return nextAfterId;
+    }
+
+    public boolean hasNext() {
+        return nextAfterId != null;
+    }
+
+    // Собрать страницу, перебирая идентификаторы активных элементов после afterId.
+    // nextId возвращает наименьший идентификатор активного элемента, не меньший заданного, или 0,
+    // поэтому неактивные элементы пропускаются, не читаясь.
+    // loader возвращает активный элемент или null, если элемент успели удалить.
+    // Пустая страница с продолжением вернула бы клиенту тот же afterId, и он запрашивал бы её бесконечно,
+    // поэтому размер страницы должен быть больше нуля.
+    static <T> Page<T> collect(long afterId, int pageSize, LongUnaryOperator nextId, LongFunction<T> loader) {
+        if (pageSize <= 0) {
+            throw new PageSizeException(pageSize);
+        }
+        List<T> items = new ArrayList<>(Math.min(pageSize, 1024));
+        long id = Math.max(afterId, 0);
+        long next = nextId.applyAsLong(id + 1);
+        while (items.size() < pageSize && next != 0) {
+            id = next;
+            T item = loader.apply(id);
+            if (item != null) {
+                items.add(item);
+            }
+            next = nextId.applyAsLong(id + 1);
+        }
+        return new Page<>(items, next != 0 ? id : null);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Страница: элементов - %d, следующая страница после идентификатора - %s",
+                items.size(), nextAfterId == null ? "нет" : nextAfterId);
+    }
+}
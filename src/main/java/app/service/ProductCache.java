@@ -0,0 +1,150 @@
+package app.service;
+
+import app.domain.Product;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/*
+Ограниченный по размеру кэш активных продуктов.
+Вытеснение работает по алгоритму CLOCK (приближение LRU):
+записи лежат в кольце, при каждом попадании у записи ставится отметка "использовалась".
+Когда нужно место, "стрелка" идёт по кольцу, снимает отметки и вытесняет
+первую запись без отметки - то есть ту, к которой давно не обращались.
+
+Попадание в кэш - это только чтение из ConcurrentHashMap и запись отметки, без блокировок.
+Блокировка берётся только при добавлении новой записи (при промахе).
+
+Сервис продуктов удаляет продукт из кэша при каждом его изменении
+(цена, удаление, восстановление). Чтобы продукт, прочитанный до изменения,
+не попал в кэш уже после удаления из него, используются версии:
+загруженный продукт кладётся в кэш, только если версия его группы
+идентификаторов за время загрузки не изменилась.
+
+По умолчанию кэш выключен (shop.products.cache.size=0). Оба текущих хранилища отдают продукт
+за одно обращение к памяти, и кэш их только замедляет. ProductCacheBenchmark
+(1 000 000 продуктов, 10 000 записей в кэше, распределение Ципфа, доля попаданий 58%):
+- heap: 192 нс без кэша, 478 нс с кэшем;
+- mapped: 441 нс без кэша, 601 нс с кэшем.
+Кэш имеет смысл включать перед более медленным хранилищем. В кэше лежат сами объекты продуктов,
+а не их копии, поэтому прочитанный из кэша продукт видит последующие изменения так же,
+как продукт, прочитанный из репозитория.
+ */
+class ProductCache {
+
+    private static final int VERSION_STRIPES = 64;
+
+    private static class Entry {
+        private final long id;
+        private final Product product;
+        private volatile boolean referenced;
+
+        Entry(long id, Product product) {
+            this.id = id;
+            this.product = product;
+        }
+    }
+
+    private final int maximumSize;
+    private final Map<Long, Entry> entries;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    // Кольцо записей и стрелка CLOCK (изменяются только под блокировкой на this)
+    private final Entry[] ring;
+    private int count;
+    private int hand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // maximumSize - максимальное количество продуктов в кэше (0 - кэш выключен)
+    ProductCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+        this.entries = new ConcurrentHashMap<>(Math.max(16, maximumSize * 4 / 3));
+        this.ring = new Entry[maximumSize];
+    }
+
+    // Вернуть продукт из кэша или загрузить его через loader.
+    // Если loader вернул null (продукта нет или он неактивен), в кэш ничего не кладётся.
+    Product get(long id, LongFunction<Product> loader) {
+        if (maximumSize == 0) {
+            return loader.apply(id);
+        }
+        Entry entry = entries.get(id);
+        if (entry != null) {
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            hits.increment();
+            return entry.product;
+        }
+        misses.increment();
+        int stripe = stripe(id);
+        long version = versions.get(stripe);
+        Product product = loader.apply(id);
+        if (product != null) {
+            add(new Entry(id, product), stripe, version);
+        }
+        return product;
+    }
+
+    // Удалить продукт из кэша
+    void invalidate(long id) {
+        if (maximumSize == 0) {
+            return;
+        }
+        versions.incrementAndGet(stripe(id));
+        entries.remove(id);
+    }
+
+    // Очистить кэш полностью
+    synchronized void clear() {
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            versions.incrementAndGet(i);
+        }
+        entries.clear();
+    }
+
+    CacheStatistics getStatistics() {
+        return new CacheStatistics(maximumSize, entries.size(), hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private synchronized void add(Entry entry, int stripe, long version) {
+        if (versions.get(stripe) != version || entries.putIfAbsent(entry.id, entry) != null) {
+            return;
+        }
+        // Продукт мог измениться, пока запись добавлялась: тогда она сразу удаляется
+        if (versions.get(stripe) != version) {
+            entries.remove(entry.id, entry);
+            return;
+        }
+        if (count < ring.length) {
+            ring[count++] = entry;
+            return;
+        }
+        while (true) {
+            Entry candidate = ring[hand];
+            if (entries.get(candidate.id) != candidate) {
+                // Запись уже удалена из кэша (продукт изменился) - её место свободно
+                break;
+            }
+            if (!candidate.referenced) {
+                entries.remove(candidate.id, candidate);
+                evictions.increment();
+                break;
+            }
+            candidate.referenced = false;
+            hand = (hand + 1) % ring.length;
+        }
+        ring[hand] = entry;
+        hand = (hand + 1) % ring.length;
+    }
+
+    private static int stripe(long id) {
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 58) & (VERSION_STRIPES - 1);
+    }
+}
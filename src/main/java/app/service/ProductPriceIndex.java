@@ -0,0 +1,107 @@
+package app.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/*
+Индекс активных продуктов, упорядоченный по цене.
+Ключ индекса - пара (цена, идентификатор): продукты с одинаковой ценой
+различаются и упорядочиваются по идентификатору.
+Индекс построен на ConcurrentSkipListSet: поиск начала диапазона занимает O(log n),
+после чего продукты читаются подряд, без сортировки при каждом запросе.
+Индекс хранит только ключи, сами продукты сервис берёт из репозитория.
+ */
+class ProductPriceIndex {
+
+    private static final class Key implements Comparable<Key> {
+        private final double price;
+        private final long id;
+
+        Key(double price, long id) {
+            this.price = price;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byPrice = Double.compare(price, other.price);
+            return byPrice != 0 ? byPrice : Long.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && compareTo((Key) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Double.hashCode(price) * 31 + Long.hashCode(id);
+        }
+    }
+
+    private final ConcurrentSkipListSet<Key> keys = new ConcurrentSkipListSet<>();
+
+    // Выключенный индекс ничего не хранит, а сервис в этом случае отвечает на запросы сортировкой
+    private final boolean enabled;
+
+    ProductPriceIndex(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void add(long id, double price) {
+        if (enabled) {
+            keys.add(new Key(price, id));
+        }
+    }
+
+    void remove(long id, double price) {
+        if (enabled) {
+            keys.remove(new Key(price, id));
+        }
+    }
+
+    void changePrice(long id, double oldPrice, double newPrice) {
+        remove(id, oldPrice);
+        add(id, newPrice);
+    }
+
+    void clear() {
+        keys.clear();
+    }
+
+    // Идентификаторы продуктов с ценой от minPrice до maxPrice включительно (не больше limit, по возрастанию цены)
+    List<Long> range(double minPrice, double maxPrice, int limit) {
+        return ids(keys.subSet(new Key(minPrice, Long.MIN_VALUE), true, new Key(maxPrice, Long.MAX_VALUE), true), limit);
+    }
+
+    // Идентификаторы limit самых дешёвых продуктов
+    List<Long> cheapest(int limit) {
+        return ids(keys, limit);
+    }
+
+    // Идентификаторы limit самых дорогих продуктов (по убыванию цены)
+    List<Long> mostExpensive(int limit) {
+        return ids(keys.descendingSet(), limit);
+    }
+
+    // Следующая страница продуктов по возрастанию цены: продукты, идущие после (afterPrice, afterId)
+    List<Long> after(double afterPrice, long afterId, int limit) {
+        return ids(keys.tailSet(new Key(afterPrice, afterId), false), limit);
+    }
+
+    private static List<Long> ids(NavigableSet<Key> keys, int limit) {
+        List<Long> ids = new ArrayList<>(Math.min(limit, 1024));
+        Iterator<Key> iterator = keys.iterator();
+        while (ids.size() < limit && iterator.hasNext()) {
+            ids.add(iterator.next().id);
+        }
+        return ids;
+    }
+}
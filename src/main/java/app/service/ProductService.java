@@ -1,12 +1,29 @@
 package app.service;
 
 import app.domain.Product;
+import app.exceptions.PriceHistoryDisabledException;
+import app.exceptions.ProductConflictException;
 import app.exceptions.ProductNotFoundException;
 import app.exceptions.ProductSaveException;
 import app.exceptions.ProductUpdateException;
+import app.persistence.Journal;
+import app.repository.PriceHistory;
 import app.repository.ProductRepository;
+import app.repository.StorageEngines;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /*
 Этот класс находится на третье слое нашего приложения - слой сервисов.
@@ -18,128 +35,593 @@ import java.util.List;
 public class ProductService {
 
     // Статическое поле, которое содержит объект этого же класса.
-    private static ProductService instance;
+    // Объект создаётся один раз при загрузке класса, поэтому
+    // все потоки гарантированно получают один и тот же полностью созданный сервис.
+    private static final ProductService instance = new ProductService();
 
-    private final ProductRepository repository = new ProductRepository();
+    // Хранилище продуктов выбирается системными свойствами при запуске (см. StorageEngines):
+    // например, при shop.products.mapped (путь к папке) продукты хранятся в колонках файлов,
+    // отображённых в память, а не в объектах в куче.
+    private final ProductRepository repository;
+
+    // Заранее посчитанные показатели по активным продуктам
+    private final ProductStatistics statistics = new ProductStatistics();
+
+    // Версия каталога: увеличивается при каждом изменении цены, удалении или восстановлении продукта.
+    // По ней корзины покупателей понимают, что их закэшированная стоимость устарела.
+    // Изменённый продукт получает новую версию каталога как свою версию, поэтому версия
+    // каждого продукта только растёт. Версии продуктов сохраняются в снимке и журнале, а после
+    // восстановления отсчёт продолжается не ниже самой старшей восстановленной версии (и не ниже
+    // текущего времени в микросекундах), чтобы новые версии не совпали с выданными до перезапуска.
+    private final AtomicLong catalogVersion = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    // Кэш активных продуктов для поиска по идентификатору (см. ProductCache).
+    // Размер задаётся системным свойством shop.products.cache.size (0 - кэш выключен).
+    private final ProductCache cache = new ProductCache(Integer.getInteger("shop.products.cache.size", 0));
+
+    // Индекс активных продуктов по цене для запросов по диапазону цен и самых дешёвых/дорогих продуктов.
+    // Индекс хранится в куче (около 70 байт на продукт). Для каталога в файлах, отображённых в память,
+    // который больше доступной памяти, его можно выключить свойством shop.products.price.index=false -
+    // тогда такие запросы сортируют активные продукты при каждом вызове.
+    private final ProductPriceIndex priceIndex =
+            new ProductPriceIndex(Boolean.parseBoolean(System.getProperty("shop.products.price.index", "true")));
+
+    // История цен продуктов для вопросов о прошедших моментах времени (цена продукта, стоимость каталога).
+    // История хранится только в памяти и начинается с запуска (или восстановления базы данных с диска).
+    // Отключается свойством shop.products.price.history=false; shop.products.price.history.limit -
+    // сколько изменений хранится для одного продукта (более старые забываются).
+    private final PriceHistory priceHistory = new PriceHistory(
+            Boolean.parseBoolean(System.getProperty("shop.products.price.history", "true")),
+            Integer.getInteger("shop.products.price.history.limit", 1024));
+
+    private static final Comparator<Product> BY_PRICE =
+            Comparator.comparingDouble(Product::getPrice).thenComparingLong(Product::getId);
+
+    // Журнал, в который записывается каждое изменение: журнал на диске (если включено хранение на диске),
+    // а за ним поток изменений для подписчиков (если включён, см. ChangeService)
+    private volatile Journal journal = Journal.NONE;
+    private Journal storageJournal = Journal.NONE;
+    private Journal changeJournal = Journal.NONE;
 
     // Приватным конструктором нельзя пользоваться за пределами класса.
+    // Показатели пересчитываются сразу: колонки в файлах могли остаться от прошлого запуска.
     private ProductService() {
+        this(StorageEngines.createProductRepository());
+    }
+
+    // Сервис над отдельным хранилищем (для тестов конкретного хранилища)
+    ProductService(ProductRepository repository) {
+        this.repository = repository;
+        rebuildStatistics();
     }
 
     // Метод, который возвращает объект продуктового сервиса.
-    // Если объект не был создан ранее, метод его создаёт,
-    // Если объект уже создался ранее, метод возвращает этот ранее созданный объект.
-    // Этот паттерн называется Singleton.
+    // Объект всегда один и тот же - этот паттерн называется Singleton.
     public static ProductService getInstance() {
-        if (instance == null) {
-            instance = new ProductService();
-        } return instance;
+        return instance;
     }
 
     //  Функционал сервиса продуктов:
 
     //  Сохранить продукт в базе данных (при сохранении продукт автоматически считается активным).
     public Product save(Product product) {
-        if (product == null) {
-            throw new ProductSaveException("Продукт не может быть null!");
+        String error = validate(product);
+        if (error != null) {
+            throw new ProductSaveException(error);
+        }
+        String title = product.getTitle();
+        product.setActive(true);
+        product.setVersion(catalogVersion.get());
+        // Хранилище вызывает onSaved под блокировкой на сохранённом объекте до того, как его сможет
+        // изменить другой поток, поэтому запись о сохранении попадёт в журнал раньше записей
+        // о любых последующих изменениях этого продукта (и на хранилище mapped, которое возвращает
+        // не переданный объект, а представление над колонками).
+        return repository.save(product, saved -> saved(saved, title));
+    }
+
+    // Учесть сохранённый продукт в показателях и записать его в журнал.
+    // Вызывается хранилищем под блокировкой на сохранённом объекте.
+    private void saved(Product saved, String title) {
+        statistics.add(saved.getPrice());
+        priceIndex.add(saved.getId(), saved.getPrice());
+        priceHistory.record(saved.getId(), System.currentTimeMillis(), saved.getPrice(), true);
+        journal.productSaved(saved.getId(), title, saved.getPrice(), true, saved.getVersion());
+    }
+
+    //  Сохранить пакет продуктов в базе данных.
+    //  Все продукты проверяются за один проход, для прошедших проверку сразу резервируется
+    //  блок идентификаторов. Некорректные продукты не сохраняются и попадают в результат с ошибкой.
+    //  Продукт, который отклонило хранилище (например, слишком длинное наименование для колонок в файлах),
+    //  тоже попадает в результат с ошибкой, а остальные продукты пакета сохраняются.
+    public BatchResult<Product> saveAll(List<Product> products) {
+        BatchResult<Product> result = new BatchResult<>(products.size());
+        List<Integer> validIndexes = new ArrayList<>(products.size());
+        // Один и тот же объект получил бы два идентификатора, а в показателях и индексе цен считался бы дважды
+        Set<Product> seen = Collections.newSetFromMap(new IdentityHashMap<>(products.size()));
+        for (Product product : products) {
+            String error = validate(product);
+            if (error == null && !seen.add(product)) {
+                error = "Продукт уже есть в пакете!";
+            }
+            if (error == null) {
+                validIndexes.add(result.getItems().size());
+                result.success(product);
+            } else {
+                result.failure(product, error);
+            }
+        }
+        if (validIndexes.isEmpty()) {
+            return result;
         }
 
+        long id = repository.reserveIds(validIndexes.size());
+        long version = catalogVersion.get();
+        // Каждый продукт сначала появляется в базе данных, а потом записывается в журнал, как в save():
+        // снимок базы данных, записанный между этими шагами, уже содержит продукт, а запись о сохранении
+        // попадает в новый сегмент журнала. Как и в save(), запись о сохранении делается под блокировкой
+        // на объекте, который вернуло хранилище, поэтому она попадёт в журнал раньше записей
+        // о любых последующих изменениях этого продукта.
+        for (int index : validIndexes) {
+            Product product = products.get(index);
+            long previousId = product.getId();
+            boolean previousActive = product.isActive();
+            long previousVersion = product.getVersion();
+            product.setId(id++);
+            product.setActive(true);
+            product.setVersion(version);
+            String title = product.getTitle();
+            try {
+                result.replace(index, repository.restore(product, saved -> saved(saved, title)));
+            } catch (ProductSaveException e) {
+                // Зарезервированный идентификатор остаётся пустым, продукт возвращается в прежнее состояние
+                product.setId(previousId);
+                product.setActive(previousActive);
+                product.setVersion(previousVersion);
+                result.fail(index, e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    // Проверить продукт перед сохранением. Возвращает текст ошибки или null, если всё в порядке.
+    private String validate(Product product) {
+        if (product == null) {
+            return "Продукт не может быть null!";
+        }
         String title = product.getTitle();
         // trim(): "  Banana   " -> "Banana"
         if (title == null || title.trim().isEmpty()) {
-            throw new ProductSaveException("Наименование продукта не должно быть пустым!");
+            return "Наименование продукта не должно быть пустым!";
         }
-
         if (product.getPrice() < 0) {
-            throw new ProductSaveException("Цена продукта не должна быть отрицательной!");
+            return "Цена продукта не должна быть отрицательной!";
         }
-        product.setActive(true);
-        return repository.save(product);
+        return null;
     }
 
     //  Вернуть все продукты из базы данных (активные).
     public List<Product> getAllActiveProducts() {
-        return repository.findAll()
-                .stream()
-                .filter(product -> product.isActive())
-                .toList();
+        return repository.findAllActive();
+    }
+
+    //  Вернуть страницу активных продуктов по возрастанию идентификатора.
+    //  afterId - идентификатор, после которого начинается страница (null - первая страница).
+    public Page<Product> getActiveProductsPage(Long afterId, int pageSize) {
+        return Page.collect(afterId == null ? 0 : afterId, pageSize, repository::nextActiveId, this::findActive);
+    }
+
+    //  Лениво перебрать активные продукты по возрастанию идентификатора.
+    //  Продукты читаются из репозитория по одному по мере потребления потока, база данных не копируется.
+    //  В поток попадают только продукты, существовавшие при его создании; состояние каждого продукта
+    //  (цена, активность) - на момент, когда поток до него дошёл.
+    public Stream<Product> streamActiveProducts() {
+        return repository.activeIds()
+                .mapToObj(this::findActive)
+                .filter(Objects::nonNull);
     }
 
     //  Вернуть один продукт из базы данных по его идентификатору (если он активен).
-    public Product getActiveProductById(Long id) {
-        Product product = repository.findById(id);
-        if (product == null || !product.isActive()) {
+    public Product getActiveProductById(long id) {
+        Product product = cache.get(id, this::findActive);
+        if (product == null) {
             throw new ProductNotFoundException(id);
         }
         return product;
     }
 
+    //  Вернуть счётчики кэша продуктов.
+    public CacheStatistics getCacheStatistics() {
+        return cache.getStatistics();
+    }
+
+    // Найти активный продукт в репозитории (null, если продукта нет или он неактивен)
+    private Product findActive(long id) {
+        Product product = repository.findById(id);
+        return product == null || !product.isActive() ? null : product;
+    }
+
+    //  Вернуть все продукты из базы данных с указанным наименованием (активные).
+    public List<Product> getActiveProductsByTitle(String title) {
+        return repository.findByTitle(title)
+                .stream()
+                .filter(Product::isActive)
+                .toList();
+    }
+
     //  Изменить один продукт в базе данных по его идентификатору.
-    public void update(Long id, Double newPrice) {
+    public void update(long id, double newPrice) {
+        if (newPrice < 0) {
+            throw new ProductUpdateException("Цена продукта не должна быть отрицательной!");
+        }
+        Product product = repository.findById(id);
+        if (product == null) {
+            return;
+        }
+        synchronized (product) {
+            changePrice(product, newPrice);
+        }
+    }
+
+    //  Изменить цену продукта, только если его версия всё ещё равна expectedVersion
+    //  (версия, которую клиент прочитал вместе с продуктом).
+    //  Если продукт успели изменить, выбрасывается ProductConflictException:
+    //  клиенту нужно перечитать продукт и решить, повторять ли изменение.
+    public void update(long id, double newPrice, long expectedVersion) {
         if (newPrice < 0) {
             throw new ProductUpdateException("Цена продукта не должна быть отрицательной!");
         }
-        repository.update(id, newPrice);
+        Product product = repository.findById(id);
+        if (product == null) {
+            throw new ProductNotFoundException(id);
+        }
+        synchronized (product) {
+            long version = product.getVersion();
+            if (version != expectedVersion) {
+                throw new ProductConflictException(id, expectedVersion, version);
+            }
+            changePrice(product, newPrice);
+        }
+    }
+
+    //  Изменить цены пакета продуктов: идентификатор продукта -> новая цена.
+    //  Отрицательные цены и несуществующие продукты попадают в результат с ошибкой.
+    public BatchResult<Long> updatePrices(Map<Long, Double> newPrices) {
+        BatchResult<Long> result = new BatchResult<>(newPrices.size());
+        for (Map.Entry<Long, Double> entry : newPrices.entrySet()) {
+            Long id = entry.getKey();
+            Double newPrice = entry.getValue();
+            if (newPrice == null || newPrice < 0) {
+                result.failure(id, "Цена продукта " + id + " не должна быть отрицательной или пустой!");
+                continue;
+            }
+            Product product = repository.findById(id);
+            if (product == null) {
+                result.failure(id, new ProductNotFoundException(id).getMessage());
+                continue;
+            }
+            synchronized (product) {
+                changePrice(product, newPrice);
+            }
+            result.success(id);
+        }
+        return result;
+    }
+
+    // Вызывается под блокировкой на продукте: она не даёт другому потоку удалить или восстановить
+    // продукт между чтением старой цены и обновлением показателей, а условному изменению -
+    // проверить устаревшую версию.
+    private void changePrice(Product product, double newPrice) {
+        double oldPrice = product.getPrice();
+        repository.update(product.getId(), newPrice);
+        if (product.isActive()) {
+            statistics.changePrice(oldPrice, newPrice);
+            priceIndex.changePrice(product.getId(), oldPrice, newPrice);
+        }
+        priceHistory.record(product.getId(), System.currentTimeMillis(), newPrice, product.isActive());
+        product.setVersion(catalogVersion.incrementAndGet());
+        cache.invalidate(product.getId());
+        journal.productPriceUpdated(product.getId(), newPrice, product.getVersion());
     }
 
     //  Удалить продукт из базы данных по его идентификатору.
-    public void deleteById(Long id) {
+    public void deleteById(long id) {
         Product product = getActiveProductById(id);
-        product.setActive(false);
+        deactivate(product);
     }
 
     //  Удалить продукт из базы данных по его наименованию.
     public void deleteByTitle(String title) {
-        getAllActiveProducts()
-                .stream()
-                .filter(x -> x.getTitle().equals(title))
-                .forEach(x -> x.setActive(false));
+        repository.findByTitle(title)
+                .forEach(this::deactivate);
+    }
+
+    //  Удалить все активные продукты, для которых filter возвращает true (например, все продукты дороже X).
+    //  Возвращает количество удалённых продуктов. Считается в общем пуле fork/join.
+    public int deactivateAll(Predicate<Product> filter) {
+        return deactivateAll(filter, ForkJoinPool.commonPool());
+    }
+
+    //  Массовое удаление в указанном пуле: хранилище делится на сегменты по идентификаторам,
+    //  сегменты обрабатываются параллельно, а внутри сегмента перебираются только активные продукты.
+    //  Каждый продукт удаляется под своей блокировкой, и filter проверяется ещё раз уже под ней,
+    //  поэтому продукт, цену которого успели изменить, удаляется только если всё ещё подходит.
+    //  Журнал сбрасывается на диск один раз после всех сегментов.
+    public int deactivateAll(Predicate<Product> filter, ForkJoinPool pool) {
+        int count = SegmentTask.invoke(pool, repository.getMaxId(), (from, to) ->
+                SegmentTask.forEachId(from, to, repository::nextActiveIds, id -> {
+                    Product product = repository.findById(id);
+                    return product != null && filter.test(product) && deactivate(product, filter);
+                }));
+        journal.flush();
+        return count;
+    }
+
+    //  Восстановить все удалённые продукты, для которых filter возвращает true.
+    //  Возвращает количество восстановленных продуктов. Считается в общем пуле fork/join.
+    public int restoreAll(Predicate<Product> filter) {
+        return restoreAll(filter, ForkJoinPool.commonPool());
+    }
+
+    //  Массовое восстановление в указанном пуле (как deactivateAll, но перебираются неактивные продукты,
+    //  включая архивные). Архивный продукт возвращается в основную таблицу, только если его восстановили.
+    public int restoreAll(Predicate<Product> filter, ForkJoinPool pool) {
+        int count = SegmentTask.invoke(pool, repository.getMaxId(), (from, to) ->
+                SegmentTask.forEachId(from, to, repository::nextInactiveIds, id -> {
+                    Product product = repository.findById(id);
+                    return product != null && !product.isActive() && filter.test(product)
+                            && activate(product, filter);
+                }));
+        journal.flush();
+        return count;
     }
 
     //  Восстановить удалённый продукт в базе данных по его идентификатору.
-    public void restoreById(Long id) {
+    public void restoreById(long id) {
         Product product = repository.findById(id);
         if (product == null) {
             throw new ProductNotFoundException(id);
         }
-        product.setActive(true);
+        activate(product);
+    }
+
+    //  Вернуть активные продукты с ценой от minPrice до maxPrice включительно
+    //  по возрастанию цены (не больше limit продуктов).
+    public List<Product> getActiveProductsByPriceRange(double minPrice, double maxPrice, int limit) {
+        if (limit <= 0 || minPrice > maxPrice) {
+            return List.of();
+        }
+        if (!priceIndex.isEnabled()) {
+            return sortedByPrice()
+                    .filter(x -> x.getPrice() >= minPrice && x.getPrice() <= maxPrice)
+                    .limit(limit)
+                    .toList();
+        }
+        return activeProducts(priceIndex.range(minPrice, maxPrice, limit));
+    }
+
+    //  Вернуть limit самых дешёвых активных продуктов (по возрастанию цены).
+    public List<Product> getCheapestProducts(int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        if (!priceIndex.isEnabled()) {
+            return sortedByPrice().limit(limit).toList();
+        }
+        return activeProducts(priceIndex.cheapest(limit));
+    }
+
+    //  Вернуть limit самых дорогих активных продуктов (по убыванию цены).
+    public List<Product> getMostExpensiveProducts(int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        if (!priceIndex.isEnabled()) {
+            return getAllActiveProducts().stream().sorted(BY_PRICE.reversed()).limit(limit).toList();
+        }
+        return activeProducts(priceIndex.mostExpensive(limit));
+    }
+
+    //  Вернуть страницу активных продуктов, упорядоченных по возрастанию цены.
+    //  Для первой страницы afterId = null. Для следующих страниц afterPrice и afterId -
+    //  цена и идентификатор последнего продукта предыдущей страницы.
+    public List<Product> getActiveProductsSortedByPrice(double afterPrice, Long afterId, int limit) {
+        if (afterId == null) {
+            return getCheapestProducts(limit);
+        }
+        if (limit <= 0) {
+            return List.of();
+        }
+        if (!priceIndex.isEnabled()) {
+            return sortedByPrice()
+                    .filter(x -> BY_PRICE.compare(x, key(afterPrice, afterId)) > 0)
+                    .limit(limit)
+                    .toList();
+        }
+        return activeProducts(priceIndex.after(afterPrice, afterId, limit));
+    }
+
+    // Продукты по идентификаторам из индекса цен. Продукт, который успели удалить
+    // после чтения индекса, в результат не попадает.
+    private List<Product> activeProducts(List<Long> ids) {
+        List<Product> products = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Product product = repository.findById(id);
+            if (product != null && product.isActive()) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    private Stream<Product> sortedByPrice() {
+        return getAllActiveProducts().stream().sorted(BY_PRICE);
+    }
+
+    private static Product key(double price, long id) {
+        Product key = new Product(null, price);
+        key.setId(id);
+        return key;
     }
 
     //  Вернуть общее количество продуктов в базе данных (активных).
     public int getActiveProductsNumber() {
-        return getAllActiveProducts().size();
+        return statistics.getCount();
     }
 
     //  Вернуть суммарную стоимость всех продуктов в базе данных (активных).
+    //  Показатель поддерживается при каждом изменении, поэтому база данных не обходится.
     public double getActiveProductsTotalCost() {
-        // 1 Способ:
-//        double sum = 0.0;
-//        for (Product product : getAllActiveProducts()) {
-//            sum += product.getPrice();
-//        }
-//        return sum;
-//    }
-        // 2 Способ:
-        return getAllActiveProducts()
-                .stream()
-                .mapToDouble(x -> x.getPrice())
-                .sum();
+        return statistics.getTotalCost();
     }
 
     //  Вернуть среднюю стоимость продукта в базе данных (из активных).
     public double getActiveProductsAveragePrice() {
-        // 1 Способ: С использованием предыдущих методов
-//        int productNumber = getActiveProductsNumber();
-//        if (productNumber == 0) {
-//            return 0.0;
-//        }
-//        return getActiveProductsTotalCost() / productNumber;
-
-        // 2 Способ:
-        return getAllActiveProducts()
-                .stream()
-                .mapToDouble(Product::getPrice)
-                .average()
-                .orElse(0.0);
+        return statistics.getAveragePrice();
+    }
+
+    //  Вернуть цену продукта на момент at (в том числе если тогда он был удалён).
+    //  Если продукта в этот момент ещё не было или история цен его не помнит, выбрасывается ProductNotFoundException.
+    public double getPriceAt(long id, Instant at) {
+        checkPriceHistory();
+        double price = priceHistory.priceAt(id, at.toEpochMilli());
+        if (Double.isNaN(price)) {
+            throw new ProductNotFoundException(id);
+        }
+        return price;
+    }
+
+    //  Вернуть показатели каталога на момент at: количество активных тогда продуктов,
+    //  их суммарную стоимость по тогдашним ценам и среднюю цену. Считается в общем пуле fork/join.
+    public CatalogSnapshot getCatalogAt(Instant at) {
+        return getCatalogAt(at, ForkJoinPool.commonPool());
+    }
+
+    //  То же в указанном пуле: история цен делится на сегменты по идентификаторам, и в каждом сегменте
+    //  цена продукта ищется по контрольным точкам его истории. Для текущего момента и будущего
+    //  возвращаются поддерживаемые показатели без обхода истории.
+    public CatalogSnapshot getCatalogAt(Instant at, ForkJoinPool pool) {
+        checkPriceHistory();
+        long time = at.toEpochMilli();
+        if (time >= System.currentTimeMillis()) {
+            return new CatalogSnapshot(at, statistics.getCount(), statistics.getTotalCost(),
+                    statistics.getAveragePrice());
+        }
+        ProductStatistics total = new ProductStatistics();
+        SegmentTask.invoke(pool, repository.getMaxId(), (from, to) -> {
+            ProductStatistics segment = new ProductStatistics();
+            priceHistory.forEachActiveAt(time, from, to, (id, price) -> segment.add(price));
+            total.addAll(segment);
+            return segment.getCount();
+        });
+        return new CatalogSnapshot(at, total.getCount(), total.getTotalCost(), total.getAveragePrice());
+    }
+
+    //  Вернуть суммарную стоимость продуктов, активных на момент at, по ценам на тот момент.
+    public double getActiveProductsTotalCost(Instant at) {
+        return getCatalogAt(at).getTotalCost();
+    }
+
+    private void checkPriceHistory() {
+        if (!priceHistory.isEnabled()) {
+            throw new PriceHistoryDisabledException();
+        }
+    }
+
+    //  Вернуть текущую версию каталога продуктов.
+    public long getCatalogVersion() {
+        return catalogVersion.get();
+    }
+
+    // Сделать продукт активным и учесть его в показателях (если он ещё не был активен)
+    private void activate(Product product) {
+        activate(product, x -> true);
+    }
+
+    // То же, если продукт всё ещё удовлетворяет condition (проверяется под блокировкой).
+    // Возвращает true, если продукт восстановлен.
+    private boolean activate(Product product, Predicate<Product> condition) {
+        synchronized (product) {
+            if (!product.isActive() && condition.test(product)) {
+                repository.setActive(product.getId(), true);
+                statistics.add(product.getPrice());
+                priceIndex.add(product.getId(), product.getPrice());
+                priceHistory.record(product.getId(), System.currentTimeMillis(), product.getPrice(), true);
+                product.setVersion(catalogVersion.incrementAndGet());
+                cache.invalidate(product.getId());
+                journal.productActiveChanged(product.getId(), true, product.getVersion());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // Сделать продукт неактивным и убрать его из показателей (если он был активен)
+    private void deactivate(Product product) {
+        deactivate(product, x -> true);
+    }
+
+    // То же, если продукт всё ещё удовлетворяет condition (проверяется под блокировкой).
+    // Возвращает true, если продукт удалён.
+    private boolean deactivate(Product product, Predicate<Product> condition) {
+        synchronized (product) {
+            if (product.isActive() && condition.test(product)) {
+                repository.setActive(product.getId(), false);
+                statistics.remove(product.getPrice());
+                priceIndex.remove(product.getId(), product.getPrice());
+                priceHistory.record(product.getId(), System.currentTimeMillis(), product.getPrice(), false);
+                product.setVersion(catalogVersion.incrementAndGet());
+                cache.invalidate(product.getId());
+                journal.productActiveChanged(product.getId(), false, product.getVersion());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    //  Перенести в архив хранилища продукты, которые остаются удалёнными со времени предыдущего вызова
+    //  (см. CompactionService). Возвращает количество перенесённых продуктов.
+    public int archiveInactive() {
+        return repository.archiveInactive();
+    }
+
+    // Методы для хранения базы данных на диске (используются StorageService):
+
+    ProductRepository getRepository() {
+        return repository;
+    }
+
+    synchronized void setJournal(Journal journal) {
+        storageJournal = journal;
+        this.journal = storageJournal.andThen(changeJournal);
+    }
+
+    synchronized void setChangeJournal(Journal changes) {
+        changeJournal = changes;
+        journal = storageJournal.andThen(changeJournal);
+    }
+
+    // Пересчитать показатели по активным продуктам после восстановления базы данных,
+    // продолжить версии после восстановленных и начать историю цен с восстановленного состояния
+    void rebuildStatistics() {
+        statistics.clear();
+        priceIndex.clear();
+        repository.forEachActive((id, price) -> {
+            statistics.add(price);
+            priceIndex.add(id, price);
+        });
+        // История продолжается с текущего состояния: после восстановления с диска она начинается заново
+        boolean history = priceHistory.isEnabled();
+        long now = System.currentTimeMillis();
+        if (history) {
+            priceHistory.clear();
+        }
+        repository.forEach(product -> {
+            catalogVersion.accumulateAndGet(product.getVersion(), Math::max);
+            if (history) {
+                priceHistory.record(product.getId(), now, product.getPrice(), product.isActive());
+            }
+        });
+        catalogVersion.incrementAndGet();
+        cache.clear();
     }
 }
@@ -0,0 +1,114 @@
+package app.service;
+
+import java.math.BigDecimal;
+
+/*
+Этот класс хранит заранее посчитанные показатели по активным продуктам:
+количество, суммарную стоимость и (через них) среднюю цену.
+Сервис продуктов обновляет эти показатели при каждом сохранении,
+изменении цены, удалении и восстановлении продукта,
+поэтому чтение показателей не требует обхода всей базы данных.
+
+Сумма хранится точно, а в double переводится один раз при чтении, поэтому она не зависит
+от порядка изменений и не накапливает ошибок округления. Цены, которые выражаются точно
+в сотых долях (копейках), складываются целым числом сотых долей. Остальные цены
+(на практике их нет) складываются точно как BigDecimal; только при них чтение суммы создаёт объекты.
+Точно совпасть с суммой потока цен (DoubleStream.sum()) при любых изменениях нельзя: поток складывает
+двоичные значения цен с компенсацией в порядке обхода и может отличаться от точной суммы
+на единицу младшего разряда (ulp). Здесь возвращается точная сумма, округлённая один раз;
+от суммы потока она отличается не больше чем на 1 ulp, а среднее от DoubleStream.average() -
+не больше чем на 2 ulp (проверяется в ProductStatisticsTest).
+ */
+class ProductStatistics {
+
+    // Цены по модулю до 2^52 сотых долей складываются целым числом
+    private static final double MAX_CENTS = 0x1p52;
+    // Целые числа по модулю до 2^53 переводятся в double точно
+    private static final long MAX_EXACT = 1L << 53;
+
+    // Количество активных продуктов
+    private int count;
+
+    // Сумма цен, выражающихся точно в сотых долях, в сотых долях
+    private long cents;
+
+    // Точная сумма остальных цен
+    private BigDecimal rest = BigDecimal.ZERO;
+
+    // Продукт стал активным (сохранён или восстановлен)
+    synchronized void add(double price) {
+        count++;
+        addToSum(price, 1);
+    }
+
+    // Продукт перестал быть активным (удалён)
+    synchronized void remove(double price) {
+        count--;
+        addToSum(price, -1);
+    }
+
+    // У активного продукта изменилась цена
+    synchronized void changePrice(double oldPrice, double newPrice) {
+        addToSum(oldPrice, -1);
+        addToSum(newPrice, 1);
+    }
+
+    // Добавить показатели другой группы продуктов (например, посчитанные по частям каталога)
+    synchronized void addAll(ProductStatistics other) {
+        int otherCount;
+        long otherCents;
+        BigDecimal otherRest;
+        synchronized (other) {
+            otherCount = other.count;
+            otherCents = other.cents;
+            otherRest = other.rest;
+        }
+        count += otherCount;
+        cents += otherCents;
+        rest = rest.add(otherRest);
+    }
+
+    // Обнулить показатели
+    synchronized void clear() {
+        count = 0;
+        cents = 0;
+        rest = BigDecimal.ZERO;
+    }
+
+    synchronized int getCount() {
+        return count;
+    }
+
+    synchronized double getTotalCost() {
+        if (rest.signum() == 0 && Math.abs(cents) < MAX_EXACT) {
+            // Сотые доли переводятся в double точно, и округляется только деление
+            return cents / 100.0;
+        }
+        return BigDecimal.valueOf(cents, 2).add(rest).doubleValue();
+    }
+
+    // Средняя цена - сумма, делённая на количество, как в DoubleStream.average()
+    synchronized double getAveragePrice() {
+        return count == 0 ? 0.0 : getTotalCost() / count;
+    }
+
+    private void addToSum(double price, int sign) {
+        long priceCents = cents(price);
+        if (priceCents != Long.MIN_VALUE) {
+            cents += sign * priceCents;
+        } else {
+            BigDecimal exact = new BigDecimal(price);
+            rest = sign > 0 ? rest.add(exact) : rest.subtract(exact);
+        }
+    }
+
+    // Цена в сотых долях или Long.MIN_VALUE, если цена не выражается в них точно
+    private static long cents(double price) {
+        double scaled = price * 100;
+        if (!(Math.abs(scaled) < MAX_CENTS)) {
+            return Long.MIN_VALUE;
+        }
+        long cents = Math.round(scaled);
+        return cents / 100.0 == price ? cents : Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,130 @@
+package app.service;
+
+import app.domain.Customer;
+import app.domain.Product;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+/*
+Промежуточный итог отчёта по корзинам для части покупателей.
+Каждая подзадача AnalyticsService накапливает свой итог без блокировок и общих счётчиков,
+а затем итоги подзадач складываются (merge). Все счётчики - примитивы,
+количество каждого продукта лежит в массиве по идентификатору продукта,
+поэтому обход корзины ничего не создаёт.
+ */
+class SalesAccumulator implements ObjIntConsumer<Product> {
+
+    private long activeCustomers;
+    private long customersWithCart;
+    private long cartItems;
+    private double totalCartValue;
+    private double maxCartValue;
+    private final long[] spendDistribution = new long[SalesReport.SPEND_BOUNDS.length + 1];
+
+    // Количество единиц каждого продукта: индекс - идентификатор продукта
+    private long[] productQuantities;
+
+    // Показатели корзины, которая обходится сейчас
+    private int currentItems;
+    private double currentValue;
+
+    SalesAccumulator(long maxProductId) {
+        productQuantities = new long[(int) maxProductId + 1];
+    }
+
+    void addCustomer(Customer customer) {
+        if (!customer.isActive()) {
+            return;
+        }
+        activeCustomers++;
+        currentItems = 0;
+        currentValue = 0.0;
+        customer.getCart().forEach(this);
+        if (currentItems > 0) {
+            customersWithCart++;
+            cartItems += currentItems;
+            totalCartValue += currentValue;
+            maxCartValue = Math.max(maxCartValue, currentValue);
+            spendDistribution[spendBucket(currentValue)]++;
+        }
+    }
+
+    // Строка корзины: продукт и его количество
+    @Override
+    public void accept(Product product, int quantity) {
+        if (!product.isActive()) {
+            return;
+        }
+        currentItems += quantity;
+        currentValue += product.getPrice() * quantity;
+        int id = (int) product.getId();
+        if (id >= productQuantities.length) {
+            // Продукт сохранён уже после начала обхода
+            productQuantities = Arrays.copyOf(productQuantities, Math.max(id + 1, productQuantities.length * 2));
+        }
+        productQuantities[id] += quantity;
+    }
+
+    // Добавить к этому итогу итог другой части покупателей
+    SalesAccumulator merge(SalesAccumulator other) {
+        activeCustomers += other.activeCustomers;
+        customersWithCart += other.customersWithCart;
+        cartItems += other.cartItems;
+        totalCartValue += other.totalCartValue;
+        maxCartValue = Math.max(maxCartValue, other.maxCartValue);
+        for (int i = 0; i < spendDistribution.length; i++) {
+            spendDistribution[i] += other.spendDistribution[i];
+        }
+        if (productQuantities.length < other.productQuantities.length) {
+            productQuantities = Arrays.copyOf(productQuantities, other.productQuantities.length);
+        }
+        for (int i = 0; i < other.productQuantities.length; i++) {
+            productQuantities[i] += other.productQuantities[i];
+        }
+        return this;
+    }
+
+    // Идентификаторы count продуктов с наибольшим количеством, по убыванию количества
+    long[] topProductIds(int count) {
+        long[] ids = new long[count];
+        long[] quantities = new long[count];
+        int size = 0;
+        for (int id = 1; id < productQuantities.length; id++) {
+            long quantity = productQuantities[id];
+            if (quantity == 0 || (size == count && quantity <= quantities[size - 1])) {
+                continue;
+            }
+            // Вставка в отсортированный по убыванию массив из count элементов
+            int i = size == count ? count - 1 : size++;
+            while (i > 0 && quantities[i - 1] < quantity) {
+                ids[i] = ids[i - 1];
+                quantities[i] = quantities[i - 1];
+                i--;
+            }
+            ids[i] = id;
+            quantities[i] = quantity;
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    long getQuantity(long productId) {
+        return productQuantities[(int) productId];
+    }
+
+    SalesReport toReport(List<SalesReport.ProductQuantity> topProducts) {
+        return new SalesReport(activeCustomers, customersWithCart, cartItems, totalCartValue,
+                maxCartValue, spendDistribution.clone(), topProducts);
+    }
+
+    private static int spendBucket(double value) {
+        double[] bounds = SalesReport.SPEND_BOUNDS;
+        for (int i = 0; i < bounds.length; i++) {
+            if (value < bounds[i]) {
+                return i;
+            }
+        }
+        return bounds.length;
+    }
+}
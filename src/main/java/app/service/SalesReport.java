@@ -0,0 +1,126 @@
+package app.service;
+
+import java.util.List;
+
+/*
+Отчёт по корзинам активных покупателей (см. AnalyticsService).
+Учитываются только активные продукты, как и в стоимости корзины.
+ */
+public class SalesReport {
+
+    // Верхние границы корзин распределения стоимости корзин (последняя корзина - без верхней границы)
+    static final double[] SPEND_BOUNDS = {10, 100, 1_000, 10_000, 100_000};
+
+    // Продукт и общее количество его единиц во всех корзинах
+    public static class ProductQuantity {
+        private final long productId;
+        private final String title;
+        private final long quantity;
+
+        ProductQuantity(long productId, String title, long quantity) {
+            this.productId = productId;
+            this.title = title;
+            this.quantity = quantity;
+        }
+
+        public long getProductId() {
+            return productId;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public long getQuantity() {
+            return quantity;
+        }
+    }
+
+    private final long activeCustomers;
+    private final long customersWithCart;
+    private final long cartItems;
+    private final double totalCartValue;
+    private final double maxCartValue;
+    private final long[] spendDistribution;
+    private final List<ProductQuantity> topProducts;
+
+    SalesReport(long activeCustomers, long customersWithCart, long cartItems, double totalCartValue,
+                double maxCartValue, long[] spendDistribution, List<ProductQuantity> topProducts) {
+        this.activeCustomers = activeCustomers;
+        this.customersWithCart = customersWithCart;
+        this.cartItems = cartItems;
+        this.totalCartValue = totalCartValue;
+        this.maxCartValue = maxCartValue;
+        this.spendDistribution = spendDistribution;
+        this.topProducts = topProducts;
+    }
+
+    public long getActiveCustomers() {
+        return activeCustomers;
+    }
+
+    // Количество активных покупателей, в корзине которых есть активные товары
+    public long getCustomersWithCart() {
+        return customersWithCart;
+    }
+
+    // Общее количество единиц товара во всех корзинах
+    public long getCartItems() {
+        return cartItems;
+    }
+
+    // Общая стоимость всех корзин
+    public double getTotalCartValue() {
+        return totalCartValue;
+    }
+
+    // Среднее количество единиц товара в непустой корзине
+    public double getAverageCartSize() {
+        return customersWithCart == 0 ? 0.0 : (double) cartItems / customersWithCart;
+    }
+
+    // Средняя стоимость непустой корзины
+    public double getAverageCartValue() {
+        return customersWithCart == 0 ? 0.0 : totalCartValue / customersWithCart;
+    }
+
+    public double getMaxCartValue() {
+        return maxCartValue;
+    }
+
+    // Верхние границы интервалов распределения стоимости корзин (последний интервал - без верхней границы)
+    public double[] getSpendBounds() {
+        return SPEND_BOUNDS.clone();
+    }
+
+    // Количество непустых корзин в каждом интервале стоимости: элемент i - корзины дешевле getSpendBounds()[i]
+    // (и не дешевле предыдущей границы), последний элемент - корзины не дешевле последней границы
+    public long[] getSpendDistribution() {
+        return spendDistribution.clone();
+    }
+
+    // Продукты, которых больше всего в корзинах, по убыванию количества
+    public List<ProductQuantity> getTopProducts() {
+        return topProducts;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(256)
+                .append(String.format("Корзины: покупателей - %d, с товарами - %d, единиц товара - %d, стоимость - %.2f, "
+                                + "средний размер - %.2f, средняя стоимость - %.2f, максимальная - %.2f",
+                        activeCustomers, customersWithCart, cartItems, totalCartValue,
+                        getAverageCartSize(), getAverageCartValue(), maxCartValue))
+                .append(System.lineSeparator())
+                .append("Распределение стоимости корзин:");
+        for (int i = 0; i < spendDistribution.length; i++) {
+            builder.append(i < SPEND_BOUNDS.length ? " до " + (long) SPEND_BOUNDS[i] : " от " + (long) SPEND_BOUNDS[i - 1])
+                    .append(" - ").append(spendDistribution[i]).append(i < spendDistribution.length - 1 ? "," : "");
+        }
+        builder.append(System.lineSeparator()).append("Чаще всего в корзинах:");
+        for (ProductQuantity product : topProducts) {
+            builder.append(' ').append(product.getTitle()).append(" x").append(product.getQuantity());
+        }
+        return builder.toString();
+    }
+}
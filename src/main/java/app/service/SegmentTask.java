@@ -0,0 +1,77 @@
+package app.service;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.LongPredicate;
+
+/*
+Обработка диапазона идентификаторов хранилища 1..maxId по сегментам в пуле fork/join
+(используется массовыми изменениями продуктов и покупателей).
+Диапазон делится пополам, пока части не станут не больше размера сегмента,
+каждый сегмент обрабатывается одним потоком, а количества изменённых строк складываются.
+ */
+class SegmentTask extends RecursiveTask<Integer> {
+
+    // Обработчик сегмента: идентификаторы от from (включительно) до to (не включительно).
+    // Возвращает количество изменённых в сегменте строк.
+    interface Segment {
+        int process(long from, long to);
+    }
+
+    // Источник идентификаторов пакетами (см. ProductRepository.nextActiveIds)
+    interface IdSource {
+        int next(long fromId, long[] ids);
+    }
+
+    // Минимальный размер сегмента
+    private static final int MIN_SEGMENT = 4096;
+
+    private final Segment segment;
+    private final long from;
+    private final long to;
+    private final long size;
+
+    private SegmentTask(Segment segment, long from, long to, long size) {
+        this.segment = segment;
+        this.from = from;
+        this.to = to;
+        this.size = size;
+    }
+
+    // Обработать идентификаторы 1..maxId в пуле pool. Возвращает общее количество изменённых строк.
+    static int invoke(ForkJoinPool pool, long maxId, Segment segment) {
+        // Около восьми сегментов на поток (как в AnalyticsService)
+        long size = Math.max(MIN_SEGMENT, maxId / (pool.getParallelism() * 8L));
+        return pool.invoke(new SegmentTask(segment, 1, maxId + 1, size));
+    }
+
+    // Перебрать в сегменте [from, to) все идентификаторы, для которых action вернул true,
+    // получая их пакетами от nextIds (nextActiveIds или nextInactiveIds хранилища). Возвращает количество таких идентификаторов.
+    static int forEachId(long from, long to, IdSource nextIds, LongPredicate action) {
+        long[] ids = new long[256];
+        int changed = 0;
+        long next = from;
+        while (next < to) {
+            int count = nextIds.next(next, ids);
+            for (int i = 0; i < count && ids[i] < to; i++) {
+                if (action.test(ids[i])) {
+                    changed++;
+                }
+            }
+            next = count < ids.length ? to : ids[count - 1] + 1;
+        }
+        return changed;
+    }
+
+    @Override
+    protected Integer compute() {
+        if (to - from <= size) {
+            return segment.process(from, to);
+        }
+        long middle = (from + to) >>> 1;
+        SegmentTask left = new SegmentTask(segment, from, middle, size);
+        left.fork();
+        int right = new SegmentTask(segment, middle, to, size).compute();
+        return left.join() + right;
+    }
+}
@@ -0,0 +1,117 @@
+package app.service;
+
+import app.domain.Order;
+import app.exceptions.StorageException;
+import app.persistence.WriteAheadLog;
+import app.repository.CustomerRepository;
+import app.repository.OrderRepository;
+import app.repository.ProductRepository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+Сервис хранения базы данных на диске.
+При открытии восстанавливает продукты, покупателей, корзины и заказы из последнего снимка
+и журнала изменений, после чего подключает журнал к сервисам продуктов, покупателей и заказов.
+Периодически записывает новый снимок и удаляет уже ненужные сегменты журнала.
+ */
+public class StorageService implements Closeable {
+
+    // Количество записей, после которого в режиме GROUP журнал сбрасывается на диск
+    private static final int GROUP_SIZE = 512;
+
+    // Как часто в режиме GROUP журнал сбрасывается на диск, даже если группа не набралась
+    private static final long GROUP_SYNC_INTERVAL_MILLIS = 10;
+
+    private final Path directory;
+    private final ProductService productService = ProductService.getInstance();
+    private final CustomerService customerService = CustomerService.getInstance();
+    private final OrderService orderService = OrderService.getInstance();
+    private final WriteAheadLog log;
+    private final ScheduledExecutorService scheduler;
+
+    private StorageService(Path directory, WriteAheadLog.SyncMode mode) {
+        this.directory = directory;
+
+        ProductRepository productRepository = productService.getRepository();
+        CustomerRepository customerRepository = customerService.getRepository();
+        OrderRepository orderRepository = orderService.getRepository();
+        WriteAheadLog.recover(directory, new JournalReplayer(productRepository, customerRepository, orderRepository));
+        productService.rebuildStatistics();
+
+        log = new WriteAheadLog(directory, mode, GROUP_SIZE);
+        productService.setJournal(log);
+        customerService.setJournal(log);
+        orderService.setJournal(log);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storage");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Открыть хранилище в папке directory.
+    // snapshotInterval - как часто записывать снимок базы данных.
+    public static StorageService open(Path directory, WriteAheadLog.SyncMode mode, Duration snapshotInterval) {
+        StorageService storage = new StorageService(directory, mode);
+        long interval = snapshotInterval.toMillis();
+        storage.scheduler.scheduleWithFixedDelay(storage::snapshot, interval, interval, TimeUnit.MILLISECONDS);
+        if (mode == WriteAheadLog.SyncMode.GROUP) {
+            storage.scheduler.scheduleWithFixedDelay(storage.log::sync,
+                    GROUP_SYNC_INTERVAL_MILLIS, GROUP_SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return storage;
+    }
+
+    // Записать снимок базы данных.
+    // Сначала журнал переключается на новый сегмент: все изменения, попавшие в старые сегменты,
+    // уже применены к базе и войдут в снимок. После записи снимка старые сегменты удаляются.
+    public synchronized void snapshot() {
+        List<Path> oldSegments = log.rotate();
+        ProductRepository productRepository = productService.getRepository();
+        CustomerRepository customerRepository = customerService.getRepository();
+        OrderRepository orderRepository = orderService.getRepository();
+
+        WriteAheadLog.writeSnapshot(directory, snapshot -> {
+            productRepository.forEach(x ->
+                    snapshot.productSaved(x.getId(), x.getTitle(), x.getPrice(), x.isActive(), x.getVersion()));
+            customerRepository.forEach(x ->
+                    snapshot.customerSaved(x.getId(), x.getName(), x.isActive()));
+            customerRepository.forEach(customer ->
+                    customer.getCart().forEach((product, quantity) ->
+                            snapshot.cartQuantityChanged(customer.getId(), product.getId(), quantity)));
+            orderRepository.forEach(order -> {
+                for (Order.Line line : order.getLines()) {
+                    snapshot.orderLineAdded(order.getId(), line.getProductId(), line.getTitle(), line.getPrice(),
+                            line.getQuantity());
+                }
+                snapshot.orderPlaced(order.getId(), order.getCustomerId(), order.getCreatedAt());
+            });
+        });
+
+        try {
+            for (Path segment : oldSegments) {
+                Files.deleteIfExists(segment);
+            }
+        } catch (IOException e) {
+            throw new StorageException("Не удалось удалить старые сегменты журнала", e);
+        }
+    }
+
+    // Записать последний снимок и закрыть журнал
+    @Override
+    public synchronized void close() {
+        scheduler.shutdownNow();
+        snapshot();
+        log.close();
+    }
+}
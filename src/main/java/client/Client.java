@@ -1,22 +1,39 @@
 package client;
 
 import app.controller.CustomerController;
+import app.controller.OrderController;
 import app.controller.ProductController;
+import app.metrics.Metrics;
+import app.persistence.WriteAheadLog;
+import app.service.ChangeService;
+import app.service.CompactionService;
+import app.service.StorageService;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Scanner;
 
 public class Client {
 
     private static ProductController productController;
     private static CustomerController customerController;
+    private static OrderController orderController;
     private static Scanner scanner;
+    private static StorageService storage;
 
     public static void main(String[] args) {
 
         try {
+            // Восстанавливаем базу данных с диска (папка data) и включаем запись изменений в журнал
+            storage = StorageService.open(Path.of("data"), WriteAheadLog.SyncMode.GROUP, Duration.ofMinutes(1));
+            // Давно удалённые продукты и покупатели периодически переносятся в архив хранилищ
+            CompactionService.startIfConfigured();
+            // Поток изменений для внешних систем (если включён свойством shop.changes.capacity)
+            ChangeService.startIfConfigured();
             // Создаём объекты контроллеров для взаимодействия с приложением
             productController = new ProductController();
             customerController = new CustomerController();
+            orderController = new OrderController();
             scanner = new Scanner(System.in);
         } catch (Exception e) {
             System.err.println(e.getMessage());
@@ -26,6 +43,8 @@ public class Client {
             System.out.println("Выберите желаемую операцию:");
             System.out.println("1 - операции с продуктами");
             System.out.println("2 - операции с покупателями");
+            System.out.println("3 - операции с заказами");
+            System.out.println("4 - метрики операций");
             System.out.println("0 - выход");
 
             String input = scanner.nextLine();
@@ -37,7 +56,15 @@ public class Client {
                 case "2":
                     customerOperations();
                     break;
+                case "3":
+                    orderOperations();
+                    break;
+                case "4":
+                    System.out.println(Metrics.report());
+                    break;
                 case "0":
+                    storage.close();
+                    ChangeService.stop();
                     return;
                 default:
                     System.out.println("Некорректный ввод!");
@@ -60,6 +87,14 @@ public class Client {
                 System.out.println("8 - получить количество продуктов");
                 System.out.println("9 - получить суммарную стоимость всех продуктов");
                 System.out.println("10 - получить среднюю стоимость продукта");
+                System.out.println("11 - получить продукты по названию");
+                System.out.println("12 - загрузить продукты из файла (CSV или JSON lines)");
+                System.out.println("13 - получить статистику кэша продуктов");
+                System.out.println("14 - получить продукты в диапазоне цен");
+                System.out.println("15 - получить самые дешёвые продукты");
+                System.out.println("16 - получить самые дорогие продукты");
+                System.out.println("17 - удалить все продукты в диапазоне цен");
+                System.out.println("18 - восстановить все удалённые продукты в диапазоне цен");
                 System.out.println("0 - выход");
 
                 String input = scanner.nextLine();
@@ -73,11 +108,11 @@ public class Client {
                         System.out.println(productController.safe(title, price));
                         break;
                     case "2":
-                        productController.getAll().forEach(System.out::println);
+                        productController.stream().forEach(System.out::println);
                         break;
                     case "3":
                         System.out.println("Введите идентификатор продукта");
-                        Long id = Long.parseLong(scanner.nextLine());
+                        long id = Long.parseLong(scanner.nextLine());
                         System.out.println(productController.getById(id));
                         break;
                     case "4":
@@ -113,6 +148,52 @@ public class Client {
                         System.out.println("Средняя стоимость продукта - " +
                                 productController.getProductsAveragePrice());
                         break;
+                    case "11":
+                        System.out.println("Введите название продукта");
+                        title = scanner.nextLine();
+                        productController.findByTitle(title).forEach(System.out::println);
+                        break;
+                    case "12":
+                        System.out.println("Введите путь к файлу");
+                        String path = scanner.nextLine();
+                        System.out.println(productController.importFromFile(path));
+                        break;
+                    case "13":
+                        System.out.println(productController.getCacheStatistics());
+                        break;
+                    case "14":
+                        System.out.println("Введите минимальную цену");
+                        double minPrice = Double.parseDouble(scanner.nextLine());
+                        System.out.println("Введите максимальную цену");
+                        double maxPrice = Double.parseDouble(scanner.nextLine());
+                        System.out.println("Введите максимальное количество продуктов");
+                        int count = Integer.parseInt(scanner.nextLine());
+                        productController.findByPriceRange(minPrice, maxPrice, count).forEach(System.out::println);
+                        break;
+                    case "15":
+                        System.out.println("Введите количество продуктов");
+                        count = Integer.parseInt(scanner.nextLine());
+                        productController.getCheapest(count).forEach(System.out::println);
+                        break;
+                    case "16":
+                        System.out.println("Введите количество продуктов");
+                        count = Integer.parseInt(scanner.nextLine());
+                        productController.getMostExpensive(count).forEach(System.out::println);
+                        break;
+                    case "17":
+                        System.out.println("Введите минимальную цену");
+                        minPrice = Double.parseDouble(scanner.nextLine());
+                        System.out.println("Введите максимальную цену");
+                        maxPrice = Double.parseDouble(scanner.nextLine());
+                        System.out.println("Удалено продуктов: " + productController.deleteByPriceRange(minPrice, maxPrice));
+                        break;
+                    case "18":
+                        System.out.println("Введите минимальную цену");
+                        minPrice = Double.parseDouble(scanner.nextLine());
+                        System.out.println("Введите максимальную цену");
+                        maxPrice = Double.parseDouble(scanner.nextLine());
+                        System.out.println("Восстановлено продуктов: " + productController.restoreByPriceRange(minPrice, maxPrice));
+                        break;
                     case "0":
                         return;
                     default:
@@ -142,6 +223,10 @@ public class Client {
                 System.out.println("11 - добавить товар в корзину покупателя");
                 System.out.println("12 - удалить товар из корзины покупателя");
                 System.out.println("13 - очистить корзину покупателя");
+                System.out.println("14 - получить покупателей по имени");
+                System.out.println("15 - получить отчёт по корзинам всех покупателей");
+                System.out.println("16 - удалить всех покупателей в диапазоне идентификаторов");
+                System.out.println("17 - восстановить удалённых покупателей в диапазоне идентификаторов");
                 System.out.println("0 - выход");
 
                 String input = scanner.nextLine();
@@ -153,11 +238,11 @@ public class Client {
                         System.out.println(customerController.safe(name));
                         break;
                     case "2":
-                        customerController.getAll().forEach(System.out::println);
+                        customerController.stream().forEach(System.out::println);
                         break;
                     case "3":
                         System.out.println("Введите идентификатор");
-                        Long id = Long.parseLong(scanner.nextLine());
+                        long id = Long.parseLong(scanner.nextLine());
                         System.out.println(customerController.getById(id));
                         break;
                     case "4":
@@ -199,9 +284,9 @@ public class Client {
                         break;
                     case "11":
                         System.out.println("Введите идентификатор покупателя");
-                        Long customerId = Long.parseLong(scanner.nextLine());
+                        long customerId = Long.parseLong(scanner.nextLine());
                         System.out.println("Введите идентификатор продукта");
-                        Long productId = Long.parseLong(scanner.nextLine());
+                        long productId = Long.parseLong(scanner.nextLine());
                         customerController.addProductToCustomersCart(customerId, productId);
                         break;
                     case "12":
@@ -216,6 +301,71 @@ public class Client {
                         id = Long.parseLong(scanner.nextLine());
                         customerController.clearCustomersCart(id);
                         break;
+                    case "14":
+                        System.out.println("Введите имя покупателя");
+                        name = scanner.nextLine();
+                        customerController.findByName(name).forEach(System.out::println);
+                        break;
+                    case "15":
+                        System.out.println(customerController.getSalesReport());
+                        break;
+                    case "16":
+                        System.out.println("Введите первый идентификатор диапазона");
+                        long fromId = Long.parseLong(scanner.nextLine());
+                        System.out.println("Введите последний идентификатор диапазона");
+                        long toId = Long.parseLong(scanner.nextLine());
+                        System.out.println("Удалено покупателей: " + customerController.deleteByIdRange(fromId, toId));
+                        break;
+                    case "17":
+                        System.out.println("Введите первый идентификатор диапазона");
+                        fromId = Long.parseLong(scanner.nextLine());
+                        System.out.println("Введите последний идентификатор диапазона");
+                        toId = Long.parseLong(scanner.nextLine());
+                        System.out.println("Восстановлено покупателей: " + customerController.restoreByIdRange(fromId, toId));
+                        break;
+                    case "0":
+                        return;
+                    default:
+                        System.out.println("Некорректный ввод!");
+                        break;
+                }
+            } catch (Exception e) {
+                System.err.println(e.getMessage());
+            }
+        }
+    }
+
+    public static void orderOperations() {
+        while (true) {
+            try {
+                System.out.println("Выберите желаемую операцию с заказами:");
+                System.out.println("1 - оформить заказ из корзины покупателя");
+                System.out.println("2 - получить заказ по идентификатору");
+                System.out.println("3 - получить заказы покупателя");
+                System.out.println("4 - получить количество заказов");
+                System.out.println("0 - выход");
+
+                String input = scanner.nextLine();
+
+                switch (input) {
+                    case "1":
+                        System.out.println("Введите идентификатор покупателя");
+                        long customerId = Long.parseLong(scanner.nextLine());
+                        System.out.println(orderController.checkout(customerId));
+                        break;
+                    case "2":
+                        System.out.println("Введите идентификатор заказа");
+                        long id = Long.parseLong(scanner.nextLine());
+                        System.out.println(orderController.getById(id));
+                        break;
+                    case "3":
+                        System.out.println("Введите идентификатор покупателя");
+                        customerId = Long.parseLong(scanner.nextLine());
+                        orderController.getByCustomer(customerId).forEach(System.out::println);
+                        break;
+                    case "4":
+                        System.out.println("Количество заказов - " + orderController.getOrdersNumber());
+                        break;
                     case "0":
                         return;
                     default:
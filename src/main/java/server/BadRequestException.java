@@ -0,0 +1,8 @@
+package server;
+
+// Некорректный HTTP-запрос: неизвестный путь, неверный JSON или отсутствующий параметр
+class BadRequestException extends RuntimeException {
+    BadRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,255 @@
+package server;
+
+import app.controller.CustomerController;
+import app.domain.Customer;
+import app.domain.Product;
+import app.service.BatchResult;
+import app.service.SalesReport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+Операции с покупателями:
+POST   /customers                      {"name": "..."}          - сохранить покупателя
+GET    /customers                                               - все активные покупатели (ответ передаётся по частям)
+GET    /customers?limit=100[&afterId=5]                         - страница активных покупателей по идентификатору
+GET    /customers?name=...                                      - активные покупатели по имени
+GET    /customers/{id}                                          - покупатель по идентификатору (с корзиной)
+PUT    /customers/{id}                 {"name": "..."}          - изменить имя покупателя
+PUT    /customers/{id}                 {"name": "...", "version": 5} - изменить имя, если версия не изменилась (иначе 409)
+DELETE /customers/{id}                                          - удалить покупателя
+DELETE /customers?name=...                                      - удалить покупателей по имени
+POST   /customers/{id}/restore                                  - восстановить покупателя
+POST   /customers/deactivate?fromId=1&toId=100                  - удалить всех покупателей в диапазоне идентификаторов
+POST   /customers/restore?fromId=1&toId=100                     - восстановить удалённых покупателей в диапазоне идентификаторов
+GET    /customers/statistics                                    - количество покупателей
+GET    /customers/analytics                                     - отчёт по корзинам всех покупателей
+GET    /customers/{id}/cart                                     - стоимость и средняя цена корзины
+POST   /customers/{id}/cart            {"productId": 1}         - добавить товар в корзину
+POST   /customers/{id}/cart            {"productIds": [1, 2]}   - добавить пакет товаров в корзину
+DELETE /customers/{id}/cart/{productId}                         - удалить одну единицу товара из корзины
+DELETE /customers/{id}/cart                                     - очистить корзину
+ */
+class CustomerHandler extends JsonHandler {
+
+    // Количество покупателей на странице, если клиент его не указал
+    private static final int DEFAULT_LIMIT = 100;
+
+    private final CustomerController controller;
+
+    CustomerHandler(CustomerController controller) {
+        super("/customers");
+        this.controller = controller;
+    }
+
+    @Override
+    StreamedBody stream(String method, List<String> path, Request request) {
+        if (method.equals("GET") && path.isEmpty() && request.query("name") == null && request.query("limit") == null) {
+            return array(controller.stream(), CustomerHandler::customer);
+        }
+        return null;
+    }
+
+    @Override
+    String handle(String method, List<String> path, Request request) throws IOException {
+        if (path.isEmpty()) {
+            return handleCollection(method, request);
+        }
+        if (path.size() == 1 && method.equals("GET") && path.get(0).equals("statistics")) {
+            return "{\"count\":" + controller.getCustomersNumber() + "}";
+        }
+        if (path.size() == 1 && method.equals("GET") && path.get(0).equals("analytics")) {
+            return salesReport(controller.getSalesReport());
+        }
+        if (path.size() == 1 && method.equals("POST") && path.get(0).equals("deactivate")) {
+            int count = controller.deleteByIdRange(requiredId(request, "fromId"), requiredId(request, "toId"));
+            return "{\"count\":" + count + "}";
+        }
+        if (path.size() == 1 && method.equals("POST") && path.get(0).equals("restore")) {
+            int count = controller.restoreByIdRange(requiredId(request, "fromId"), requiredId(request, "toId"));
+            return "{\"count\":" + count + "}";
+        }
+        long id = id(path.get(0));
+        if (path.size() == 1) {
+            switch (method) {
+                case "GET":
+                    return customer(controller.getById(id));
+                case "PUT":
+                    Map<String, Object> body = request.object();
+                    Long version = version(body);
+                    if (version == null) {
+                        controller.update(id, name(body));
+                    } else {
+                        controller.update(id, name(body), version);
+                    }
+                    return null;
+                case "DELETE":
+                    controller.deleteById(id);
+                    return null;
+                default:
+                    throw unknownRequest(method, path);
+            }
+        }
+        switch (method + " " + path.get(1) + " " + path.size()) {
+            case "POST restore 2":
+                controller.restoreById(id);
+                return null;
+            case "GET cart 2":
+                return cart(id);
+            case "POST cart 2":
+                return addToCart(id, request.object());
+            case "DELETE cart 2":
+                controller.clearCustomersCart(id);
+                return null;
+            case "DELETE cart 3":
+                controller.removeProductFromCustomersCart(id, id(path.get(2)));
+                return null;
+            default:
+                throw unknownRequest(method, path);
+        }
+    }
+
+    // Границы массовых изменений обязательны, чтобы запрос без параметров не затронул всех покупателей
+    private static long requiredId(Request request, String name) {
+        String value = request.query(name);
+        if (value == null) {
+            throw new BadRequestException("Не указан параметр " + name);
+        }
+        return id(value);
+    }
+
+    private String handleCollection(String method, Request request) throws IOException {
+        String name = request.query("name");
+        switch (method) {
+            case "GET":
+                if (name != null) {
+                    return customers(controller.findByName(name));
+                }
+                String afterId = request.query("afterId");
+                return page(controller.getPage(afterId == null ? null : id(afterId),
+                        request.intQuery("limit", DEFAULT_LIMIT)), CustomerHandler::customer);
+            case "POST":
+                return customer(controller.safe(name(request.object())));
+            case "DELETE":
+                if (name == null) {
+                    throw new BadRequestException("Не указано имя покупателя (?name=...)");
+                }
+                controller.deleteByName(name);
+                return null;
+            default:
+                throw unknownRequest(method, List.of());
+        }
+    }
+
+    private String cart(long id) {
+        StringBuilder builder = new StringBuilder("{\"totalCost\":");
+        Json.number(builder, controller.getCustomersCartTotalCost(id)).append(",\"averagePrice\":");
+        return Json.number(builder, controller.getCustomersCartAveragePrice(id)).append('}').toString();
+    }
+
+    private String addToCart(long id, Map<String, Object> body) {
+        Object productIds = body.get("productIds");
+        if (productIds == null) {
+            controller.addProductToCustomersCart(id, id(body.get("productId")));
+            return null;
+        }
+        if (!(productIds instanceof List)) {
+            throw new BadRequestException("\"productIds\" должен быть JSON-массивом");
+        }
+        List<Long> ids = new ArrayList<>();
+        for (Object productId : (List<?>) productIds) {
+            ids.add(id(productId));
+        }
+        BatchResult<Long> result = controller.addProductsToCart(id, ids);
+        return batch(result, StringBuilder::append);
+    }
+
+    private static String salesReport(SalesReport report) {
+        StringBuilder builder = new StringBuilder(512)
+                .append("{\"activeCustomers\":").append(report.getActiveCustomers())
+                .append(",\"customersWithCart\":").append(report.getCustomersWithCart())
+                .append(",\"cartItems\":").append(report.getCartItems())
+                .append(",\"totalCartValue\":");
+        Json.number(builder, report.getTotalCartValue()).append(",\"averageCartSize\":");
+        Json.number(builder, report.getAverageCartSize()).append(",\"averageCartValue\":");
+        Json.number(builder, report.getAverageCartValue()).append(",\"maxCartValue\":");
+        Json.number(builder, report.getMaxCartValue()).append(",\"spendDistribution\":[");
+        double[] bounds = report.getSpendBounds();
+        long[] distribution = report.getSpendDistribution();
+        for (int i = 0; i < distribution.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"below\":");
+            if (i < bounds.length) {
+                Json.number(builder, bounds[i]);
+            } else {
+                builder.append("null");
+            }
+            builder.append(",\"customers\":").append(distribution[i]).append('}');
+        }
+        builder.append("],\"topProducts\":[");
+        List<SalesReport.ProductQuantity> products = report.getTopProducts();
+        for (int i = 0; i < products.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            SalesReport.ProductQuantity product = products.get(i);
+            builder.append("{\"productId\":").append(product.getProductId()).append(",\"title\":");
+            Json.quote(builder, product.getTitle()).append(",\"quantity\":").append(product.getQuantity()).append('}');
+        }
+        return builder.append("]}").toString();
+    }
+
+    private static String name(Map<String, Object> body) {
+        Object name = body.get("name");
+        if (name != null && !(name instanceof String)) {
+            throw new BadRequestException("Имя покупателя должно быть строкой");
+        }
+        return (String) name;
+    }
+
+    private static String customers(List<Customer> customers) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < customers.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            customer(builder, customers.get(i));
+        }
+        return builder.append(']').toString();
+    }
+
+    private static String customer(Customer customer) {
+        return customer(new StringBuilder(), customer).toString();
+    }
+
+    static StringBuilder customer(StringBuilder builder, Customer customer) {
+        // Версия читается раньше полей (см. ProductHandler.product).
+        long version = customer.getVersion();
+        // Сначала под блокировкой корзины быстро копируем её строки, а JSON собираем уже без блокировки
+        List<Product> products = new ArrayList<>();
+        List<Integer> quantities = new ArrayList<>();
+        customer.getCart().forEach((product, quantity) -> {
+            products.add(product);
+            quantities.add(quantity);
+        });
+
+        builder.append("{\"id\":").append(customer.getId()).append(",\"name\":");
+        Json.quote(builder, customer.getName())
+                .append(",\"active\":").append(customer.isActive())
+                .append(",\"version\":").append(version)
+                .append(",\"cart\":[");
+        for (int i = 0; i < products.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"product\":");
+            ProductHandler.product(builder, products.get(i)).append(",\"quantity\":").append(quantities.get(i)).append('}');
+        }
+        return builder.append("]}");
+    }
+}
@@ -0,0 +1,249 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Минимальный разбор и запись JSON для HTTP-сервера.
+Разбор возвращает Map (объект), List (массив), String, Long (целое число),
+Double (дробное число), Boolean или null.
+Запись выполняется в StringBuilder без промежуточных объектов.
+ */
+final class Json {
+
+    private final String text;
+    private int position;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    // Разобрать JSON-документ
+    static Object parse(String text) {
+        Json json = new Json(text);
+        json.skipSpaces();
+        Object value = json.value();
+        json.skipSpaces();
+        if (json.position != text.length()) {
+            throw json.error();
+        }
+        return value;
+    }
+
+    private Object value() {
+        if (position >= text.length()) {
+            throw error();
+        }
+        char c = text.charAt(position);
+        switch (c) {
+            case '{':
+                return object();
+            case '[':
+                return array();
+            case '"':
+                return string();
+            case 't':
+                return literal("true", Boolean.TRUE);
+            case 'f':
+                return literal("false", Boolean.FALSE);
+            case 'n':
+                return literal("null", null);
+            default:
+                return number();
+        }
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        position++;
+        skipSpaces();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+        while (true) {
+            skipSpaces();
+            if (peek() != '"') {
+                throw error();
+            }
+            String name = string();
+            skipSpaces();
+            expect(':');
+            skipSpaces();
+            object.put(name, value());
+            skipSpaces();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> array = new ArrayList<>();
+        position++;
+        skipSpaces();
+        if (peek() == ']') {
+            position++;
+            return array;
+        }
+        while (true) {
+            skipSpaces();
+            array.add(value());
+            skipSpaces();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect(']');
+                return array;
+            }
+        }
+    }
+
+    private String string() {
+        position++;
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+            if (position >= text.length()) {
+                throw error();
+            }
+            char c = text.charAt(position++);
+            if (c == '"') {
+                return builder.toString();
+            }
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (position >= text.length()) {
+                throw error();
+            }
+            char escaped = text.charAt(position++);
+            switch (escaped) {
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'u':
+                    if (position + 4 > text.length()) {
+                        throw error();
+                    }
+                    try {
+                        builder.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error();
+                    }
+                    position += 4;
+                    break;
+                default:
+                    builder.append(escaped);
+                    break;
+            }
+        }
+    }
+
+    private Object number() {
+        int start = position;
+        boolean fraction = false;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '.' || c == 'e' || c == 'E') {
+                fraction = true;
+            } else if (!(c >= '0' && c <= '9') && c != '-' && c != '+') {
+                break;
+            }
+            position++;
+        }
+        String number = text.substring(start, position);
+        try {
+            return fraction ? (Object) Double.parseDouble(number) : (Object) Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            throw error();
+        }
+    }
+
+    private Object literal(String literal, Object value) {
+        if (!text.startsWith(literal, position)) {
+            throw error();
+        }
+        position += literal.length();
+        return value;
+    }
+
+    private char peek() {
+        return position < text.length() ? text.charAt(position) : 0;
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error();
+        }
+        position++;
+    }
+
+    private void skipSpaces() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private BadRequestException error() {
+        return new BadRequestException("Некорректный JSON в позиции " + position);
+    }
+
+    // Дописать строку в кавычках, экранируя специальные символы
+    static StringBuilder quote(StringBuilder builder, String value) {
+        if (value == null) {
+            return builder.append("null");
+        }
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                    break;
+            }
+        }
+        return builder.append('"');
+    }
+
+    // Дописать число; NaN и бесконечность в JSON не представимы и записываются как null
+    static StringBuilder number(StringBuilder builder, double value) {
+        return Double.isFinite(value) ? builder.append(value) : builder.append("null");
+    }
+}
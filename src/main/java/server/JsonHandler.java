@@ -0,0 +1,350 @@
+package server;
+
+import app.exceptions.CatalogImportException;
+import app.exceptions.CheckoutException;
+import app.exceptions.CheckoutRejectedException;
+import app.exceptions.CustomerConflictException;
+import app.exceptions.CustomerNotFoundException;
+import app.exceptions.CustomerSafeException;
+import app.exceptions.CustomerUpdateException;
+import app.exceptions.OrderNotFoundException;
+import app.exceptions.PageSizeException;
+import app.exceptions.PriceHistoryDisabledException;
+import app.exceptions.ProductConflictException;
+import app.exceptions.ProductNotFoundException;
+import app.exceptions.ProductSaveException;
+import app.exceptions.ProductUpdateException;
+import app.service.BatchResult;
+import app.service.Page;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/*
+Общая часть обработчиков HTTP-запросов: разбор пути, параметров и тела запроса,
+запись ответа в JSON и превращение исключений сервисов в коды ответа HTTP.
+Обработчик получает путь без префикса (например, для /products/5/restore - ["5", "restore"])
+и возвращает готовый JSON ответа или null, если ответ пустой.
+Ответ собирается в строку уже после вызова контроллера, то есть вне блокировок сервисов.
+Большие списки обработчик может вернуть через stream: тогда ответ пишется клиенту
+по частям (chunked) по мере чтения элементов из базы данных и целиком в памяти не собирается.
+Текст ошибки передаётся клиенту только для ошибок запроса (4xx и отказ 503); о непредвиденной ошибке
+клиент получает общее сообщение, а подробности пишутся в журнал ошибок сервера.
+Размер тела запроса ограничен свойством shop.http.max.body (в байтах, по умолчанию 8 МБ).
+ */
+abstract class JsonHandler implements HttpHandler {
+
+    private static final int MAX_BODY_SIZE = Integer.getInteger("shop.http.max.body", 8 << 20);
+
+    private final String prefix;
+
+    JsonHandler(String prefix) {
+        this.prefix = prefix;
+    }
+
+    // Ответ, который записывается клиенту по частям
+    interface StreamedBody {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    // Обработать запрос: method - метод HTTP, path - части пути после префикса
+    abstract String handle(String method, List<String> path, Request request) throws IOException;
+
+    // Вернуть потоковый ответ на запрос или null, если запрос обрабатывается методом handle
+    StreamedBody stream(String method, List<String> path, Request request) {
+        return null;
+    }
+
+    @Override
+    public final void handle(HttpExchange exchange) throws IOException {
+        int status;
+        String body;
+        try {
+            String rawPath = exchange.getRequestURI().getRawPath();
+            List<String> path = split(rawPath.substring(Math.min(prefix.length(), rawPath.length())));
+            Request request = new Request(exchange);
+            StreamedBody streamed = stream(exchange.getRequestMethod(), path, request);
+            if (streamed != null) {
+                sendStreamed(exchange, streamed);
+                return;
+            }
+            body = handle(exchange.getRequestMethod(), path, request);
+            status = body == null ? 204 : 200;
+        } catch (ProductNotFoundException | CustomerNotFoundException | OrderNotFoundException e) {
+            status = 404;
+            body = error(e);
+        } catch (ProductConflictException | CustomerConflictException | CheckoutException e) {
+            status = 409;
+            body = error(e);
+        } catch (CheckoutRejectedException e) {
+            status = 503;
+            body = error(e);
+        } catch (PayloadTooLargeException e) {
+            status = 413;
+            body = error(e);
+        } catch (BadRequestException | ProductSaveException | ProductUpdateException
+                 | CustomerSafeException | CustomerUpdateException | CatalogImportException
+                 | PageSizeException | PriceHistoryDisabledException e) {
+            status = 400;
+            body = error(e);
+        } catch (RuntimeException e) {
+            // Сообщение непредвиденной ошибки может содержать пути к файлам и состояние базы данных
+            System.err.println("Ошибка при обработке запроса " + exchange.getRequestMethod() + " " + exchange.getRequestURI());
+            e.printStackTrace();
+            status = 500;
+            body = "{\"error\":\"Внутренняя ошибка сервера\"}";
+        }
+        send(exchange, status, body);
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        try (exchange) {
+            if (body == null) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    // Код ответа отправляется до того, как начнётся чтение элементов,
+    // поэтому при ошибке в середине ответа соединение просто закрывается
+    private static void sendStreamed(HttpExchange exchange, StreamedBody body) throws IOException {
+        try (exchange) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 64 * 1024)) {
+                body.writeTo(writer);
+            }
+        }
+    }
+
+    private static String error(Exception e) {
+        return Json.quote(new StringBuilder("{\"error\":"), String.valueOf(e.getMessage())).append('}').toString();
+    }
+
+    private static List<String> split(String path) {
+        String trimmed = path.startsWith("/") ? path.substring(1) : path;
+        if (trimmed.isEmpty()) {
+            return List.of();
+        }
+        String[] parts = trimmed.split("/");
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = URLDecoder.decode(parts[i], StandardCharsets.UTF_8);
+        }
+        return List.of(parts);
+    }
+
+    static BadRequestException unknownRequest(String method, List<String> path) {
+        return new BadRequestException("Неизвестный запрос: " + method + " /" + String.join("/", path));
+    }
+
+    // Разобрать идентификатор из части пути или значения JSON
+    static long id(Object value) {
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        if (value instanceof String) {
+            try {
+                return Long.parseLong((String) value);
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("Некорректный идентификатор: " + value);
+            }
+        }
+        throw new BadRequestException("Ожидался идентификатор, получено: " + value);
+    }
+
+    // JSON-массив из элементов потока. Каждый элемент кодируется в небольшой буфер и сразу отправляется в writer.
+    static <T> StreamedBody array(Stream<T> items, ValueWriter<T> encoder) {
+        return writer -> {
+            StringBuilder builder = new StringBuilder(256);
+            writer.write('[');
+            boolean first = true;
+            for (Iterator<T> iterator = items.iterator(); iterator.hasNext(); ) {
+                builder.setLength(0);
+                if (!first) {
+                    builder.append(',');
+                }
+                encoder.write(builder, iterator.next());
+                writer.append(builder);
+                first = false;
+            }
+            writer.write(']');
+        };
+    }
+
+    // Страница: {"items": [...], "nextAfterId": ...}
+    static <T> String page(Page<T> page, ValueWriter<T> encoder) {
+        StringBuilder builder = new StringBuilder("{\"items\":[");
+        List<T> items = page.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            encoder.write(builder, items.get(i));
+        }
+        return builder.append("],\"nextAfterId\":").append(page.getNextAfterId()).append('}').toString();
+    }
+
+    // Версия из тела запроса (null, если изменение безусловное)
+    static Long version(Map<String, Object> body) {
+        Object version = body.get("version");
+        return version == null ? null : id(version);
+    }
+
+    static double number(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        throw new BadRequestException("Ожидалось число, получено: " + value);
+    }
+
+    // Результат пакетной операции: количество успешных и ошибочных элементов и результат по каждому
+    static <T> String batch(BatchResult<T> result, ValueWriter<T> writer) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"succeeded\":").append(result.getSuccessCount())
+                .append(",\"failed\":").append(result.getFailureCount())
+                .append(",\"items\":[");
+        List<BatchResult.Item<T>> items = result.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            BatchResult.Item<T> item = items.get(i);
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"value\":");
+            if (item.getValue() == null) {
+                builder.append("null");
+            } else {
+                writer.write(builder, item.getValue());
+            }
+            if (!item.isSuccess()) {
+                Json.quote(builder.append(",\"error\":"), item.getError());
+            }
+            builder.append('}');
+        }
+        return builder.append("]}").toString();
+    }
+
+    interface ValueWriter<T> {
+        void write(StringBuilder builder, T value);
+    }
+
+    // Параметры и тело одного запроса
+    static class Request {
+
+        private final HttpExchange exchange;
+        private Map<String, String> query;
+
+        Request(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        // Параметр строки запроса (?name=value) или null, если его нет
+        String query(String name) {
+            if (query == null) {
+                query = new HashMap<>();
+                String raw = exchange.getRequestURI().getRawQuery();
+                if (raw != null) {
+                    for (String pair : raw.split("&")) {
+                        int eq = pair.indexOf('=');
+                        String key = eq < 0 ? pair : pair.substring(0, eq);
+                        String value = eq < 0 ? "" : pair.substring(eq + 1);
+                        query.put(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                                URLDecoder.decode(value, StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            return query.get(name);
+        }
+
+        // Числовой параметр строки запроса или defaultValue, если его нет
+        double doubleQuery(String name, double defaultValue) {
+            String value = query(name);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("Параметр " + name + " должен быть числом: " + value);
+            }
+        }
+
+        int intQuery(String name, int defaultValue) {
+            String value = query(name);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("Параметр " + name + " должен быть целым числом: " + value);
+            }
+        }
+
+        // Тело запроса, разобранное как JSON. Длина проверяется и по заголовку Content-Length,
+        // и при чтении, потому что у тела, переданного по частям (chunked), заголовка нет
+        Object body() throws IOException {
+            String length = exchange.getRequestHeaders().getFirst("Content-Length");
+            if (length != null) {
+                try {
+                    if (Long.parseLong(length.trim()) > MAX_BODY_SIZE) {
+                        throw tooLarge();
+                    }
+                } catch (NumberFormatException e) {
+                    throw new BadRequestException("Некорректный заголовок Content-Length: " + length);
+                }
+            }
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] bytes = in.readNBytes(MAX_BODY_SIZE + 1);
+                if (bytes.length > MAX_BODY_SIZE) {
+                    throw tooLarge();
+                }
+                return Json.parse(new String(bytes, StandardCharsets.UTF_8));
+            }
+        }
+
+        private static PayloadTooLargeException tooLarge() {
+            return new PayloadTooLargeException("Тело запроса больше " + MAX_BODY_SIZE + " байт");
+        }
+
+        // Тело запроса - JSON-объект
+        @SuppressWarnings("unchecked")
+        Map<String, Object> object() throws IOException {
+            Object body = body();
+            if (!(body instanceof Map)) {
+                throw new BadRequestException("Тело запроса должно быть JSON-объектом");
+            }
+            return (Map<String, Object>) body;
+        }
+
+        // Тело запроса - JSON-массив
+        @SuppressWarnings("unchecked")
+        List<Object> array() throws IOException {
+            Object body = body();
+            if (!(body instanceof List)) {
+                throw new BadRequestException("Тело запроса должно быть JSON-массивом");
+            }
+            return (List<Object>) body;
+        }
+    }
+}
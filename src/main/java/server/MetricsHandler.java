@@ -0,0 +1,66 @@
+package server;
+
+import app.metrics.Metrics;
+import app.metrics.OperationSnapshot;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+Метрики операций контроллеров (см. Metrics):
+GET    /metrics                                                 - снимок метрик всех операций, у которых были вызовы
+DELETE /metrics                                                 - обнулить метрики
+Задержки - в наносекундах.
+ */
+class MetricsHandler extends JsonHandler {
+
+    MetricsHandler() {
+        super("/metrics");
+    }
+
+    @Override
+    String handle(String method, List<String> path, Request request) {
+        if (!path.isEmpty()) {
+            throw unknownRequest(method, path);
+        }
+        switch (method) {
+            case "GET":
+                return snapshots(Metrics.snapshot());
+            case "DELETE":
+                Metrics.reset();
+                return null;
+            default:
+                throw unknownRequest(method, path);
+        }
+    }
+
+    private static String snapshots(List<OperationSnapshot> snapshots) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < snapshots.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            OperationSnapshot snapshot = snapshots.get(i);
+            builder.append("{\"operation\":");
+            Json.quote(builder, snapshot.getName())
+                    .append(",\"calls\":").append(snapshot.getCalls())
+                    .append(",\"errors\":").append(snapshot.getErrors())
+                    .append(",\"errorRate\":");
+            Json.number(builder, snapshot.getErrorRate()).append(",\"errorsByType\":{");
+            boolean first = true;
+            for (Map.Entry<String, Long> entry : snapshot.getErrorsByType().entrySet()) {
+                if (!first) {
+                    builder.append(',');
+                }
+                Json.quote(builder, entry.getKey()).append(':').append(entry.getValue());
+                first = false;
+            }
+            builder.append("},\"sampled\":").append(snapshot.getSampled())
+                    .append(",\"p50\":").append(snapshot.getP50Nanos())
+                    .append(",\"p99\":").append(snapshot.getP99Nanos())
+                    .append(",\"max\":").append(snapshot.getMaxNanos())
+                    .append('}');
+        }
+        return builder.append(']').toString();
+    }
+}
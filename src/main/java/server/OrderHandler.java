@@ -0,0 +1,80 @@
+package server;
+
+import app.controller.OrderController;
+import app.domain.Order;
+
+import java.io.IOException;
+import java.util.List;
+
+/*
+Операции с заказами:
+POST   /orders                 {"customerId": 1}   - оформить заказ из корзины покупателя
+                                                     (409, если корзина пуста; 503, если очередь оформления переполнена)
+GET    /orders/{id}                                - заказ по идентификатору
+GET    /orders?customerId=1                        - заказы покупателя в порядке оформления
+GET    /orders/statistics                          - количество заказов
+ */
+class OrderHandler extends JsonHandler {
+
+    private final OrderController controller;
+
+    OrderHandler(OrderController controller) {
+        super("/orders");
+        this.controller = controller;
+    }
+
+    @Override
+    String handle(String method, List<String> path, Request request) throws IOException {
+        if (path.isEmpty()) {
+            switch (method) {
+                case "GET":
+                    String customerId = request.query("customerId");
+                    if (customerId == null) {
+                        throw new BadRequestException("Не указан покупатель (?customerId=...)");
+                    }
+                    return orders(controller.getByCustomer(id(customerId)));
+                case "POST":
+                    return order(new StringBuilder(), controller.checkout(id(request.object().get("customerId")))).toString();
+                default:
+                    throw unknownRequest(method, path);
+            }
+        }
+        if (path.size() == 1 && method.equals("GET")) {
+            if (path.get(0).equals("statistics")) {
+                return "{\"count\":" + controller.getOrdersNumber() + "}";
+            }
+            return order(new StringBuilder(), controller.getById(id(path.get(0)))).toString();
+        }
+        throw unknownRequest(method, path);
+    }
+
+    private static String orders(List<Order> orders) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < orders.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            order(builder, orders.get(i));
+        }
+        return builder.append(']').toString();
+    }
+
+    private static StringBuilder order(StringBuilder builder, Order order) {
+        builder.append("{\"id\":").append(order.getId())
+                .append(",\"customerId\":").append(order.getCustomerId())
+                .append(",\"createdAt\":").append(order.getCreatedAt())
+                .append(",\"totalCost\":");
+        Json.number(builder, order.getTotalCost()).append(",\"lines\":[");
+        List<Order.Line> lines = order.getLines();
+        for (int i = 0; i < lines.size(); i++) {
+            Order.Line line = lines.get(i);
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"productId\":").append(line.getProductId()).append(",\"title\":");
+            Json.quote(builder, line.getTitle()).append(",\"price\":");
+            Json.number(builder, line.getPrice()).append(",\"quantity\":").append(line.getQuantity()).append('}');
+        }
+        return builder.append("]}");
+    }
+}
@@ -0,0 +1,8 @@
+package server;
+
+// Тело HTTP-запроса больше допустимого размера
+class PayloadTooLargeException extends RuntimeException {
+    PayloadTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,313 @@
+package server;
+
+import app.controller.ProductController;
+import app.domain.Product;
+import app.service.BatchResult;
+import app.service.CacheStatistics;
+import app.service.CatalogSnapshot;
+import app.service.ImportReport;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Операции с продуктами:
+POST   /products                {"title": "...", "price": 1.0}  - сохранить продукт
+POST   /products/batch          [{"title": "...", "price": 1.0}] - сохранить пакет продуктов
+POST   /products/import         {"path": "..."}                 - загрузить продукты из файла в папке загрузки
+GET    /products                                                - все активные продукты (ответ передаётся по частям)
+GET    /products?limit=100[&afterId=5]                          - страница активных продуктов по идентификатору
+GET    /products?title=...                                      - активные продукты по названию
+GET    /products/{id}                                           - продукт по идентификатору
+PUT    /products/{id}           {"price": 1.0}                  - изменить цену продукта
+PUT    /products/{id}           {"price": 1.0, "version": 5}    - изменить цену, если версия не изменилась (иначе 409)
+PUT    /products/prices         {"1": 1.0, "2": 2.0}            - изменить цены пакета продуктов
+DELETE /products/{id}                                           - удалить продукт
+DELETE /products?title=...                                      - удалить продукты по названию
+POST   /products/{id}/restore                                   - восстановить продукт
+POST   /products/deactivate?min=1&max=5                         - удалить все продукты в диапазоне цен
+POST   /products/restore?min=1&max=5                            - восстановить все удалённые продукты в диапазоне цен
+GET    /products/price-range?min=1&max=5&limit=100              - продукты в диапазоне цен
+GET    /products/cheapest?count=10                              - самые дешёвые продукты
+GET    /products/most-expensive?count=10                        - самые дорогие продукты
+GET    /products/by-price?limit=100[&afterPrice=1.0&afterId=5]  - страница продуктов по возрастанию цены
+GET    /products/statistics                                     - количество, стоимость, средняя цена
+GET    /products/statistics?at=2026-01-31T12:00:00Z             - то же на прошедший момент времени
+GET    /products/{id}/price?at=2026-01-31T12:00:00Z             - цена продукта на прошедший момент времени
+GET    /products/cache                                          - статистика кэша продуктов
+
+Загрузка из файла доступна, только если при запуске задана папка загрузки (-Dshop.import.dir=...):
+путь в запросе считается относительно неё, а пути, выходящие за её пределы, отклоняются.
+ */
+class ProductHandler extends JsonHandler {
+
+    // Количество продуктов в ответе, если клиент его не указал
+    private static final int DEFAULT_LIMIT = 100;
+
+    // Папка, из которой разрешено загружать файлы каталога (null - загрузка из файла отключена)
+    private static final String IMPORT_DIRECTORY = System.getProperty("shop.import.dir");
+
+    private final ProductController controller;
+
+    ProductHandler(ProductController controller) {
+        super("/products");
+        this.controller = controller;
+    }
+
+    @Override
+    StreamedBody stream(String method, List<String> path, Request request) {
+        if (method.equals("GET") && path.isEmpty() && request.query("title") == null && request.query("limit") == null) {
+            return array(controller.stream(), ProductHandler::product);
+        }
+        return null;
+    }
+
+    @Override
+    String handle(String method, List<String> path, Request request) throws IOException {
+        if (path.isEmpty()) {
+            return handleCollection(method, request);
+        }
+        String first = path.get(0);
+        if (path.size() == 1) {
+            switch (method + " " + first) {
+                case "POST batch":
+                    return saveAll(request.array());
+                case "POST import":
+                    return importFromFile(request.object());
+                case "PUT prices":
+                    return updatePrices(request.object());
+                case "GET statistics":
+                    return request.query("at") == null ? statistics() : statistics(controller.getCatalogAt(at(request)));
+                case "GET price-range":
+                    return products(controller.findByPriceRange(
+                            request.doubleQuery("min", 0.0), request.doubleQuery("max", Double.MAX_VALUE),
+                            request.intQuery("limit", DEFAULT_LIMIT)));
+                case "GET cheapest":
+                    return products(controller.getCheapest(request.intQuery("count", DEFAULT_LIMIT)));
+                case "GET most-expensive":
+                    return products(controller.getMostExpensive(request.intQuery("count", DEFAULT_LIMIT)));
+                case "GET by-price":
+                    String afterId = request.query("afterId");
+                    return products(controller.getSortedByPrice(request.doubleQuery("afterPrice", 0.0),
+                            afterId == null ? null : id(afterId), request.intQuery("limit", DEFAULT_LIMIT)));
+                case "GET cache":
+                    return cache(controller.getCacheStatistics());
+                case "POST deactivate":
+                    return count(controller.deleteByPriceRange(requiredPrice(request, "min"), requiredPrice(request, "max")));
+                case "POST restore":
+                    return count(controller.restoreByPriceRange(requiredPrice(request, "min"), requiredPrice(request, "max")));
+                default:
+                    break;
+            }
+            long id = id(first);
+            switch (method) {
+                case "GET":
+                    return product(new StringBuilder(), controller.getById(id)).toString();
+                case "PUT":
+                    Map<String, Object> body = request.object();
+                    Long version = version(body);
+                    if (version == null) {
+                        controller.update(id, number(body.get("price")));
+                    } else {
+                        controller.update(id, number(body.get("price")), version);
+                    }
+                    return null;
+                case "DELETE":
+                    controller.deleteById(id);
+                    return null;
+                default:
+                    break;
+            }
+        }
+        if (path.size() == 2 && method.equals("POST") && path.get(1).equals("restore")) {
+            controller.restoreById(id(first));
+            return null;
+        }
+        if (path.size() == 2 && method.equals("GET") && path.get(1).equals("price")) {
+            StringBuilder builder = new StringBuilder("{\"price\":");
+            return Json.number(builder, controller.getPriceAt(id(first), at(request))).append('}').toString();
+        }
+        throw unknownRequest(method, path);
+    }
+
+    // Границы массовых изменений обязательны, чтобы запрос без параметров не затронул весь каталог
+    private static double requiredPrice(Request request, String name) {
+        if (request.query(name) == null) {
+            throw new BadRequestException("Не указан параметр " + name);
+        }
+        return request.doubleQuery(name, 0.0);
+    }
+
+    private static String count(int count) {
+        return "{\"count\":" + count + "}";
+    }
+
+    private String handleCollection(String method, Request request) throws IOException {
+        String title = request.query("title");
+        switch (method) {
+            case "GET":
+                if (title != null) {
+                    return products(controller.findByTitle(title));
+                }
+                String afterId = request.query("afterId");
+                return page(controller.getPage(afterId == null ? null : id(afterId),
+                        request.intQuery("limit", DEFAULT_LIMIT)), ProductHandler::product);
+            case "POST":
+                Map<String, Object> body = request.object();
+                return product(new StringBuilder(), controller.safe(title(body), number(body.get("price")))).toString();
+            case "DELETE":
+                if (title == null) {
+                    throw new BadRequestException("Не указано название продукта (?title=...)");
+                }
+                controller.deleteByTitle(title);
+                return null;
+            default:
+                throw unknownRequest(method, List.of());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private String saveAll(List<Object> body) {
+        List<Product> products = new ArrayList<>(body.size());
+        for (Object item : body) {
+            if (!(item instanceof Map)) {
+                throw new BadRequestException("Элемент пакета должен быть JSON-объектом");
+            }
+            Map<String, Object> fields = (Map<String, Object>) item;
+            products.add(new Product(title(fields), number(fields.get("price"))));
+        }
+        BatchResult<Product> result = controller.saveAll(products);
+        return batch(result, (builder, product) -> product(builder, product));
+    }
+
+    private String importFromFile(Map<String, Object> body) {
+        Object path = body.get("path");
+        if (!(path instanceof String)) {
+            throw new BadRequestException("Не указан путь к файлу (\"path\")");
+        }
+        ImportReport report = controller.importFromFile(importFile((String) path).toString());
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"rows\":").append(report.getRows())
+                .append(",\"saved\":").append(report.getSaved())
+                .append(",\"failed\":").append(report.getFailed())
+                .append(",\"rowsPerSecond\":");
+        Json.number(builder, report.getRowsPerSecond()).append(",\"errors\":[");
+        List<String> errors = report.getErrors();
+        for (int i = 0; i < errors.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            Json.quote(builder, errors.get(i));
+        }
+        return builder.append("]}").toString();
+    }
+
+    // Файл внутри папки загрузки. Путь проверяется и после нормализации (../),
+    // и после раскрытия символических ссылок, чтобы клиент не мог прочитать другой файл сервера
+    private static Path importFile(String name) {
+        if (IMPORT_DIRECTORY == null) {
+            throw new BadRequestException("Загрузка из файла отключена: не задана папка загрузки (shop.import.dir)");
+        }
+        Path directory = Path.of(IMPORT_DIRECTORY).toAbsolutePath().normalize();
+        Path file;
+        try {
+            file = directory.resolve(name).normalize();
+        } catch (InvalidPathException e) {
+            throw new BadRequestException("Некорректное имя файла: " + name);
+        }
+        if (!file.startsWith(directory) || file.equals(directory)) {
+            throw new BadRequestException("Файл должен находиться в папке загрузки: " + name);
+        }
+        try {
+            if (Files.isRegularFile(file) && file.toRealPath().startsWith(directory.toRealPath())) {
+                return file;
+            }
+        } catch (IOException e) {
+            // Файл удалён во время проверки - ответ такой же, как для отсутствующего файла
+        }
+        throw new BadRequestException("Файл не найден в папке загрузки: " + name);
+    }
+
+    private String updatePrices(Map<String, Object> body) {
+        Map<Long, Double> newPrices = new LinkedHashMap<>();
+        body.forEach((id, price) -> newPrices.put(id(id), number(price)));
+        BatchResult<Long> result = controller.updatePrices(newPrices);
+        return batch(result, StringBuilder::append);
+    }
+
+    private String statistics() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"count\":").append(controller.getProductsNumber()).append(",\"totalCost\":");
+        Json.number(builder, controller.getProductsTotalCost()).append(",\"averagePrice\":");
+        return Json.number(builder, controller.getProductsAveragePrice()).append('}').toString();
+    }
+
+    private static String statistics(CatalogSnapshot snapshot) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"count\":").append(snapshot.getActiveProductsNumber()).append(",\"totalCost\":");
+        Json.number(builder, snapshot.getTotalCost()).append(",\"averagePrice\":");
+        return Json.number(builder, snapshot.getAveragePrice()).append('}').toString();
+    }
+
+    // Момент времени из параметра at в формате ISO-8601 (2026-01-31T12:00:00Z)
+    private static Instant at(Request request) {
+        String at = request.query("at");
+        if (at == null) {
+            throw new BadRequestException("Не указан параметр at");
+        }
+        try {
+            return Instant.parse(at);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Параметр at должен быть моментом времени вида 2026-01-31T12:00:00Z: " + at);
+        }
+    }
+
+    private static String cache(CacheStatistics statistics) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"maximumSize\":").append(statistics.getMaximumSize())
+                .append(",\"size\":").append(statistics.getSize())
+                .append(",\"hits\":").append(statistics.getHits())
+                .append(",\"misses\":").append(statistics.getMisses())
+                .append(",\"evictions\":").append(statistics.getEvictions())
+                .append(",\"hitRatio\":");
+        return Json.number(builder, statistics.getHitRatio()).append('}').toString();
+    }
+
+    private static String title(Map<String, Object> body) {
+        Object title = body.get("title");
+        if (title != null && !(title instanceof String)) {
+            throw new BadRequestException("Название продукта должно быть строкой");
+        }
+        return (String) title;
+    }
+
+    private static String products(List<Product> products) {
+        StringBuilder builder = new StringBuilder(products.size() * 64 + 2).append('[');
+        for (int i = 0; i < products.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            product(builder, products.get(i));
+        }
+        return builder.append(']').toString();
+    }
+
+    static StringBuilder product(StringBuilder builder, Product product) {
+        // Версия читается раньше полей: если продукт меняется во время чтения,
+        // клиент получит старую версию и его условное изменение закончится конфликтом, а не затрёт чужое
+        long version = product.getVersion();
+        builder.append("{\"id\":").append(product.getId()).append(",\"title\":");
+        Json.quote(builder, product.getTitle()).append(",\"price\":");
+        return Json.number(builder, product.getPrice())
+                .append(",\"active\":").append(product.isActive())
+                .append(",\"version\":").append(version).append('}');
+    }
+}
@@ -0,0 +1,132 @@
+package server;
+
+import app.controller.CustomerController;
+import app.controller.OrderController;
+import app.controller.ProductController;
+import app.metrics.Metrics;
+import app.persistence.WriteAheadLog;
+import app.service.ChangeService;
+import app.service.CompactionService;
+import app.service.StorageService;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+HTTP/JSON сервер магазина: открывает доступ ко всем операциям контроллеров по сети,
+в отличие от консольного клиента, который обслуживает одного пользователя.
+Подробное описание запросов - в ProductHandler, CustomerHandler, OrderHandler и MetricsHandler.
+
+Соединения принимает один поток JDK HttpServer (на неблокирующих каналах),
+а каждый запрос выполняется отдельной задачей в пуле потоков.
+Если JVM поддерживает виртуальные потоки (Java 21+), каждый запрос получает свой виртуальный поток;
+на Java 17 используется пул обычных потоков, размер которого задаётся свойством shop.http.threads.
+
+По умолчанию сервер слушает только локальный адрес (127.0.0.1): запросы не требуют авторизации.
+Чтобы принимать запросы по сети, адрес задаётся свойством shop.http.host (например, -Dshop.http.host=0.0.0.0).
+
+Запуск: java -cp target/classes server.ShopServer [порт]
+ */
+public class ShopServer {
+
+    private static final int DEFAULT_PORT = 8080;
+
+    // Длина очереди ещё не принятых соединений
+    private static final int BACKLOG = 16_384;
+
+    // Настройки JDK HttpServer (если не заданы при запуске JVM):
+    // - nodelay: без него ответ из двух пакетов (заголовки и тело) ждёт отложенного ACK клиента около 40 мс;
+    // - maxIdleConnections: по умолчанию сервер держит только 200 соединений keep-alive,
+    //   а остальные закрывает после каждого ответа.
+    static {
+        setDefault("sun.net.httpserver.nodelay", "true");
+        setDefault("sun.net.httpserver.maxIdleConnections", "20000");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private ShopServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    // Запустить сервер на указанном адресе (порт 0 - любой свободный порт)
+    public static ShopServer start(InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, BACKLOG);
+        server.createContext("/products", new ProductHandler(new ProductController()));
+        server.createContext("/customers", new CustomerHandler(new CustomerController()));
+        server.createContext("/orders", new OrderHandler(new OrderController()));
+        server.createContext("/metrics", new MetricsHandler());
+        ExecutorService executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.start();
+        return new ShopServer(server, executor);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Остановить сервер, дав текущим запросам до секунды на завершение
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Исполнитель запросов: виртуальный поток на запрос, если он доступен, иначе пул потоков.
+    // Метод ищется через reflection, чтобы код собирался и работал на Java 17.
+    private static ExecutorService newRequestExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            int threads = Integer.getInteger("shop.http.threads", Runtime.getRuntime().availableProcessors() * 8);
+            AtomicInteger number = new AtomicInteger();
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "http-" + number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static void setDefault(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        // Восстанавливаем базу данных с диска (папка data), как и консольный клиент
+        StorageService storage = StorageService.open(Path.of("data"), WriteAheadLog.SyncMode.GROUP, Duration.ofMinutes(1));
+        String host = System.getProperty("shop.http.host");
+        ShopServer server = start(host == null
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                : new InetSocketAddress(host, port));
+        Metrics.startReportingIfConfigured();
+        CompactionService.startIfConfigured();
+        ChangeService.startIfConfigured();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            storage.close();
+            ChangeService.stop();
+        }));
+        System.out.println("Сервер магазина запущен на порту " + server.getPort());
+    }
+}
@@ -0,0 +1,30 @@
+package app.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+Цена в toString печатается так же, как String.format("%.2f") в исходной версии класса
+(с точкой в качестве разделителя): округление десятичной записи HALF_UP и все цифры больших цен.
+ */
+class ProductTest {
+
+    @Test
+    void priceIsFormattedLikeFormatWithTwoDecimals() {
+        double[] prices = {0, 1, 1.5, 1.005, 2.675, 0.125, -1.005, 89.9, 12.345, 1e7 + 0.005,
+                123456789.995, 1e15, 1e20, 9.99e22, Double.MIN_VALUE, -0.0, -0.001, -0.005};
+        for (double price : prices) {
+            String expected = String.format(Locale.ROOT, "%.2f", price);
+            assertEquals("Product: id - 0, title - Молоко, price - " + expected + ", active - no",
+                    new Product("Молоко", price).toString(), String.valueOf(price));
+        }
+    }
+
+    @Test
+    void roundsHalfUp() {
+        assertEquals("Product: id - 0, title - Хлеб, price - 1.01, active - no", new Product("Хлеб", 1.005).toString());
+    }
+}
@@ -0,0 +1,266 @@
+package app.persistence;
+
+import app.exceptions.StorageException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+Журнал упреждающей записи: записи читаются такими же, какими были записаны,
+недописанный хвост последнего сегмента отбрасывается и обрезается,
+а повреждение в середине журнала или в снимке останавливает восстановление.
+"Сбой" в тестах - журнал, который не закрыли: несброшенные записи остаются в его буфере и на диск не попадают.
+ */
+class WriteAheadLogTest {
+
+    // Запись об изменении цены: заголовок (8 байт), тип (1), идентификатор (8), цена (8) и версия (8)
+    private static final int PRICE_RECORD_SIZE = 33;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsAreReadBackUnchanged() {
+        String longTitle = "Продукт ".repeat(10_000);
+        try (WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.SyncMode.GROUP, 100)) {
+            log.productSaved(1, "Молоко", 89.9, true, 7);
+            log.productSaved(2, longTitle, 0.5, false, 8);
+            log.productPriceUpdated(1, 99.9, 9);
+            log.productActiveChanged(2, true, 10);
+            log.customerSaved(3, "Анна", true);
+            log.customerNameUpdated(3, "x".repeat(70_000));
+            log.customerActiveChanged(3, false);
+            log.cartQuantityChanged(3, 1, 4);
+            log.cartCleared(3);
+            log.orderLineAdded(5, 1, "Молоко", 99.9, 2);
+            log.orderPlaced(5, 3, 1_700_000_000_000L);
+        }
+        assertEquals(List.of(
+                "productSaved 1 Молоко 89.9 true 7",
+                "productSaved 2 " + longTitle + " 0.5 false 8",
+                "productPriceUpdated 1 99.9 9",
+                "productActiveChanged 2 true 10",
+                "customerSaved 3 Анна true",
+                "customerNameUpdated 3 " + "x".repeat(70_000),
+                "customerActiveChanged 3 false",
+                "cartQuantityChanged 3 1 4",
+                "cartCleared 3",
+                "orderLineAdded 5 1 Молоко 99.9 2",
+                "orderPlaced 5 3 1700000000000"), recover());
+    }
+
+    // Снимок применяется первым, затем сегменты журнала по порядку
+    @Test
+    void snapshotThenSegments() {
+        try (WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.SyncMode.GROUP, 100)) {
+            log.productPriceUpdated(1, 10, 2);
+            log.rotate();
+            log.productPriceUpdated(1, 20, 3);
+        }
+        WriteAheadLog.writeSnapshot(directory, snapshot -> snapshot.productSaved(1, "Хлеб", 5, true, 1));
+        try (WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.SyncMode.GROUP, 100)) {
+            log.productActiveChanged(1, false, 4);
+        }
+        assertEquals(List.of(
+                "productSaved 1 Хлеб 5.0 true 1",
+                "productPriceUpdated 1 10.0 2",
+                "productPriceUpdated 1 20.0 3",
+                "productActiveChanged 1 false 4"), recover());
+    }
+
+    // Записи о продуктах, сделанные до того, как в журнал стала попадать версия, читаются с версией 0
+    @Test
+    void recordsWithoutVersionAreReadWithUnknownVersion() throws Exception {
+        ByteBuffer payload = ByteBuffer.allocate(17).put((byte) 2).putLong(1).putDouble(10);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        ByteBuffer record = ByteBuffer.allocate(8 + 17).putInt(17).putInt((int) crc.getValue()).put(payload.array());
+        Files.write(segment(1), record.array());
+
+        assertEquals(List.of("productPriceUpdated 1 10.0 0"), recover());
+    }
+
+    @Test
+    void tornTailIsTruncated() throws Exception {
+        writePrices(1, 10);
+        Path segment = segment(1);
+        truncate(segment, 10 * PRICE_RECORD_SIZE - 3);
+
+        assertEquals(9, recover().size());
+        assertEquals(9 * PRICE_RECORD_SIZE, Files.size(segment));
+
+        // После обрезки сегмент с хвостом больше не мешает сегментам следующего запуска
+        writePrices(2, 5);
+        assertEquals(14, recover().size());
+    }
+
+    @Test
+    void checksumMismatchAtTailIsDropped() throws Exception {
+        writePrices(1, 10);
+        corrupt(segment(1), 10 * PRICE_RECORD_SIZE - 1, new byte[]{0x55});
+        assertEquals(9, recover().size());
+        assertEquals(9 * PRICE_RECORD_SIZE, Files.size(segment(1)));
+    }
+
+    @Test
+    void corruptionInEarlierSegmentFailsRecovery() throws Exception {
+        writePrices(1, 10);
+        writePrices(2, 10);
+        corrupt(segment(1), 4 * PRICE_RECORD_SIZE + 12, new byte[]{0x55});
+        assertThrows(StorageException.class, this::recover);
+    }
+
+    // Длина записи, прочитанная с диска, проверяется до выделения памяти под запись
+    @Test
+    void corruptLengthIsRejected() throws Exception {
+        writePrices(1, 10);
+        writePrices(2, 10);
+        byte[] huge = ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE - 8).array();
+        corrupt(segment(1), 2 * PRICE_RECORD_SIZE, huge);
+        assertThrows(StorageException.class, this::recover);
+
+        corrupt(segment(1), 2 * PRICE_RECORD_SIZE, ByteBuffer.allocate(4).putInt(PRICE_RECORD_SIZE - 8).array());
+        corrupt(segment(2), 3 * PRICE_RECORD_SIZE, huge);
+        assertEquals(13, recover().size());
+    }
+
+    @Test
+    void corruptSnapshotFailsRecovery() throws Exception {
+        WriteAheadLog.writeSnapshot(directory, snapshot -> {
+            for (int id = 1; id <= 10; id++) {
+                snapshot.productPriceUpdated(id, id, id);
+            }
+        });
+        corrupt(directory.resolve("snapshot.bin"), 9 * PRICE_RECORD_SIZE + 10, new byte[]{0x55});
+        assertThrows(StorageException.class, this::recover);
+    }
+
+    // В режиме GROUP при сбое теряются только записи после последнего сброса группы,
+    // в режиме PER_OPERATION - ни одной
+    @Test
+    void groupModeLosesOnlyUnsyncedRecords() {
+        WriteAheadLog group = new WriteAheadLog(directory, WriteAheadLog.SyncMode.GROUP, 100);
+        for (int id = 1; id <= 250; id++) {
+            group.productPriceUpdated(id, id, id);
+        }
+        assertEquals(200, recover().size());
+        group.close();
+    }
+
+    @Test
+    void perOperationModeLosesNothing() {
+        WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.SyncMode.PER_OPERATION, 100);
+        for (int id = 1; id <= 250; id++) {
+            log.productPriceUpdated(id, id, id);
+        }
+        assertEquals(250, recover().size());
+        log.close();
+    }
+
+    // Записать в новый сегмент журнала count изменений цены
+    private void writePrices(long segmentNumber, int count) {
+        try (WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.SyncMode.GROUP, 100)) {
+            for (int id = 1; id <= count; id++) {
+                log.productPriceUpdated(id, segmentNumber * 1000 + id, id);
+            }
+        }
+        assertTrue(Files.exists(segment(segmentNumber)));
+    }
+
+    private Path segment(long number) {
+        return directory.resolve(String.format("wal-%06d.log", number));
+    }
+
+    private static void truncate(Path file, long size) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private static void corrupt(Path file, long position, byte[] bytes) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+
+    private List<String> recover() {
+        Recorder recorder = new Recorder();
+        WriteAheadLog.recover(directory, recorder);
+        return recorder.records;
+    }
+
+    // Журнал, который запоминает каждую запись строкой
+    private static class Recorder implements Journal {
+        final List<String> records = new ArrayList<>();
+
+        private void add(Object... fields) {
+            StringBuilder record = new StringBuilder();
+            for (Object field : fields) {
+                record.append(record.length() == 0 ? "" : " ").append(field);
+            }
+            records.add(record.toString());
+        }
+
+        @Override
+        public void productSaved(long id, String title, double price, boolean active, long version) {
+            add("productSaved", id, title, price, active, version);
+        }
+
+        @Override
+        public void productPriceUpdated(long id, double price, long version) {
+            add("productPriceUpdated", id, price, version);
+        }
+
+        @Override
+        public void productActiveChanged(long id, boolean active, long version) {
+            add("productActiveChanged", id, active, version);
+        }
+
+        @Override
+        public void customerSaved(long id, String name, boolean active) {
+            add("customerSaved", id, name, active);
+        }
+
+        @Override
+        public void customerNameUpdated(long id, String name) {
+            add("customerNameUpdated", id, name);
+        }
+
+        @Override
+        public void customerActiveChanged(long id, boolean active) {
+            add("customerActiveChanged", id, active);
+        }
+
+        @Override
+        public void cartQuantityChanged(long customerId, long productId, int quantity) {
+            add("cartQuantityChanged", customerId, productId, quantity);
+        }
+
+        @Override
+        public void cartCleared(long customerId) {
+            add("cartCleared", customerId);
+        }
+
+        @Override
+        public void orderLineAdded(long orderId, long productId, String title, double price, int quantity) {
+            add("orderLineAdded", orderId, productId, title, price, quantity);
+        }
+
+        @Override
+        public void orderPlaced(long id, long customerId, long createdAt) {
+            add("orderPlaced", id, customerId, createdAt);
+        }
+    }
+}
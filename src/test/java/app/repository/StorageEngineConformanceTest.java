@@ -0,0 +1,495 @@
+package app.repository;
+
+import app.domain.Customer;
+import app.domain.Product;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+Общие проверки для всех хранилищ продуктов (heap, concurrent-map, mapped):
+каждое хранилище должно одинаково выполнять контракт ProductRepository.
+Архив покупателей проверяется для обоих хранилищ покупателей (heap, concurrent-map).
+Хранилища отличаются только тем, где лежат данные, поэтому новое хранилище
+достаточно добавить в engines(), чтобы проверить его теми же тестами.
+ */
+class StorageEngineConformanceTest {
+
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 2_000;
+
+    @TempDir
+    Path directory;
+
+    static Stream<String> engines() {
+        return Stream.of(StorageEngines.HEAP, StorageEngines.CONCURRENT_MAP, StorageEngines.MAPPED);
+    }
+
+    static Stream<String> customerEngines() {
+        return Stream.of(StorageEngines.HEAP, StorageEngines.CONCURRENT_MAP);
+    }
+
+    private ProductRepository create(String engine) {
+        return create(engine, "products");
+    }
+
+    private ProductRepository create(String engine, String name) {
+        return StorageEngines.createProductRepository(engine, directory.resolve(name));
+    }
+
+    private static Product product(String title, double price, boolean active) {
+        Product product = new Product(title, price);
+        product.setActive(active);
+        return product;
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    void crud(String engine) {
+        ProductRepository repository = create(engine);
+        long first = repository.save(product("Молоко", 89.9, true)).getId();
+        long second = repository.save(product("Хлеб", 45.5, true)).getId();
+        long third = repository.save(product("Молоко", 99.9, true)).getId();
+        assertEquals(List.of(1L, 2L, 3L), List.of(first, second, third));
+        assertEquals(3, repository.getMaxId());
+        assertEquals(3, repository.countActive());
+
+        Product found = repository.findById(second);
+        assertEquals(second, found.getId());
+        assertEquals("Хлеб", found.getTitle());
+        assertEquals(45.5, found.getPrice());
+        assertTrue(found.isActive());
+        assertNull(repository.findById(4));
+        assertNull(repository.findById(0));
+
+        assertEquals(Set.of(first, third), ids(repository.findByTitle("Молоко")));
+        assertTrue(repository.findByTitle("Сыр").isEmpty());
+
+        repository.update(first, 79.9);
+        assertEquals(79.9, repository.findById(first).getPrice());
+        repository.update(42, 1.0);
+        assertNull(repository.findById(42));
+
+        repository.setActive(second, false);
+        assertFalse(repository.findById(second).isActive());
+        assertEquals(2, repository.countActive());
+        repository.setActive(second, true);
+        assertTrue(repository.findById(second).isActive());
+        assertEquals(3, repository.countActive());
+
+        repository.deleteById(third);
+        assertNull(repository.findById(third));
+        assertEquals(Set.of(first), ids(repository.findByTitle("Молоко")));
+        assertEquals(2, repository.countActive());
+        // Идентификатор удалённого продукта не выдаётся повторно
+        assertEquals(3, repository.getMaxId());
+        assertEquals(4, repository.save(product("Сыр", 500, true)).getId());
+    }
+
+    // save выдаёт идентификатор и переданному объекту, а onSaved выполняется под блокировкой
+    // на возвращённом объекте, когда продукт уже можно найти
+    @ParameterizedTest
+    @MethodSource("engines")
+    void saveSetsIdAndRunsOnSavedUnderLock(String engine) {
+        ProductRepository repository = create(engine);
+        Product product = product("Молоко", 89.9, true);
+        Product saved = repository.save(product, locked -> {
+            assertTrue(Thread.holdsLock(locked));
+            assertNotNull(repository.findById(locked.getId()));
+        });
+        assertEquals(1, product.getId());
+        assertEquals(1, saved.getId());
+
+        Product restored = product("Хлеб", 45.5, true);
+        restored.setId(repository.reserveIds(1));
+        Product placed = repository.restore(restored, locked -> assertTrue(Thread.holdsLock(locked)));
+        assertEquals(2, placed.getId());
+        assertEquals(placed, repository.findById(2));
+    }
+
+    // Перебор всех и активных продуктов по возрастанию идентификатора
+    @ParameterizedTest
+    @MethodSource("engines")
+    void scan(String engine) {
+        ProductRepository repository = create(engine);
+        int count = 10_000;
+        List<Long> active = new ArrayList<>();
+        double activeTotal = 0;
+        for (int i = 1; i <= count; i++) {
+            long id = repository.save(product("Продукт " + i, i, true)).getId();
+            if (i % 3 == 0) {
+                repository.setActive(id, false);
+            } else {
+                active.add(id);
+                activeTotal += i;
+            }
+        }
+        // Последний продукт активен: удаление убирает его и из активных
+        repository.deleteById(count);
+        active.remove((Long) (long) count);
+        activeTotal -= count;
+
+        assertEquals(active.size(), repository.countActive());
+        assertEquals(active, repository.activeIds().boxed().collect(Collectors.toList()));
+        assertEquals(active, repository.findAllActive().stream().map(Product::getId).collect(Collectors.toList()));
+        assertEquals(1, repository.nextActiveId(1));
+        assertEquals(4, repository.nextActiveId(3));
+        assertEquals(0, repository.nextActiveId(count - 1));
+
+        // Постраничное чтение идентификаторов
+        List<Long> paged = new ArrayList<>();
+        long[] page = new long[1000];
+        long from = 1;
+        int read;
+        while ((read = repository.nextActiveIds(from, page)) > 0) {
+            for (int i = 0; i < read; i++) {
+                paged.add(page[i]);
+            }
+            from = page[read - 1] + 1;
+        }
+        assertEquals(active, paged);
+
+        double[] total = new double[1];
+        repository.forEachActive((id, price) -> total[0] += price);
+        assertEquals(activeTotal, total[0]);
+
+        List<Long> all = new ArrayList<>();
+        repository.forEach(product -> all.add(product.getId()));
+        assertEquals(count - 1, all.size());
+        assertEquals(new HashSet<>(all).size(), all.size());
+        assertFalse(all.contains((long) count));
+    }
+
+    // Блок идентификаторов для пакетного сохранения заполняется через restore
+    @ParameterizedTest
+    @MethodSource("engines")
+    void reserveIds(String engine) {
+        ProductRepository repository = create(engine);
+        repository.save(product("До блока", 1, true));
+        long first = repository.reserveIds(10);
+        assertEquals(2, first);
+        assertEquals(11, repository.getMaxId());
+        // Следующий продукт получает идентификатор после блока
+        assertEquals(12, repository.save(product("После блока", 2, true)).getId());
+
+        for (long id = first; id < first + 10; id++) {
+            assertNull(repository.findById(id));
+            Product product = product("В блоке " + id, id, true);
+            product.setId(id);
+            repository.restore(product);
+        }
+        assertEquals(12, repository.getMaxId());
+        assertEquals(12, repository.countActive());
+        for (long id = first; id < first + 10; id++) {
+            Product restored = repository.findById(id);
+            assertEquals("В блоке " + id, restored.getTitle());
+            assertEquals(id, restored.getPrice());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    void restore(String engine) {
+        ProductRepository repository = create(engine);
+        long saved = repository.save(product("Чай", 150, true)).getId();
+
+        // Новый продукт с идентификатором за пределами выданных
+        Product gap = product("Кофе", 300, false);
+        gap.setId(50);
+        repository.restore(gap);
+        assertEquals(50, repository.getMaxId());
+        assertEquals("Кофе", repository.findById(50).getTitle());
+        assertFalse(repository.findById(50).isActive());
+        assertEquals(1, repository.countActive());
+        assertEquals(51, repository.save(product("Сахар", 60, true)).getId());
+
+        // Уже существующий продукт: обновляются цена и состояние, объект в хранилище остаётся тем же
+        Product existing = repository.findById(saved);
+        Product changed = product("Чай", 170, false);
+        changed.setId(saved);
+        assertTrue(repository.restore(changed) == existing);
+        assertEquals(170, repository.findById(saved).getPrice());
+        assertFalse(repository.findById(saved).isActive());
+        assertEquals(51, repository.nextActiveId(1));
+
+        // Архивный продукт находится по идентификатору и возвращается в работу restore и setActive
+        repository.archiveInactive();
+        repository.archiveInactive();
+        assertEquals(170, repository.findById(saved).getPrice());
+        Product back = product("Чай", 180, true);
+        back.setId(saved);
+        repository.restore(back);
+        assertTrue(repository.findById(saved).isActive());
+        assertEquals(180, repository.findById(saved).getPrice());
+        assertEquals(saved, repository.nextActiveId(1));
+        assertEquals(Set.of(saved), ids(repository.findByTitle("Чай")));
+        repository.archiveInactive();
+        repository.archiveInactive();
+        repository.setActive(50, true);
+        assertTrue(repository.findById(50).isActive());
+        assertEquals(3, repository.countActive());
+    }
+
+    // Архив давно удалённых продуктов: строки по-прежнему находятся, меняются и удаляются.
+    // Строк больше мегабайта, поэтому удаление двух третей из них переписывает сегменты архива.
+    @ParameterizedTest
+    @MethodSource("engines")
+    void archive(String engine) {
+        ProductRepository repository = create(engine);
+        int count = 60_000;
+        for (int i = 1; i <= count; i++) {
+            Product product = product("Архивный продукт " + i, i / 100.0, false);
+            product.setVersion(1_700_000_000_000_000L + i);
+            repository.save(product);
+        }
+        Product held = repository.findById(7);
+        repository.archiveInactive();
+        repository.archiveInactive();
+        assertEquals(0, repository.countActive());
+
+        // Объект, на который есть ссылка, остаётся тем же объектом
+        assertTrue(repository.findById(7) == held);
+        for (int id = 1; id <= count; id++) {
+            if (id % 3 != 0) {
+                repository.deleteById(id);
+            }
+        }
+        for (int id = 1; id <= count; id++) {
+            Product product = repository.findById(id);
+            if (id % 3 != 0) {
+                assertNull(product);
+            } else {
+                assertEquals("Архивный продукт " + id, product.getTitle());
+                assertEquals(id / 100.0, product.getPrice());
+                assertEquals(1_700_000_000_000_000L + id, product.getVersion());
+                assertFalse(product.isActive());
+            }
+        }
+        List<Long> all = new ArrayList<>();
+        repository.forEach(product -> all.add(product.getId()));
+        assertEquals(count / 3, all.size());
+
+        // Изменения архивных строк не теряются после следующих проходов уплотнения
+        repository.update(9, 123.45);
+        repository.archiveInactive();
+        repository.archiveInactive();
+        assertEquals(123.45, repository.findById(9).getPrice());
+        repository.setActive(12, true);
+        assertEquals(12, repository.nextActiveId(1));
+        assertEquals(Set.of(12L), ids(repository.findByTitle("Архивный продукт 12")));
+    }
+
+    // Чтение архивных продуктов (по идентификатору и перебором неактивных) не возвращает их в основную таблицу:
+    // следующие проходы уплотнения переносить в архив уже нечего
+    @ParameterizedTest
+    @MethodSource("engines")
+    void readDoesNotUnarchive(String engine) {
+        ProductRepository repository = create(engine);
+        for (int i = 1; i <= 1000; i++) {
+            repository.save(product("Продукт " + i, i, true));
+        }
+        for (int id = 1; id <= 1000; id++) {
+            if (id % 10 != 0) {
+                repository.setActive(id, false);
+            }
+        }
+        repository.archiveInactive();
+        int archived = repository.archiveInactive();
+
+        for (int id = 1; id <= 1000; id++) {
+            assertEquals(id % 10 == 0, repository.findById(id).isActive());
+        }
+        List<Long> inactive = new ArrayList<>();
+        long[] page = new long[64];
+        long from = 1;
+        int read;
+        while ((read = repository.nextInactiveIds(from, page)) > 0) {
+            for (int i = 0; i < read; i++) {
+                inactive.add(page[i]);
+            }
+            from = page[read - 1] + 1;
+        }
+        assertEquals(900, inactive.size());
+        assertTrue(inactive.stream().allMatch(id -> id % 10 != 0));
+        assertTrue(repository.findByTitle("Продукт 1").isEmpty() == (archived > 0));
+        repository.archiveInactive();
+        assertEquals(0, repository.archiveInactive());
+
+        // Восстановление возвращает продукт в основную таблицу
+        repository.setActive(1, true);
+        assertEquals(1, repository.nextActiveId(1));
+        assertEquals(Set.of(1L), ids(repository.findByTitle("Продукт 1")));
+        assertFalse(repository.nextInactiveIds(1, page) > 0 && page[0] == 1);
+    }
+
+    // Архив покупателей хранит корзины идентификаторами продуктов и восстанавливает их при чтении
+    @ParameterizedTest
+    @MethodSource("customerEngines")
+    void customerArchiveKeepsCart(String engine) {
+        ProductRepository products = create(StorageEngines.HEAP);
+        Product milk = products.save(product("Молоко", 89.9, true));
+        Product bread = products.save(product("Хлеб", 45.5, true));
+        CustomerRepository customers = StorageEngines.createCustomerRepository(engine, products::findById);
+        for (int i = 1; i <= 1000; i++) {
+            Customer customer = new Customer("Покупатель " + i);
+            customer.getCart().setQuantity(milk, i);
+            if (i % 2 == 0) {
+                customer.getCart().add(bread);
+            }
+            customer.setVersion(i);
+            customers.save(customer);
+        }
+        customers.archiveInactive();
+        assertEquals(1000, customers.archiveInactive());
+        System.gc();
+        for (long id = 1; id <= 1000; id++) {
+            Customer customer = customers.findById(id);
+            assertEquals("Покупатель " + id, customer.getName());
+            assertEquals(id, customer.getVersion());
+            assertEquals(id, customer.getCart().getQuantity(milk.getId()));
+            assertEquals(id % 2 == 0 ? 1 : 0, customer.getCart().getQuantity(bread.getId()));
+            customer.getCart().forEach((product, quantity) -> assertTrue(product == milk || product == bread));
+        }
+        customers.update(5, "Новое имя");
+        assertEquals(Set.of(5L), customers.findByName("Новое имя").stream()
+                .map(Customer::getId).collect(Collectors.toSet()));
+    }
+
+    // Выгрузка и загрузка в пустое хранилище того же типа
+    @ParameterizedTest
+    @MethodSource("engines")
+    void exportAndImport(String engine) throws Exception {
+        ProductRepository repository = create(engine);
+        for (int i = 1; i <= 1000; i++) {
+            repository.save(product("Продукт " + i, i / 100.0, i % 7 != 0));
+        }
+        repository.deleteById(500);
+        Path file = directory.resolve("products.bin");
+        long exported;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            exported = repository.exportTo(channel);
+        }
+        assertEquals(999, exported);
+
+        ProductRepository copy = create(engine, "copy");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertEquals(exported, copy.importFrom(channel));
+        }
+        assertEquals(repository.getMaxId(), copy.getMaxId());
+        assertEquals(repository.countActive(), copy.countActive());
+        assertNull(copy.findById(500));
+        repository.forEach(product -> {
+            Product copied = copy.findById(product.getId());
+            assertNotNull(copied);
+            assertEquals(product.getTitle(), copied.getTitle());
+            assertEquals(product.getPrice(), copied.getPrice());
+            assertEquals(product.isActive(), copied.isActive());
+        });
+    }
+
+    // Потоки одновременно сохраняют продукты, резервируют блоки и меняют свои продукты:
+    // идентификаторы не повторяются, и ни одно изменение не теряется
+    @ParameterizedTest
+    @MethodSource("engines")
+    void concurrentMutation(String engine) throws Exception {
+        ProductRepository repository = create(engine);
+        List<List<Long>> ids = runAll(thread -> {
+            List<Long> own = new ArrayList<>();
+            for (int i = 0; i < PER_THREAD; i++) {
+                if (i % 100 == 0) {
+                    long first = repository.reserveIds(10);
+                    for (long id = first; id < first + 10; id++) {
+                        Product product = product("Блок " + thread, 1, true);
+                        product.setId(id);
+                        repository.restore(product);
+                        own.add(id);
+                    }
+                }
+                own.add(repository.save(product("Поток " + thread, 1, true)).getId());
+            }
+            // Свои продукты: изменить цену и удалить каждый второй
+            for (int i = 0; i < own.size(); i++) {
+                long id = own.get(i);
+                repository.update(id, thread + 2);
+                if (i % 2 == 0) {
+                    repository.setActive(id, false);
+                }
+            }
+            return own;
+        });
+
+        Set<Long> unique = new HashSet<>();
+        Set<Long> active = new HashSet<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            List<Long> own = ids.get(thread);
+            for (int i = 0; i < own.size(); i++) {
+                long id = own.get(i);
+                assertTrue(unique.add(id), "Идентификатор выдан дважды: " + id);
+                Product product = repository.findById(id);
+                assertEquals(thread + 2, product.getPrice());
+                assertEquals(i % 2 != 0, product.isActive());
+                if (i % 2 != 0) {
+                    active.add(id);
+                }
+            }
+        }
+        int total = THREADS * (PER_THREAD + PER_THREAD / 100 * 10);
+        assertEquals(total, unique.size());
+        assertEquals(total, repository.getMaxId());
+        assertEquals(active.size(), repository.countActive());
+        assertEquals(active, repository.activeIds().boxed().collect(Collectors.toSet()));
+    }
+
+    private static Set<Long> ids(List<Product> products) {
+        return products.stream().map(Product::getId).collect(Collectors.toSet());
+    }
+
+    private interface Task<T> {
+        T run(int thread) throws Exception;
+    }
+
+    // Запустить task в THREADS потоках одновременно и вернуть результаты потоков
+    private static <T> List<T> runAll(Task<T> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        try {
+            List<Future<T>> futures = new ArrayList<>(THREADS);
+            for (int thread = 0; thread < THREADS; thread++) {
+                int number = thread;
+                Callable<T> callable = () -> {
+                    start.await();
+                    return task.run(number);
+                };
+                futures.add(executor.submit(callable));
+            }
+            List<T> results = new ArrayList<>(THREADS);
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package app.service;
+
+import app.repository.StorageEngines;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+Загрузка 10 000 000 строк в куче 64 МБ: расход памяти загрузчика не зависит от размера файла.
+Тест запускается отдельным процессом surefire (выполнение bounded-memory в pom.xml) с -Xmx64m.
+Продукты сохраняются в хранилище mapped (вне кучи), индекс цен и история цен выключены:
+иначе в куче лежали бы сами продукты, и проверялся бы не загрузчик, а хранилище.
+ */
+@Tag("bounded-memory")
+class CatalogImportMemoryTest {
+
+    private static final int ROWS = 10_000_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void importsTenMillionRowsInSmallHeap() throws IOException {
+        assertTrue(Runtime.getRuntime().maxMemory() <= 96L << 20,
+                "Тест должен запускаться с маленькой кучей (-Xmx64m), сейчас: " + Runtime.getRuntime().maxMemory());
+        Path file = directory.resolve("catalog.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("title,price\n");
+            for (int i = 1; i <= ROWS; i++) {
+                if (i % 1000 == 0) {
+                    writer.write("Large-" + i + ",bad\n");
+                } else {
+                    writer.write("Large-" + i + "," + (i % 10_000) / 100.0 + "\n");
+                }
+            }
+        }
+        ProductService productService = new ProductService(
+                StorageEngines.createProductRepository(StorageEngines.MAPPED, directory.resolve("products")));
+
+        ImportReport report = new CatalogImportService(productService).importFile(file);
+
+        int bad = ROWS / 1000;
+        assertEquals(ROWS, report.getRows());
+        assertEquals(ROWS - bad, report.getSaved());
+        assertEquals(bad, report.getFailed());
+        assertEquals(100, report.getErrors().size());
+        assertEquals(ROWS - bad, productService.getActiveProductsNumber());
+        // Ошибочные строки не получают идентификаторов, поэтому строка i получает идентификатор i - i / 1000
+        assertEquals("Large-1", productService.getActiveProductById(1).getTitle());
+        assertEquals(12.34, productService.getActiveProductById(1234 - 1).getPrice());
+        assertEquals("Large-" + (ROWS - 1), productService.getActiveProductById(ROWS - bad).getTitle());
+    }
+}
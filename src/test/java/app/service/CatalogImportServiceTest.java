@@ -0,0 +1,215 @@
+package app.service;
+
+import app.domain.Product;
+import app.exceptions.CatalogImportException;
+import app.repository.StorageEngines;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+Загрузка каталога из файла: разбор цены, крайние случаи CSV и JSON lines
+и загрузка большого файла с ошибочными строками.
+Каждый тест загружает продукты в свой сервис продуктов с отдельным хранилищем.
+Загрузка 10 000 000 строк в маленькой куче проверяется отдельно (CatalogImportMemoryTest).
+ */
+class CatalogImportServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private final ProductService productService =
+            new ProductService(StorageEngines.createProductRepository(StorageEngines.HEAP, null));
+    private final CatalogImportService importService = new CatalogImportService(productService);
+
+    // Разбор цены
+
+    @Test
+    void parsesPlainDecimals() {
+        assertEquals(12.5, parsePrice("12.5"));
+        assertEquals(3.0, parsePrice("  3 "));
+        assertEquals(-1.25, parsePrice("-1.25"));
+        assertEquals(2.0, parsePrice("+2"));
+        assertEquals(0.5, parsePrice(".5"));
+        assertEquals(7.0, parsePrice("7."));
+        assertEquals(0.0, parsePrice("0"));
+    }
+
+    @Test
+    void parsesLikeDoubleParseDouble() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            String text = random.nextInt(1_000_000_000) + "." + random.nextInt(1000);
+            assertEquals(Double.parseDouble(text), parsePrice(text), text);
+        }
+        assertEquals(0.1, parsePrice("0.1"));
+        assertEquals(Double.parseDouble("123456789012345678"), parsePrice("123456789012345678"));
+    }
+
+    @Test
+    void parsesRareFormatsThroughParseDouble() {
+        assertEquals(1500.0, parsePrice("1.5e3"));
+        assertEquals(Double.parseDouble("12345678901234567890.5"), parsePrice("12345678901234567890.5"));
+        assertEquals(Double.parseDouble("0.12345678901234567891"), parsePrice("0.12345678901234567891"));
+    }
+
+    @Test
+    void rejectsBadPrices() {
+        for (String text : List.of("", "   ", "abc", "1.2.3", "12a", "-", ".", "NaN", "Infinity", "1e400", "1,5")) {
+            assertThrows(CatalogImportException.class, () -> parsePrice(text), text);
+        }
+    }
+
+    // CSV
+
+    @Test
+    void csvSkipsHeaderAndBlankLines() throws IOException {
+        Path file = write("header.csv", "title,price\r\n\r\nCsv-a,1.5\n   \nCsv-b,2\n\n");
+        ImportReport report = importService.importFile(file);
+        assertEquals(2, report.getRows());
+        assertEquals(2, report.getSaved());
+        assertEquals(0, report.getFailed());
+        assertEquals(1.5, single("Csv-a").getPrice());
+        assertEquals(2.0, single("Csv-b").getPrice());
+    }
+
+    @Test
+    void csvHandlesQuotingAndCommas() throws IOException {
+        Path file = write("quotes.csv", """
+                "Csv-quoted, with comma",3.25
+                "Csv-""escaped"" quotes",4
+                Csv-unquoted, with comma,5.5
+                "Csv-Молоко",6""");
+        ImportReport report = importService.importFile(file);
+        assertEquals(4, report.getSaved(), report.getErrors()::toString);
+        assertEquals(3.25, single("Csv-quoted, with comma").getPrice());
+        assertEquals(4.0, single("Csv-\"escaped\" quotes").getPrice());
+        assertEquals(5.5, single("Csv-unquoted, with comma").getPrice());
+        assertEquals(6.0, single("Csv-Молоко").getPrice());
+    }
+
+    @Test
+    void csvReportsBadRowsWithLineNumbers() throws IOException {
+        Path file = write("bad.csv", """
+                Csv-good,1
+                "Csv-unclosed,2
+                no separator
+                Csv-bad-price,abc
+                Csv-negative,-3
+                ,4
+                Csv-last,5""");
+        ImportReport report = importService.importFile(file);
+        assertEquals(7, report.getRows());
+        assertEquals(2, report.getSaved());
+        assertEquals(5, report.getFailed());
+        List<String> errors = report.getErrors();
+        assertEquals(5, errors.size());
+        assertTrue(errors.get(0).startsWith("Строка 2: "), errors.get(0));
+        assertTrue(errors.get(1).startsWith("Строка 3: "), errors.get(1));
+        assertTrue(errors.get(2).startsWith("Строка 4: ") && errors.get(2).contains("abc"), errors.get(2));
+        // Отрицательная цена и пустое наименование отклоняются сервисом продуктов при сохранении пакета
+        assertTrue(errors.stream().anyMatch(error -> error.startsWith("Строка 5: ")), errors::toString);
+        assertTrue(errors.stream().anyMatch(error -> error.startsWith("Строка 6: ")), errors::toString);
+        assertEquals(5.0, single("Csv-last").getPrice());
+    }
+
+    @Test
+    void csvReadsLinesLongerThanBuffer() throws IOException {
+        String title = "Csv-long-" + "x".repeat(200_000);
+        ImportReport report = importService.importFile(write("long.csv", title + ",9.75\nCsv-after-long,1\n"));
+        assertEquals(2, report.getSaved(), report.getErrors()::toString);
+        assertEquals(9.75, single(title).getPrice());
+    }
+
+    // JSON lines
+
+    @Test
+    void jsonLinesParsesEscapesAndIgnoresOtherFields() throws IOException {
+        Path file = write("escapes.jsonl", """
+                {"title": "Json-plain", "price": 1.5}
+                
+                {"id": 7, "price": 2, "active": true, "title": "Json-\\"quoted\\" \\u0416"}
+                  {"title":"Json-tab\\tnewline\\n","price":3.25}
+                """);
+        ImportReport report = importService.importFile(file);
+        assertEquals(3, report.getRows());
+        assertEquals(3, report.getSaved(), report.getErrors()::toString);
+        assertEquals(1.5, single("Json-plain").getPrice());
+        assertEquals(2.0, single("Json-\"quoted\" Ж").getPrice());
+        assertEquals(3.25, single("Json-tab\tnewline\n").getPrice());
+    }
+
+    @Test
+    void jsonLinesReportsBadRows() throws IOException {
+        Path file = write("bad.jsonl", """
+                {"title": "Json-good", "price": 1}
+                {"title": "Json-no-price"}
+                {"title": "Json-unclosed, "price": 2}
+                not json
+                {"title": "Json-bad-price", "price": "x"}
+                {"title": "Json-bad-escape\\u12", "price": 3}
+                {"title": "Json-missing-brace", "price": 4""");
+        ImportReport report = importService.importFile(file, CatalogImportService.Format.JSON_LINES);
+        assertEquals(7, report.getRows());
+        assertEquals(1, report.getSaved());
+        assertEquals(6, report.getFailed());
+        for (int line = 2; line <= 7; line++) {
+            String prefix = "Строка " + line + ": ";
+            assertTrue(report.getErrors().stream().anyMatch(error -> error.startsWith(prefix)), prefix);
+        }
+    }
+
+    // Загрузка большого файла: каждая тысячная строка ошибочна, в отчёте остаются первые 100 ошибок
+    @Test
+    void importsLargeFileAndBoundsErrorReport() throws IOException {
+        int rows = 500_000;
+        Path file = directory.resolve("large.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("title,price\n");
+            for (int i = 1; i <= rows; i++) {
+                if (i % 1000 == 0) {
+                    writer.write("Large-" + i + ",bad\n");
+                } else {
+                    writer.write("Large-" + i + "," + (i % 10_000) / 100.0 + "\n");
+                }
+            }
+        }
+        ImportReport report = importService.importFile(file);
+        int bad = rows / 1000;
+        assertEquals(rows, report.getRows());
+        assertEquals(rows - bad, report.getSaved());
+        assertEquals(bad, report.getFailed());
+        assertEquals(100, report.getErrors().size());
+        // Строка 1 - заголовок, поэтому строка Large-1000 - это строка 1001 файла
+        assertTrue(report.getErrors().get(0).startsWith("Строка 1001: "), report.getErrors().get(0));
+        assertTrue(report.getRowsPerSecond() > 0);
+        assertEquals(12.34, single("Large-1234").getPrice());
+        assertTrue(productService.getActiveProductsByTitle("Large-2000").isEmpty());
+    }
+
+    private static double parsePrice(String text) {
+        byte[] bytes = ("#" + text + "#").getBytes(StandardCharsets.US_ASCII);
+        return CatalogImportService.parsePrice(bytes, 1, bytes.length - 1);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(directory.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    private Product single(String title) {
+        List<Product> products = productService.getActiveProductsByTitle(title);
+        assertEquals(1, products.size(), title);
+        return products.get(0);
+    }
+}
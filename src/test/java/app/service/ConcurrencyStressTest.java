@@ -0,0 +1,212 @@
+package app.service;
+
+import app.domain.Customer;
+import app.domain.Product;
+import app.exceptions.ProductConflictException;
+import app.persistence.WriteAheadLog;
+import app.repository.ProductRepository;
+import app.repository.StorageEngines;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+Нагрузочная проверка сервисов из 64 потоков одновременно: идентификаторы не повторяются,
+а изменения, сделанные разными потоками над одним объектом, не теряются.
+Сервисы - синглтоны, общие для всех тестов, поэтому проверяются только объекты, созданные в тесте.
+ */
+class ConcurrencyStressTest {
+
+    private static final int THREADS = 64;
+    private static final int PER_THREAD = 500;
+
+    @TempDir
+    Path directory;
+
+    private final ProductService productService = ProductService.getInstance();
+    private final CustomerService customerService = CustomerService.getInstance();
+
+    @Test
+    void productIdsAreUnique() throws Exception {
+        List<List<Long>> ids = runAll(thread -> {
+            List<Long> saved = new ArrayList<>(PER_THREAD);
+            for (int i = 0; i < PER_THREAD; i++) {
+                saved.add(productService.save(new Product("Stress-" + thread + "-" + i, i)).getId());
+            }
+            return saved;
+        });
+        Set<Long> unique = new HashSet<>();
+        for (List<Long> saved : ids) {
+            for (Long id : saved) {
+                assertTrue(unique.add(id), "Идентификатор продукта выдан дважды: " + id);
+                assertEquals(id, productService.getActiveProductById(id).getId());
+            }
+        }
+        assertEquals(THREADS * PER_THREAD, unique.size());
+    }
+
+    @Test
+    void productIdsOfBatchesAreUnique() throws Exception {
+        List<List<Long>> ids = runAll(thread -> {
+            List<Product> batch = new ArrayList<>(PER_THREAD);
+            for (int i = 0; i < PER_THREAD; i++) {
+                batch.add(new Product("Batch-" + thread + "-" + i, i));
+            }
+            List<Long> saved = new ArrayList<>(PER_THREAD);
+            for (Product product : productService.saveAll(batch).getSucceeded()) {
+                saved.add(product.getId());
+            }
+            return saved;
+        });
+        Set<Long> unique = new HashSet<>();
+        ids.forEach(unique::addAll);
+        assertEquals(THREADS * PER_THREAD, unique.size());
+    }
+
+    @Test
+    void customerIdsAreUnique() throws Exception {
+        List<List<Long>> ids = runAll(thread -> {
+            List<Long> saved = new ArrayList<>(PER_THREAD);
+            for (int i = 0; i < PER_THREAD; i++) {
+                saved.add(customerService.save(new Customer("Stress-" + thread + "-" + i)).getId());
+            }
+            return saved;
+        });
+        Set<Long> unique = new HashSet<>();
+        ids.forEach(unique::addAll);
+        assertEquals(THREADS * PER_THREAD, unique.size());
+    }
+
+    // Хранилище mapped возвращает не сохранённый объект, а представление над колонками.
+    // Половина потоков сохраняет продукты (по одному и пакетами), другая половина меняет цену
+    // каждого продукта, как только его можно найти. Запись о сохранении должна попасть в журнал
+    // раньше записи об изменении цены, иначе после восстановления из журнала изменение потеряется.
+    @Test
+    void journalOfMappedEngineReplaysChangesOfJustSavedProducts() throws Exception {
+        ProductRepository repository =
+                StorageEngines.createProductRepository(StorageEngines.MAPPED, directory.resolve("products"));
+        ProductService service = new ProductService(repository);
+        WriteAheadLog log = new WriteAheadLog(directory.resolve("log"), WriteAheadLog.SyncMode.GROUP, 1 << 20);
+        service.setJournal(log);
+        int writers = THREADS / 2;
+        long total = (long) writers * PER_THREAD;
+
+        runAll(thread -> {
+            if (thread < writers) {
+                List<Product> batch = new ArrayList<>();
+                for (int i = 0; i < PER_THREAD; i++) {
+                    Product product = new Product("Mapped-" + thread + "-" + i, 1);
+                    if (thread % 2 == 0) {
+                        service.save(product);
+                    } else {
+                        batch.add(product);
+                        if (batch.size() == 10) {
+                            service.saveAll(batch);
+                            batch.clear();
+                        }
+                    }
+                }
+                return null;
+            }
+            for (long id = thread - writers + 1; id <= total; id += THREADS - writers) {
+                while (repository.findById(id) == null) {
+                    Thread.yield();
+                }
+                service.update(id, id + 0.5);
+            }
+            return null;
+        });
+        log.close();
+
+        ProductRepository recovered = StorageEngines.createProductRepository(StorageEngines.HEAP, null);
+        WriteAheadLog.recover(directory.resolve("log"), new JournalReplayer(recovered,
+                StorageEngines.createCustomerRepository(StorageEngines.HEAP, recovered::findById),
+                StorageEngines.createOrderRepository()));
+        for (long id = 1; id <= total; id++) {
+            assertEquals(id + 0.5, repository.findById(id).getPrice());
+            assertEquals(id + 0.5, recovered.findById(id).getPrice(), "Продукт " + id);
+        }
+    }
+
+    // Каждый поток увеличивает цену одного и того же продукта условным изменением по версии
+    // и повторяет попытку при конфликте: ни одно увеличение не должно потеряться
+    @Test
+    void noPriceIncrementIsLost() throws Exception {
+        long id = productService.save(new Product("Counter", 0)).getId();
+        int increments = 100;
+        runAll(thread -> {
+            for (int i = 0; i < increments; i++) {
+                while (true) {
+                    Product product = productService.getActiveProductById(id);
+                    long version = product.getVersion();
+                    double price = product.getPrice();
+                    try {
+                        productService.update(id, price + 1, version);
+                        break;
+                    } catch (ProductConflictException e) {
+                        // Продукт успел изменить другой поток - перечитать и повторить
+                    }
+                }
+            }
+            return null;
+        });
+        assertEquals(THREADS * increments, productService.getActiveProductById(id).getPrice());
+    }
+
+    // Все потоки кладут один и тот же продукт в корзину одного покупателя
+    @Test
+    void noCartAdditionIsLost() throws Exception {
+        long productId = productService.save(new Product("Shared", 1.5)).getId();
+        Customer customer = customerService.save(new Customer("Shared cart"));
+        int additions = 200;
+        runAll(thread -> {
+            for (int i = 0; i < additions; i++) {
+                customerService.addProductCustomersCart(customer.getId(), productId);
+            }
+            return null;
+        });
+        assertEquals(THREADS * additions, customer.getCart().getQuantity(productId));
+        assertEquals(THREADS * additions * 1.5, customerService.getCustomersCartTotalCost(customer.getId()));
+    }
+
+    private interface Task<T> {
+        T run(int thread) throws Exception;
+    }
+
+    // Запустить task в THREADS потоках одновременно и вернуть результаты потоков
+    private static <T> List<T> runAll(Task<T> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        try {
+            List<Future<T>> futures = new ArrayList<>(THREADS);
+            for (int thread = 0; thread < THREADS; thread++) {
+                int number = thread;
+                Callable<T> callable = () -> {
+                    start.await();
+                    return task.run(number);
+                };
+                futures.add(executor.submit(callable));
+            }
+            List<T> results = new ArrayList<>(THREADS);
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
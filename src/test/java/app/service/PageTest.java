@@ -0,0 +1,56 @@
+package app.service;
+
+import app.domain.Customer;
+import app.domain.Product;
+import app.exceptions.PageSizeException;
+import app.repository.StorageEngines;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*
+Постраничное чтение по идентификатору: переход по страницам до последней
+и отказ от страницы нулевого или отрицательного размера, по которой клиент не смог бы продвинуться.
+ */
+class PageTest {
+
+    @Test
+    void walksAllPagesUntilTheLastOne() {
+        ProductService service = new ProductService(StorageEngines.createProductRepository(StorageEngines.HEAP, null));
+        for (int i = 1; i <= 5; i++) {
+            service.save(new Product("Page-" + i, i));
+        }
+        List<Long> ids = new ArrayList<>();
+        Long afterId = null;
+        do {
+            Page<Product> page = service.getActiveProductsPage(afterId, 2);
+            page.getItems().forEach(product -> ids.add(product.getId()));
+            afterId = page.getNextAfterId();
+        } while (afterId != null);
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), ids);
+    }
+
+    @Test
+    void rejectsEmptyAndNegativePageSize() {
+        ProductService service = new ProductService(StorageEngines.createProductRepository(StorageEngines.HEAP, null));
+        service.save(new Product("Page-size", 1));
+        assertThrows(PageSizeException.class, () -> service.getActiveProductsPage(null, 0));
+        assertThrows(PageSizeException.class, () -> service.getActiveProductsPage(null, -1));
+
+        CustomerService customers = CustomerService.getInstance();
+        customers.save(new Customer("Page-size"));
+        assertThrows(PageSizeException.class, () -> customers.getActiveCustomersPage(null, 0));
+    }
+
+    @Test
+    void lastPageHasNoContinuation() {
+        Page<Long> page = Page.collect(0, 10, id -> id <= 3 ? id : 0, id -> id);
+        assertEquals(List.of(1L, 2L, 3L), page.getItems());
+        assertNull(page.getNextAfterId());
+    }
+}
@@ -0,0 +1,66 @@
+package app.service;
+
+import app.domain.Product;
+import app.repository.StorageEngines;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+Пакетное сохранение продуктов: ошибка в одном продукте попадает в результат
+и не мешает сохранить остальные продукты пакета.
+Каждый тест работает со своим сервисом над отдельным хранилищем.
+ */
+class ProductBatchSaveTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void mappedEngineRejectsOversizedTitleWithoutStoppingTheBatch() {
+        ProductService service = new ProductService(
+                StorageEngines.createProductRepository(StorageEngines.MAPPED, directory.resolve("products")));
+        Product first = new Product("Batch-first", 1.5);
+        Product oversized = new Product("x".repeat(70_000), 2.0);
+        Product last = new Product("Batch-last", 3.0);
+
+        BatchResult<Product> result = service.saveAll(List.of(first, oversized, last));
+
+        assertEquals(2, result.getSuccessCount());
+        assertEquals(1, result.getFailureCount());
+        List<BatchResult.Item<Product>> items = result.getItems();
+        assertTrue(items.get(0).isSuccess());
+        assertFalse(items.get(1).isSuccess());
+        assertTrue(items.get(2).isSuccess());
+        assertEquals(0, oversized.getId());
+
+        assertEquals(2, service.getActiveProductsNumber());
+        assertEquals(4.5, service.getActiveProductsTotalCost());
+        assertEquals(1.5, service.getActiveProductById(items.get(0).getValue().getId()).getPrice());
+        assertEquals(3.0, service.getActiveProductById(items.get(2).getValue().getId()).getPrice());
+        assertEquals(1, service.getActiveProductsByTitle("Batch-last").size());
+    }
+
+    @Test
+    void sameProductTwiceIsSavedOnce() {
+        ProductService service = new ProductService(StorageEngines.createProductRepository(StorageEngines.HEAP, null));
+        Product product = new Product("Batch-twice", 4.0);
+        Product other = new Product("Batch-other", 1.0);
+
+        BatchResult<Product> result = service.saveAll(List.of(product, other, product));
+
+        assertEquals(2, result.getSuccessCount());
+        assertFalse(result.getItems().get(2).isSuccess());
+        assertNotEquals(0, product.getId());
+        assertEquals(2, service.getActiveProductsNumber());
+        assertEquals(5.0, service.getActiveProductsTotalCost());
+        assertEquals(1, service.getCheapestProducts(10).stream().filter(p -> p == product).count());
+    }
+}
@@ -0,0 +1,70 @@
+package app.service;
+
+import app.domain.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/*
+Кэш продуктов: попадания и промахи, удаление изменённого продукта и вытеснение по CLOCK.
+ */
+class ProductCacheTest {
+
+    private static Product product(long id) {
+        Product product = new Product("Cache-" + id, id);
+        product.setId(id);
+        return product;
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        ProductCache cache = new ProductCache(10);
+        AtomicInteger loads = new AtomicInteger();
+        Product product = product(1);
+
+        assertSame(product, cache.get(1, id -> { loads.incrementAndGet(); return product; }));
+        assertSame(product, cache.get(1, id -> { loads.incrementAndGet(); return product; }));
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(1, loads.get());
+        assertEquals(1, statistics.getHits());
+        assertEquals(1, statistics.getMisses());
+        assertEquals(1, statistics.getSize());
+    }
+
+    @Test
+    void invalidatedProductIsLoadedAgain() {
+        ProductCache cache = new ProductCache(10);
+        cache.get(1, id -> product(1));
+        cache.invalidate(1);
+
+        assertNull(cache.get(1, id -> null));
+        assertEquals(0, cache.getStatistics().getSize());
+    }
+
+    @Test
+    void evictsWhenFull() {
+        ProductCache cache = new ProductCache(2);
+        for (long id = 1; id <= 5; id++) {
+            cache.get(id, ProductCacheTest::product);
+        }
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(2, statistics.getSize());
+        assertEquals(3, statistics.getEvictions());
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        ProductCache cache = new ProductCache(0);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(1, id -> { loads.incrementAndGet(); return product(1); });
+        cache.get(1, id -> { loads.incrementAndGet(); return product(1); });
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.getStatistics().getSize());
+    }
+}
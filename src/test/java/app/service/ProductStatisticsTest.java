@@ -0,0 +1,161 @@
+package app.service;
+
+import app.domain.Product;
+import app.exceptions.ProductNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+Показатели активных продуктов сравниваются с подсчётом по списку активных цен потоком
+(DoubleStream.sum() и average(), как их считал сервис до ProductStatistics) после случайных
+последовательностей сохранений, изменений цены, удалений и восстановлений.
+Точная сумма совпадает с суммой потока с точностью до единицы младшего разряда (ulp),
+а среднее - с точностью до двух: к разнице сумм добавляется округление деления (см. ProductStatistics).
+ */
+class ProductStatisticsTest {
+
+    private static final int SEQUENCES = 1000;
+    private static final int OPERATIONS = 300;
+
+    @Test
+    void centPricesMatchStream() {
+        check(new Random(1), false);
+    }
+
+    @Test
+    void arbitraryPricesMatchStream() {
+        check(new Random(2), true);
+    }
+
+    @Test
+    void sumDoesNotDependOnOrderOfChanges() {
+        ProductStatistics statistics = new ProductStatistics();
+        statistics.add(0.1);
+        statistics.add(0.2);
+        statistics.add(1e9);
+        statistics.remove(1e9);
+        assertEquals(0.3, statistics.getTotalCost());
+        assertEquals(0.15, statistics.getAveragePrice());
+    }
+
+    @Test
+    void emptyStatistics() {
+        ProductStatistics statistics = new ProductStatistics();
+        statistics.add(5.25);
+        statistics.remove(5.25);
+        assertEquals(0, statistics.getCount());
+        assertEquals(0.0, statistics.getTotalCost());
+        assertEquals(0.0, statistics.getAveragePrice());
+    }
+
+    @Test
+    void partsAddUpToWhole() {
+        ProductStatistics whole = new ProductStatistics();
+        ProductStatistics total = new ProductStatistics();
+        Random random = new Random(3);
+        for (int part = 0; part < 10; part++) {
+            ProductStatistics statistics = new ProductStatistics();
+            for (int i = 0; i < 100; i++) {
+                double price = random.nextBoolean() ? random.nextInt(100_000) / 100.0 : random.nextDouble() * 100;
+                statistics.add(price);
+                whole.add(price);
+            }
+            total.addAll(statistics);
+        }
+        assertEquals(whole.getCount(), total.getCount());
+        assertEquals(whole.getTotalCost(), total.getTotalCost());
+    }
+
+    // Сервис отдаёт те же показатели, что и подсчёт по списку его активных продуктов
+    @Test
+    void serviceMatchesStream() {
+        ProductService service = ProductService.getInstance();
+        Random random = new Random(4);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ids.add(service.save(new Product("Statistics-" + i, random.nextInt(100_000) / 100.0)).getId());
+        }
+        for (int i = 0; i < 3000; i++) {
+            long id = ids.get(random.nextInt(ids.size()));
+            switch (random.nextInt(3)) {
+                case 0 -> service.update(id, random.nextInt(100_000) / 100.0);
+                case 1 -> service.restoreById(id);
+                default -> {
+                    try {
+                        service.deleteById(id);
+                    } catch (ProductNotFoundException e) {
+                        // Продукт уже удалён
+                    }
+                }
+            }
+        }
+        List<Product> active = service.getAllActiveProducts();
+        assertEquals(active.size(), service.getActiveProductsNumber());
+        assertMatches(active.stream().mapToDouble(Product::getPrice).toArray(),
+                service.getActiveProductsTotalCost(), service.getActiveProductsAveragePrice());
+    }
+
+    private static void check(Random random, boolean arbitraryPrices) {
+        for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+            ProductStatistics statistics = new ProductStatistics();
+            List<Double> active = new ArrayList<>();
+            List<Double> deleted = new ArrayList<>();
+            for (int i = 0; i < OPERATIONS; i++) {
+                int operation = random.nextInt(4);
+                if (operation == 0 || active.isEmpty()) {
+                    double price = price(random, arbitraryPrices);
+                    active.add(price);
+                    statistics.add(price);
+                } else if (operation == 1) {
+                    int index = random.nextInt(active.size());
+                    double price = price(random, arbitraryPrices);
+                    statistics.changePrice(active.get(index), price);
+                    active.set(index, price);
+                } else if (operation == 2) {
+                    double price = active.remove(random.nextInt(active.size()));
+                    statistics.remove(price);
+                    deleted.add(price);
+                } else if (!deleted.isEmpty()) {
+                    double price = deleted.remove(random.nextInt(deleted.size()));
+                    statistics.add(price);
+                    active.add(price);
+                }
+            }
+            assertEquals(active.size(), statistics.getCount());
+            assertMatches(active.stream().mapToDouble(Double::doubleValue).toArray(),
+                    statistics.getTotalCost(), statistics.getAveragePrice());
+        }
+    }
+
+    private static double price(Random random, boolean arbitraryPrices) {
+        if (arbitraryPrices && random.nextInt(4) == 0) {
+            return random.nextDouble() * 1000;
+        }
+        return random.nextInt(10_000_000) / 100.0;
+    }
+
+    // Сумма точная (сотые доли цен складываются как десятичные числа, остальные - точно),
+    // а от суммы потока отличается не больше чем на единицу младшего разряда, от среднего - на две
+    private static void assertMatches(double[] prices, double totalCost, double averagePrice) {
+        BigDecimal exact = BigDecimal.ZERO;
+        for (double price : prices) {
+            long cents = Math.round(price * 100);
+            exact = exact.add(cents / 100.0 == price ? BigDecimal.valueOf(cents, 2) : new BigDecimal(price));
+        }
+        assertEquals(exact.doubleValue(), totalCost);
+        double streamSum = Arrays.stream(prices).sum();
+        assertTrue(Math.abs(streamSum - totalCost) <= Math.ulp(totalCost),
+                () -> "Сумма " + totalCost + " отличается от суммы потока " + streamSum);
+        double streamAverage = Arrays.stream(prices).average().orElse(0.0);
+        assertTrue(Math.abs(streamAverage - averagePrice) <= 2 * Math.ulp(averagePrice),
+                () -> "Среднее " + averagePrice + " отличается от среднего потока " + streamAverage);
+    }
+}
@@ -0,0 +1,93 @@
+package app.service;
+
+import app.domain.Customer;
+import app.domain.Order;
+import app.persistence.WriteAheadLog;
+import app.repository.CustomerRepository;
+import app.repository.OrderRepository;
+import app.repository.ProductRepository;
+import app.repository.StorageEngines;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+Восстановление базы данных из снимка и журнала (как при открытии StorageService),
+но в новые хранилища, а не в общие для всех тестов сервисы.
+ */
+class StorageRecoveryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void snapshotAndLogAreReplayedIntoRepositories() {
+        WriteAheadLog.writeSnapshot(directory, snapshot -> {
+            snapshot.productSaved(1, "Молоко", 89.9, true, 100);
+            snapshot.productSaved(2, "Хлеб", 45.5, true, 100);
+            snapshot.customerSaved(1, "Анна", true);
+            snapshot.cartQuantityChanged(1, 1, 2);
+        });
+        WriteAheadLog log = new WriteAheadLog(directory, WriteAheadLog.SyncMode.PER_OPERATION, 1);
+        log.productPriceUpdated(1, 99.9, 101);
+        log.productActiveChanged(2, false, 102);
+        log.productSaved(3, "Сыр", 500, true, 102);
+        log.customerNameUpdated(1, "Анна Петровна");
+        log.cartQuantityChanged(1, 3, 1);
+        log.orderLineAdded(1, 1, "Молоко", 99.9, 2);
+        log.orderPlaced(1, 1, 1_700_000_000_000L);
+        log.cartQuantityChanged(1, 1, 0);
+        // Заказ, завершающая запись которого не успела попасть в журнал
+        log.orderLineAdded(2, 3, "Сыр", 500, 1);
+
+        ProductRepository products = StorageEngines.createProductRepository(StorageEngines.HEAP, null);
+        CustomerRepository customers = StorageEngines.createCustomerRepository(StorageEngines.HEAP, products::findById);
+        OrderRepository orders = StorageEngines.createOrderRepository();
+        WriteAheadLog.recover(directory, new JournalReplayer(products, customers, orders));
+        log.close();
+
+        assertEquals(99.9, products.findById(1).getPrice());
+        assertFalse(products.findById(2).isActive());
+        assertEquals("Сыр", products.findById(3).getTitle());
+        assertEquals(2, products.countActive());
+        assertEquals(101, products.findById(1).getVersion());
+        assertEquals(102, products.findById(2).getVersion());
+        assertEquals(102, products.findById(3).getVersion());
+
+        Customer customer = customers.findById(1);
+        assertEquals("Анна Петровна", customer.getName());
+        assertEquals(0, customer.getCart().getQuantity(1));
+        assertEquals(1, customer.getCart().getQuantity(3));
+
+        Order order = orders.findById(1);
+        assertEquals(1, order.getCustomerId());
+        assertEquals(2, order.getQuantity());
+        assertEquals(99.9 * 2, order.getTotalCost(), 1e-9);
+        assertNull(orders.findById(2));
+        assertEquals(1, orders.count());
+    }
+
+    // Версия каталога после восстановления продолжается после самой старшей восстановленной версии,
+    // даже если та выдана "в будущем" относительно текущего времени
+    @Test
+    void catalogVersionContinuesAfterRestoredVersions() {
+        long restored = System.currentTimeMillis() * 1000 + 1_000_000_000L;
+        WriteAheadLog.writeSnapshot(directory, snapshot -> snapshot.productSaved(1, "Молоко", 89.9, true, restored));
+
+        ProductRepository products = StorageEngines.createProductRepository(StorageEngines.HEAP, null);
+        WriteAheadLog.recover(directory, new JournalReplayer(products,
+                StorageEngines.createCustomerRepository(StorageEngines.HEAP, products::findById),
+                StorageEngines.createOrderRepository()));
+        ProductService service = new ProductService(products);
+        service.rebuildStatistics();
+
+        assertEquals(restored, products.findById(1).getVersion());
+        assertTrue(service.getCatalogVersion() > restored);
+    }
+}